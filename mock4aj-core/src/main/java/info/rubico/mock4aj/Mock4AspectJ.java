@@ -1,14 +1,23 @@
 package info.rubico.mock4aj;
 
 import info.rubico.mock4aj.api.calls.CallContext;
+import info.rubico.mock4aj.api.calls.CallSimulator;
+import info.rubico.mock4aj.api.calls.CallTarget;
 import info.rubico.mock4aj.api.calls.DefaultCallContextWithExistingWeaver;
 import info.rubico.mock4aj.api.calls.FictitiousSource;
+import info.rubico.mock4aj.api.calls.PreparedCall;
 import info.rubico.mock4aj.api.proxies.WeavedProxyFactory;
-import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
 import info.rubico.mock4aj.codegen.cglib.calls.CglibCallWeavingSimulator;
 import info.rubico.mock4aj.codegen.cglib.proxies.CglibWeavedProxyFactory;
 import info.rubico.mock4aj.internal.WeavedProxyFacade;
+import info.rubico.mock4aj.internal.calls.CallTargetByReflection;
 import info.rubico.mock4aj.weavers.aspectj.AspectJWeaver;
+import info.rubico.mock4aj.weavers.noweaving.NoWeavingWeaver;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Mock4AspectJ is the main interface that provides convenient functions in a simple and
@@ -17,6 +26,11 @@ import info.rubico.mock4aj.weavers.aspectj.AspectJWeaver;
  * The goal of this static facade is to be able to write tests in a more readable syntax that
  * expressed clearly the meaning of the test.
  * <p>
+ * The AspectJ weaver is created the first time an aspect has to be woven. Proxies without aspects
+ * never create it. To avoid the cold start during the first test, the weaver can be warmed up in
+ * the background with {@link #warmUp()}, or automatically when the class is loaded if the
+ * {@value #WARM_UP_PROPERTY} system property is {@code true}.
+ * <p>
  * <h2>Warning</h2>
  * Mock4Aj is not fully thread-safe since objects produced and returned are not synchronized.
  * Anyway, because Mock4AJ is intended to be used for unit tests, it should not be an issue since it
@@ -24,13 +38,20 @@ import info.rubico.mock4aj.weavers.aspectj.AspectJWeaver;
  */
 public final class Mock4AspectJ {
 
+    public static final String WARM_UP_PROPERTY = "mock4aj.warmUp";
+
     private static final WeavedProxyFactory DEFAULT_PROXY_FACTORY = new CglibWeavedProxyFactory();
-    private static final Weaver DEFAULT_WEAVER = new AspectJWeaver();
+    private static final WeavedProxyFacade NO_WEAVING_FACADE =
+            new WeavedProxyFacade(DEFAULT_PROXY_FACTORY, new NoWeavingWeaver());
 
+    private static AspectJWeaver defaultWeaver;
     private static WeavedProxyFacade weavedProxyFacade;
+    private static Future<?> warmUp;
 
     static {
-        weavedProxyFacade = new WeavedProxyFacade(DEFAULT_PROXY_FACTORY, DEFAULT_WEAVER);
+        if (Boolean.getBoolean(WARM_UP_PROPERTY)) {
+            warmUp();
+        }
     }
 
     private Mock4AspectJ() {
@@ -38,19 +59,137 @@ public final class Mock4AspectJ {
 
     public static synchronized <T> T createWeavedProxy(T objectToProxy,
                                                        Class<?>... aspectsToWeave) {
-        return weavedProxyFacade.createWeavedProxy(objectToProxy, aspectsToWeave);
+        return facadeFor(aspectsToWeave).createWeavedProxy(objectToProxy, aspectsToWeave);
+    }
+
+    /**
+     * Creates the proxies of many objects at once. Each distinct proxy class is generated and woven
+     * only once for all the objects of the same class.
+     */
+    public static synchronized <T> List<T> createWeavedProxies(List<T> objectsToProxy,
+                                                               Class<?>... aspectsToWeave) {
+        return facadeFor(aspectsToWeave).createWeavedProxies(objectsToProxy, aspectsToWeave);
+    }
+
+    /**
+     * Like {@link #createWeavedProxies(List, Class...)} but in the background, within the
+     * {@link GenerationScope} of the calling thread. The weaver is locked until the proxies are
+     * created: other proxies wait for them.
+     */
+    public static synchronized <T> Future<List<T>> createWeavedProxiesAsync(
+            List<T> objectsToProxy, Class<?>... aspectsToWeave) {
+        return facadeFor(aspectsToWeave).createWeavedProxiesAsync(objectsToProxy, aspectsToWeave);
     }
 
+    /**
+     * @return A reusable selector: keep it to simulate the same calls many times, each method
+     *         generates its caller class only once.
+     * @see CallSimulator#call(Object, CallContext)
+     */
     public static synchronized <T> T call(T objectToCall, CallContext callContext) {
         return new CglibCallWeavingSimulator().call(objectToCall, callContext);
     }
 
+    /**
+     * Prepares a call to a method of the object from the context. The caller is generated and
+     * woven now: the prepared call can be invoked many times, by many threads.
+     * 
+     * @throws NoSuchMethodException If the object has no such public method.
+     */
+    public static synchronized PreparedCall prepareCall(Object objectToCall,
+                                                        CallContext callContext,
+                                                        String methodName,
+                                                        Class<?>... argumentTypes)
+        throws NoSuchMethodException {
+        CallTarget target = new CallTargetByReflection(objectToCall, methodName, argumentTypes);
+        return new CglibCallWeavingSimulator().prepareCall(target, callContext);
+    }
+
     public static synchronized CallContext callContext() {
-        DEFAULT_WEAVER.reset();
-        return new DefaultCallContextWithExistingWeaver(DEFAULT_WEAVER);
+        AspectJWeaver weaver = getDefaultWeaver();
+        weaver.reset();
+        return new DefaultCallContextWithExistingWeaver(weaver);
     }
 
     public static synchronized FictitiousSource fakeSourceClass(String name) {
         return new FictitiousSource(name);
     }
+
+    /**
+     * Opens a {@link GenerationScope} for the current thread. Closing it allows all the classes
+     * generated within it to be unloaded.
+     */
+    public static GenerationScope openGenerationScope() {
+        return GenerationScope.open();
+    }
+
+    /**
+     * Starts the warm-up of the default weaver on a background (daemon) thread: the AspectJ world
+     * is created, the common types are resolved and cglib and Objenesis are primed by a first
+     * proxy. A weaving requested meanwhile waits for the weaver instead of creating it again.
+     *
+     * @return The warm-up, done when the weaver is ready. It is started only once.
+     */
+    public static synchronized Future<?> warmUp() {
+        if (warmUp == null) {
+            FutureTask<Object> task = new FutureTask<Object>(new WarmUp(), null);
+            Thread thread = new Thread(task, "mock4aj-warm-up");
+            thread.setDaemon(true);
+            thread.start();
+            warmUp = task;
+        }
+        return warmUp;
+    }
+
+    /**
+     * @return The weaver used by the proxies and calls with aspects. It is created on demand.
+     */
+    static synchronized AspectJWeaver getDefaultWeaver() {
+        if (defaultWeaver == null) {
+            defaultWeaver = new AspectJWeaver();
+            defaultWeaver.getMetrics().addSource(defaultWeaver);
+        }
+        return defaultWeaver;
+    }
+
+    private static WeavedProxyFacade facadeFor(Class<?>[] aspectsToWeave) {
+        if (aspectsToWeave.length == 0) {
+            return NO_WEAVING_FACADE;
+        }
+        return getWeavedProxyFacade();
+    }
+
+    private static synchronized WeavedProxyFacade getWeavedProxyFacade() {
+        if (weavedProxyFacade == null) {
+            weavedProxyFacade = new WeavedProxyFacade(DEFAULT_PROXY_FACTORY, getDefaultWeaver());
+        }
+        return weavedProxyFacade;
+    }
+
+    /**
+     * The class loader of the calling thread is used, like by the weaver created on demand. Only
+     * the creation of the weaver holds the lock of {@link Mock4AspectJ}: the warm-up itself only
+     * holds the lock of the weaver, so the calls that don't need the weaver are not delayed.
+     * <p>
+     * The first proxy is created by a factory of the warm-up: the shared factory is only used with
+     * the lock of {@link Mock4AspectJ}.
+     */
+    static class WarmUp implements Runnable {
+
+        private final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        private final WeavedProxyFacade proxyFacade =
+                new WeavedProxyFacade(new CglibWeavedProxyFactory(), new NoWeavingWeaver());
+
+        public void run() {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            getDefaultWeaver().warmUp();
+            proxyFacade.createWeavedProxy(new WarmUpTarget());
+        }
+    }
+
+    /**
+     * Proxied only to load and prime the proxy generation.
+     */
+    static class WarmUpTarget {
+    }
 }
@@ -30,6 +30,9 @@ public interface CallSimulator {
      * The returned stub object is used as a target selector and will use the method called on it as
      * the target. When the method is selected, a call will be simulated to the selected method
      * using a {@link MethodCaller}.
+     * <p>
+     * The stub is reusable: it can be kept and invoked many times, the {@link MethodCaller} of a
+     * method is generated only by its first invocation.
      * 
      * @param targetObject The object to be called.
      * @param callContext The context of the call (the call will originate from within that context)
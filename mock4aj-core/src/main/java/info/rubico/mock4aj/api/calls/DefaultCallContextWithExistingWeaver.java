@@ -1,8 +1,9 @@
 package info.rubico.mock4aj.api.calls;
 
 import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.api.weaving.Weavers;
 
-public class DefaultCallContextWithExistingWeaver implements CallContext {
+public class DefaultCallContextWithExistingWeaver implements MultiAspectCallContext {
 
     private final Weaver weaver;
     private CallSource source;
@@ -21,6 +22,10 @@ public class DefaultCallContextWithExistingWeaver implements CallContext {
         weaver.registerAspect(aspectClass);
     }
 
+    public void withAspects(Class<?>... aspectClasses) {
+        Weavers.registerAspects(weaver, aspectClasses);
+    }
+
     public void from(Class<?> sourceType) {
         source = new ExistingSource(sourceType);
     }
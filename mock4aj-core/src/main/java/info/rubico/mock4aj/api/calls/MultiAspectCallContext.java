@@ -0,0 +1,13 @@
+package info.rubico.mock4aj.api.calls;
+
+/**
+ * A {@link CallContext} able to add many aspects at once.
+ */
+public interface MultiAspectCallContext extends CallContext {
+
+    /**
+     * Adds many aspects to the context at once. It is faster than adding them one by one.
+     */
+    void withAspects(Class<?>... aspectClasses);
+
+}
@@ -0,0 +1,144 @@
+package info.rubico.mock4aj.api.calls;
+
+import info.rubico.mock4aj.api.exceptions.EncapsulatedExceptionThrownByTarget;
+import info.rubico.mock4aj.api.exceptions.Mock4AjException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A call simulation prepared once and done many times. The {@link MethodCaller} of the
+ * {@link CallTarget} in the {@link CallContext} is generated and woven when the call is prepared
+ * (see {@link PreparingCallSimulator#prepareCall(CallTarget, CallContext)}): an invocation only
+ * calls it.
+ * <p>
+ * The invocations can be done by many threads at once, the caller keeps no state but its target.
+ * The target and the woven aspects must support it too.
+ *
+ * <h2>Example</h2>
+ *
+ * <pre>
+ * PreparedCall setTime = simulator.prepareCall(setTimeTarget, context);
+ * for (long time = 0; time &lt; COUNT; time++) {
+ *     setTime.invoke(time);
+ * }
+ * </pre>
+ */
+public class PreparedCall {
+
+    private final MethodCaller caller;
+
+    public PreparedCall(MethodCaller caller) {
+        this.caller = caller;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the arguments don't match the target method.
+     * @throws EncapsulatedExceptionThrownByTarget An exception thrown by the target method.
+     * @return The result of the call, null for void targets.
+     * @see MethodCaller#doCall(Object[])
+     */
+    public Object invoke(Object... argumentValues) {
+        return caller.doCall(argumentValues);
+    }
+
+    /**
+     * Invokes the call once for each set of arguments, one after the other.
+     *
+     * @return The results, in the same order than the arguments.
+     */
+    public List<Object> invokeAll(Iterable<Object[]> argumentsList) {
+        List<Object> results = new ArrayList<Object>();
+        for (Object[] argumentValues : argumentsList) {
+            results.add(caller.doCall(argumentValues));
+        }
+        return results;
+    }
+
+    /**
+     * Invokes the call once for each set of arguments, split in {@code parallelism} batches done
+     * by the executor. The calling thread waits for all the batches.
+     *
+     * @return The results, in the same order than the arguments.
+     * @throws EncapsulatedExceptionThrownByTarget The first exception thrown by the target (in the
+     *         order of the batches).
+     */
+    public List<Object> invokeAll(Iterable<Object[]> argumentsList,
+                                  ExecutorService executor,
+                                  int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1.");
+        }
+        List<Object[]> allArguments = new ArrayList<Object[]>();
+        for (Object[] argumentValues : argumentsList) {
+            allArguments.add(argumentValues);
+        }
+        return collectResults(submitBatches(allArguments, executor, parallelism));
+    }
+
+    private List<Future<List<Object>>> submitBatches(List<Object[]> allArguments,
+                                                     ExecutorService executor,
+                                                     int parallelism) {
+        List<Future<List<Object>>> batches = new ArrayList<Future<List<Object>>>();
+        int batchSize = (allArguments.size() + parallelism - 1) / parallelism;
+        for (int from = 0; from < allArguments.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, allArguments.size());
+            batches.add(executor.submit(new Invocations(allArguments.subList(from, to))));
+        }
+        return batches;
+    }
+
+    private List<Object> collectResults(List<Future<List<Object>>> batches) {
+        List<Object> results = new ArrayList<Object>();
+        try {
+            for (Future<List<Object>> batch : batches) {
+                results.addAll(batch.get());
+            }
+        }
+        catch (InterruptedException interruption) {
+            Thread.currentThread().interrupt();
+            throw new Mock4AjException("Interrupted while waiting for the invocations.",
+                                       interruption);
+        }
+        catch (ExecutionException error) {
+            throw unwrap(error);
+        }
+        return results;
+    }
+
+    private static RuntimeException unwrap(ExecutionException error) {
+        Throwable cause = error.getCause();
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new Mock4AjException("An invocation failed.", cause);
+    }
+
+    public MethodCaller getCaller() {
+        return caller;
+    }
+
+    /**
+     * A batch of invocations done by the executor.
+     */
+    private class Invocations implements Callable<List<Object>> {
+
+        private final List<Object[]> argumentsList;
+
+        public Invocations(List<Object[]> argumentsList) {
+            this.argumentsList = argumentsList;
+        }
+
+        public List<Object> call() {
+            return invokeAll(argumentsList);
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package info.rubico.mock4aj.api.calls;
+
+/**
+ * A {@link CallSimulator} able to prepare a call once to simulate it many times.
+ */
+public interface PreparingCallSimulator extends CallSimulator {
+
+    /**
+     * Prepares a call in the given context to the target: its {@link MethodCaller} is generated
+     * now, the call can then be simulated many times without selector nor generation.
+     * 
+     * @param target The method to call and the object to call.
+     * @param callContext The context of the call (the call will originate from within that context)
+     * @return The prepared call.
+     */
+    PreparedCall prepareCall(CallTarget target, CallContext callContext);
+
+}
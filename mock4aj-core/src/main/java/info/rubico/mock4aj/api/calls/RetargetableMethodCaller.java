@@ -0,0 +1,21 @@
+package info.rubico.mock4aj.api.calls;
+
+/**
+ * A {@link MethodCaller} that can call the same method on another object. The call itself, and so
+ * its weaving, stays the same: only the object receiving the call changes.
+ * <p>
+ * To simulate the same call on many objects, a caller is generated once and retargeted for each
+ * object, without reflection and without generating another class.
+ */
+public interface RetargetableMethodCaller extends MethodCaller {
+
+    /**
+     * Sets the object called by {@link #doCall(Object[])}. The name is chosen to avoid conflicts
+     * with the methods of the source.
+     * 
+     * @param target An instance of the class of the initial target. Otherwise, the next call fails
+     *        with a {@link ClassCastException}.
+     */
+    void setMock4AjTarget(Object target);
+
+}
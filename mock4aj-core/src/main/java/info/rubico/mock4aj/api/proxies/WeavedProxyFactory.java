@@ -2,6 +2,8 @@ package info.rubico.mock4aj.api.proxies;
 
 import info.rubico.mock4aj.api.weaving.Weaver;
 
+import java.util.List;
+
 /**
  * <p>
  * Helper to create various kind of weaved proxies. A proxy is a dynamically generated class where
@@ -39,4 +41,12 @@ public interface WeavedProxyFactory {
 
     <T> T createWeavedProxy(final T objectToProxy, final Weaver weaverAdapter);
 
+    /**
+     * Creates the proxies of many objects woven by the same weaver. The objects of the same class
+     * share the same proxy class: each distinct proxy class is generated and woven only once.
+     * 
+     * @return The proxies, in the same order than the given objects.
+     */
+    <T> List<T> createWeavedProxies(final List<T> objectsToProxy, final Weaver weaverAdapter);
+
 }
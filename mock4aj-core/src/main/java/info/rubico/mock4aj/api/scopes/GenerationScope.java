@@ -0,0 +1,162 @@
+package info.rubico.mock4aj.api.scopes;
+
+import info.rubico.mock4aj.api.exceptions.Mock4AjException;
+import info.rubico.mock4aj.internal.classutils.InstantiatorRegistry;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A scope owning the class loader of everything generated within it (proxies, selectors, callers
+ * and the closures of the weaving).
+ * <p>
+ * Without a scope, the generated classes are defined in the class loader of the type they extend
+ * and stay there until the JVM exits. A scope is opened for the current thread and, once closed,
+ * nothing references its class loader anymore: all the classes generated within it (and their
+ * instances, once unused) can be unloaded.
+ * <h2>Example</h2>
+ *
+ * <pre>
+ * GenerationScope scope = GenerationScope.open();
+ * try {
+ *     ... createWeavedProxy(...), call(...) ...
+ * }
+ * finally {
+ *     scope.close();
+ * }
+ * </pre>
+ * <h2>Warning</h2>
+ * The generated classes are in another runtime package than the classes they extend: they cannot
+ * access package-private types or members.
+ */
+public final class GenerationScope implements Closeable {
+
+    private static final ThreadLocal<GenerationScope> CURRENT = new ThreadLocal<GenerationScope>();
+
+    private final GenerationScope previous;
+    private ScopeClassLoader classLoader;
+
+    private GenerationScope(GenerationScope previous, ClassLoader parent) {
+        this.previous = previous;
+        this.classLoader = new ScopeClassLoader(parent);
+    }
+
+    /**
+     * Opens a scope for the current thread. Its class loader is a child of the context class
+     * loader. Scopes can be nested, the last opened one is used.
+     */
+    public static GenerationScope open() {
+        ClassLoader parent = Thread.currentThread().getContextClassLoader();
+        if (parent == null) {
+            parent = GenerationScope.class.getClassLoader();
+        }
+        GenerationScope scope = new GenerationScope(current(), parent);
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * @return The scope opened by the current thread or null if there is none.
+     */
+    public static GenerationScope current() {
+        GenerationScope scope = CURRENT.get();
+        while (scope != null && scope.isClosed()) {
+            scope = scope.previous;
+        }
+        return scope;
+    }
+
+    /**
+     * Makes a scope the current one of the current thread, like when a task created within the
+     * scope is run by another thread.
+     * 
+     * @param scope The scope or null for no scope.
+     * @return The scope that was current before, to restore the same way once done.
+     */
+    public static GenerationScope makeCurrent(GenerationScope scope) {
+        GenerationScope previous = CURRENT.get();
+        CURRENT.set(scope);
+        return previous;
+    }
+
+    /**
+     * @return The class loader where the generated classes must be defined: the one of the current
+     *         scope if there is one or the default loader.
+     */
+    public static ClassLoader classLoaderFor(ClassLoader defaultLoader, Class<?>... usedTypes) {
+        GenerationScope scope = current();
+        if (scope == null) {
+            return defaultLoader;
+        }
+        return scope.getClassLoader(usedTypes);
+    }
+
+    /**
+     * @param usedTypes The types the generated classes refer to (superclass, interfaces...). Their
+     *            class loaders become visible from the scope class loader.
+     */
+    public synchronized ClassLoader getClassLoader(Class<?>... usedTypes) {
+        if (classLoader == null) {
+            throw new Mock4AjException("The generation scope is closed.");
+        }
+        for (Class<?> usedType : usedTypes) {
+            classLoader.makeVisible(usedType.getClassLoader());
+        }
+        return classLoader;
+    }
+
+    public synchronized boolean isClosed() {
+        return classLoader == null;
+    }
+
+    /**
+     * Releases the class loader of the scope and restores the previous scope of the thread. A scope
+     * closed by another thread is simply skipped by {@link #current()}.
+     */
+    public void close() {
+        synchronized (this) {
+            if (classLoader != null) {
+                InstantiatorRegistry.getDefault().forgetClassLoader(classLoader);
+            }
+            classLoader = null;
+        }
+        if (CURRENT.get() == this) {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Child of the context class loader that also sees the class loaders of the types used by the
+     * generated classes.
+     */
+    private static class ScopeClassLoader extends ClassLoader {
+
+        private final List<ClassLoader> visibleLoaders = new CopyOnWriteArrayList<ClassLoader>();
+
+        ScopeClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        void makeVisible(ClassLoader loader) {
+            if (loader != null && loader != this && loader != getParent()
+                && !visibleLoaders.contains(loader)) {
+                visibleLoaders.add(loader);
+            }
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            for (ClassLoader loader : visibleLoaders) {
+                try {
+                    return Class.forName(name, false, loader);
+                }
+                catch (ClassNotFoundException e) { // NOPMD
+                    // Try the next one
+                }
+            }
+            throw new ClassNotFoundException(name);
+        }
+    }
+
+}
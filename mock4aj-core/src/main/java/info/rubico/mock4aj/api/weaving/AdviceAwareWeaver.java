@@ -0,0 +1,20 @@
+package info.rubico.mock4aj.api.weaving;
+
+import java.lang.reflect.Method;
+
+/**
+ * A {@link Weaver} able to tell, before the weaving, which methods of a proxy its registered
+ * aspects could advise. A proxy generator can then intercept only those methods and forward the
+ * others directly.
+ */
+public interface AdviceAwareWeaver extends Weaver {
+
+    /**
+     * @param proxiedClass The class proxied (the superclass of the woven proxy).
+     * @param method The proxied method.
+     * @return false only if it is certain that no registered aspect advises the execution of the
+     *         method in a proxy of the class.
+     */
+    boolean couldAdvise(Class<?> proxiedClass, Method method);
+
+}
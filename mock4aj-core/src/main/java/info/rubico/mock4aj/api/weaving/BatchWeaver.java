@@ -0,0 +1,21 @@
+package info.rubico.mock4aj.api.weaving;
+
+import java.util.Map;
+
+/**
+ * A {@link Weaver} able to weave many classes in one call, possibly in parallel. Use
+ * {@link Weavers} to weave a batch with any weaver.
+ */
+public interface BatchWeaver extends Weaver {
+
+    /**
+     * Weave many classes (class name to bytecode) using all registered aspects. An implementation
+     * may weave them in parallel.
+     * 
+     * @return The result of each class, in the same order than the given classes. An error during
+     *         the weaving of a class is reported in its result and the other classes are still
+     *         woven.
+     */
+    Map<String, WeavingResult> weaveClasses(Map<String, byte[]> classes);
+
+}
@@ -0,0 +1,17 @@
+package info.rubico.mock4aj.api.weaving;
+
+/**
+ * A {@link Weaver} able to identify its current set of aspects. The same bytecode woven by the same
+ * kind of weaver with the same fingerprint is always woven the same way: the classes generated and
+ * woven for it can be reused.
+ */
+public interface FingerprintedWeaver extends Weaver {
+
+    /**
+     * @return A fingerprint of the registered aspects (including their bytecode) or null if it
+     *         cannot be computed. The same set of aspects always gives the same fingerprint,
+     *         whatever the registration order.
+     */
+    String getAspectsFingerprint();
+
+}
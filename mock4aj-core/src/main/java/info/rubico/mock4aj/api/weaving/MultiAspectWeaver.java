@@ -0,0 +1,30 @@
+package info.rubico.mock4aj.api.weaving;
+
+import info.rubico.mock4aj.api.exceptions.NotAConcreteAspect;
+import info.rubico.mock4aj.api.exceptions.NotAnAspect;
+
+/**
+ * A {@link Weaver} able to change many aspects at once: it is only prepared once for all of them.
+ * Use {@link Weavers} to change the aspects of any weaver.
+ */
+public interface MultiAspectWeaver extends Weaver {
+
+    /**
+     * Register many aspects at once. It is equivalent to registering them one by one but the
+     * weaver is only prepared once for all of them. Already registered aspects are ignored.
+     * 
+     * @throws NotAnAspect if one of the classes is not an aspect class.
+     * @throws NotAConcreteAspect if one of the aspects is an abstract aspect.
+     */
+    void registerAspects(Class<?>... aspects);
+
+    /**
+     * Replace all the registered aspects by the given ones. Aspects already registered and part of
+     * the given ones stay registered. The weaver is only prepared once for all the changes.
+     * 
+     * @throws NotAnAspect if one of the classes is not an aspect class.
+     * @throws NotAConcreteAspect if one of the aspects is an abstract aspect.
+     */
+    void replaceAspects(Class<?>... aspects);
+
+}
@@ -7,6 +7,9 @@ import info.rubico.mock4aj.api.exceptions.WeavingError;
 /**
  * Adapter that represents and pilot the weaver that will be responsible to weave classes with the
  * registered aspects.
+ * <p>
+ * Optional capabilities are given by sub-interfaces (like {@link MultiAspectWeaver} or
+ * {@link BatchWeaver}) so an implementation only needs these basic methods.
  */
 public interface Weaver {
 
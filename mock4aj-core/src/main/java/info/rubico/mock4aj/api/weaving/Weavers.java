@@ -0,0 +1,66 @@
+package info.rubico.mock4aj.api.weaving;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Uses the optional capabilities of a {@link Weaver} when it has them and falls back on the basic
+ * {@link Weaver} methods otherwise.
+ */
+public final class Weavers {
+
+    private Weavers() {
+    }
+
+    /**
+     * @see MultiAspectWeaver#registerAspects(Class...)
+     */
+    public static void registerAspects(Weaver weaver, Class<?>... aspects) {
+        if (weaver instanceof MultiAspectWeaver) {
+            ((MultiAspectWeaver) weaver).registerAspects(aspects);
+        }
+        else {
+            registerOneByOne(weaver, aspects);
+        }
+    }
+
+    /**
+     * Without a {@link MultiAspectWeaver}, the weaver is reset then the aspects are registered.
+     * 
+     * @see MultiAspectWeaver#replaceAspects(Class...)
+     */
+    public static void replaceAspects(Weaver weaver, Class<?>... aspects) {
+        if (weaver instanceof MultiAspectWeaver) {
+            ((MultiAspectWeaver) weaver).replaceAspects(aspects);
+        }
+        else {
+            weaver.reset();
+            registerOneByOne(weaver, aspects);
+        }
+    }
+
+    private static void registerOneByOne(Weaver weaver, Class<?>... aspects) {
+        for (Class<?> aspect : aspects) {
+            weaver.registerAspect(aspect);
+        }
+    }
+
+    /**
+     * Without a {@link BatchWeaver}, the classes are woven one after the other.
+     * 
+     * @see BatchWeaver#weaveClasses(Map)
+     */
+    public static Map<String, WeavingResult> weaveClasses(Weaver weaver,
+                                                          Map<String, byte[]> classes) {
+        if (weaver instanceof BatchWeaver) {
+            return ((BatchWeaver) weaver).weaveClasses(classes);
+        }
+        Map<String, WeavingResult> results = new LinkedHashMap<String, WeavingResult>();
+        for (Map.Entry<String, byte[]> clazz : classes.entrySet()) {
+            results.put(clazz.getKey(),
+                        WeavingResult.weave(weaver, clazz.getKey(), clazz.getValue()));
+        }
+        return results;
+    }
+
+}
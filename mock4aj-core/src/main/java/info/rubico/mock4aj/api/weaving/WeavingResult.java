@@ -0,0 +1,69 @@
+package info.rubico.mock4aj.api.weaving;
+
+import info.rubico.mock4aj.api.exceptions.WeavingError;
+
+/**
+ * The result of the weaving of one class of a batch: the woven bytecode or the error that occurred.
+ * 
+ * @see BatchWeaver#weaveClasses(java.util.Map)
+ */
+public final class WeavingResult {
+
+    private final String className;
+    private final byte[] wovenBytes;
+    private final WeavingError error;
+
+    private WeavingResult(String className, byte[] wovenBytes, WeavingError error) {
+        this.className = className;
+        this.wovenBytes = wovenBytes;
+        this.error = error;
+    }
+
+    public static WeavingResult woven(String className, byte[] wovenBytes) {
+        return new WeavingResult(className, wovenBytes, null);
+    }
+
+    public static WeavingResult failed(String className, WeavingError error) {
+        return new WeavingResult(className, null, error);
+    }
+
+    /**
+     * Weaves one class with {@link Weaver#weaveClassBytes(String, byte[])} and keeps the error if
+     * there is one.
+     */
+    public static WeavingResult weave(Weaver weaver, String className, byte[] bytes) {
+        try {
+            return woven(className, weaver.weaveClassBytes(className, bytes));
+        }
+        catch (WeavingError error) {
+            return failed(className, error);
+        }
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public boolean isWoven() {
+        return error == null;
+    }
+
+    /**
+     * @throws WeavingError The error that occurred if the class could not be woven.
+     * @return The woven class' bytecode.
+     */
+    public byte[] getWovenBytes() {
+        if (error != null) {
+            throw error;
+        }
+        return wovenBytes;
+    }
+
+    /**
+     * @return The error that occurred or null if the class was woven.
+     */
+    public WeavingError getError() {
+        return error;
+    }
+
+}
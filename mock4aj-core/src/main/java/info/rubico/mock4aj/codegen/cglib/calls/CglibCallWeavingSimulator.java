@@ -2,6 +2,9 @@ package info.rubico.mock4aj.codegen.cglib.calls;
 
 import info.rubico.mock4aj.api.calls.CallContext;
 import info.rubico.mock4aj.api.calls.CallSimulator;
+import info.rubico.mock4aj.api.calls.CallTarget;
+import info.rubico.mock4aj.api.calls.PreparedCall;
+import info.rubico.mock4aj.api.calls.PreparingCallSimulator;
 import info.rubico.mock4aj.api.exceptions.Mock4AjException;
 import info.rubico.mock4aj.codegen.cglib.calls.caller.CglibWeavedCallerGenerator;
 import info.rubico.mock4aj.codegen.cglib.calls.selector.CglibMethodSelectorGenerator;
@@ -10,11 +13,11 @@ import info.rubico.mock4aj.internal.calls.CallerGenerator;
 import net.sf.cglib.proxy.MethodInterceptor;
 
 /**
- * Cglib implementation of a {@link CallSimulator}.
+ * Cglib implementation of a {@link CallSimulator}, able to prepare calls.
  * 
- * @see CallSimulator
+ * @see PreparingCallSimulator
  */
-public class CglibCallWeavingSimulator implements CallSimulator {
+public class CglibCallWeavingSimulator implements PreparingCallSimulator {
 
     // @formatter:off
     private static final String CALL_TO_ERROR_MESSAGE = "An error occurs during the creation of "
@@ -48,6 +51,10 @@ public class CglibCallWeavingSimulator implements CallSimulator {
         }
     }
 
+    public PreparedCall prepareCall(CallTarget target, CallContext context) {
+        return new PreparedCall(callerGenerator.generateMethodCaller(target, context));
+    }
+
     protected CglibMethodSelectorGenerator getTargetSelectorGenerator() {
         return targetSelectorGenerator;
     }
@@ -0,0 +1,144 @@
+package info.rubico.mock4aj.codegen.cglib.calls.caller;
+
+import info.rubico.mock4aj.api.calls.CallSource;
+import info.rubico.mock4aj.api.calls.CallTarget;
+import info.rubico.mock4aj.api.weaving.FingerprintedWeaver;
+import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.internal.cache.BoundedLruCache;
+import info.rubico.mock4aj.internal.metrics.WeavingMetrics;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * <p>
+ * Cache of the woven caller classes. A caller class is reused to simulate the same call from the
+ * same source with the same aspects: only the caller instance (and its target object) differs.
+ * </p>
+ * <p>
+ * A caller class is identified by the class loader it is defined in, the target class and method,
+ * the name and the type of the {@link CallSource} and the fingerprint of the aspects of a
+ * {@link FingerprintedWeaver}. The callers woven by another kind of weaver are never cached.
+ * </p>
+ * <p>
+ * Like the proxy classes, the class loaders and the caller classes are weakly referenced and each
+ * class loader keeps at most {@link #getMaxClassesPerLoader()} caller classes. The lookups are
+ * also counted by the {@link WeavingMetrics}.
+ * </p>
+ */
+public class CallerClassCache {
+
+    public static final int DEFAULT_MAX_CLASSES_PER_LOADER = 256;
+
+    private static final CallerClassCache DEFAULT = new CallerClassCache(
+            DEFAULT_MAX_CLASSES_PER_LOADER);
+
+    private final int maxClassesPerLoader;
+    private final Map<ClassLoader, BoundedLruCache<String, WeakReference<Class<?>>>> loaders =
+            new WeakHashMap<ClassLoader, BoundedLruCache<String, WeakReference<Class<?>>>>();
+
+    private long hitCount;
+    private long missCount;
+    private volatile WeavingMetrics metrics = WeavingMetrics.getDefault();
+
+    public CallerClassCache(int maxClassesPerLoader) {
+        if (maxClassesPerLoader < 0) {
+            throw new IllegalArgumentException("The maximum size of a cache can't be negative.");
+        }
+        this.maxClassesPerLoader = maxClassesPerLoader;
+    }
+
+    /**
+     * @return The cache shared by the caller generators.
+     */
+    public static CallerClassCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return The key of the caller class or null if the caller class must not be cached.
+     */
+    public static String keyOf(CallTarget target, CallSource source, Weaver weaver) {
+        if (!(weaver instanceof FingerprintedWeaver)) {
+            return null;
+        }
+        String aspectsFingerprint = ((FingerprintedWeaver) weaver).getAspectsFingerprint();
+        if (aspectsFingerprint == null) {
+            return null;
+        }
+        Method targetMethod = target.getTargetMethod();
+        StringBuilder key = new StringBuilder(target.getTargetClass().getName());
+        key.append('#').append(targetMethod.getDeclaringClass().getName());
+        key.append('.').append(targetMethod.getName()).append('(');
+        for (Class<?> argumentType : targetMethod.getParameterTypes()) {
+            key.append(argumentType.getName()).append(',');
+        }
+        key.append(");").append(source.getName()).append(':').append(source.getType().getName());
+        key.append(';').append(weaver.getClass().getName()).append('@').append(aspectsFingerprint);
+        return key.toString();
+    }
+
+    /**
+     * @return The cached caller class or null if there is none.
+     */
+    public synchronized Class<?> get(ClassLoader classLoader, String key) {
+        BoundedLruCache<String, WeakReference<Class<?>>> classes = loaders.get(classLoader);
+        Class<?> callerClass = null;
+        if (classes != null) {
+            WeakReference<Class<?>> reference = classes.get(key);
+            callerClass = reference == null ? null : reference.get();
+        }
+        countLookup(callerClass != null);
+        return callerClass;
+    }
+
+    public synchronized void put(ClassLoader classLoader, String key, Class<?> callerClass) {
+        BoundedLruCache<String, WeakReference<Class<?>>> classes = loaders.get(classLoader);
+        if (classes == null) {
+            classes = new BoundedLruCache<String, WeakReference<Class<?>>>(maxClassesPerLoader);
+            loaders.put(classLoader, classes);
+        }
+        classes.put(key, new WeakReference<Class<?>>(callerClass));
+    }
+
+    public synchronized void clear() {
+        loaders.clear();
+    }
+
+    private void countLookup(boolean hit) {
+        metrics.recordCallerClassCacheLookup(hit);
+        if (hit) {
+            hitCount++;
+        }
+        else {
+            missCount++;
+        }
+    }
+
+    public int getMaxClassesPerLoader() {
+        return maxClassesPerLoader;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public WeavingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets where the lookups are counted. By default, it is the {@link WeavingMetrics#getDefault()
+     * shared metrics} published through JMX.
+     */
+    public void setMetrics(WeavingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+}
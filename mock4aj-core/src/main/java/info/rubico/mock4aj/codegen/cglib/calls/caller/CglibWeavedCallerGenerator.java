@@ -3,6 +3,7 @@ package info.rubico.mock4aj.codegen.cglib.calls.caller;
 import info.rubico.mock4aj.api.calls.CallContext;
 import info.rubico.mock4aj.api.calls.CallTarget;
 import info.rubico.mock4aj.api.calls.MethodCaller;
+import info.rubico.mock4aj.api.calls.RetargetableMethodCaller;
 import info.rubico.mock4aj.api.weaving.Weaver;
 import info.rubico.mock4aj.codegen.cglib.transformations.CglibWeavingGeneratorStrategy;
 import info.rubico.mock4aj.internal.calls.CallerGenerator;
@@ -12,16 +13,53 @@ import info.rubico.mock4aj.internal.calls.CallerGenerator;
  * <p>
  * It uses a {@link MethodCallerBytecodeGenerator} to generated a {@link MethodCaller} and weave it
  * with a {@link Weaver}.
+ * <p>
+ * The caller classes are kept in a {@link CallerClassCache} (the shared one by default). The cglib
+ * cache is not used since it ignores the weaving: a caller class is reused only for the same
+ * target method, the same source and the same aspects.
+ * <p>
+ * The generated callers are {@link RetargetableMethodCaller}s, see also the
+ * {@link MethodCallerPool}.
  */
 public class CglibWeavedCallerGenerator implements CallerGenerator {
 
-    public MethodCaller generateMethodCaller(CallTarget target, CallContext context) {
+    private CallerClassCache callerClassCache = CallerClassCache.getDefault();
+
+    public RetargetableMethodCaller generateMethodCaller(CallTarget target, CallContext context) {
+        MethodCallerBytecodeGenerator classGenerator = createConfiguredGenerator(target, context);
+        String cacheKey = CallerClassCache.keyOf(target,
+                                                 context.getConfiguredCallSource(),
+                                                 context.getConfiguredWeaver());
+        return findOrCreateCaller(classGenerator, cacheKey);
+    }
+
+    /**
+     * @return The class generator of the callers of the target from the context. Nothing is
+     *         generated yet.
+     */
+    protected MethodCallerBytecodeGenerator createConfiguredGenerator(CallTarget target,
+                                                                      CallContext context) {
         CglibWeavingGeneratorStrategy weavingStrategy = createWeavingStrategy(context);
         MethodCallerBytecodeGenerator classGenerator = createGenerator(target);
         classGenerator.setStrategy(weavingStrategy);
         classGenerator.setSource(context.getConfiguredCallSource());
-        classGenerator.setUseCache(false);
-        return classGenerator.create();
+        classGenerator.setUseCache(false); // Ignores the weaving, see the CallerClassCache.
+        return classGenerator;
+    }
+
+    private RetargetableMethodCaller findOrCreateCaller(
+            MethodCallerBytecodeGenerator classGenerator, String cacheKey) {
+        if (callerClassCache == null || cacheKey == null) {
+            return classGenerator.create();
+        }
+        ClassLoader classLoader = classGenerator.getClassLoader();
+        Class<?> callerClass = callerClassCache.get(classLoader, cacheKey);
+        if (callerClass != null) {
+            return classGenerator.createFrom(callerClass);
+        }
+        RetargetableMethodCaller caller = classGenerator.create();
+        callerClassCache.put(classLoader, cacheKey, caller.getClass());
+        return caller;
     }
 
     protected CglibWeavingGeneratorStrategy createWeavingStrategy(CallContext context) {
@@ -32,4 +70,16 @@ public class CglibWeavedCallerGenerator implements CallerGenerator {
         return new MethodCallerBytecodeGenerator(target);
     }
 
+    public CallerClassCache getCallerClassCache() {
+        return callerClassCache;
+    }
+
+    /**
+     * Sets where the caller classes are cached. Null disables the caching: a new caller class is
+     * generated and woven for each caller.
+     */
+    public void setCallerClassCache(CallerClassCache callerClassCache) {
+        this.callerClassCache = callerClassCache;
+    }
+
 }
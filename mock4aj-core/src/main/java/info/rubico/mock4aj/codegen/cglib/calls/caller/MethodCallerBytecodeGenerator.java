@@ -4,10 +4,13 @@ import info.rubico.mock4aj.api.calls.CallSource;
 import info.rubico.mock4aj.api.calls.CallTarget;
 import info.rubico.mock4aj.api.calls.ExistingSource;
 import info.rubico.mock4aj.api.calls.MethodCaller;
+import info.rubico.mock4aj.api.calls.RetargetableMethodCaller;
 import info.rubico.mock4aj.api.exceptions.EncapsulatedExceptionThrownByTarget;
 import info.rubico.mock4aj.api.exceptions.Mock4AjException;
 import info.rubico.mock4aj.api.exceptions.UnsupportedSourceType;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
 import info.rubico.mock4aj.internal.classutils.ClassUtils;
+import info.rubico.mock4aj.internal.classutils.InstantiatorRegistry;
 
 import java.lang.reflect.Method;
 
@@ -24,8 +27,6 @@ import net.sf.cglib.core.ReflectUtils;
 import net.sf.cglib.core.Signature;
 import net.sf.cglib.core.TypeUtils;
 
-import org.objenesis.ObjenesisStd;
-
 /**
  * Bytecode generator to create an on-demand class implementing {@link MethodCaller}.The generator
  * will generate a class that will simulate a call from a specific class without altering it.
@@ -33,6 +34,9 @@ import org.objenesis.ObjenesisStd;
  * A new class faking the source class will be dynamically created. This generated class will have a
  * {@link MethodCaller#doCall(Object)} method that will do a call to the target method on the object
  * given as argument.
+ * <p>
+ * The generated class implements {@link RetargetableMethodCaller}: the same class, and even the
+ * same instance, can call the target method on other objects of the target class.
  * 
  * <h2>Debugging</h2>
  * To dump all generated classes into .class files set the property
@@ -53,6 +57,7 @@ public class MethodCallerBytecodeGenerator extends AbstractClassGenerator { // N
     
     private static final Class<?> OBJECT_CLASS = Object.class;
     private static final Class<?> METHODCALLER_CLASS = MethodCaller.class;
+    private static final Class<?> RETARGETABLE_CALLER_CLASS = RetargetableMethodCaller.class;
 
     /**
      * @See {@link KeyFactory}
@@ -66,7 +71,8 @@ public class MethodCallerBytecodeGenerator extends AbstractClassGenerator { // N
 
 
     private static final String TARGET_FIELD_NAME = "target";
-    private static final String TARGET_SETTER_NAME = "Mock4Aj$setTarget";
+    private static final Signature TARGET_SETTER_SIGNATURE =
+                            TypeUtils.parseSignature("void setMock4AjTarget(Object)");
 
     private static final Signature DOCALL_SIGNATURE = 
                             TypeUtils.parseSignature("Object doCall(Object[])");
@@ -86,10 +92,11 @@ public class MethodCallerBytecodeGenerator extends AbstractClassGenerator { // N
         setNamingPolicy(new MethodCallerNamingPolicy(target));
     }
 
-    public MethodCaller create() {
-        Object key = KEY_FACTORY.newInstance(callTarget.getTargetMethod(), null);
+    public RetargetableMethodCaller create() {
+        Object key = KEY_FACTORY.newInstance(callTarget.getTargetMethod(),
+                                             callSource.getType());
         try {
-            return (MethodCaller) super.create(key);
+            return (RetargetableMethodCaller) super.create(key);
         }
         catch (Mock4AjException error) { // NOPMD
             throw error;
@@ -101,6 +108,14 @@ public class MethodCallerBytecodeGenerator extends AbstractClassGenerator { // N
         }
     }
 
+    /**
+     * Creates a caller of the target from a caller class already generated (and woven) for the same
+     * target method and source, typically found in a {@link CallerClassCache}.
+     */
+    public RetargetableMethodCaller createFrom(Class<?> callerClass) {
+        return (RetargetableMethodCaller) firstInstance(callerClass);
+    }
+
     public void generateClass(ClassVisitor visitor) {
         createCallerClass(visitor);
     }
@@ -126,9 +141,9 @@ public class MethodCallerBytecodeGenerator extends AbstractClassGenerator { // N
     }
 
     protected Class<?>[] determineInterfaces(Class<?> callSourceClass) {
-        Class<?>[] interfaces = new Class<?>[] { METHODCALLER_CLASS };
-        if (callSourceClass.isInterface() && !callSourceClass.equals(METHODCALLER_CLASS)) {
-            interfaces = new Class<?>[] { callSource.getType(), METHODCALLER_CLASS };
+        Class<?>[] interfaces = new Class<?>[] { RETARGETABLE_CALLER_CLASS };
+        if (callSourceClass.isInterface() && !callSourceClass.equals(RETARGETABLE_CALLER_CLASS)) {
+            interfaces = new Class<?>[] { callSource.getType(), RETARGETABLE_CALLER_CLASS };
         }
         return interfaces;
     }
@@ -149,12 +164,9 @@ public class MethodCallerBytecodeGenerator extends AbstractClassGenerator { // N
     }
 
     protected void createTargetSetter(ClassEmitter classEmitter) {
-        CodeEmitter codeEmitter = classEmitter
-            .begin_method(Constants.ACC_PUBLIC,
-                          new Signature(TARGET_SETTER_NAME,
-                                        Type.VOID_TYPE,
-                                        new Type[] { Type.getType(OBJECT_CLASS) }),
-                          null);
+        CodeEmitter codeEmitter = classEmitter.begin_method(Constants.ACC_PUBLIC,
+                                                            TARGET_SETTER_SIGNATURE,
+                                                            null);
         codeEmitter.load_this();
         codeEmitter.load_arg(0);
         codeEmitter.putfield(TARGET_FIELD_NAME);
@@ -227,32 +239,31 @@ public class MethodCallerBytecodeGenerator extends AbstractClassGenerator { // N
         codeEmitter.return_value();
     }
 
+    /**
+     * In a {@link GenerationScope}, the caller is defined in the class loader of the scope.
+     */
     @Override
     protected ClassLoader getDefaultClassLoader() {
-        return METHODCALLER_CLASS.getClassLoader(); // NOPMD
+        return GenerationScope.classLoaderFor(METHODCALLER_CLASS.getClassLoader(), // NOPMD
+                                              METHODCALLER_CLASS,
+                                              RETARGETABLE_CALLER_CLASS,
+                                              callSource.getType(),
+                                              callTarget.getTargetClass());
     }
 
     @SuppressWarnings("rawtypes")
     @Override
     protected Object firstInstance(Class type) {
-        Object inst = new ObjenesisStd().newInstance(type);
+        Object inst = InstantiatorRegistry.getDefault().newInstance(type);
         setTargetOnTheCreatedInstance(inst);
         return inst;
     }
 
+    /**
+     * The target is set through the {@link RetargetableMethodCaller} interface: no reflection.
+     */
     protected void setTargetOnTheCreatedInstance(Object inst) {
-        try {
-            Method setter = inst.getClass().getMethod(TARGET_SETTER_NAME,
-                                                      new Class[] { Object.class });
-            setter.invoke(inst, callTarget.getTargetInstance());
-        }
-        catch (Exception error) {
-            throw new Mock4AjException("Unable to set the target instance on the created "
-                                       + "caller. This problem should never happen since "
-                                       + "this method is created just before!\n"
-                                       + "\n"
-                                       + "Please report this error to the mailing list.", error);
-        }
+        ((RetargetableMethodCaller) inst).setMock4AjTarget(callTarget.getTargetInstance());
     }
 
     @Override
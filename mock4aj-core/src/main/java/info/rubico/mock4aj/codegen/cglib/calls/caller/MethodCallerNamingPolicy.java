@@ -7,6 +7,9 @@ import net.sf.cglib.core.Predicate;
 
 /**
  * Default naming policy for a {@link MethodCallerBytecodeGenerator}.
+ * <p>
+ * The generated name only depends on the source and on the target method (not on identity hash
+ * codes) so a caller keeps the same name between JVM runs.
  */
 public class MethodCallerNamingPolicy implements NamingPolicy {
 
@@ -51,11 +54,18 @@ public class MethodCallerNamingPolicy implements NamingPolicy {
         String base = String.format("%s$$%s$$%s",
                                     prefixTag,
                                     targetDescription,
-                                    Integer.toHexString(key.hashCode()));
+                                    Integer.toHexString(getStableTargetHash()));
 
         return base;
     }
 
+    /**
+     * @return A hash of the target method that is the same from one JVM run to the other.
+     */
+    protected int getStableTargetHash() {
+        return target.getTargetMethod().toString().hashCode();
+    }
+
     protected String getUniqueName(String base, Predicate names) {
         String attempt = base;
         int index = 2;
@@ -0,0 +1,125 @@
+package info.rubico.mock4aj.codegen.cglib.calls.caller;
+
+import info.rubico.mock4aj.api.calls.CallContext;
+import info.rubico.mock4aj.api.calls.CallTarget;
+import info.rubico.mock4aj.api.calls.RetargetableMethodCaller;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * <p>
+ * Pool of woven callers to simulate the same call on many target objects. A caller is acquired for
+ * a target and a context, used, then released to be retargeted to the next object: the caller
+ * class is generated and woven once and its instances are reused.
+ * </p>
+ * <p>
+ * The idle callers are found by their class, which the {@link CallerClassCache} of the generator
+ * identifies by the target method, the source and the aspects. Without this cache, or with a weaver
+ * without fingerprint, a new caller is generated for each acquisition.
+ * </p>
+ * <p>
+ * The pool holds its idle callers (and so their classes): keep it for the time of the simulations
+ * or {@link #clear()} it. A caller must be used by one thread at a time, between its acquisition
+ * and its release.
+ * </p>
+ * 
+ * <h2>Example</h2>
+ * 
+ * <pre>
+ * RetargetableMethodCaller caller = pool.acquire(target, context);
+ * try {
+ *     for (Object anotherTarget : targets) {
+ *         caller.setMock4AjTarget(anotherTarget);
+ *         caller.doCall(args);
+ *     }
+ * }
+ * finally {
+ *     pool.release(caller);
+ * }
+ * </pre>
+ */
+public class MethodCallerPool {
+
+    public static final int DEFAULT_MAX_IDLE_CALLERS_PER_CLASS = 8;
+
+    private final CglibWeavedCallerGenerator callerGenerator;
+    private final int maxIdleCallersPerClass;
+    private final Map<Class<?>, LinkedList<RetargetableMethodCaller>> idleCallers =
+            new HashMap<Class<?>, LinkedList<RetargetableMethodCaller>>();
+
+    public MethodCallerPool() {
+        this(new CglibWeavedCallerGenerator(), DEFAULT_MAX_IDLE_CALLERS_PER_CLASS);
+    }
+
+    public MethodCallerPool(CglibWeavedCallerGenerator callerGenerator,
+                            int maxIdleCallersPerClass) {
+        if (maxIdleCallersPerClass < 0) {
+            throw new IllegalArgumentException("The maximum size of a pool can't be negative.");
+        }
+        this.callerGenerator = callerGenerator;
+        this.maxIdleCallersPerClass = maxIdleCallersPerClass;
+    }
+
+    /**
+     * @return A caller of the target from the context: an idle caller retargeted to the target
+     *         instance or, if there is none, a new caller.
+     */
+    public RetargetableMethodCaller acquire(CallTarget target, CallContext context) {
+        RetargetableMethodCaller caller = pollIdleCaller(target, context);
+        if (caller == null) {
+            return callerGenerator.generateMethodCaller(target, context);
+        }
+        caller.setMock4AjTarget(target.getTargetInstance());
+        return caller;
+    }
+
+    private RetargetableMethodCaller pollIdleCaller(CallTarget target, CallContext context) {
+        CallerClassCache callerClassCache = callerGenerator.getCallerClassCache();
+        String cacheKey = CallerClassCache.keyOf(target,
+                                                 context.getConfiguredCallSource(),
+                                                 context.getConfiguredWeaver());
+        if (callerClassCache == null || cacheKey == null) {
+            return null;
+        }
+        ClassLoader classLoader = callerGenerator.createConfiguredGenerator(target, context)
+            .getClassLoader();
+        Class<?> callerClass = callerClassCache.get(classLoader, cacheKey);
+        return callerClass == null ? null : pollIdleCaller(callerClass);
+    }
+
+    private synchronized RetargetableMethodCaller pollIdleCaller(Class<?> callerClass) {
+        LinkedList<RetargetableMethodCaller> callers = idleCallers.get(callerClass);
+        return callers == null ? null : callers.poll();
+    }
+
+    /**
+     * Gives back a caller to the pool. The caller no longer references its target and must not be
+     * used anymore. A caller is dropped if the pool already has enough idle callers of its class.
+     */
+    public synchronized void release(RetargetableMethodCaller caller) {
+        caller.setMock4AjTarget(null);
+        LinkedList<RetargetableMethodCaller> callers = idleCallers.get(caller.getClass());
+        if (callers == null) {
+            callers = new LinkedList<RetargetableMethodCaller>();
+            idleCallers.put(caller.getClass(), callers);
+        }
+        if (callers.size() < maxIdleCallersPerClass) {
+            callers.add(caller);
+        }
+    }
+
+    public synchronized int getIdleCallersCount() {
+        int count = 0;
+        for (LinkedList<RetargetableMethodCaller> callers : idleCallers.values()) {
+            count += callers.size();
+        }
+        return count;
+    }
+
+    public synchronized void clear() {
+        idleCallers.clear();
+    }
+
+}
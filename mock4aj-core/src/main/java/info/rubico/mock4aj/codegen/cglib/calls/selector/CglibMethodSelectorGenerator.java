@@ -2,9 +2,11 @@ package info.rubico.mock4aj.codegen.cglib.calls.selector;
 
 import info.rubico.mock4aj.api.exceptions.Mock4AjException;
 import info.rubico.mock4aj.api.exceptions.UncallableType;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
 import info.rubico.mock4aj.codegen.cglib.classutils.CglibNearestRealSuperclassFinder;
 import info.rubico.mock4aj.internal.MethodSelector;
 import info.rubico.mock4aj.internal.classutils.ClassUtils;
+import info.rubico.mock4aj.internal.classutils.InstantiatorRegistry;
 import info.rubico.mock4aj.internal.classutils.SuperclassFinder;
 
 import java.util.ArrayList;
@@ -17,8 +19,6 @@ import net.sf.cglib.proxy.Enhancer;
 import net.sf.cglib.proxy.Factory;
 import net.sf.cglib.proxy.MethodInterceptor;
 
-import org.objenesis.ObjenesisStd;
-
 /**
  * Generate a method selector on a given object.
  * <p>
@@ -41,15 +41,20 @@ import org.objenesis.ObjenesisStd;
  */
 public class CglibMethodSelectorGenerator {
 
+    public static final String SELECTOR_TAG = "MethodSelectorByMock4Aj";
+
     private SuperclassFinder superclassFinder = CglibNearestRealSuperclassFinder.INSTANCE;
 
     public <T> T generateSelector(T templateObject, MethodInterceptor actionWhenCall) {
         Enhancer enhancer = new Enhancer();
 
-        enhancer.setSuperclass(superclassFinder.findSuperclass(templateObject));
-        enhancer.setInterfaces(determineInterfacesFor(templateObject));
+        Class<?> superclass = superclassFinder.findSuperclass(templateObject);
+        Class<?>[] interfaces = determineInterfacesFor(templateObject);
+        enhancer.setSuperclass(superclass);
+        enhancer.setInterfaces(interfaces);
         enhancer.setNamingPolicy(new MethodSelectorNamingPolicy());
         enhancer.setCallbackType(MethodInterceptor.class);
+        useScopeClassLoader(enhancer, superclass, interfaces);
 
         try {
             Class<?> proxyClass = enhancer.createClass();
@@ -60,6 +65,19 @@ public class CglibMethodSelectorGenerator {
         }
     }
 
+    /**
+     * In a {@link GenerationScope}, the selector is defined in the class loader of the scope.
+     */
+    private void useScopeClassLoader(Enhancer enhancer, Class<?> superclass,
+                                     Class<?>[] interfaces) {
+        GenerationScope scope = GenerationScope.current();
+        if (scope != null) {
+            scope.getClassLoader(interfaces);
+            enhancer.setClassLoader(scope.getClassLoader(superclass, Factory.class,
+                                                         MethodInterceptor.class));
+        }
+    }
+
     protected Class<?>[] determineInterfacesFor(Object template) {
         Class<?>[] templateInterfaces = template.getClass().getInterfaces();
         List<Class<?>> interfaces = new ArrayList<Class<?>>(templateInterfaces.length + 1);
@@ -70,7 +88,7 @@ public class CglibMethodSelectorGenerator {
 
     @SuppressWarnings("unchecked")
     protected <T> T instantiate(Class<?> proxyClass, MethodInterceptor actionWhenCall) {
-        Factory proxyObject = (Factory) new ObjenesisStd().newInstance(proxyClass);
+        Factory proxyObject = (Factory) InstantiatorRegistry.getDefault().newInstance(proxyClass);
         proxyObject.setCallbacks(new Callback[] { actionWhenCall });
         return (T) proxyObject;
     }
@@ -98,7 +116,7 @@ public class CglibMethodSelectorGenerator {
     private class MethodSelectorNamingPolicy extends DefaultNamingPolicy {
         @Override
         protected String getTag() {
-            return "MethodSelectorByMock4Aj";
+            return SELECTOR_TAG;
         }
     }
 }
\ No newline at end of file
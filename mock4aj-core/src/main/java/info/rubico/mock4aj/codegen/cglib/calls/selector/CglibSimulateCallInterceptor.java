@@ -9,6 +9,8 @@ import info.rubico.mock4aj.internal.calls.CallTargetByReflection;
 import info.rubico.mock4aj.internal.calls.CallerGenerator;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
@@ -17,6 +19,11 @@ import net.sf.cglib.proxy.MethodProxy;
  * A Cglib Class Generator Selection Action that creates a {@link MethodCaller} when a method is
  * called. The {@link MethodCaller} is generated using a {@link CallerGenerator} with the called
  * method as the target.
+ * <p>
+ * The callers are memoized by method: a selector can be reused, only the first call to each method
+ * generates (and weaves) a caller class. Since the target and the context are fixed, a caller
+ * generated once is valid for every later call of the same method. Concurrent first calls may
+ * generate a caller twice but the same caller is used afterwards.
  */
 public class CglibSimulateCallInterceptor implements MethodInterceptor {
 
@@ -31,6 +38,7 @@ public class CglibSimulateCallInterceptor implements MethodInterceptor {
     private final CallerGenerator callerGenerator;
     private final Object targetObject;
     private final CallContext context;
+    private final ConcurrentMap<Method, MethodCaller> callers;
 
     public CglibSimulateCallInterceptor(Object targetObject,
                                         CallContext context,
@@ -38,15 +46,28 @@ public class CglibSimulateCallInterceptor implements MethodInterceptor {
         this.targetObject = targetObject;
         this.context = context;
         this.callerGenerator = callerGenerator;
+        this.callers = new ConcurrentHashMap<Method, MethodCaller>();
     }
 
     public Object intercept(Object obj, Method method, Object[] args, MethodProxy proxy)
         throws Throwable {
 
-        MethodCaller caller = generateCaller(method);
+        MethodCaller caller = getCallerOf(method);
         return doTheCall(args, caller);
     }
 
+    protected MethodCaller getCallerOf(Method method) throws NoSuchMethodException {
+        MethodCaller caller = callers.get(method);
+        if (caller == null) {
+            MethodCaller generatedCaller = generateCaller(method);
+            caller = callers.putIfAbsent(method, generatedCaller);
+            if (caller == null) {
+                caller = generatedCaller;
+            }
+        }
+        return caller;
+    }
+
     protected MethodCaller generateCaller(Method method) throws NoSuchMethodException {
         CallTarget target = new CallTargetByReflection(targetObject,
                                                        method.getName(),
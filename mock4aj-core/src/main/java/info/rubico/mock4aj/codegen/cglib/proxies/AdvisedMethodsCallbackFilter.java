@@ -0,0 +1,41 @@
+package info.rubico.mock4aj.codegen.cglib.proxies;
+
+import info.rubico.mock4aj.api.weaving.AdviceAwareWeaver;
+
+import java.lang.reflect.Method;
+
+import net.sf.cglib.proxy.CallbackFilter;
+
+/**
+ * Selects the callback of each method of a proxy: only the methods the weaver could advise are
+ * intercepted by the {@link ProxyMethodCallback}. The others are dispatched to the object proxied
+ * by the {@link ProxyDispatcher}, without a {@code Method}/{@code MethodProxy} pair.
+ * <p>
+ * A method the proxy can't call directly (like a protected method from another runtime package)
+ * is always intercepted.
+ */
+public class AdvisedMethodsCallbackFilter implements CallbackFilter {
+
+    public static final int INTERCEPTED = 0;
+    public static final int DISPATCHED = 1;
+
+    private final AdviceAwareWeaver weaver;
+    private final Class<?> superclass;
+    private final ClassLoader proxyClassLoader;
+
+    public AdvisedMethodsCallbackFilter(AdviceAwareWeaver weaver, Class<?> superclass,
+                                        ClassLoader proxyClassLoader) {
+        this.weaver = weaver;
+        this.superclass = superclass;
+        this.proxyClassLoader = proxyClassLoader;
+    }
+
+    public int accept(Method method) {
+        if (ProxyMethodAccess.isCallableByTheProxy(method, superclass, proxyClassLoader)
+            && !weaver.couldAdvise(superclass, method)) {
+            return DISPATCHED;
+        }
+        return INTERCEPTED;
+    }
+
+}
@@ -4,17 +4,24 @@ import info.rubico.mock4aj.api.exceptions.Mock4AjException;
 import info.rubico.mock4aj.api.exceptions.NotAnInstanceToProxy;
 import info.rubico.mock4aj.api.exceptions.UnproxiableType;
 import info.rubico.mock4aj.api.proxies.WeavedProxyFactory;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
+import info.rubico.mock4aj.api.weaving.AdviceAwareWeaver;
 import info.rubico.mock4aj.api.weaving.Weaver;
 import info.rubico.mock4aj.codegen.cglib.classutils.CglibNearestRealSuperclassFinder;
 import info.rubico.mock4aj.codegen.cglib.transformations.CglibWeavingGeneratorStrategy;
 import info.rubico.mock4aj.internal.classutils.ClassUtils;
+import info.rubico.mock4aj.internal.classutils.InstantiatorRegistry;
 import info.rubico.mock4aj.internal.classutils.SuperclassFinder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import net.sf.cglib.proxy.Callback;
 import net.sf.cglib.proxy.Enhancer;
 import net.sf.cglib.proxy.Factory;
 
-import org.objenesis.ObjenesisStd;
-
 /**
  * {@link WeavedProxyFactory} implementation using Cglib.
  * 
@@ -23,33 +30,146 @@ import org.objenesis.ObjenesisStd;
  * {@code net.sf.cglib.core.DebuggingClassWriter.DEBUG_LOCATION_PROPERTY} to a path.
  * </p>
  * 
+ * <p>
+ * The proxy classes are kept in a {@link ProxyClassCache} (the shared one by default). The cglib
+ * cache is not used since it ignores the weaving: a proxy class is reused only for the same types
+ * and the same aspects.
+ * </p>
+ * 
+ * <p>
+ * In the direct delegation mode ({@link #setDirectDelegation(boolean)}), the proxy classes are
+ * generated by a {@link DirectDelegationProxyGenerator}: each method calls directly the same method
+ * on the proxied object, without a {@link ProxyMethodCallback}. The usual proxies are still
+ * generated for the types the proxy can't call directly.
+ * </p>
+ * 
+ * <p>
+ * In the selective interception mode ({@link #setSelectiveInterception(boolean)}), an
+ * {@link AdviceAwareWeaver} tells which methods its aspects could advise. Only those are
+ * intercepted by the {@link ProxyMethodCallback}, the others are dispatched directly to the proxied
+ * object by a {@link ProxyDispatcher} (see {@link AdvisedMethodsCallbackFilter}).
+ * </p>
+ * 
  * @see WeavedProxyFactory
  */
 public class CglibWeavedProxyFactory implements WeavedProxyFactory {
 
+    private static final String DIRECT_DELEGATION_KEY_PREFIX = "direct:";
+    private static final String SELECTIVE_INTERCEPTION_KEY_PREFIX = "selective:";
+    private static final Class<?>[] SELECTIVE_CALLBACK_TYPES = { ProxyMethodCallback.class,
+                                                                 ProxyDispatcher.class };
+
     private SuperclassFinder superclassFinder = CglibNearestRealSuperclassFinder.INSTANCE;
+    private ProxyClassCache proxyClassCache = ProxyClassCache.getDefault();
+    private boolean directDelegation;
+    private boolean selectiveInterception;
 
     public <T> T createWeavedProxy(final T objectToProxy, final Weaver weaver) {
-        Enhancer enhancer = new Enhancer();
+        Class<?> superclass = superclassFinder.findSuperclass(objectToProxy);
+        Class<?>[] interfaces = objectToProxy.getClass().getInterfaces();
+        String cacheKey = ProxyClassCache.keyOf(superclass, interfaces, weaver);
 
-        enhancer.setSuperclass(superclassFinder.findSuperclass(objectToProxy));
-        enhancer.setInterfaces(objectToProxy.getClass().getInterfaces());
+        if (directDelegation) {
+            DirectDelegationProxyGenerator generator =
+                    new DirectDelegationProxyGenerator(superclass, interfaces);
+            if (generator.canDelegateDirectly()) {
+                generator.setStrategy(createGeneratorStrategy(weaver));
+                return createDirectProxyObject(objectToProxy, generator, cacheKey);
+            }
+        }
+        Enhancer enhancer = createEnhancer(superclass, interfaces, weaver);
+        return createProxyObject(objectToProxy, enhancer, enhancerCacheKey(cacheKey, weaver));
+    }
+
+    private boolean isSelective(Weaver weaver) {
+        return selectiveInterception && weaver instanceof AdviceAwareWeaver;
+    }
 
-        enhancer.setUseCache(false); // Caching doesn't work well with weaving.
-        enhancer.setNamingPolicy(WeavedProxyNamingPolicy.INSTANCE);
+    private String enhancerCacheKey(String cacheKey, Weaver weaver) {
+        if (cacheKey == null || !isSelective(weaver)) {
+            return cacheKey;
+        }
+        return SELECTIVE_INTERCEPTION_KEY_PREFIX + cacheKey;
+    }
+
+    /**
+     * Must be called once the class loader of the proxy is known.
+     */
+    private void useAdvisedMethodsFilter(Enhancer enhancer, Class<?> superclass,
+                                         AdviceAwareWeaver weaver) {
+        enhancer.setCallbackTypes(SELECTIVE_CALLBACK_TYPES);
+        enhancer.setCallbackFilter(new AdvisedMethodsCallbackFilter(weaver, superclass,
+                                                                    enhancer.getClassLoader()));
+    }
+
+    public <T> List<T> createWeavedProxies(final List<T> objectsToProxy, final Weaver weaver) {
+        Map<Class<?>, Class<?>> proxyClasses = new HashMap<Class<?>, Class<?>>();
+        List<T> proxies = new ArrayList<T>(objectsToProxy.size());
+        for (T objectToProxy : objectsToProxy) {
+            Class<?> proxyClass = proxyClasses.get(objectToProxy.getClass());
+            if (proxyClass == null) {
+                T proxy = createWeavedProxy(objectToProxy, weaver);
+                proxyClasses.put(objectToProxy.getClass(), proxy.getClass());
+                proxies.add(proxy);
+            }
+            else {
+                proxies.add(instantiateProxy(objectToProxy, proxyClass));
+            }
+        }
+        return proxies;
+    }
+
+    /**
+     * Instantiates a proxy class already created for another object of the same class.
+     */
+    private <T> T instantiateProxy(final T objectToProxy, Class<?> proxyClass) {
+        try {
+            if (DelegatingProxy.class.isAssignableFrom(proxyClass)) {
+                return instantiateDirectProxy(objectToProxy, proxyClass);
+            }
+            return instantiate(objectToProxy, proxyClass);
+        }
+        catch (Exception e) {
+            throw handleCreationException(objectToProxy, e);
+        }
+    }
+
+    private Enhancer createEnhancer(Class<?> superclass, Class<?>[] interfaces, Weaver weaver) {
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(superclass);
+        enhancer.setInterfaces(interfaces);
+
+        enhancer.setUseCache(false); // Ignores the weaving, see the ProxyClassCache.
+        enhancer.setNamingPolicy(new WeavedProxyNamingPolicy(superclass, interfaces));
         enhancer.setStrategy(createGeneratorStrategy(weaver));
         enhancer.setCallbackType(ProxyMethodCallback.class);
+        useScopeClassLoader(enhancer, superclass, interfaces);
+        if (isSelective(weaver)) {
+            useAdvisedMethodsFilter(enhancer, superclass, (AdviceAwareWeaver) weaver);
+        }
+        return enhancer;
+    }
 
-        return createProxyObject(objectToProxy, enhancer);
+    /**
+     * In a {@link GenerationScope}, the proxy is defined in the class loader of the scope.
+     */
+    private void useScopeClassLoader(Enhancer enhancer, Class<?> superclass,
+                                     Class<?>[] interfaces) {
+        GenerationScope scope = GenerationScope.current();
+        if (scope != null) {
+            scope.getClassLoader(interfaces);
+            enhancer.setClassLoader(scope.getClassLoader(superclass, Factory.class,
+                                                         ProxyMethodCallback.class));
+        }
     }
 
     protected CglibWeavingGeneratorStrategy createGeneratorStrategy(final Weaver weaverAdapter) {
         return new CglibWeavingGeneratorStrategy(weaverAdapter);
     }
 
-    private <T> T createProxyObject(final T objectToProxy, Enhancer enhancer) {
+    private <T> T createProxyObject(final T objectToProxy, Enhancer enhancer, String cacheKey) {
         try {
-            Class<?> proxyClass = enhancer.createClass();
+            Class<?> proxyClass = findOrCreateProxyClass(enhancer, cacheKey);
             return instantiate(objectToProxy, proxyClass);
         }
         catch (Exception e) {
@@ -57,13 +177,73 @@ public class CglibWeavedProxyFactory implements WeavedProxyFactory {
         }
     }
 
+    private Class<?> findOrCreateProxyClass(Enhancer enhancer, String cacheKey) {
+        if (proxyClassCache == null || cacheKey == null) {
+            return enhancer.createClass();
+        }
+        ClassLoader classLoader = enhancer.getClassLoader();
+        Class<?> proxyClass = proxyClassCache.get(classLoader, cacheKey);
+        if (proxyClass == null) {
+            proxyClass = enhancer.createClass();
+            proxyClassCache.put(classLoader, cacheKey, proxyClass);
+        }
+        return proxyClass;
+    }
+
+    private <T> T createDirectProxyObject(final T objectToProxy,
+                                          DirectDelegationProxyGenerator generator,
+                                          String cacheKey) {
+        try {
+            Class<?> proxyClass = findOrCreateProxyClass(generator, cacheKey);
+            return instantiateDirectProxy(objectToProxy, proxyClass);
+        }
+        catch (Exception e) {
+            throw handleCreationException(objectToProxy, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T instantiateDirectProxy(final T objectToProxy, Class<?> proxyClass) {
+        DelegatingProxy proxyObject = (DelegatingProxy) InstantiatorRegistry.getDefault()
+            .newInstance(proxyClass);
+        proxyObject.setMock4AjDelegate(objectToProxy);
+        return (T) proxyObject;
+    }
+
+    private Class<?> findOrCreateProxyClass(DirectDelegationProxyGenerator generator,
+                                            String cacheKey) {
+        if (proxyClassCache == null || cacheKey == null) {
+            return generator.createClass();
+        }
+        ClassLoader classLoader = generator.getClassLoader();
+        String directCacheKey = DIRECT_DELEGATION_KEY_PREFIX + cacheKey;
+        Class<?> proxyClass = proxyClassCache.get(classLoader, directCacheKey);
+        if (proxyClass == null) {
+            proxyClass = generator.createClass();
+            proxyClassCache.put(classLoader, directCacheKey, proxyClass);
+        }
+        return proxyClass;
+    }
+
     @SuppressWarnings("unchecked")
     protected <T> T instantiate(final T objectToProxy, Class<?> proxyClass) {
-        Factory proxyObject = (Factory) new ObjenesisStd().newInstance(proxyClass);
-        proxyObject.setCallbacks(new Callback[] { createCallback(objectToProxy) });
+        Factory proxyObject = (Factory) InstantiatorRegistry.getDefault().newInstance(proxyClass);
+        proxyObject.setCallbacks(createCallbacks(objectToProxy));
         return (T) proxyObject;
     }
 
+    /**
+     * The callbacks are in the order of the {@link AdvisedMethodsCallbackFilter}. A proxy class
+     * generated without the filter only uses the first one.
+     */
+    protected <T> Callback[] createCallbacks(final T objectToProxy) {
+        if (selectiveInterception) {
+            return new Callback[] { createCallback(objectToProxy),
+                                   new ProxyDispatcher(objectToProxy) };
+        }
+        return new Callback[] { createCallback(objectToProxy) };
+    }
+
     protected <T> ProxyMethodCallback createCallback(final T objectToProxy) {
         return new ProxyMethodCallback(objectToProxy);
     }
@@ -84,4 +264,45 @@ public class CglibWeavedProxyFactory implements WeavedProxyFactory {
     public void setSuperclassFinder(SuperclassFinder superclassFinder) {
         this.superclassFinder = superclassFinder;
     }
+
+    public boolean isDirectDelegation() {
+        return directDelegation;
+    }
+
+    /**
+     * Enables or disables the direct delegation mode: the proxied methods are called directly by
+     * the proxy instead of being intercepted and invoked with their arguments boxed. It is disabled
+     * by default.
+     * 
+     * @see DirectDelegationProxyGenerator
+     */
+    public void setDirectDelegation(boolean directDelegation) {
+        this.directDelegation = directDelegation;
+    }
+
+    public boolean isSelectiveInterception() {
+        return selectiveInterception;
+    }
+
+    /**
+     * Enables or disables the selective interception mode: with an {@link AdviceAwareWeaver}, only
+     * the methods that could be advised are intercepted. It is disabled by default.
+     * 
+     * @see AdvisedMethodsCallbackFilter
+     */
+    public void setSelectiveInterception(boolean selectiveInterception) {
+        this.selectiveInterception = selectiveInterception;
+    }
+
+    public ProxyClassCache getProxyClassCache() {
+        return proxyClassCache;
+    }
+
+    /**
+     * Sets where the proxy classes are cached. Null disables the caching: a new proxy class is
+     * generated and woven for each proxy.
+     */
+    public void setProxyClassCache(ProxyClassCache proxyClassCache) {
+        this.proxyClassCache = proxyClassCache;
+    }
 }
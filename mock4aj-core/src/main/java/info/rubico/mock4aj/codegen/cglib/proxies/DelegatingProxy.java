@@ -0,0 +1,15 @@
+package info.rubico.mock4aj.codegen.cglib.proxies;
+
+/**
+ * Implemented by the proxies generated by the {@link DirectDelegationProxyGenerator}: their methods
+ * call directly the same method on the delegate.
+ */
+public interface DelegatingProxy {
+
+    /**
+     * Sets the object (instance) proxied. The name is chosen to avoid conflicts with the methods of
+     * the proxied types.
+     */
+    void setMock4AjDelegate(Object delegate);
+
+}
@@ -0,0 +1,236 @@
+package info.rubico.mock4aj.codegen.cglib.proxies;
+
+import info.rubico.mock4aj.api.scopes.GenerationScope;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import net.sf.cglib.asm.ClassVisitor;
+import net.sf.cglib.asm.Type;
+import net.sf.cglib.core.AbstractClassGenerator;
+import net.sf.cglib.core.ClassEmitter;
+import net.sf.cglib.core.CodeEmitter;
+import net.sf.cglib.core.Constants;
+import net.sf.cglib.core.EmitUtils;
+import net.sf.cglib.core.MethodInfo;
+import net.sf.cglib.core.ReflectUtils;
+import net.sf.cglib.core.Signature;
+import net.sf.cglib.core.TypeUtils;
+import net.sf.cglib.proxy.Enhancer;
+
+/**
+ * Bytecode generator of proxy classes calling directly the delegate. Unlike the proxies of the
+ * {@link Enhancer}, every method of the generated class is a typed call to the same method on the
+ * delegate: {@code ((Type) delegate).method(args)}. There is no interceptor, no array of arguments
+ * and no boxing.
+ * <p>
+ * A method can only be delegated if the proxy is allowed to call it: it must be public (in a
+ * public type) or the proxy must be in the same runtime package (same package and same class
+ * loader, so not in a {@link GenerationScope}). Use {@link #canDelegateDirectly()} to know if a
+ * proxy can be generated. The protected methods of {@link Object} ({@code clone()} and
+ * {@code finalize()}) are never delegated.
+ * <p>
+ * The generated class is woven like any proxy. The call to the delegate is not a join point, like
+ * in the proxies of the {@link Enhancer}: an aspect using a {@code call(...)} pointcut is only
+ * applied where the proxy is called, not a second time inside it. Each method of the proxy calls a
+ * static forwarding method which calls the delegate. The forwarding method is a synthetic bridge
+ * (AspectJ does not weave the body of a bridge) and its name starts with the prefix reserved to
+ * AspectJ (a call to such a method is not a join point).
+ */
+public class DirectDelegationProxyGenerator extends AbstractClassGenerator { // NOPMD
+
+    private static final Source CGLIB_SOURCE = new Source(
+            DirectDelegationProxyGenerator.class.getName());
+
+    private static final Class<?> DELEGATING_PROXY_CLASS = DelegatingProxy.class;
+    private static final String DELEGATE_FIELD_NAME = "mock4AjDelegate";
+    private static final Signature DELEGATE_SETTER_SIGNATURE =
+            TypeUtils.parseSignature("void setMock4AjDelegate(Object)");
+
+    private static final int NOT_COPIED_MODIFIERS = Constants.ACC_ABSTRACT | Constants.ACC_NATIVE
+                                                    | Constants.ACC_SYNCHRONIZED;
+
+    private static final String FORWARDING_METHOD_PREFIX = "ajc$mock4aj$forward$";
+    private static final int FORWARDING_METHOD_MODIFIERS = Constants.ACC_PRIVATE
+                                                           | Constants.ACC_STATIC
+                                                           | Constants.ACC_BRIDGE
+                                                           | Constants.ACC_SYNTHETIC;
+
+    /**
+     * The methods are generated in a stable order, not in the order of the reflection which depends
+     * on the JVM run: the same proxy always has the same bytes.
+     */
+    private static final Comparator<Method> BY_SIGNATURE = new Comparator<Method>() {
+        public int compare(Method method, Method other) {
+            return ReflectUtils.getSignature(method).toString()
+                .compareTo(ReflectUtils.getSignature(other).toString());
+        }
+    };
+
+    private final Class<?> superclass;
+    private final Class<?>[] interfaces;
+    private final List<Method> methods;
+
+    public DirectDelegationProxyGenerator(Class<?> superclass, Class<?>[] interfaces) {
+        super(CGLIB_SOURCE);
+        this.superclass = superclass;
+        this.interfaces = withoutDelegatingProxy(interfaces);
+        this.methods = findDelegatedMethods(superclass, this.interfaces);
+
+        setNamePrefix(superclass.getName());
+        setNamingPolicy(new WeavedProxyNamingPolicy(superclass, interfaces));
+        setUseCache(false); // Ignores the weaving, see the ProxyClassCache.
+    }
+
+    private static Class<?>[] withoutDelegatingProxy(Class<?>[] interfaces) {
+        List<Class<?>> proxiedInterfaces = new ArrayList<Class<?>>();
+        for (Class<?> anInterface : interfaces) {
+            if (!DELEGATING_PROXY_CLASS.equals(anInterface)) {
+                proxiedInterfaces.add(anInterface);
+            }
+        }
+        return proxiedInterfaces.toArray(new Class<?>[proxiedInterfaces.size()]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Method> findDelegatedMethods(Class<?> superclass, Class<?>[] interfaces) {
+        List<Method> methods = new ArrayList<Method>();
+        Enhancer.getMethods(superclass, interfaces, methods);
+        Iterator<Method> iterator = methods.iterator();
+        while (iterator.hasNext()) {
+            Method method = iterator.next();
+            if (Object.class.equals(method.getDeclaringClass())
+                && !Modifier.isPublic(method.getModifiers())) {
+                iterator.remove();
+            }
+        }
+        Collections.sort(methods, BY_SIGNATURE);
+        return methods;
+    }
+
+    /**
+     * @return true if all the methods can be called by the proxy.
+     */
+    public boolean canDelegateDirectly() {
+        if (Modifier.isFinal(superclass.getModifiers())) {
+            return false;
+        }
+        for (Method method : methods) {
+            if (!ProxyMethodAccess.isCallableByTheProxy(method, superclass, getClassLoader())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The proxy class, generated and transformed by the strategy (woven).
+     */
+    public Class<?> createClass() {
+        return (Class<?>) super.create(superclass.getName());
+    }
+
+    public void generateClass(ClassVisitor visitor) {
+        ClassEmitter classEmitter = new ClassEmitter(visitor);
+        classEmitter.begin_class(Constants.V1_2,
+                                 Constants.ACC_PUBLIC,
+                                 getClassName(),
+                                 Type.getType(superclass),
+                                 TypeUtils.add(TypeUtils.getTypes(interfaces),
+                                               Type.getType(DELEGATING_PROXY_CLASS)),
+                                 Constants.SOURCE_FILE);
+
+        classEmitter.declare_field(Constants.ACC_PRIVATE, DELEGATE_FIELD_NAME,
+                                   Constants.TYPE_OBJECT, null);
+        createDelegateSetter(classEmitter);
+        for (Method method : methods) {
+            createDelegatingMethod(classEmitter, method);
+        }
+
+        classEmitter.end_class();
+    }
+
+    protected void createDelegateSetter(ClassEmitter classEmitter) {
+        CodeEmitter codeEmitter = classEmitter.begin_method(Constants.ACC_PUBLIC,
+                                                            DELEGATE_SETTER_SIGNATURE,
+                                                            null);
+        codeEmitter.load_this();
+        codeEmitter.load_arg(0);
+        codeEmitter.putfield(DELEGATE_FIELD_NAME);
+        codeEmitter.return_value();
+        codeEmitter.end_method();
+    }
+
+    protected void createDelegatingMethod(ClassEmitter classEmitter, Method method) {
+        MethodInfo methodInfo = ReflectUtils.getMethodInfo(method);
+        Signature forwardingSignature = createForwardingMethod(classEmitter, methodInfo);
+        int modifiers = method.getModifiers() & ~NOT_COPIED_MODIFIERS;
+        CodeEmitter codeEmitter = EmitUtils.begin_method(classEmitter, methodInfo, modifiers);
+
+        codeEmitter.load_this();
+        codeEmitter.getfield(DELEGATE_FIELD_NAME);
+        codeEmitter.checkcast(methodInfo.getClassInfo().getType());
+        codeEmitter.load_args();
+        codeEmitter.invoke_static_this(forwardingSignature);
+        codeEmitter.return_value();
+        codeEmitter.end_method();
+    }
+
+    /**
+     * Creates the method which calls the delegate: {@code static R forward(Type delegate, args)}.
+     * Its body and the calls to it are not join points (see the class documentation).
+     * 
+     * @return The signature of the forwarding method.
+     */
+    protected Signature createForwardingMethod(ClassEmitter classEmitter, MethodInfo methodInfo) {
+        Signature signature = methodInfo.getSignature();
+        Type[] argumentTypes = TypeUtils.add(new Type[] { methodInfo.getClassInfo().getType() },
+                                             signature.getArgumentTypes());
+        Signature forwardingSignature = new Signature(FORWARDING_METHOD_PREFIX
+                                                      + signature.getName(),
+                                                      signature.getReturnType(),
+                                                      argumentTypes);
+        CodeEmitter codeEmitter = classEmitter.begin_method(FORWARDING_METHOD_MODIFIERS,
+                                                            forwardingSignature,
+                                                            methodInfo.getExceptionTypes());
+
+        codeEmitter.load_args();
+        codeEmitter.invoke(methodInfo);
+        codeEmitter.return_value();
+        codeEmitter.end_method();
+        return forwardingSignature;
+    }
+
+    /**
+     * Like the proxies of the {@link Enhancer}, the class is defined in the class loader of the
+     * superclass or, in a {@link GenerationScope}, in the class loader of the scope.
+     */
+    @Override
+    protected ClassLoader getDefaultClassLoader() {
+        Class<?>[] usedTypes = new Class<?>[interfaces.length + 2];
+        usedTypes[0] = superclass;
+        usedTypes[1] = DELEGATING_PROXY_CLASS;
+        System.arraycopy(interfaces, 0, usedTypes, 2, interfaces.length);
+        return GenerationScope.classLoaderFor(superclass.getClassLoader(), usedTypes);
+    }
+
+    /**
+     * Only the class is created, it is instantiated by the factory.
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    protected Object firstInstance(Class type) {
+        return type;
+    }
+
+    @Override
+    protected Object nextInstance(Object instance) {
+        return instance;
+    }
+
+}
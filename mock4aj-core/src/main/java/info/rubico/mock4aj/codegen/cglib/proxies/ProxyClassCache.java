@@ -0,0 +1,140 @@
+package info.rubico.mock4aj.codegen.cglib.proxies;
+
+import info.rubico.mock4aj.api.weaving.FingerprintedWeaver;
+import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.internal.cache.BoundedLruCache;
+import info.rubico.mock4aj.internal.metrics.WeavingMetrics;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * <p>
+ * Cache of the woven proxy classes. A proxy class is reused for the proxies of the same types woven
+ * with the same aspects: only the proxy instance and its callback differ.
+ * </p>
+ * <p>
+ * A proxy class is identified by the class loader it is defined in, the proxied superclass, the
+ * interfaces and the fingerprint of the aspects of a {@link FingerprintedWeaver}. The classes
+ * woven by another kind of weaver are never cached (their aspects cannot be identified).
+ * </p>
+ * <p>
+ * Nothing prevents a class loader to be garbage collected: the class loaders are weakly referenced
+ * and so are the proxy classes (they are held by their class loader anyway). The keys only
+ * contain names. Each class loader keeps at most {@link #getMaxClassesPerLoader()} proxy classes.
+ * </p>
+ * <p>
+ * The lookups are also counted by the {@link WeavingMetrics}.
+ * </p>
+ */
+public class ProxyClassCache {
+
+    public static final int DEFAULT_MAX_CLASSES_PER_LOADER = 256;
+
+    private static final ProxyClassCache DEFAULT = new ProxyClassCache(
+            DEFAULT_MAX_CLASSES_PER_LOADER);
+
+    private final int maxClassesPerLoader;
+    private final Map<ClassLoader, BoundedLruCache<String, WeakReference<Class<?>>>> loaders =
+            new WeakHashMap<ClassLoader, BoundedLruCache<String, WeakReference<Class<?>>>>();
+
+    private long hitCount;
+    private long missCount;
+    private volatile WeavingMetrics metrics = WeavingMetrics.getDefault();
+
+    public ProxyClassCache(int maxClassesPerLoader) {
+        if (maxClassesPerLoader < 0) {
+            throw new IllegalArgumentException("The maximum size of a cache can't be negative.");
+        }
+        this.maxClassesPerLoader = maxClassesPerLoader;
+    }
+
+    /**
+     * @return The cache shared by the proxy factories.
+     */
+    public static ProxyClassCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return The key of the proxy class or null if the proxy class must not be cached.
+     */
+    public static String keyOf(Class<?> superclass, Class<?>[] interfaces, Weaver weaver) {
+        if (!(weaver instanceof FingerprintedWeaver)) {
+            return null;
+        }
+        String aspectsFingerprint = ((FingerprintedWeaver) weaver).getAspectsFingerprint();
+        if (aspectsFingerprint == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(superclass.getName());
+        for (Class<?> anInterface : interfaces) {
+            key.append(',').append(anInterface.getName());
+        }
+        key.append(';').append(weaver.getClass().getName()).append('@').append(aspectsFingerprint);
+        return key.toString();
+    }
+
+    /**
+     * @return The cached proxy class or null if there is none.
+     */
+    public synchronized Class<?> get(ClassLoader classLoader, String key) {
+        BoundedLruCache<String, WeakReference<Class<?>>> classes = loaders.get(classLoader);
+        Class<?> proxyClass = null;
+        if (classes != null) {
+            WeakReference<Class<?>> reference = classes.get(key);
+            proxyClass = reference == null ? null : reference.get();
+        }
+        countLookup(proxyClass != null);
+        return proxyClass;
+    }
+
+    public synchronized void put(ClassLoader classLoader, String key, Class<?> proxyClass) {
+        BoundedLruCache<String, WeakReference<Class<?>>> classes = loaders.get(classLoader);
+        if (classes == null) {
+            classes = new BoundedLruCache<String, WeakReference<Class<?>>>(maxClassesPerLoader);
+            loaders.put(classLoader, classes);
+        }
+        classes.put(key, new WeakReference<Class<?>>(proxyClass));
+    }
+
+    public synchronized void clear() {
+        loaders.clear();
+    }
+
+    private void countLookup(boolean hit) {
+        metrics.recordProxyClassCacheLookup(hit);
+        if (hit) {
+            hitCount++;
+        }
+        else {
+            missCount++;
+        }
+    }
+
+    public int getMaxClassesPerLoader() {
+        return maxClassesPerLoader;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public WeavingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets where the lookups are counted. By default, it is the {@link WeavingMetrics#getDefault()
+     * shared metrics} published through JMX.
+     */
+    public void setMetrics(WeavingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+}
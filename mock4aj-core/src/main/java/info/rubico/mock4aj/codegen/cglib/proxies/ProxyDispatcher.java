@@ -0,0 +1,20 @@
+package info.rubico.mock4aj.codegen.cglib.proxies;
+
+import net.sf.cglib.proxy.Dispatcher;
+
+/**
+ * Callback for Cglib that gives the object proxied to the proxy. The proxy then calls the method
+ * directly on it, with its typed arguments (no reflection and no boxing).
+ */
+public class ProxyDispatcher implements Dispatcher {
+
+    private final Object objectToProxy;
+
+    public ProxyDispatcher(Object objectToProxy) {
+        this.objectToProxy = objectToProxy;
+    }
+
+    public Object loadObject() {
+        return objectToProxy;
+    }
+}
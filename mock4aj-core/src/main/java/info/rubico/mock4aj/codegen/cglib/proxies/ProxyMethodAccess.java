@@ -0,0 +1,36 @@
+package info.rubico.mock4aj.codegen.cglib.proxies;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Tells if the bytecode of a proxy can call a proxied method directly on the proxied object.
+ */
+final class ProxyMethodAccess {
+
+    private ProxyMethodAccess() {
+    }
+
+    /**
+     * A proxy can call a public method of a public type. The other methods can only be called if
+     * the proxy is in their runtime package: the package of the superclass (unless it is a
+     * {@code java} package, the proxy is then in another one) and the same class loader.
+     */
+    static boolean isCallableByTheProxy(Method method, Class<?> superclass,
+                                        ClassLoader proxyClassLoader) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (Modifier.isPublic(method.getModifiers())
+            && Modifier.isPublic(declaringClass.getModifiers())) {
+            return true;
+        }
+        return declaringClass.getClassLoader() == proxyClassLoader
+               && !superclass.getName().startsWith("java")
+               && packageOf(declaringClass).equals(packageOf(superclass));
+    }
+
+    private static String packageOf(Class<?> clazz) {
+        String name = clazz.getName();
+        return name.substring(0, Math.max(name.lastIndexOf('.'), 0));
+    }
+
+}
@@ -1,19 +1,78 @@
 package info.rubico.mock4aj.codegen.cglib.proxies;
 
 import net.sf.cglib.core.DefaultNamingPolicy;
+import net.sf.cglib.core.Predicate;
 
 /**
  * Default naming policy for a Weaved Proxy.
+ * <p>
+ * Unlike the cglib's {@link DefaultNamingPolicy}, the generated name doesn't depend on identity
+ * hash codes: the same proxied types always give the same name (when created in the same order).
+ * It keeps the names and thus the bytecode of proxies stable between JVM runs, which allows to
+ * cache woven proxies across runs.
  */
 public class WeavedProxyNamingPolicy extends DefaultNamingPolicy {
 
     public static final String CLASSNAME_SUFFIX = "ProxyByMock4Aj";
 
-    public static final WeavedProxyNamingPolicy INSTANCE = new WeavedProxyNamingPolicy();
+    private final String proxiedTypesDescription;
+
+    public WeavedProxyNamingPolicy(Class<?> superclass, Class<?>[] interfaces) {
+        super();
+        this.proxiedTypesDescription = describe(superclass, interfaces);
+    }
+
+    private static String describe(Class<?> superclass, Class<?>[] interfaces) {
+        StringBuilder description = new StringBuilder(superclass.getName());
+        for (Class<?> anInterface : interfaces) {
+            description.append(',').append(anInterface.getName());
+        }
+        return description.toString();
+    }
+
+    @Override
+    public String getClassName(String prefix, String source, Object key, Predicate names) {
+        String base = String.format("%s$$%s%s$$%s",
+                                    getPrefixTag(prefix),
+                                    source.substring(source.lastIndexOf('.') + 1),
+                                    getTag(),
+                                    Integer.toHexString(proxiedTypesDescription.hashCode()));
+        return getUniqueName(base, names);
+    }
+
+    protected String getPrefixTag(String prefix) {
+        if (prefix.startsWith("java")) {
+            return "$" + prefix; // NOPMD
+        }
+        return prefix;
+    }
+
+    protected String getUniqueName(String base, Predicate names) {
+        String attempt = base;
+        int index = 2;
+        while (names.evaluate(attempt)) {
+            attempt = base + "_" + index++;
+        }
+        return attempt;
+    }
 
     @Override
     protected String getTag() {
         return CLASSNAME_SUFFIX;
     }
 
-}
\ No newline at end of file
+    @Override
+    public int hashCode() {
+        return proxiedTypesDescription.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof WeavedProxyNamingPolicy) {
+            WeavedProxyNamingPolicy other = (WeavedProxyNamingPolicy) obj;
+            return other.proxiedTypesDescription.equals(proxiedTypesDescription);
+        }
+        return false;
+    }
+
+}
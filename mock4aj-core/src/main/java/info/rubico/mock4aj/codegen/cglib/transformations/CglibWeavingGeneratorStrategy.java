@@ -1,22 +1,57 @@
 package info.rubico.mock4aj.codegen.cglib.transformations;
 
 import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.internal.metrics.WeavingMetrics;
 import net.sf.cglib.asm.ClassReader;
+import net.sf.cglib.asm.ClassVisitor;
+import net.sf.cglib.core.ClassGenerator;
 import net.sf.cglib.core.ClassNameReader;
 import net.sf.cglib.core.DefaultGeneratorStrategy;
 
 /**
  * A generator strategy for cglib that allow weaving of the newly generated class.
  * 
- * The generated but not yet loaded bytecode is transformed using a {@link Weaver}.
+ * The generated but not yet loaded bytecode is transformed using a {@link Weaver}. The time spent
+ * to generate and weave each class is recorded in the {@link WeavingMetrics}.
+ * 
+ * The generated bytecode doesn't depend on the classes generated before nor on the JVM run (see
+ * {@link StableStaticHookAdapter} and {@link StableFastClassEmitter}): the same class generated
+ * again, in another generation scope or in another JVM run, gives the same bytes to the weaver and
+ * thus hits the woven classes caches.
  */
 public class CglibWeavingGeneratorStrategy extends DefaultGeneratorStrategy {
 
     private final Weaver weaver;
+    private final WeavingMetrics metrics;
 
     public CglibWeavingGeneratorStrategy(Weaver weaver) {
+        this(weaver, WeavingMetrics.getDefault());
+    }
+
+    public CglibWeavingGeneratorStrategy(Weaver weaver, WeavingMetrics metrics) {
         super();
         this.weaver = weaver;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public byte[] generate(ClassGenerator generator) throws Exception { // NOPMD
+        long start = System.nanoTime();
+        byte[] bytecode = super.generate(generator);
+        metrics.recordGeneration(ClassNameReader.getClassName(new ClassReader(bytecode)),
+                                 System.nanoTime() - start);
+        return bytecode;
+    }
+
+    @Override
+    protected ClassGenerator transform(final ClassGenerator generator) throws Exception { // NOPMD
+        final ClassGenerator transformedGenerator = StableFastClassEmitter
+            .stableGenerator(super.transform(generator));
+        return new ClassGenerator() {
+            public void generateClass(ClassVisitor visitor) throws Exception { // NOPMD
+                transformedGenerator.generateClass(new StableStaticHookAdapter(visitor));
+            }
+        };
     }
 
     @Override
@@ -29,4 +64,4 @@ public class CglibWeavingGeneratorStrategy extends DefaultGeneratorStrategy {
     public Weaver getWeaver() {
         return weaver;
     }
-}
\ No newline at end of file
+}
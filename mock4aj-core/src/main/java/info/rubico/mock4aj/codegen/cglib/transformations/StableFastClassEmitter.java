@@ -0,0 +1,312 @@
+package info.rubico.mock4aj.codegen.cglib.transformations;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.cglib.asm.ClassVisitor;
+import net.sf.cglib.asm.Label;
+import net.sf.cglib.asm.Type;
+import net.sf.cglib.core.AbstractClassGenerator;
+import net.sf.cglib.core.Block;
+import net.sf.cglib.core.ClassEmitter;
+import net.sf.cglib.core.ClassGenerator;
+import net.sf.cglib.core.CodeEmitter;
+import net.sf.cglib.core.CollectionUtils;
+import net.sf.cglib.core.Constants;
+import net.sf.cglib.core.DuplicatesPredicate;
+import net.sf.cglib.core.EmitUtils;
+import net.sf.cglib.core.MethodInfo;
+import net.sf.cglib.core.MethodInfoTransformer;
+import net.sf.cglib.core.ObjectSwitchCallback;
+import net.sf.cglib.core.ProcessSwitchCallback;
+import net.sf.cglib.core.ReflectUtils;
+import net.sf.cglib.core.Signature;
+import net.sf.cglib.core.TypeUtils;
+import net.sf.cglib.core.VisibilityPredicate;
+import net.sf.cglib.reflect.FastClass;
+
+/**
+ * Emits the same {@link FastClass} as the cglib's emitter but with stable indexes.
+ * <p>
+ * cglib indexes the methods and the constructors in the order given by the reflection, which
+ * depends on the JVM run (it is the order of the names in the memory of the JVM). The indexes are
+ * in the bytecode (the index switches of {@code invoke} and {@code newInstance} and the values
+ * returned by {@code getIndex}), so the same fast class had other bytes in each JVM run. Here, the
+ * members are indexed by signature.
+ * <p>
+ * The type and the class name of a fast class are private to its cglib's generator: they are read
+ * by reflection. If they can't be, the cglib's generator is used.
+ */
+final class StableFastClassEmitter extends ClassEmitter {
+
+    private static final Signature CSTRUCT_CLASS = TypeUtils.parseConstructor("Class");
+    private static final Signature METHOD_GET_INDEX =
+            TypeUtils.parseSignature("int getIndex(String, Class[])");
+    private static final Signature SIGNATURE_GET_INDEX =
+            new Signature("getIndex", Type.INT_TYPE, new Type[] { Constants.TYPE_SIGNATURE });
+    private static final Signature TO_STRING = TypeUtils.parseSignature("String toString()");
+    private static final Signature CONSTRUCTOR_GET_INDEX =
+            TypeUtils.parseSignature("int getIndex(Class[])");
+    private static final Signature INVOKE =
+            TypeUtils.parseSignature("Object invoke(int, Object, Object[])");
+    private static final Signature NEW_INSTANCE =
+            TypeUtils.parseSignature("Object newInstance(int, Object[])");
+    private static final Signature GET_MAX_INDEX = TypeUtils.parseSignature("int getMaxIndex()");
+    private static final Signature GET_SIGNATURE_WITHOUT_RETURN_TYPE =
+            TypeUtils.parseSignature("String getSignatureWithoutReturnType(String, Class[])");
+    private static final Type FAST_CLASS = TypeUtils.parseType("net.sf.cglib.reflect.FastClass");
+    private static final Type ILLEGAL_ARGUMENT_EXCEPTION =
+            TypeUtils.parseType("IllegalArgumentException");
+    private static final Type INVOCATION_TARGET_EXCEPTION =
+            TypeUtils.parseType("java.lang.reflect.InvocationTargetException");
+    private static final Type[] INVOCATION_TARGET_EXCEPTION_ARRAY =
+            { INVOCATION_TARGET_EXCEPTION };
+
+    /**
+     * Above this number of methods, the index by name and parameter types is found by signature,
+     * like cglib.
+     */
+    private static final int TOO_MANY_METHODS = 100;
+
+    private static final Field GENERATOR_TYPE = findGeneratorType();
+    private static final Method GENERATOR_CLASS_NAME = findGeneratorClassName();
+
+    private static final Comparator<Member> BY_SIGNATURE = new Comparator<Member>() {
+        public int compare(Member member, Member other) {
+            return signatureOf(member).compareTo(signatureOf(other));
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    StableFastClassEmitter(ClassVisitor visitor, String className, Class<?> type) {
+        super(visitor);
+        Type base = Type.getType(type);
+        begin_class(Constants.V1_2, Constants.ACC_PUBLIC, className, FAST_CLASS, null,
+                    Constants.SOURCE_FILE);
+
+        CodeEmitter codeEmitter = begin_method(Constants.ACC_PUBLIC, CSTRUCT_CLASS, null);
+        codeEmitter.load_this();
+        codeEmitter.load_args();
+        codeEmitter.super_invoke_constructor(CSTRUCT_CLASS);
+        codeEmitter.return_value();
+        codeEmitter.end_method();
+
+        VisibilityPredicate visibility = new VisibilityPredicate(type, false);
+        List<Member> methods = ReflectUtils.addAllMethods(type, new ArrayList<Member>());
+        CollectionUtils.filter(methods, visibility);
+        CollectionUtils.filter(methods, new DuplicatesPredicate());
+        Collections.sort(methods, BY_SIGNATURE);
+        List<Member> constructors = new ArrayList<Member>(
+                Arrays.asList(type.getDeclaredConstructors()));
+        CollectionUtils.filter(constructors, visibility);
+        Collections.sort(constructors, BY_SIGNATURE);
+
+        emitIndexBySignature(methods);
+        emitIndexByClassArray(methods);
+        emitIndexOfConstructor(constructors);
+
+        codeEmitter = begin_method(Constants.ACC_PUBLIC, INVOKE,
+                                   INVOCATION_TARGET_EXCEPTION_ARRAY);
+        codeEmitter.load_arg(1);
+        codeEmitter.checkcast(base);
+        codeEmitter.load_arg(0);
+        invokeSwitchHelper(codeEmitter, methods, 2, base);
+        codeEmitter.end_method();
+
+        codeEmitter = begin_method(Constants.ACC_PUBLIC, NEW_INSTANCE,
+                                   INVOCATION_TARGET_EXCEPTION_ARRAY);
+        codeEmitter.new_instance(base);
+        codeEmitter.dup();
+        codeEmitter.load_arg(0);
+        invokeSwitchHelper(codeEmitter, constructors, 1, base);
+        codeEmitter.end_method();
+
+        codeEmitter = begin_method(Constants.ACC_PUBLIC, GET_MAX_INDEX, null);
+        codeEmitter.push(methods.size() - 1);
+        codeEmitter.return_value();
+        codeEmitter.end_method();
+
+        end_class();
+    }
+
+    /**
+     * @return A generator emitting the fast class of the cglib's generator with stable indexes, or
+     *         the given generator if it isn't a fast class generator.
+     */
+    static ClassGenerator stableGenerator(final ClassGenerator generator) {
+        if (!(generator instanceof FastClass.Generator) || GENERATOR_TYPE == null
+            || GENERATOR_CLASS_NAME == null) {
+            return generator;
+        }
+        return new ClassGenerator() {
+            public void generateClass(ClassVisitor visitor) throws Exception { // NOPMD
+                Class<?> type = (Class<?>) GENERATOR_TYPE.get(generator);
+                String className = (String) GENERATOR_CLASS_NAME.invoke(generator);
+                new StableFastClassEmitter(visitor, className, type);
+            }
+        };
+    }
+
+    private static Field findGeneratorType() {
+        try {
+            Field type = FastClass.Generator.class.getDeclaredField("type");
+            type.setAccessible(true);
+            return type;
+        }
+        catch (Exception e) { // NOPMD
+            return null;
+        }
+    }
+
+    private static Method findGeneratorClassName() {
+        try {
+            Method className = AbstractClassGenerator.class.getDeclaredMethod("getClassName");
+            className.setAccessible(true);
+            return className;
+        }
+        catch (Exception e) { // NOPMD
+            return null;
+        }
+    }
+
+    private static String signatureOf(Member member) {
+        return ReflectUtils.getSignature(member).toString();
+    }
+
+    private void emitIndexBySignature(List<Member> methods) {
+        CodeEmitter codeEmitter = begin_method(Constants.ACC_PUBLIC, SIGNATURE_GET_INDEX, null);
+        List<String> signatures = new ArrayList<String>(methods.size());
+        for (Member method : methods) {
+            signatures.add(signatureOf(method));
+        }
+        codeEmitter.load_arg(0);
+        codeEmitter.invoke_virtual(Constants.TYPE_OBJECT, TO_STRING);
+        signatureSwitchHelper(codeEmitter, signatures);
+        codeEmitter.end_method();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void emitIndexByClassArray(List<Member> methods) {
+        CodeEmitter codeEmitter = begin_method(Constants.ACC_PUBLIC, METHOD_GET_INDEX, null);
+        if (methods.size() > TOO_MANY_METHODS) {
+            List<String> signatures = new ArrayList<String>(methods.size());
+            for (Member method : methods) {
+                String signature = signatureOf(method);
+                signatures.add(signature.substring(0, signature.lastIndexOf(')') + 1));
+            }
+            codeEmitter.load_args();
+            codeEmitter.invoke_static(FAST_CLASS, GET_SIGNATURE_WITHOUT_RETURN_TYPE);
+            signatureSwitchHelper(codeEmitter, signatures);
+        }
+        else {
+            codeEmitter.load_args();
+            List<MethodInfo> infos = CollectionUtils.transform(methods,
+                                                               MethodInfoTransformer
+                                                                   .getInstance());
+            EmitUtils.method_switch(codeEmitter, infos, new GetIndexCallback(codeEmitter, infos));
+        }
+        codeEmitter.end_method();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void emitIndexOfConstructor(List<Member> constructors) {
+        CodeEmitter codeEmitter = begin_method(Constants.ACC_PUBLIC, CONSTRUCTOR_GET_INDEX, null);
+        codeEmitter.load_args();
+        List<MethodInfo> infos = CollectionUtils.transform(constructors,
+                                                           MethodInfoTransformer.getInstance());
+        EmitUtils.constructor_switch(codeEmitter, infos, new GetIndexCallback(codeEmitter, infos));
+        codeEmitter.end_method();
+    }
+
+    private void signatureSwitchHelper(final CodeEmitter codeEmitter,
+                                       final List<String> signatures) {
+        ObjectSwitchCallback callback = new ObjectSwitchCallback() {
+            public void processCase(Object key, Label end) {
+                codeEmitter.push(signatures.indexOf(key));
+                codeEmitter.return_value();
+            }
+
+            public void processDefault() {
+                codeEmitter.push(-1);
+                codeEmitter.return_value();
+            }
+        };
+        EmitUtils.string_switch(codeEmitter, signatures.toArray(new String[signatures.size()]),
+                                Constants.SWITCH_STYLE_HASH, callback);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void invokeSwitchHelper(final CodeEmitter codeEmitter, List<Member> members,
+                                           final int arg, final Type base) {
+        final List<MethodInfo> infos = CollectionUtils.transform(members,
+                                                                 MethodInfoTransformer
+                                                                     .getInstance());
+        final Label illegalArg = codeEmitter.make_label();
+        Block block = codeEmitter.begin_block();
+        codeEmitter.process_switch(getIntRange(infos.size()), new ProcessSwitchCallback() {
+            public void processCase(int key, Label end) {
+                MethodInfo method = infos.get(key);
+                Type[] types = method.getSignature().getArgumentTypes();
+                for (int i = 0; i < types.length; i++) {
+                    codeEmitter.load_arg(arg);
+                    codeEmitter.aaload(i);
+                    codeEmitter.unbox(types[i]);
+                }
+                codeEmitter.invoke(method, base);
+                if (!TypeUtils.isConstructor(method)) {
+                    codeEmitter.box(method.getSignature().getReturnType());
+                }
+                codeEmitter.return_value();
+            }
+
+            public void processDefault() {
+                codeEmitter.goTo(illegalArg);
+            }
+        });
+        block.end();
+        EmitUtils.wrap_throwable(block, INVOCATION_TARGET_EXCEPTION);
+        codeEmitter.mark(illegalArg);
+        codeEmitter.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION,
+                                    "Cannot find matching method/constructor");
+    }
+
+    private static int[] getIntRange(int length) {
+        int[] range = new int[length];
+        for (int i = 0; i < length; i++) {
+            range[i] = i;
+        }
+        return range;
+    }
+
+    private static class GetIndexCallback implements ObjectSwitchCallback {
+
+        private final CodeEmitter codeEmitter;
+        private final Map<Object, Integer> indexes = new HashMap<Object, Integer>();
+
+        public GetIndexCallback(CodeEmitter codeEmitter, List<MethodInfo> members) {
+            this.codeEmitter = codeEmitter;
+            int index = 0;
+            for (MethodInfo member : members) {
+                indexes.put(member, index++);
+            }
+        }
+
+        public void processCase(Object key, Label end) {
+            codeEmitter.push(indexes.get(key));
+            codeEmitter.return_value();
+        }
+
+        public void processDefault() {
+            codeEmitter.push(-1);
+            codeEmitter.return_value();
+        }
+    }
+}
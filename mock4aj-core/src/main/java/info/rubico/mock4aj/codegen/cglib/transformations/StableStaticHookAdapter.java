@@ -0,0 +1,51 @@
+package info.rubico.mock4aj.codegen.cglib.transformations;
+
+import java.util.regex.Pattern;
+
+import net.sf.cglib.asm.ClassAdapter;
+import net.sf.cglib.asm.ClassVisitor;
+import net.sf.cglib.asm.MethodAdapter;
+import net.sf.cglib.asm.MethodVisitor;
+
+/**
+ * Gives a stable name to the static hook of a class generated by cglib.
+ * <p>
+ * cglib numbers the static hooks ({@code CGLIB$STATICHOOK<n>}) with a counter shared by all the
+ * generated classes: the same class gets another name for its hook, and thus other bytes, each time
+ * it is generated again (in another generation scope or in another JVM run, after another set of
+ * classes). There is at most one hook per class and it is only called by the static initializer of
+ * its class, so the number is useless and removed.
+ */
+final class StableStaticHookAdapter extends ClassAdapter {
+
+    static final String STATIC_HOOK_NAME = "CGLIB$STATICHOOK";
+
+    private static final Pattern NUMBERED_STATIC_HOOK = Pattern.compile("CGLIB\\$STATICHOOK\\d+");
+
+    StableStaticHookAdapter(ClassVisitor visitor) {
+        super(visitor);
+    }
+
+    static String stableName(String name) {
+        if (NUMBERED_STATIC_HOOK.matcher(name).matches()) {
+            return STATIC_HOOK_NAME;
+        }
+        return name;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+                                     String[] exceptions) {
+        MethodVisitor visitor = super.visitMethod(access, stableName(name), desc, signature,
+                                                  exceptions);
+        if (visitor == null) {
+            return null;
+        }
+        return new MethodAdapter(visitor) {
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+                super.visitMethodInsn(opcode, owner, stableName(name), desc);
+            }
+        };
+    }
+}
@@ -1,32 +1,76 @@
 package info.rubico.mock4aj.internal;
 
 import info.rubico.mock4aj.api.proxies.WeavedProxyFactory;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
 import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.api.weaving.Weavers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Facade to offer a simplest entry point to the proxy weaving creation process. It uses the
  * {@link WeavedProxyFactory} but hides the {@link Weaver} management.
+ * <p>
+ * The registered aspects are the state of the weaver: the weaver is locked from the registration of
+ * the aspects to the end of the creation of the proxies. Proxies (and batches of proxies) are thus
+ * created one after the other, even from many threads.
  */
 public class WeavedProxyFacade {
 
     private final WeavedProxyFactory proxyFactory;
     private final Weaver weaver;
 
+    private ExecutorService executor;
+
     public WeavedProxyFacade(final WeavedProxyFactory proxyFactory, final Weaver weaver) {
         this.proxyFactory = proxyFactory;
         this.weaver = weaver;
     }
 
     public <T> T createWeavedProxy(final T objectToProxy, final Class<?>... aspectsToWeave) {
-        registerOnlyThoseAspectsForWeaving(aspectsToWeave);
-        return proxyFactory.createWeavedProxy(objectToProxy, weaver);
+        synchronized (weaver) {
+            registerOnlyThoseAspectsForWeaving(aspectsToWeave);
+            return proxyFactory.createWeavedProxy(objectToProxy, weaver);
+        }
+    }
+
+    /**
+     * Creates the proxies of many objects woven with the same aspects. The aspects are registered
+     * once and each distinct proxy class is generated and woven once.
+     *
+     * @return The proxies, in the same order than the given objects.
+     */
+    public <T> List<T> createWeavedProxies(final List<T> objectsToProxy,
+                                           final Class<?>... aspectsToWeave) {
+        synchronized (weaver) {
+            registerOnlyThoseAspectsForWeaving(aspectsToWeave);
+            return proxyFactory.createWeavedProxies(objectsToProxy, weaver);
+        }
+    }
+
+    /**
+     * Like {@link #createWeavedProxies(List, Class...)} but the proxies are created by the
+     * {@link #getExecutor() executor}, so the calling thread can go on with its own work meanwhile.
+     * The list and the aspects are copied before returning. The proxies are created in the
+     * {@link GenerationScope} and with the context class loader of the calling thread.
+     *
+     * @return The future proxies. A creation error is thrown by {@link Future#get()}.
+     */
+    public <T> Future<List<T>> createWeavedProxiesAsync(final List<T> objectsToProxy,
+                                                        final Class<?>... aspectsToWeave) {
+        return getExecutor().submit(new ProxiesCreation<T>(objectsToProxy, aspectsToWeave));
     }
 
     private void registerOnlyThoseAspectsForWeaving(final Class<?>[] aspectsToWeave) {
         weaver.reset();
-        for (Class<?> aspectToWeave : aspectsToWeave) {
-            weaver.registerAspect(aspectToWeave);
-        }
+        Weavers.registerAspects(weaver, aspectsToWeave);
     }
 
     protected WeavedProxyFactory getWeavedProxyFactory() {
@@ -37,4 +81,65 @@ public class WeavedProxyFacade {
         return weaver;
     }
 
+    /**
+     * @return The executor of the asynchronous creations. By default, a single daemon thread since
+     *         the creations are done one after the other anyway.
+     */
+    public synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ProxiesThreadFactory());
+        }
+        return executor;
+    }
+
+    public synchronized void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Creation of a batch of proxies by the executor. The scope and the context class loader of the
+     * calling thread are captured and given back to the executor thread once done.
+     */
+    private class ProxiesCreation<T> implements Callable<List<T>> {
+
+        private final List<T> objectsToProxy;
+        private final Class<?>[] aspectsToWeave;
+        private final GenerationScope scope = GenerationScope.current();
+        private final ClassLoader contextClassLoader =
+                Thread.currentThread().getContextClassLoader();
+
+        public ProxiesCreation(List<T> objectsToProxy, Class<?>[] aspectsToWeave) {
+            this.objectsToProxy = new ArrayList<T>(objectsToProxy);
+            this.aspectsToWeave = aspectsToWeave.clone();
+        }
+
+        public List<T> call() {
+            Thread thread = Thread.currentThread();
+            ClassLoader previousClassLoader = thread.getContextClassLoader();
+            GenerationScope previousScope = GenerationScope.makeCurrent(scope);
+            thread.setContextClassLoader(contextClassLoader);
+            try {
+                return createWeavedProxies(objectsToProxy, aspectsToWeave);
+            }
+            finally {
+                thread.setContextClassLoader(previousClassLoader);
+                GenerationScope.makeCurrent(previousScope);
+            }
+        }
+    }
+
+    /**
+     * Daemon threads: an unused executor must not prevent the JVM from exiting.
+     */
+    private static class ProxiesThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger createdThreads = new AtomicInteger();
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "mock4aj-proxies-" + createdThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
@@ -0,0 +1,108 @@
+package info.rubico.mock4aj.internal.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe map with a maximum number of entries. When the limit is reached, the least
+ * recently used entry is evicted.
+ * <p>
+ * Hits and misses are counted to be able to evaluate the efficiency of the cache. A cache with a
+ * maximum size of 0 never keeps anything.
+ */
+public class BoundedLruCache<K, V> {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final int maxEntries;
+    private final Map<K, V> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public BoundedLruCache(final int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("The maximum size of a cache can't be negative.");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new EvictingMap();
+    }
+
+    /**
+     * @return The cached value or null if the key is not (or no more) in the cache.
+     */
+    public synchronized V get(final K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            missCount++;
+        }
+        else {
+            hitCount++;
+        }
+        return value;
+    }
+
+    public synchronized void put(final K key, final V value) {
+        if (maxEntries > 0) {
+            entries.put(key, value);
+        }
+    }
+
+    public synchronized V remove(final K key) {
+        return entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Called when an entry is evicted because the cache is full. Does nothing by default.
+     */
+    protected void onEviction(final K key, final V value) {
+        // Nothing by default
+    }
+
+    /**
+     * A {@link LinkedHashMap} in access order that removes its eldest entry when full.
+     */
+    private class EvictingMap extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        EvictingMap() {
+            super(maxEntries + 1, LOAD_FACTOR, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            if (size() > maxEntries) {
+                evictionCount++;
+                onEviction(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package info.rubico.mock4aj.internal.classutils;
+
+import info.rubico.mock4aj.api.exceptions.Mock4AjException;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Computes content digests of bytecode (or of any other bytes) to be used as cache keys.
+ * <p>
+ * Two identical inputs always give the same digest, even across JVM runs.
+ */
+public final class BytecodeDigest {
+
+    private static final String ALGORITHM = "SHA-1";
+    private static final String CHARSET = "UTF-8";
+    private static final int BYTE_MASK = 0xFF;
+    private static final int HEX_BASE = 0x100;
+
+    private BytecodeDigest() {
+    }
+
+    /**
+     * @return The hexadecimal digest of all the given byte arrays (in order).
+     */
+    public static String digest(byte[]... contents) {
+        MessageDigest messageDigest = createMessageDigest();
+        for (byte[] content : contents) {
+            messageDigest.update(content);
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * @return The hexadecimal digest of all the given strings (in order).
+     */
+    public static String digest(Iterable<String> values) {
+        MessageDigest messageDigest = createMessageDigest();
+        for (String value : values) {
+            messageDigest.update(toBytes(value));
+            messageDigest.update((byte) 0);
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * @return The hexadecimal digest of all the given strings (in order).
+     */
+    public static String digest(String... values) {
+        return digest(Arrays.asList(values));
+    }
+
+    /**
+     * @return The digest of a set of classes: their names and their bytecode. The same classes
+     *         always give the same digest, whatever their order.
+     */
+    public static String digestClasses(Collection<Class<?>> classes) {
+        SortedMap<String, String> sortedClasses = new TreeMap<String, String>();
+        for (Class<?> clazz : classes) {
+            byte[] bytecode = ClassUtils.readBytecode(clazz);
+            sortedClasses.put(clazz.getName(), bytecode == null ? "unknown" : digest(bytecode));
+        }
+        List<String> descriptions = new ArrayList<String>(sortedClasses.size());
+        for (Map.Entry<String, String> clazz : sortedClasses.entrySet()) {
+            descriptions.add(clazz.getKey() + "@" + clazz.getValue());
+        }
+        return digest(descriptions);
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException error) {
+            throw new Mock4AjException("The digest algorithm " + ALGORITHM
+                                       + " is not available on this JVM.", error);
+        }
+    }
+
+    private static byte[] toBytes(String value) {
+        try {
+            return value.getBytes(CHARSET);
+        }
+        catch (UnsupportedEncodingException error) {
+            throw new Mock4AjException("The charset " + CHARSET + " is not supported.", error);
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Integer.toHexString((b & BYTE_MASK) + HEX_BASE).substring(1));
+        }
+        return hex.toString();
+    }
+
+}
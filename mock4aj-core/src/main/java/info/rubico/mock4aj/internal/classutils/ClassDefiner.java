@@ -0,0 +1,95 @@
+package info.rubico.mock4aj.internal.classutils;
+
+import info.rubico.mock4aj.api.exceptions.Mock4AjException;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Defines generated classes into an existing class loader.
+ * <p>
+ * The protected {@link ClassLoader#defineClass(String, byte[], int, int)} is looked up and made
+ * accessible only once. The classes defined in each loader are remembered (weakly) so defining a
+ * class that is already there gives back the existing class instead of a {@link LinkageError}.
+ */
+public final class ClassDefiner {
+
+    private static final Method DEFINE_CLASS = findDefineClass();
+
+    private static final Map<ClassLoader, Map<String, WeakReference<Class<?>>>> DEFINED_CLASSES =
+            new WeakHashMap<ClassLoader, Map<String, WeakReference<Class<?>>>>();
+
+    private ClassDefiner() {
+    }
+
+    private static Method findDefineClass() {
+        try {
+            Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass", String.class,
+                                                                     byte[].class, int.class,
+                                                                     int.class);
+            defineClass.setAccessible(true);
+            return defineClass;
+        }
+        catch (Exception error) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The defined class or the class previously defined with the same name.
+     * @throws LinkageError If the bytecode is invalid or the class cannot be defined in the loader.
+     * @throws Mock4AjException If the class loaders are not accessible (e.g. security manager).
+     */
+    public static Class<?> defineClass(ClassLoader loader, String name, byte[] bytes) {
+        synchronized (DEFINED_CLASSES) {
+            Map<String, WeakReference<Class<?>>> loaderClasses = definedClassesOf(loader);
+            WeakReference<Class<?>> previous = loaderClasses.get(name);
+            if (previous != null && previous.get() != null) {
+                return previous.get();
+            }
+            Class<?> definedClass = invokeDefineClass(loader, name, bytes);
+            loaderClasses.put(name, new WeakReference<Class<?>>(definedClass));
+            return definedClass;
+        }
+    }
+
+    private static Map<String, WeakReference<Class<?>>> definedClassesOf(ClassLoader loader) {
+        Map<String, WeakReference<Class<?>>> loaderClasses = DEFINED_CLASSES.get(loader);
+        if (loaderClasses == null) {
+            loaderClasses = new HashMap<String, WeakReference<Class<?>>>();
+            DEFINED_CLASSES.put(loader, loaderClasses);
+        }
+        return loaderClasses;
+    }
+
+    private static Class<?> invokeDefineClass(ClassLoader loader, String name, byte[] bytes) {
+        if (DEFINE_CLASS == null) {
+            throw new Mock4AjException("ClassLoader.defineClass is not accessible. Generated "
+                                       + "classes cannot be defined.");
+        }
+        try {
+            return (Class<?>) DEFINE_CLASS.invoke(loader, name, bytes, 0, bytes.length);
+        }
+        catch (InvocationTargetException error) {
+            throw rethrow(name, error.getTargetException());
+        }
+        catch (IllegalAccessException error) {
+            throw rethrow(name, error);
+        }
+    }
+
+    private static RuntimeException rethrow(String name, Throwable error) {
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        if (error instanceof RuntimeException) {
+            return (RuntimeException) error;
+        }
+        return new Mock4AjException("Unable to define the generated class " + name, error);
+    }
+
+}
@@ -1,5 +1,8 @@
 package info.rubico.mock4aj.internal.classutils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Modifier;
 
 /**
@@ -7,6 +10,8 @@ import java.lang.reflect.Modifier;
  */
 public final class ClassUtils {
 
+    private static final int BUFFER_SIZE = 4096;
+
     private ClassUtils() {
     }
 
@@ -15,4 +20,53 @@ public final class ClassUtils {
         return Modifier.isFinal(modifier);
     }
 
+    /**
+     * Reads the bytecode of a class from its class loader.
+     * 
+     * @return The bytecode or null if it is not available (e.g. a class generated at runtime).
+     */
+    public static byte[] readBytecode(Class<?> clazz) {
+        return readBytecode(clazz.getClassLoader(), clazz.getName());
+    }
+
+    /**
+     * Reads the bytecode of a class from a class loader without loading the class.
+     * 
+     * @param loader The class loader or null for the system class loader.
+     * @return The bytecode or null if it is not available.
+     */
+    public static byte[] readBytecode(ClassLoader loader, String className) {
+        ClassLoader resourceLoader = loader;
+        if (resourceLoader == null) {
+            resourceLoader = ClassLoader.getSystemClassLoader();
+        }
+        InputStream input = resourceLoader.getResourceAsStream(className.replace('.', '/')
+                                                               + ".class");
+        if (input == null) {
+            return null;
+        }
+        try {
+            return readFully(input);
+        }
+        catch (IOException error) {
+            return null;
+        }
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read = input.read(buffer);
+            while (read != -1) {
+                output.write(buffer, 0, read);
+                read = input.read(buffer);
+            }
+            return output.toByteArray();
+        }
+        finally {
+            input.close();
+        }
+    }
+
 }
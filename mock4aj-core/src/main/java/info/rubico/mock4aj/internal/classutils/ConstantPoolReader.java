@@ -0,0 +1,205 @@
+package info.rubico.mock4aj.internal.classutils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the constant pool of a class file without parsing the rest of the class.
+ * <p>
+ * The names of all the methods and fields declared or used by a class are in its constant pool. It
+ * is a cheap way to know if a class could be concerned by a member name. The names of the direct
+ * supertypes are read just after the constant pool.
+ */
+public final class ConstantPoolReader {
+
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    private static final int VERSION_SIZE = 4;
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int INVOKE_DYNAMIC = 18;
+
+    private static final int SHORT_SIZE = 2;
+    private static final int ACCESS_AND_THIS_CLASS_SIZE = 4;
+    private static final int HANDLE_SIZE = 3;
+    private static final int INT_SIZE = 4;
+    private static final int LONG_SIZE = 8;
+
+    /**
+     * Size of the constants (without their tag) indexed by tag. -1 for unknown tags.
+     */
+    private static final int[] CONSTANT_SIZES = new int[INVOKE_DYNAMIC + 1];
+
+    static {
+        Arrays.fill(CONSTANT_SIZES, -1);
+        CONSTANT_SIZES[CLASS] = SHORT_SIZE;
+        CONSTANT_SIZES[STRING] = SHORT_SIZE;
+        CONSTANT_SIZES[METHOD_TYPE] = SHORT_SIZE;
+        CONSTANT_SIZES[METHOD_HANDLE] = HANDLE_SIZE;
+        CONSTANT_SIZES[INTEGER] = INT_SIZE;
+        CONSTANT_SIZES[FLOAT] = INT_SIZE;
+        CONSTANT_SIZES[FIELD_REF] = INT_SIZE;
+        CONSTANT_SIZES[METHOD_REF] = INT_SIZE;
+        CONSTANT_SIZES[INTERFACE_METHOD_REF] = INT_SIZE;
+        CONSTANT_SIZES[NAME_AND_TYPE] = INT_SIZE;
+        CONSTANT_SIZES[INVOKE_DYNAMIC] = INT_SIZE;
+        CONSTANT_SIZES[LONG] = LONG_SIZE;
+        CONSTANT_SIZES[DOUBLE] = LONG_SIZE;
+    }
+
+    private ConstantPoolReader() {
+    }
+
+    /**
+     * @return All the UTF-8 constants of the class (names, descriptors and string literals) or null
+     *         if the bytes are not a readable class file.
+     */
+    public static Set<String> readUtf8Constants(byte[] classBytes) {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(classBytes));
+        try {
+            if (input.readInt() != CLASS_FILE_MAGIC) {
+                return null;
+            }
+            input.skipBytes(VERSION_SIZE);
+            return readUtf8Constants(input, input.readUnsignedShort());
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Set<String> readUtf8Constants(DataInputStream input, int poolCount)
+        throws IOException {
+
+        Set<String> constants = new HashSet<String>();
+        int index = 1;
+        while (index < poolCount) {
+            int tag = input.readUnsignedByte();
+            if (tag == UTF8) {
+                constants.add(input.readUTF());
+            }
+            else if (!skipConstant(input, tag)) {
+                return null;
+            }
+            index += slotsOf(tag);
+        }
+        return constants;
+    }
+
+    /**
+     * @return The names of the superclass and of the interfaces of the class (in the dotted form)
+     *         or null if the bytes are not a readable class file.
+     */
+    public static List<String> readSupertypeNames(byte[] classBytes) {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(classBytes));
+        try {
+            if (input.readInt() != CLASS_FILE_MAGIC) {
+                return null;
+            }
+            input.skipBytes(VERSION_SIZE);
+            int poolCount = input.readUnsignedShort();
+            String[] utf8Constants = new String[poolCount];
+            int[] classNameIndexes = new int[poolCount];
+            if (!readPool(input, utf8Constants, classNameIndexes)) {
+                return null;
+            }
+            input.skipBytes(ACCESS_AND_THIS_CLASS_SIZE);
+            return readSupertypeNames(input, utf8Constants, classNameIndexes);
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean readPool(DataInputStream input,
+                                    String[] utf8Constants,
+                                    int[] classNameIndexes) throws IOException {
+        int index = 1;
+        while (index < utf8Constants.length) {
+            int tag = input.readUnsignedByte();
+            if (tag == UTF8) {
+                utf8Constants[index] = input.readUTF();
+            }
+            else if (tag == CLASS) {
+                classNameIndexes[index] = input.readUnsignedShort();
+            }
+            else if (!skipConstant(input, tag)) {
+                return false;
+            }
+            index += slotsOf(tag);
+        }
+        return true;
+    }
+
+    private static List<String> readSupertypeNames(DataInputStream input,
+                                                   String[] utf8Constants,
+                                                   int[] classNameIndexes) throws IOException {
+        List<String> names = new ArrayList<String>();
+        addClassName(names, input.readUnsignedShort(), utf8Constants, classNameIndexes);
+        int interfacesCount = input.readUnsignedShort();
+        for (int i = 0; i < interfacesCount; i++) {
+            addClassName(names, input.readUnsignedShort(), utf8Constants, classNameIndexes);
+        }
+        return names;
+    }
+
+    /**
+     * The index of the superclass is 0 for java.lang.Object. Invalid indexes are ignored.
+     */
+    private static void addClassName(List<String> names,
+                                     int classIndex,
+                                     String[] utf8Constants,
+                                     int[] classNameIndexes) {
+        if (classIndex > 0 && classIndex < classNameIndexes.length) {
+            int nameIndex = classNameIndexes[classIndex];
+            if (nameIndex > 0 && nameIndex < utf8Constants.length
+                && utf8Constants[nameIndex] != null) {
+                names.add(utf8Constants[nameIndex].replace('/', '.'));
+            }
+        }
+    }
+
+    private static boolean skipConstant(DataInputStream input, int tag) throws IOException {
+        int size = sizeOf(tag);
+        if (size < 0) {
+            return false;
+        }
+        input.skipBytes(size);
+        return true;
+    }
+
+    private static int sizeOf(int tag) {
+        if (tag < CONSTANT_SIZES.length) {
+            return CONSTANT_SIZES[tag];
+        }
+        return -1;
+    }
+
+    /**
+     * Long and double constants take two entries in the pool.
+     */
+    private static int slotsOf(int tag) {
+        if (tag == LONG || tag == DOUBLE) {
+            return 2;
+        }
+        return 1;
+    }
+
+}
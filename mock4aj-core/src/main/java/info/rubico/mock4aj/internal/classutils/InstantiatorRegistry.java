@@ -0,0 +1,96 @@
+package info.rubico.mock4aj.internal.classutils;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.objenesis.instantiator.ObjectInstantiator;
+import org.objenesis.strategy.InstantiatorStrategy;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+/**
+ * <p>
+ * Creates instances without calling any constructor (with Objenesis), sharing the instantiator of
+ * each class between all the generators (proxies, selectors, callers...).
+ * </p>
+ * <p>
+ * Creating an instantiator is the slow part: it looks up and builds a serialization constructor.
+ * Once cached, the constructor is reused and the JVM soon replaces its reflective accessor by
+ * generated bytecode.
+ * </p>
+ * <p>
+ * The registry is weakly keyed by class. An instantiator references its class so it is weakly
+ * referenced too: the registry never keeps a class loaded, even when its class loader is not
+ * forgotten explicitly. An instantiator collected by the garbage collector is simply created again.
+ * The instantiators of the classes of a class loader are forgotten explicitly when a generation
+ * scope is closed.
+ * </p>
+ */
+public class InstantiatorRegistry {
+
+    private static final InstantiatorRegistry DEFAULT = new InstantiatorRegistry(
+            new StdInstantiatorStrategy());
+
+    private final InstantiatorStrategy strategy;
+    private final Map<Class<?>, WeakReference<ObjectInstantiator>> instantiators =
+            new WeakHashMap<Class<?>, WeakReference<ObjectInstantiator>>();
+
+    public InstantiatorRegistry(InstantiatorStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * @return The registry shared by all the generators.
+     */
+    public static InstantiatorRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return A new instance of the class, created without calling any constructor.
+     */
+    public Object newInstance(Class<?> type) {
+        return getInstantiatorOf(type).newInstance();
+    }
+
+    /**
+     * The instantiator is created outside of the lock: two threads may create one for the same
+     * class but only one is kept.
+     */
+    public ObjectInstantiator getInstantiatorOf(Class<?> type) {
+        ObjectInstantiator instantiator = findInstantiatorOf(type);
+        if (instantiator == null) {
+            instantiator = strategy.newInstantiatorOf(type);
+            register(type, instantiator);
+        }
+        return instantiator;
+    }
+
+    private synchronized ObjectInstantiator findInstantiatorOf(Class<?> type) {
+        WeakReference<ObjectInstantiator> reference = instantiators.get(type);
+        return reference == null ? null : reference.get();
+    }
+
+    private synchronized void register(Class<?> type, ObjectInstantiator instantiator) {
+        instantiators.put(type, new WeakReference<ObjectInstantiator>(instantiator));
+    }
+
+    /**
+     * Forgets the instantiators of the classes defined by the class loader.
+     */
+    public synchronized void forgetClassLoader(ClassLoader classLoader) {
+        Iterator<Class<?>> types = instantiators.keySet().iterator();
+        while (types.hasNext()) {
+            Class<?> type = types.next();
+            if (type != null && type.getClassLoader() == classLoader) {
+                types.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return instantiators.size();
+    }
+
+}
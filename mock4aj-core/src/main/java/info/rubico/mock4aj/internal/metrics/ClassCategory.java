@@ -0,0 +1,45 @@
+package info.rubico.mock4aj.internal.metrics;
+
+import info.rubico.mock4aj.codegen.cglib.calls.caller.MethodCallerNamingPolicy;
+import info.rubico.mock4aj.codegen.cglib.calls.selector.CglibMethodSelectorGenerator;
+import info.rubico.mock4aj.codegen.cglib.proxies.WeavedProxyNamingPolicy;
+
+/**
+ * The kinds of classes generated and woven by Mock4Aj, recognised by the tag in their name. The
+ * tags are the ones given by the naming policies of the generators.
+ */
+public enum ClassCategory {
+
+    /** Classes generated by AspectJ for around advices. */
+    CLOSURE("$AjcClosure"),
+    PROXY(WeavedProxyNamingPolicy.CLASSNAME_SUFFIX),
+    CALLER(MethodCallerNamingPolicy.CALLER_TAG),
+    SELECTOR(CglibMethodSelectorGenerator.SELECTOR_TAG),
+    OTHER(null);
+
+    private final String nameTag;
+
+    private ClassCategory(String nameTag) {
+        this.nameTag = nameTag;
+    }
+
+    /**
+     * A generated class is named after the class it extends, which can be generated too (like the
+     * selector of a proxy or the closure of a caller): the last tag of the name wins.
+     */
+    public static ClassCategory of(String className) {
+        ClassCategory found = OTHER;
+        int foundIndex = -1;
+        for (ClassCategory category : values()) {
+            if (category.nameTag != null) {
+                int index = className.lastIndexOf(category.nameTag);
+                if (index > foundIndex) {
+                    found = category;
+                    foundIndex = index;
+                }
+            }
+        }
+        return found;
+    }
+
+}
@@ -0,0 +1,48 @@
+package info.rubico.mock4aj.internal.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of durations with fixed buckets (see {@link #BUCKET_BOUNDS_MICROS}).
+ */
+public class LatencyHistogram {
+
+    /**
+     * Exclusive upper bound of each bucket, in microseconds. The last bucket has no bound.
+     */
+    private static final long[] BUCKET_BOUNDS_MICROS = { 100, 1000, 10000, 100000, 1000000 };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+
+    public void record(long durationNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MICROS.length && micros >= BUCKET_BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+    }
+
+    /**
+     * @return The count of each bucket. There is one more bucket than bounds.
+     */
+    public long[] getCounts() {
+        long[] snapshot = new long[counts.length()];
+        for (int bucket = 0; bucket < snapshot.length; bucket++) {
+            snapshot[bucket] = counts.get(bucket);
+        }
+        return snapshot;
+    }
+
+    public void clear() {
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            counts.set(bucket, 0);
+        }
+    }
+
+    public static long[] getBucketBoundsMicros() {
+        return BUCKET_BOUNDS_MICROS.clone();
+    }
+
+}
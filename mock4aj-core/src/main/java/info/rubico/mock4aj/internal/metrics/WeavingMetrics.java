@@ -0,0 +1,305 @@
+package info.rubico.mock4aj.internal.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of the weaving and of the generation of classes, published through JMX.
+ * <p>
+ * By default, all the weavers and generator strategies record to the same instance (see
+ * {@link #getDefault()}). It is registered in the platform MBean server as
+ * {@value #OBJECT_NAME} unless the {@value #JMX_PROPERTY} system property is {@code false}.
+ * <p>
+ * The registered aspects and the size of the worlds are read from the {@link Source}s when they
+ * are asked. Only the weavers explicitly added as sources are counted (like the default weaver of
+ * {@link info.rubico.mock4aj.Mock4AspectJ}), not the workers of a pool or the short-lived
+ * weavers. A weaver that is not used anymore must be removed with {@link #removeSource(Source)}.
+ */
+public class WeavingMetrics implements WeavingMetricsMBean {
+
+    public static final String OBJECT_NAME = "info.rubico.mock4aj:type=WeavingMetrics";
+    public static final String JMX_PROPERTY = "mock4aj.metrics.jmx";
+
+    private static WeavingMetrics defaultMetrics;
+
+    private final Map<ClassCategory, Counter> weavings = createCounters();
+    private final Map<ClassCategory, Counter> generations = createCounters();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final AtomicLong preparePasses = new AtomicLong();
+    private final AtomicLong wovenClassCacheHits = new AtomicLong();
+    private final AtomicLong wovenClassCacheMisses = new AtomicLong();
+    private final AtomicLong preparedStateHits = new AtomicLong();
+    private final AtomicLong preparedStateMisses = new AtomicLong();
+    private final AtomicLong proxyClassCacheHits = new AtomicLong();
+    private final AtomicLong proxyClassCacheMisses = new AtomicLong();
+    private final AtomicLong callerClassCacheHits = new AtomicLong();
+    private final AtomicLong callerClassCacheMisses = new AtomicLong();
+    private final CopyOnWriteArrayList<Source> sources = new CopyOnWriteArrayList<Source>();
+
+    /**
+     * @return The metrics shared by all the weavers. It is registered in JMX the first time.
+     */
+    public static synchronized WeavingMetrics getDefault() {
+        if (defaultMetrics == null) {
+            defaultMetrics = new WeavingMetrics();
+            if (Boolean.valueOf(System.getProperty(JMX_PROPERTY, "true"))) {
+                defaultMetrics.registerInPlatformMBeanServer();
+            }
+        }
+        return defaultMetrics;
+    }
+
+    /**
+     * @return false if the metrics could not be registered (already registered, security...).
+     */
+    public boolean registerInPlatformMBeanServer() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                                                                     new ObjectName(OBJECT_NAME));
+            return true;
+        }
+        catch (JMException e) {
+            return false;
+        }
+        catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    private static Map<ClassCategory, Counter> createCounters() {
+        Map<ClassCategory, Counter> counters =
+                new EnumMap<ClassCategory, Counter>(ClassCategory.class);
+        for (ClassCategory category : ClassCategory.values()) {
+            counters.put(category, new Counter());
+        }
+        return counters;
+    }
+
+    public void recordWeaving(String className, int originalSize, int wovenSize,
+                              long durationNanos) {
+        weavings.get(ClassCategory.of(className)).record(durationNanos);
+        bytesIn.addAndGet(originalSize);
+        bytesOut.addAndGet(wovenSize);
+    }
+
+    /**
+     * A class generated by the weaver itself (a closure) has no original bytecode nor duration.
+     */
+    public void recordWeaverGeneratedClass(String className, int size) {
+        weavings.get(ClassCategory.of(className)).increment();
+        bytesOut.addAndGet(size);
+    }
+
+    public void recordGeneration(String className, long durationNanos) {
+        generations.get(ClassCategory.of(className)).record(durationNanos);
+    }
+
+    public void recordReset() {
+        resets.incrementAndGet();
+    }
+
+    public void recordPreparePass() {
+        preparePasses.incrementAndGet();
+    }
+
+    public void recordWovenClassCacheLookup(boolean hit) {
+        increment(hit, wovenClassCacheHits, wovenClassCacheMisses);
+    }
+
+    public void recordPreparedStateLookup(boolean hit) {
+        increment(hit, preparedStateHits, preparedStateMisses);
+    }
+
+    public void recordProxyClassCacheLookup(boolean hit) {
+        increment(hit, proxyClassCacheHits, proxyClassCacheMisses);
+    }
+
+    public void recordCallerClassCacheLookup(boolean hit) {
+        increment(hit, callerClassCacheHits, callerClassCacheMisses);
+    }
+
+    private static void increment(boolean hit, AtomicLong hits, AtomicLong misses) {
+        if (hit) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts the state of the source until it is removed. Adding the same source twice has no
+     * effect.
+     */
+    public void addSource(Source source) {
+        sources.addIfAbsent(source);
+    }
+
+    public void removeSource(Source source) {
+        sources.remove(source);
+    }
+
+    public Map<String, Long> getWeaveCounts() {
+        return countsOf(weavings);
+    }
+
+    public Map<String, long[]> getWeaveLatencyHistograms() {
+        return histogramsOf(weavings);
+    }
+
+    public Map<String, Long> getGenerationCounts() {
+        return countsOf(generations);
+    }
+
+    public Map<String, long[]> getGenerationLatencyHistograms() {
+        return histogramsOf(generations);
+    }
+
+    private static Map<String, Long> countsOf(Map<ClassCategory, Counter> counters) {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (Map.Entry<ClassCategory, Counter> counter : counters.entrySet()) {
+            counts.put(counter.getKey().name(), counter.getValue().getCount());
+        }
+        return counts;
+    }
+
+    private static Map<String, long[]> histogramsOf(Map<ClassCategory, Counter> counters) {
+        Map<String, long[]> histograms = new LinkedHashMap<String, long[]>();
+        for (Map.Entry<ClassCategory, Counter> counter : counters.entrySet()) {
+            histograms.put(counter.getKey().name(), counter.getValue().getLatencies().getCounts());
+        }
+        return histograms;
+    }
+
+    public long[] getLatencyBucketBoundsMicros() {
+        return LatencyHistogram.getBucketBoundsMicros();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public int getRegisteredAspectCount() {
+        int count = 0;
+        for (Source source : sources) {
+            count += source.getRegisteredAspectCount();
+        }
+        return count;
+    }
+
+    public long getResetCount() {
+        return resets.get();
+    }
+
+    public long getPreparePassCount() {
+        return preparePasses.get();
+    }
+
+    public int getWorldTypeMapSize() {
+        int size = 0;
+        for (Source source : sources) {
+            size += source.getWorldTypeMapSize();
+        }
+        return size;
+    }
+
+    public double getWovenClassCacheHitRatio() {
+        return ratio(wovenClassCacheHits.get(), wovenClassCacheMisses.get());
+    }
+
+    public double getPreparedStateHitRatio() {
+        return ratio(preparedStateHits.get(), preparedStateMisses.get());
+    }
+
+    public double getProxyClassCacheHitRatio() {
+        return ratio(proxyClassCacheHits.get(), proxyClassCacheMisses.get());
+    }
+
+    public double getCallerClassCacheHitRatio() {
+        return ratio(callerClassCacheHits.get(), callerClassCacheMisses.get());
+    }
+
+    private static double ratio(long hits, long misses) {
+        if (hits + misses == 0) {
+            return 0;
+        }
+        return (double) hits / (hits + misses);
+    }
+
+    /**
+     * Resets all the counters. The sources are kept.
+     */
+    public void clear() {
+        for (Counter counter : weavings.values()) {
+            counter.clear();
+        }
+        for (Counter counter : generations.values()) {
+            counter.clear();
+        }
+        for (AtomicLong counter : new AtomicLong[] { bytesIn, bytesOut, resets, preparePasses,
+                                                    wovenClassCacheHits, wovenClassCacheMisses,
+                                                    preparedStateHits, preparedStateMisses,
+                                                    proxyClassCacheHits, proxyClassCacheMisses,
+                                                    callerClassCacheHits,
+                                                    callerClassCacheMisses }) {
+            counter.set(0);
+        }
+    }
+
+    /**
+     * Something that can tell its current state, like a weaver. It is read from the JMX threads:
+     * it must answer without waiting for a weaving to end.
+     */
+    public interface Source {
+
+        int getRegisteredAspectCount();
+
+        int getWorldTypeMapSize();
+
+    }
+
+    /**
+     * Count and latencies of one category. Events without duration are only counted.
+     */
+    private static class Counter {
+
+        private final AtomicLong count = new AtomicLong();
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        void increment() {
+            count.incrementAndGet();
+        }
+
+        void record(long durationNanos) {
+            count.incrementAndGet();
+            latencies.record(durationNanos);
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        LatencyHistogram getLatencies() {
+            return latencies;
+        }
+
+        void clear() {
+            count.set(0);
+            latencies.clear();
+        }
+    }
+
+}
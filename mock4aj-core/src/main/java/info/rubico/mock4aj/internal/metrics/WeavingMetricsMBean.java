@@ -0,0 +1,53 @@
+package info.rubico.mock4aj.internal.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link WeavingMetrics}. Maps are indexed by {@link ClassCategory}
+ * name.
+ */
+public interface WeavingMetricsMBean {
+
+    /**
+     * @return How many classes went through the weaver (woven, skipped or found in a cache) and
+     *         how many closures were generated by AspectJ.
+     */
+    Map<String, Long> getWeaveCounts();
+
+    Map<String, long[]> getWeaveLatencyHistograms();
+
+    /**
+     * @return How many classes were generated by cglib, weaving included.
+     */
+    Map<String, Long> getGenerationCounts();
+
+    Map<String, long[]> getGenerationLatencyHistograms();
+
+    /**
+     * @return The upper bounds of the buckets of the latency histograms.
+     */
+    long[] getLatencyBucketBoundsMicros();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    int getRegisteredAspectCount();
+
+    long getResetCount();
+
+    long getPreparePassCount();
+
+    int getWorldTypeMapSize();
+
+    double getWovenClassCacheHitRatio();
+
+    double getPreparedStateHitRatio();
+
+    double getProxyClassCacheHitRatio();
+
+    double getCallerClassCacheHitRatio();
+
+    void clear();
+
+}
@@ -4,10 +4,29 @@ import info.rubico.mock4aj.api.exceptions.Mock4AjException;
 import info.rubico.mock4aj.api.exceptions.NotAConcreteAspect;
 import info.rubico.mock4aj.api.exceptions.NotAnAspect;
 import info.rubico.mock4aj.api.exceptions.WeavingError;
+import info.rubico.mock4aj.api.weaving.AdviceAwareWeaver;
+import info.rubico.mock4aj.api.weaving.BatchWeaver;
+import info.rubico.mock4aj.api.weaving.FingerprintedWeaver;
+import info.rubico.mock4aj.api.weaving.MultiAspectWeaver;
 import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.api.weaving.WeavingResult;
+import info.rubico.mock4aj.internal.cache.BoundedLruCache;
+import info.rubico.mock4aj.internal.classutils.BytecodeDigest;
+import info.rubico.mock4aj.internal.metrics.WeavingMetrics;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.aspectj.bridge.context.CompilationAndWeavingContext;
@@ -26,19 +45,93 @@ import org.aspectj.bridge.context.CompilationAndWeavingContext;
  * {@link DynamicRuntimeWeavingAdaptor} is set, <strong>it must has been initialised
  * before</strong>.
  * </p>
+ * <p>
+ * Woven classes are kept in a {@link WovenClassCache}. Weaving the same bytecode again with the
+ * same set of aspects returns the cached result without using the AspectJ weaver at all. The
+ * classes generated with it (closures) are defined again.
+ * </p>
+ * <p>
+ * Optionally, woven classes can also be stored in a {@link PersistentWovenClassCache} to be reused
+ * by other JVM runs. The persistent cache is enabled by default if the
+ * {@value PersistentWovenClassCache#DIRECTORY_PROPERTY} system property is set.
+ * </p>
+ * <p>
+ * With the persistent cache, the aspects accepted by AspectJ are recorded in an
+ * {@link AspectMetadataCache}. Registering a known aspect then doesn't prepare AspectJ: the
+ * preparation is deferred until a class is not found in the persistent cache. A JVM whose classes
+ * are all in the cache never prepares AspectJ. An error caused by a deferred aspect (like a
+ * missing type) is reported by the weaving.
+ * </p>
+ * <p>
+ * A reset does not rebuild the AspectJ world immediately. The prepared world and weaver are kept,
+ * indexed by their set of aspects, and are restored when the same set of aspects is registered
+ * again. A fresh world is only built when no prepared state matches.
+ * </p>
+ * <p>
+ * Before weaving, a {@link WeavingPrefilter} checks if a registered aspect could change the class.
+ * If none could, the bytecode is returned as is. The same pre-pass tells which methods of a proxy
+ * could be advised ({@link AdviceAwareWeaver}).
+ * </p>
+ * <p>
+ * The weaving is measured by {@link WeavingMetrics} (the shared instance is published through JMX).
+ * The state of the weaver (registered aspects, size of the world) is only counted once the weaver
+ * is added as a source of the metrics. It is read without waiting for a weaving to end.
+ * </p>
+ * <p>
+ * The messages of the AspectJ weaver are ignored unless a {@link WeavingMessageSink} is set. The
+ * {@link WeavingVerbosity} selects which ones are delivered to it.
+ * </p>
  * 
  * @see DynamicRuntimeWeavingAdaptor
  * @see DynamicRuntimeWorld
  */
-public class AspectJWeaver implements Weaver {
+public class AspectJWeaver implements FingerprintedWeaver, AdviceAwareWeaver, // NOPMD
+    MultiAspectWeaver, BatchWeaver, WeavingMetrics.Source {
+
+    public static final int DEFAULT_MAX_PREPARED_STATES = 8;
+
+    private static final String UNKNOWN_DIGEST = "unknown";
+
+    /**
+     * Types needed by the weaving of almost any proxy.
+     */
+    private static final String[] COMMON_TYPES = {
+        "java.lang.Object", "java.lang.String", "java.lang.Class", "java.lang.Throwable",
+        "java.lang.Exception", "java.lang.RuntimeException", "java.lang.reflect.Method",
+        "java.io.Serializable", "net.sf.cglib.proxy.Factory", "net.sf.cglib.proxy.Callback",
+        "net.sf.cglib.proxy.MethodInterceptor", "net.sf.cglib.proxy.MethodProxy",
+        "org.aspectj.lang.JoinPoint", "org.aspectj.lang.ProceedingJoinPoint",
+        "org.aspectj.runtime.reflect.Factory" };
 
     private final DynamicRuntimeWeavingAdaptor ajWeaver;
-    private final Set<String> registeredAspects = new TreeSet<String>();
+    private final SortedMap<String, String> registeredAspects = new TreeMap<String, String>();
+    private String aspectsFingerprint;
+    private WovenClassCache wovenClassCache = new WovenClassCache();
+    private PersistentWovenClassCache persistentCache;
+    private AspectMetadataCache aspectMetadataCache;
+    private final Map<String, Class<?>> deferredAspects = new LinkedHashMap<String, Class<?>>();
+    private BoundedLruCache<String, PreparedAspectSet> preparedStates =
+            new BoundedLruCache<String, PreparedAspectSet>(DEFAULT_MAX_PREPARED_STATES);
+    private boolean stateModified;
+    private boolean freshStateNeeded;
+    private boolean prefilterEnabled = true;
+    private long skippedClassesCount;
+    private volatile WeavingMetrics metrics = WeavingMetrics.getDefault();
+    private volatile int registeredAspectCount;
+    private volatile int worldTypeMapSize;
 
     public AspectJWeaver() {
-        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        this(Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * @param classLoader The class loader used to resolve the aspects and the woven types.
+     */
+    public AspectJWeaver(ClassLoader classLoader) {
         ajWeaver = new DynamicRuntimeWeavingAdaptor(classLoader);
         ajWeaver.initialize();
+        persistentCache = PersistentWovenClassCache.fromSystemProperties();
+        aspectMetadataCache = AspectMetadataCache.fromSystemProperties();
     }
 
     public AspectJWeaver(DynamicRuntimeWeavingAdaptor ajWeaver) {
@@ -52,13 +145,29 @@ public class AspectJWeaver implements Weaver {
      * @see Weaver
      */
     public synchronized void registerAspect(Class<?> aspect) {
-        if (!registeredAspects.contains(aspect.getName())) {
+        if (!registeredAspects.containsKey(aspect.getName())) {
             checkAspectIsConcrete(aspect);
-            registerToAspectJ(aspect);
-            registeredAspects.add(aspect.getName());
+            List<Class<?>> aspects = Collections.<Class<?>> singletonList(aspect);
+            if (!registerWithoutAspectJ(aspects)) {
+                registerDeferredAspects();
+                prepareFreshStateIfNeeded();
+                registerToAspectJ(aspect);
+                addToRegisteredAspects(aspects);
+            }
+            aspectsModified();
         }
     }
 
+    /**
+     * Resolves the types needed by the weaving of almost any proxy (JDK, cglib and AspectJ runtime
+     * types) so the first weaving doesn't have to. The JDK and library types stay parsed after a
+     * reset (they are shared by the {@link BaseTypeLayer}).
+     */
+    public synchronized void warmUp() {
+        ajWeaver.preResolveTypes(COMMON_TYPES);
+        updateStateSnapshot();
+    }
+
     protected void checkAspectIsConcrete(Class<?> aspect) {
         if (Modifier.isAbstract(aspect.getModifiers())) {
             throw new NotAConcreteAspect(aspect); // NOPMD
@@ -66,6 +175,7 @@ public class AspectJWeaver implements Weaver {
     }
 
     protected void registerToAspectJ(Class<?> aspect) {
+        metrics.recordPreparePass();
         try {
             ajWeaver.registerAspect(aspect.getName());
         }
@@ -78,44 +188,452 @@ public class AspectJWeaver implements Weaver {
     }
 
     protected Mock4AjException handleUnknownRegistrationError(Class<?> clazz, Exception cause) {
+        return createRegistrationError(String.format("the class '%s'", clazz), cause);
+    }
+
+    protected Mock4AjException handleUnknownRegistrationError(List<Class<?>> classes,
+                                                              Exception cause) {
+        return createRegistrationError(String.format("one of the classes %s", classes), cause);
+    }
+
+    private Mock4AjException createRegistrationError(String classesDescription, Exception cause) {
         // @formatter:off
         final String message = String.format(
-                    "An error occurs during the registration of the class '%s' "
+                    "An error occurs during the registration of %s "
                     + "as an aspect. This error was reported by the AspectJ Weaver. "
                     + "It is probably because the class is not an aspect or because the "
                     + "aspect is not weavble.\n"
                     + "Look at the original exception or use the AspectJ logger "
-                    + "to find the exact problem.", clazz);
+                    + "to find the exact problem.", classesDescription);
         // @formatter:on
         return new Mock4AjException(message, cause);
     }
 
+    /**
+     * All the aspects are checked then registered to AspectJ in one pass.
+     * 
+     * @throws NotAnAspect if one of the classes is not an aspect class.
+     * @throws NotAConcreteAspect if one of the aspects is an abstract aspect.
+     * @throws Mock4AjException if another error prevent the aspects to be registered.
+     * @see MultiAspectWeaver
+     */
+    public synchronized void registerAspects(Class<?>... aspects) {
+        List<Class<?>> aspectsToRegister = selectUnregisteredAspects(aspects);
+        if (!aspectsToRegister.isEmpty()) {
+            checkAspectsAreConcrete(aspectsToRegister);
+            if (!registerWithoutAspectJ(aspectsToRegister)) {
+                registerDeferredAspects();
+                prepareFreshStateIfNeeded();
+                replaceInAspectJ(Collections.<String> emptyList(), aspectsToRegister);
+                addToRegisteredAspects(aspectsToRegister);
+            }
+            aspectsModified();
+        }
+    }
+
+    /**
+     * All the new aspects are checked then AspectJ is updated in one pass.
+     * 
+     * @throws NotAnAspect if one of the classes is not an aspect class.
+     * @throws NotAConcreteAspect if one of the aspects is an abstract aspect.
+     * @throws Mock4AjException if another error prevent the aspects to be registered.
+     * @see MultiAspectWeaver
+     */
+    public synchronized void replaceAspects(Class<?>... aspects) {
+        registerDeferredAspects();
+        List<Class<?>> aspectsToRegister = selectUnregisteredAspects(aspects);
+        List<String> aspectsToUnregister = selectAspectsNotIn(aspects);
+        if (!aspectsToRegister.isEmpty() || !aspectsToUnregister.isEmpty()) {
+            checkAspectsAreConcrete(aspectsToRegister);
+            if (!switchToPreparedState(new TreeSet<String>(namesOf(aspects)))) {
+                prepareFreshStateIfNeeded();
+                replaceInAspectJ(aspectsToUnregister, aspectsToRegister);
+                registeredAspects.keySet().removeAll(aspectsToUnregister);
+                addToRegisteredAspects(aspectsToRegister);
+            }
+            aspectsModified();
+        }
+    }
+
+    private List<Class<?>> selectUnregisteredAspects(Class<?>... aspects) {
+        Map<String, Class<?>> unregistered = new LinkedHashMap<String, Class<?>>();
+        for (Class<?> aspect : aspects) {
+            if (!registeredAspects.containsKey(aspect.getName())) {
+                unregistered.put(aspect.getName(), aspect);
+            }
+        }
+        return new ArrayList<Class<?>>(unregistered.values());
+    }
+
+    private List<String> selectAspectsNotIn(Class<?>... aspects) {
+        List<String> aspectsNotIn = new ArrayList<String>(registeredAspects.keySet());
+        for (Class<?> aspect : aspects) {
+            aspectsNotIn.remove(aspect.getName());
+        }
+        return aspectsNotIn;
+    }
+
+    private void checkAspectsAreConcrete(List<Class<?>> aspects) {
+        for (Class<?> aspect : aspects) {
+            checkAspectIsConcrete(aspect);
+        }
+    }
+
+    protected void replaceInAspectJ(List<String> aspectsToUnregister,
+                                    List<Class<?>> aspectsToRegister) {
+        metrics.recordPreparePass();
+        try {
+            ajWeaver.replaceAspects(aspectsToUnregister, namesOf(aspectsToRegister));
+        }
+        catch (Exception e) {
+            for (Class<?> aspect : aspectsToRegister) {
+                if (!ajWeaver.isAspect(aspect)) {
+                    throw new NotAnAspect(aspect); // NOPMD
+                }
+            }
+            throw handleUnknownRegistrationError(aspectsToRegister, e);
+        }
+    }
+
+    private static List<String> namesOf(Class<?>... classes) {
+        return namesOf(Arrays.asList(classes));
+    }
+
+    private static List<String> namesOf(List<Class<?>> classes) {
+        List<String> names = new ArrayList<String>(classes.size());
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getName());
+        }
+        return names;
+    }
+
+    /**
+     * The aspects were accepted by AspectJ: they are recorded as known aspects.
+     */
+    private void addToRegisteredAspects(List<Class<?>> aspects) {
+        for (Class<?> aspect : aspects) {
+            String digest = digestAspectBytecode(aspect);
+            registeredAspects.put(aspect.getName(), digest);
+            if (aspectMetadataCache != null && !UNKNOWN_DIGEST.equals(digest)) {
+                aspectMetadataCache.recordAspect(aspect.getName(), digest);
+            }
+        }
+    }
+
+    /**
+     * @return true if the aspects are registered by restoring a prepared state or if their
+     *         preparation by AspectJ is deferred.
+     */
+    private boolean registerWithoutAspectJ(List<Class<?>> aspects) {
+        return switchToPreparedState(currentAspectsWith(namesOf(aspects)))
+               || deferRegistration(aspects);
+    }
+
+    /**
+     * The registration is deferred only if AspectJ has no prepared aspect yet (or only deferred
+     * ones) and all the aspects are known by the {@link AspectMetadataCache}.
+     */
+    private boolean deferRegistration(List<Class<?>> aspects) {
+        if (aspectMetadataCache == null || persistentCache == null
+            || registeredAspects.size() != deferredAspects.size()) {
+            return false;
+        }
+        Map<String, String> digests = new LinkedHashMap<String, String>();
+        for (Class<?> aspect : aspects) {
+            String digest = digestAspectBytecode(aspect);
+            if (!aspectMetadataCache.isKnownAspect(aspect.getName(), digest)) {
+                return false;
+            }
+            digests.put(aspect.getName(), digest);
+        }
+        for (Class<?> aspect : aspects) {
+            deferredAspects.put(aspect.getName(), aspect);
+        }
+        registeredAspects.putAll(digests);
+        return true;
+    }
+
+    /**
+     * Gives the deferred aspects to AspectJ, all at once. They stay deferred if AspectJ fails.
+     */
+    private void registerDeferredAspects() {
+        if (!deferredAspects.isEmpty()) {
+            prepareFreshStateIfNeeded();
+            replaceInAspectJ(Collections.<String> emptyList(),
+                             new ArrayList<Class<?>>(deferredAspects.values()));
+            deferredAspects.clear();
+        }
+    }
+
     public synchronized void unregisterAspect(Class<?> aspect) {
         final String aspectName = aspect.getName();
-        if (registeredAspects.contains(aspectName)) {
+        if (registeredAspects.containsKey(aspectName)) {
+            if (deferredAspects.remove(aspectName) == null) {
+                unregisterFromAspectJ(aspectName);
+            }
+            else {
+                registeredAspects.remove(aspectName);
+            }
+            aspectsModified();
+        }
+    }
+
+    private void unregisterFromAspectJ(String aspectName) {
+        SortedSet<String> expectedAspects = new TreeSet<String>(registeredAspects.keySet());
+        expectedAspects.remove(aspectName);
+        if (!switchToPreparedState(expectedAspects)) {
+            metrics.recordPreparePass();
             ajWeaver.unregisterAspect(aspectName);
             registeredAspects.remove(aspectName);
         }
     }
 
+    /**
+     * The current world and weaver are kept aside, with their aspects, to be restored if the same
+     * aspects are registered again. The AspectJ weaver itself is reset only when new aspects are
+     * registered and no prepared state matches them.
+     * 
+     * @see Weaver
+     */
     public synchronized void reset() {
-        ajWeaver.reset();
+        memoizeCurrentState();
+        ajWeaver.flushGeneratedClassesCache();
         registeredAspects.clear();
+        deferredAspects.clear();
+        aspectsFingerprint = null;
+        freshStateNeeded = stateModified;
         CompilationAndWeavingContext.resetForThread();
+        metrics.recordReset();
+        updateStateSnapshot();
+    }
+
+    private SortedSet<String> currentAspectsWith(Collection<String> aspectNames) {
+        SortedSet<String> aspects = new TreeSet<String>(registeredAspects.keySet());
+        aspects.addAll(aspectNames);
+        return aspects;
+    }
+
+    private boolean switchToPreparedState(SortedSet<String> expectedAspects) {
+        String key = preparedStateKey(expectedAspects);
+        PreparedAspectSet prepared = preparedStates.get(key);
+        metrics.recordPreparedStateLookup(prepared != null);
+        if (prepared == null) {
+            return false;
+        }
+        preparedStates.remove(key);
+        memoizeCurrentState();
+        ajWeaver.restoreState(prepared.getState());
+        registeredAspects.clear();
+        registeredAspects.putAll(prepared.getAspects());
+        deferredAspects.clear();
+        freshStateNeeded = false;
+        return true;
+    }
+
+    private void memoizeCurrentState() {
+        if (!registeredAspects.isEmpty() && !freshStateNeeded && deferredAspects.isEmpty()) {
+            PreparedWeavingState state = ajWeaver.captureState();
+            if (state != null) {
+                String key = preparedStateKey(registeredAspects.keySet());
+                preparedStates.put(key, new PreparedAspectSet(state, registeredAspects));
+            }
+        }
+    }
+
+    private void prepareFreshStateIfNeeded() {
+        if (freshStateNeeded) {
+            metrics.recordPreparePass();
+            ajWeaver.reset();
+            freshStateNeeded = false;
+            stateModified = false;
+        }
+    }
+
+    private void aspectsModified() {
+        aspectsFingerprint = null;
+        stateModified = true;
+        updateStateSnapshot();
+    }
+
+    /**
+     * The state is read by the metrics without taking the lock of the weaver.
+     */
+    private void updateStateSnapshot() {
+        registeredAspectCount = registeredAspects.size();
+        worldTypeMapSize = ajWeaver.getWorldTypeMapSize();
+    }
+
+    private static String preparedStateKey(Collection<String> aspectNames) {
+        StringBuilder key = new StringBuilder();
+        for (String aspectName : aspectNames) {
+            key.append(aspectName).append(';');
+        }
+        return key.toString();
     }
 
     public synchronized byte[] weaveClassBytes(String className, byte[] bytes) {
+        long start = System.nanoTime();
         try {
-            if (!registeredAspects.isEmpty()) {
-                return ajWeaver.weaveClass(className, bytes);
+            byte[] wovenBytes = bytes;
+            if (!registeredAspects.isEmpty() && !canSkipWeaving(className, bytes)) {
+                wovenBytes = weaveWithCache(className, bytes);
+                updateStateSnapshot();
             }
-            return bytes;
+            metrics.recordWeaving(className, bytes.length, sizeOf(wovenBytes),
+                                  System.nanoTime() - start);
+            return wovenBytes;
         }
         catch (Exception e) {
             throw handleWeavingException(className, e);
         }
     }
 
+    /**
+     * The classes are woven one after the other. Use a {@link PooledAspectJWeaver} to weave them in
+     * parallel.
+     * 
+     * @see BatchWeaver
+     */
+    public synchronized Map<String, WeavingResult> weaveClasses(Map<String, byte[]> classes) {
+        Map<String, WeavingResult> results = new LinkedHashMap<String, WeavingResult>();
+        for (Map.Entry<String, byte[]> clazz : classes.entrySet()) {
+            results.put(clazz.getKey(),
+                        WeavingResult.weave(this, clazz.getKey(), clazz.getValue()));
+        }
+        return results;
+    }
+
+    private static int sizeOf(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    /**
+     * The prefilter needs the aspects prepared by AspectJ: while they are deferred, the caches are
+     * looked up first.
+     */
+    private boolean canSkipWeaving(String className, byte[] bytes) {
+        if (prefilterEnabled && deferredAspects.isEmpty()
+            && ajWeaver.canSkipWeaving(className, bytes)) {
+            skippedClassesCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * On a hit, the generated classes are defined again: the woven class may be defined in another
+     * class loader (another generation scope) than the first time.
+     */
+    private byte[] weaveWithCache(String className, byte[] bytes) throws IOException {
+        String fingerprint = getAspectsFingerprint();
+        WovenClass wovenClass = wovenClassCache.getWovenClass(bytes, fingerprint);
+        metrics.recordWovenClassCacheLookup(wovenClass != null);
+        if (wovenClass == null) {
+            wovenClass = weaveWithPersistentCache(className, bytes, fingerprint);
+            if (wovenClass.getWovenBytes() != null) {
+                wovenClassCache.putWovenClass(bytes, fingerprint, wovenClass);
+            }
+        }
+        else {
+            defineGeneratedClasses(wovenClass);
+        }
+        return wovenClass.getWovenBytes();
+    }
+
+    private WovenClass weaveWithPersistentCache(String className, byte[] bytes, String fingerprint)
+        throws IOException {
+
+        if (persistentCache == null) {
+            return weaveAndCollectGeneratedClasses(className, bytes);
+        }
+        String supertypesDigest = WeavingDependencyDigest.digestSupertypes(ajWeaver
+            .getClassLoader(), bytes);
+        WovenClass wovenClass = persistentCache.load(bytes, fingerprint, supertypesDigest);
+        if (wovenClass == null) {
+            wovenClass = weaveAndCollectGeneratedClasses(className, bytes);
+            persistentCache.store(bytes, fingerprint, supertypesDigest, wovenClass);
+        }
+        else {
+            defineGeneratedClasses(wovenClass);
+        }
+        return wovenClass;
+    }
+
+    private void defineGeneratedClasses(WovenClass wovenClass) {
+        ajWeaver.defineGeneratedClasses(wovenClass.getGeneratedClasses());
+        ajWeaver.drainGeneratedClasses();
+    }
+
+    private WovenClass weaveAndCollectGeneratedClasses(String className, byte[] bytes)
+        throws IOException {
+
+        if (!deferredAspects.isEmpty()) {
+            registerDeferredAspects();
+            if (canSkipWeaving(className, bytes)) {
+                return new WovenClass(bytes, Collections.<String, byte[]> emptyMap());
+            }
+        }
+        ajWeaver.drainGeneratedClasses();
+        byte[] wovenBytes = ajWeaver.weaveClass(className, bytes);
+        Map<String, byte[]> generatedClasses = ajWeaver.drainGeneratedClasses();
+        for (Map.Entry<String, byte[]> generatedClass : generatedClasses.entrySet()) {
+            metrics.recordWeaverGeneratedClass(generatedClass.getKey(),
+                                               generatedClass.getValue().length);
+        }
+        return new WovenClass(wovenBytes, generatedClasses);
+    }
+
+    /**
+     * Only the names are compared (see the {@link WeavingPrefilter}). While the aspects are
+     * deferred, every method could be advised.
+     *
+     * @see AdviceAwareWeaver
+     */
+    public synchronized boolean couldAdvise(Class<?> proxiedClass, Method method) {
+        if (registeredAspects.isEmpty()) {
+            return false;
+        }
+        return !deferredAspects.isEmpty()
+               || ajWeaver.couldAdviseMethod(proxiedClass.getName(), method.getName());
+    }
+
+    /**
+     * @return A fingerprint identifying the set of registered aspects and their bytecode. The same
+     *         set always gives the same fingerprint, whatever the registration order.
+     */
+    public synchronized String getAspectsFingerprint() {
+        if (aspectsFingerprint == null) {
+            aspectsFingerprint = fingerprintOf(registeredAspects);
+        }
+        return aspectsFingerprint;
+    }
+
+    /**
+     * Also used by the {@link PooledAspectJWeaver}: the same aspects give the same fingerprint
+     * with both weavers.
+     * 
+     * @param aspectDigests The bytecode digest of each aspect, by aspect name.
+     */
+    static String fingerprintOf(SortedMap<String, String> aspectDigests) {
+        List<String> aspectDescriptions = new ArrayList<String>(aspectDigests.size());
+        for (Map.Entry<String, String> aspect : aspectDigests.entrySet()) {
+            aspectDescriptions.add(aspect.getKey() + "@" + aspect.getValue());
+        }
+        return BytecodeDigest.digest(aspectDescriptions);
+    }
+
+    /**
+     * The super-aspects and the pointcut holders are digested too: the digest is also a key of the
+     * persistent caches.
+     */
+    static String digestAspectBytecode(Class<?> aspect) {
+        String digest = WeavingDependencyDigest.digestAspect(aspect);
+        if (digest == null) {
+            return UNKNOWN_DIGEST;
+        }
+        return digest;
+    }
+
     protected WeavingError handleWeavingException(String className, Exception cause) {
         // @formatter:off
         final String message = String.format(
@@ -127,4 +645,142 @@ public class AspectJWeaver implements Weaver {
         return new WeavingError(message, cause);
     }
 
+    /**
+     * @return How many classes were returned untouched because no registered aspect could change
+     *         them.
+     * @see WeavingPrefilter
+     */
+    public synchronized long getSkippedClassesCount() {
+        return skippedClassesCount;
+    }
+
+    public synchronized boolean isPrefilterEnabled() {
+        return prefilterEnabled;
+    }
+
+    /**
+     * Enables or disables the cheap pre-pass that avoids weaving classes that no aspect could
+     * change. It is enabled by default.
+     */
+    public synchronized void setPrefilterEnabled(boolean prefilterEnabled) {
+        this.prefilterEnabled = prefilterEnabled;
+    }
+
+    public int getRegisteredAspectCount() {
+        return registeredAspectCount;
+    }
+
+    /**
+     * @return The number of types known by the AspectJ world after the last registration, reset or
+     *         weaving.
+     */
+    public int getWorldTypeMapSize() {
+        return worldTypeMapSize;
+    }
+
+    public WeavingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets where the weaving is measured. By default, it is the {@link WeavingMetrics#getDefault()
+     * shared metrics} published through JMX. The weaver is not added as a source of the metrics.
+     */
+    public void setMetrics(WeavingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public WeavingVerbosity getVerbosity() {
+        return ajWeaver.getWeavingMessageHandler().getVerbosity();
+    }
+
+    /**
+     * Sets which messages of the AspectJ weaver are delivered to the message sink. The default is
+     * {@link WeavingVerbosity#WARNINGS}.
+     */
+    public void setVerbosity(WeavingVerbosity verbosity) {
+        ajWeaver.getWeavingMessageHandler().setVerbosity(verbosity);
+    }
+
+    public WeavingMessageSink getMessageSink() {
+        return ajWeaver.getWeavingMessageHandler().getSink();
+    }
+
+    /**
+     * Sets where the messages of the AspectJ weaver are delivered. There is no sink by default:
+     * the messages are then never built.
+     */
+    public void setMessageSink(WeavingMessageSink messageSink) {
+        ajWeaver.getWeavingMessageHandler().setSink(messageSink);
+    }
+
+    public synchronized PersistentWovenClassCache getPersistentCache() {
+        return persistentCache;
+    }
+
+    /**
+     * Sets the cache used to share woven classes between JVM runs. Null disables it.
+     */
+    public synchronized void setPersistentCache(PersistentWovenClassCache persistentCache) {
+        this.persistentCache = persistentCache;
+    }
+
+    public synchronized AspectMetadataCache getAspectMetadataCache() {
+        return aspectMetadataCache;
+    }
+
+    /**
+     * Sets where the aspects accepted by AspectJ are recorded. Null disables the deferred
+     * registration of the known aspects. It is only used with a persistent cache of woven classes.
+     */
+    public synchronized void setAspectMetadataCache(AspectMetadataCache aspectMetadataCache) {
+        this.aspectMetadataCache = aspectMetadataCache;
+    }
+
+    public synchronized int getMaxPreparedStates() {
+        return preparedStates.getMaxEntries();
+    }
+
+    /**
+     * Sets how many prepared worlds (one per set of aspects) are kept between resets. Each one
+     * holds a complete AspectJ world so it should stay small. 0 disables the memoization.
+     */
+    public synchronized void setMaxPreparedStates(int maxPreparedStates) {
+        preparedStates = new BoundedLruCache<String, PreparedAspectSet>(maxPreparedStates);
+    }
+
+    public synchronized WovenClassCache getWovenClassCache() {
+        return wovenClassCache;
+    }
+
+    /**
+     * Replaces the cache of woven classes (to change its size for example). Use a
+     * {@link WovenClassCache} with a size of 0 to disable the caching.
+     */
+    public synchronized void setWovenClassCache(WovenClassCache wovenClassCache) {
+        this.wovenClassCache = wovenClassCache;
+    }
+
+    /**
+     * A prepared state and the aspects (with their bytecode digest) it was prepared for.
+     */
+    private static class PreparedAspectSet {
+
+        private final PreparedWeavingState state;
+        private final SortedMap<String, String> aspects;
+
+        public PreparedAspectSet(PreparedWeavingState state, SortedMap<String, String> aspects) {
+            this.state = state;
+            this.aspects = new TreeMap<String, String>(aspects);
+        }
+
+        public PreparedWeavingState getState() {
+            return state;
+        }
+
+        public SortedMap<String, String> getAspects() {
+            return aspects;
+        }
+    }
+
 }
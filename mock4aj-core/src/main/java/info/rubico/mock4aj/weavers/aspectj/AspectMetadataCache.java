@@ -0,0 +1,167 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import info.rubico.mock4aj.api.exceptions.Mock4AjException;
+import info.rubico.mock4aj.internal.classutils.BytecodeDigest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.aspectj.bridge.Version;
+
+/**
+ * <p>
+ * Persistent record of the aspects already accepted by the AspectJ weaver, stored in a directory.
+ * It allows an {@link AspectJWeaver} to register a known aspect without preparing AspectJ at all:
+ * the preparation is deferred until a class really has to be woven (not found in the
+ * {@link PersistentWovenClassCache}).
+ * </p>
+ * <p>
+ * An entry is keyed by the aspect name, the digest of its bytecode and the AspectJ version. It is
+ * written the first time the aspect is successfully registered. A build step can produce the
+ * entries by registering the aspects once with a weaver using the same directory.
+ * </p>
+ * <p>
+ * Like the {@link PersistentWovenClassCache}, the entries are written to a temporary file and then
+ * atomically renamed so many JVMs can share the same directory. A corrupted or unreadable entry is
+ * considered as unknown and errors when storing are ignored.
+ * </p>
+ * <p>
+ * The cache is opt-in. It is enabled with the persistent cache of woven classes, in the
+ * {@value #SUBDIRECTORY} subdirectory of the directory set by the
+ * {@value PersistentWovenClassCache#DIRECTORY_PROPERTY} system property.
+ * </p>
+ */
+public class AspectMetadataCache {
+
+    public static final String SUBDIRECTORY = "aspects";
+
+    private static final int FORMAT_MAGIC = 0x4D344A41; // M4JA
+    private static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_SUFFIX = ".aspect";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+
+    private long hitCount;
+    private long missCount;
+
+    public AspectMetadataCache(final File directory) {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new Mock4AjException("Unable to create the aspect metadata cache directory: "
+                                       + directory);
+        }
+    }
+
+    /**
+     * @return A cache in the directory configured by the
+     *         {@value PersistentWovenClassCache#DIRECTORY_PROPERTY} system property or null if the
+     *         property is not set.
+     */
+    public static AspectMetadataCache fromSystemProperties() {
+        String directory = System.getProperty(PersistentWovenClassCache.DIRECTORY_PROPERTY);
+        if (directory == null || directory.trim().length() == 0) {
+            return null;
+        }
+        return new AspectMetadataCache(new File(directory, SUBDIRECTORY));
+    }
+
+    /**
+     * @return true if this exact aspect was already accepted by this version of AspectJ.
+     */
+    public boolean isKnownAspect(final String aspectName, final String bytecodeDigest) {
+        File entry = entryFile(aspectName, bytecodeDigest);
+        boolean known = entry.isFile() && readEntry(entry, aspectName, bytecodeDigest);
+        countLookup(known);
+        return known;
+    }
+
+    /**
+     * Records an aspect accepted by the AspectJ weaver.
+     */
+    public void recordAspect(final String aspectName, final String bytecodeDigest) {
+        File entry = entryFile(aspectName, bytecodeDigest);
+        if (entry.isFile()) {
+            return;
+        }
+        try {
+            File tempFile = File.createTempFile(entry.getName(), TEMP_SUFFIX, directory);
+            writeEntry(tempFile, aspectName, bytecodeDigest);
+            if (!tempFile.renameTo(entry)) {
+                tempFile.delete(); // Already recorded by someone else
+            }
+        }
+        catch (IOException error) { // NOPMD
+            // Only an optimization: the aspect will be prepared at its registration.
+        }
+    }
+
+    protected File entryFile(final String aspectName, final String bytecodeDigest) {
+        String key = BytecodeDigest.digest(aspectName, bytecodeDigest, Version.text);
+        return new File(directory, key + ENTRY_SUFFIX);
+    }
+
+    private boolean readEntry(final File entry, final String aspectName,
+                              final String bytecodeDigest) {
+        try {
+            DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(entry)));
+            try {
+                return input.readInt() == FORMAT_MAGIC && input.readInt() == FORMAT_VERSION
+                       && Version.text.equals(input.readUTF())
+                       && aspectName.equals(input.readUTF())
+                       && bytecodeDigest.equals(input.readUTF());
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch (IOException error) {
+            return false;
+        }
+    }
+
+    private void writeEntry(final File file, final String aspectName,
+                            final String bytecodeDigest) throws IOException {
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(FORMAT_MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(Version.text);
+            output.writeUTF(aspectName);
+            output.writeUTF(bytecodeDigest);
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    private synchronized void countLookup(final boolean hit) {
+        if (hit) {
+            hitCount++;
+        }
+        else {
+            missCount++;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+}
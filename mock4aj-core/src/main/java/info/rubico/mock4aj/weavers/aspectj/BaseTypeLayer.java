@@ -0,0 +1,224 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.aspectj.apache.bcel.classfile.JavaClass;
+import org.aspectj.bridge.AbortException;
+import org.aspectj.bridge.IMessage;
+import org.aspectj.bridge.IMessage.Kind;
+import org.aspectj.bridge.IMessageHandler;
+import org.aspectj.util.LangUtil;
+import org.aspectj.weaver.ReferenceType;
+import org.aspectj.weaver.ReferenceTypeDelegate;
+import org.aspectj.weaver.ResolvedType;
+import org.aspectj.weaver.UnresolvedType;
+import org.aspectj.weaver.bcel.BcelObjectType;
+import org.aspectj.weaver.bcel.BcelWorld;
+
+/**
+ * <p>
+ * A read-only layer of JDK and library types shared by all the {@link DynamicRuntimeWorld} of a
+ * class loader.
+ * </p>
+ * <p>
+ * Those types never change and never contain aspects. Their class files are read and parsed once
+ * by a base world and given to every world (and every reset) that needs them, instead of being read
+ * and parsed again. Each world builds its own delegate from the parsed class so its types only
+ * refer to types of the same world. Only the types of the aspects, the woven classes and the
+ * application are read by each world.
+ * </p>
+ * <p>
+ * The base types are recognised by their package ({@code java}, {@code javax}, {@code sun}, cglib
+ * and Objenesis). Other prefixes can be added with the {@value #PREFIXES_PROPERTY} system property
+ * (comma-separated). Lookups are serialised and the parsed classes are fully read by a delegate of
+ * the base world before being shared. The layer is used unless the {@value #ENABLED_PROPERTY}
+ * system property is {@code false}.
+ * </p>
+ */
+public class BaseTypeLayer {
+
+    public static final String ENABLED_PROPERTY = "mock4aj.weaving.sharedBaseTypes";
+    public static final String PREFIXES_PROPERTY = "mock4aj.weaving.baseTypePrefixes";
+
+    private static final String[] DEFAULT_PREFIXES = { "java.", "javax.", "sun.", "net.sf.cglib.",
+                                                      "org.objenesis." };
+
+    private static final String GENERATED_TYPE_MARKER = "$$";
+
+    private static final Map<ClassLoader, SoftReference<BaseTypeLayer>> LAYERS =
+            new WeakHashMap<ClassLoader, SoftReference<BaseTypeLayer>>();
+
+    private final BcelWorld world;
+    private final String[] prefixes;
+    private long sharedTypesCount;
+
+    BaseTypeLayer(final BcelWorld world, final String... prefixes) {
+        this.world = world;
+        this.prefixes = prefixes.clone();
+    }
+
+    /**
+     * @return The layer of the class loader or null if the shared base types are disabled.
+     */
+    public static BaseTypeLayer forClassLoaderIfEnabled(final ClassLoader loader) {
+        if (Boolean.valueOf(System.getProperty(ENABLED_PROPERTY, "true"))) {
+            return forClassLoader(loader);
+        }
+        return null;
+    }
+
+    /**
+     * @return The layer of the class loader. It is created the first time.
+     */
+    public static BaseTypeLayer forClassLoader(final ClassLoader loader) {
+        synchronized (LAYERS) {
+            SoftReference<BaseTypeLayer> reference = LAYERS.get(loader);
+            BaseTypeLayer layer = null;
+            if (reference != null) {
+                layer = reference.get();
+            }
+            if (layer == null) {
+                layer = new BaseTypeLayer(createBaseWorld(loader), configuredPrefixes());
+                LAYERS.put(loader, new SoftReference<BaseTypeLayer>(layer));
+            }
+            return layer;
+        }
+    }
+
+    private static BcelWorld createBaseWorld(final ClassLoader loader) {
+        BcelWorld baseWorld = new BcelWorld(loader, new IgnoringMessageHandler(), null);
+        baseWorld.setBehaveInJava5Way(LangUtil.is15VMOrGreater());
+        baseWorld.getLint().setAll("ignore");
+        return baseWorld;
+    }
+
+    private static String[] configuredPrefixes() {
+        String additionalPrefixes = System.getProperty(PREFIXES_PROPERTY, "").trim();
+        if (additionalPrefixes.length() == 0) {
+            return DEFAULT_PREFIXES;
+        }
+        String[] additional = additionalPrefixes.split("\\s*,\\s*");
+        String[] all = new String[DEFAULT_PREFIXES.length + additional.length];
+        System.arraycopy(DEFAULT_PREFIXES, 0, all, 0, DEFAULT_PREFIXES.length);
+        System.arraycopy(additional, 0, all, DEFAULT_PREFIXES.length, additional.length);
+        return all;
+    }
+
+    public boolean isBaseType(final String typeName) {
+        if (typeName.contains(GENERATED_TYPE_MARKER)) {
+            return false;
+        }
+        for (String prefix : prefixes) {
+            if (typeName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The parsed class file of a base type or null if the type is unknown or cannot be read
+     *         by the base world.
+     */
+    public synchronized JavaClass findJavaClass(final String typeName) {
+        ResolvedType type = resolve(typeName);
+        if (type == null || type.isMissing() || !(type instanceof ReferenceType)) {
+            return null;
+        }
+        ReferenceTypeDelegate delegate = ((ReferenceType) type).getDelegate();
+        if (!(delegate instanceof BcelObjectType) || !isReadable(delegate)) {
+            return null;
+        }
+        JavaClass javaClass = ((BcelObjectType) delegate).getJavaClass();
+        if (javaClass != null) {
+            sharedTypesCount++;
+        }
+        return javaClass;
+    }
+
+    /**
+     * Resolves base types before a world needs them. The types that cannot be read by the base
+     * world are ignored: they will be resolved by each world.
+     */
+    public synchronized void preload(final String... typeNames) {
+        for (String typeName : typeNames) {
+            ResolvedType type = resolve(typeName);
+            if (type instanceof ReferenceType && !type.isMissing()) {
+                ReferenceTypeDelegate delegate = ((ReferenceType) type).getDelegate();
+                if (delegate != null) {
+                    isReadable(delegate);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the delegate cannot be fully read, like the JDK classes newer than the BCEL
+     *         of AspectJ.
+     */
+    private boolean isReadable(final ReferenceTypeDelegate delegate) {
+        try {
+            initialiseDelegate(delegate);
+            return true;
+        }
+        catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private ResolvedType resolve(final String typeName) {
+        try {
+            return world.resolve(UnresolvedType.forName(typeName), true);
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Delegates lazily read their members from the parsed class, which caches some of them.
+     * Everything is read while holding the lock so the parsed class is not modified anymore when it
+     * is shared.
+     */
+    private void initialiseDelegate(final ReferenceTypeDelegate delegate) {
+        delegate.getSuperclass();
+        delegate.getDeclaredInterfaces();
+        delegate.getDeclaredMethods();
+        delegate.getDeclaredFields();
+        delegate.getDeclaredPointcuts();
+        delegate.getAnnotationTypes();
+        delegate.getTypeVariables();
+    }
+
+    /**
+     * @return How many times a parsed class was shared with a world.
+     */
+    public synchronized long getSharedTypesCount() {
+        return sharedTypesCount;
+    }
+
+    /**
+     * The base world has nothing to report: types that cannot be resolved are simply not shared.
+     */
+    private static class IgnoringMessageHandler implements IMessageHandler {
+
+        public boolean handleMessage(final IMessage message) throws AbortException {
+            return true;
+        }
+
+        public boolean isIgnoring(final Kind kind) {
+            return true;
+        }
+
+        public void dontIgnore(final Kind kind) {
+            // Everything is ignored
+        }
+
+        public void ignore(final Kind kind) {
+            // Everything is already ignored
+        }
+    }
+
+}
@@ -9,14 +9,23 @@
  *******************************************************************************/
 package info.rubico.mock4aj.weavers.aspectj;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
+import info.rubico.mock4aj.internal.classutils.ClassDefiner;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.aspectj.bridge.IMessage;
-import org.aspectj.bridge.IMessageHandler;
+import org.aspectj.bridge.IMessage.Kind;
+import org.aspectj.bridge.Message;
 import org.aspectj.util.LangUtil;
 import org.aspectj.weaver.ResolvedType;
+import org.aspectj.weaver.UnresolvedType;
+import org.aspectj.weaver.World.TypeMap;
 import org.aspectj.weaver.bcel.BcelWeakClassLoaderReference;
 import org.aspectj.weaver.bcel.BcelWeaver;
 import org.aspectj.weaver.loadtime.DefaultWeavingContext;
@@ -72,6 +81,15 @@ public class DynamicRuntimeWeavingAdaptor extends WeavingAdaptor { // NOPMD
 
     private final ClassLoader classLoader;
 
+    private Map<String, byte[]> recentlyGeneratedClasses = new LinkedHashMap<String, byte[]>();
+
+    private final WeavingPrefilter weavingPrefilter = new WeavingPrefilter();
+
+    private final WeavingMessageHandler messageHandler = new WeavingMessageHandler();
+
+    private int maxReflectionTypes = DynamicRuntimeWorld.DEFAULT_MAX_REFLECTION_TYPES;
+    private BaseTypeLayer baseTypeLayer;
+
     public DynamicRuntimeWeavingAdaptor(final ClassLoader classLoader) {
         super();
 
@@ -92,6 +110,7 @@ public class DynamicRuntimeWeavingAdaptor extends WeavingAdaptor { // NOPMD
 
         initMessageHandler();
         weavingContext = new DefaultWeavingContext(classLoader);
+        baseTypeLayer = BaseTypeLayer.forClassLoaderIfEnabled(classLoader);
         generatedClassHandler = new SimpleGeneratedClassHandler(classLoader);
         initWorld();
         initWeaver();
@@ -104,21 +123,22 @@ public class DynamicRuntimeWeavingAdaptor extends WeavingAdaptor { // NOPMD
         }
     }
 
+    /**
+     * The messages of the adaptor, the world and the weaver all go to the
+     * {@link WeavingMessageHandler}. The message holder of the {@link WeavingAdaptor} only
+     * delegates to it.
+     */
     protected void initMessageHandler() {
         super.createMessageHandler();
-
-        IMessageHandler messageHandler = getMessageHandler();
-        // TODO Configure verbosity
-        messageHandler.dontIgnore(IMessage.INFO); // VERBOSE
-        messageHandler.dontIgnore(IMessage.DEBUG);
-        messageHandler.dontIgnore(IMessage.WEAVEINFO);
+        setMessageHandler(messageHandler);
     }
 
     protected void initWorld() {
         bcelWorld = new DynamicRuntimeWorld(classLoader, weavingContext,
-                                            getMessageHandler(), null);
+                                            messageHandler, null, maxReflectionTypes);
+        ((DynamicRuntimeWorld) bcelWorld).setBaseTypeLayer(baseTypeLayer);
 
-        bcelWorld.setMessageHandler(getMessageHandler());
+        bcelWorld.setMessageHandler(messageHandler);
         bcelWorld.setTiming(false, true);
         bcelWorld.setBehaveInJava5Way(LangUtil.is15VMOrGreater());
 
@@ -138,7 +158,7 @@ public class DynamicRuntimeWeavingAdaptor extends WeavingAdaptor { // NOPMD
 
     /**
      * When a class is generated (weaved), this simple handler will simply define the class in the
-     * Class Loader.
+     * Class Loader (or in the one of the current {@link GenerationScope}, next to the woven class).
      * 
      * <p>
      * <em>ADAPTED from {@link org.aspectj.weaver.loadtime.ClassLoaderWeavingAdaptor} </em>. We
@@ -153,41 +173,83 @@ public class DynamicRuntimeWeavingAdaptor extends WeavingAdaptor { // NOPMD
         }
 
         public void acceptClass(final String name, final byte[] bytes) {
-            defineClass(loaderRef.getClassLoader(), name, bytes);
+            recordGeneratedClass(name, bytes);
+            defineClass(GenerationScope.classLoaderFor(loaderRef.getClassLoader()), name, bytes);
         }
     }
 
-    // CHECKSTYLE:OFF -----
+    /**
+     * Once woven, the generated class and its closures are evicted from the world. The
+     * {@code generatedClasses} of AspectJ are flushed too: the closures are already defined (see
+     * {@link #drainGeneratedClasses()}) and a class woven again later under the same name (in
+     * another generation scope) must not be mistaken for a closure and left unwoven.
+     */
+    @Override
+    public synchronized byte[] weaveClass(final String name, final byte[] bytes,
+                                          final boolean mustWeave) throws IOException {
+        byte[] wovenBytes;
+        try {
+            wovenBytes = super.weaveClass(name, bytes, mustWeave);
+        }
+        finally {
+            flushGeneratedClassesCache();
+        }
+        if (bcelWorld instanceof DynamicRuntimeWorld) {
+            DynamicRuntimeWorld world = (DynamicRuntimeWorld) bcelWorld;
+            world.evictGeneratedTypes(Collections.singleton(name));
+            world.evictGeneratedTypes(recentlyGeneratedClasses.keySet());
+        }
+        return wovenBytes;
+    }
+
+    private synchronized void recordGeneratedClass(final String name, final byte[] bytes) {
+        recentlyGeneratedClasses.put(name, bytes);
+    }
+
+    /**
+     * @return The classes generated by the weaver (like closures for around advices) since the last
+     *         call. The record is cleared.
+     */
+    public synchronized Map<String, byte[]> drainGeneratedClasses() {
+        Map<String, byte[]> generated = recentlyGeneratedClasses;
+        recentlyGeneratedClasses = new LinkedHashMap<String, byte[]>();
+        return generated;
+    }
+
+    /**
+     * Defines classes that were generated by a previous weaving (possibly in another JVM), exactly
+     * like if they were just generated.
+     */
+    public synchronized void defineGeneratedClasses(final Map<String, byte[]> classes) {
+        for (Map.Entry<String, byte[]> generatedClass : classes.entrySet()) {
+            generatedClassHandler.acceptClass(generatedClass.getKey(), generatedClass.getValue());
+        }
+    }
 
     /**
      * Define/Load the class into the ClassLoader.
      * 
      * <p>
-     * <em>COPIED from {@link org.aspectj.weaver.loadtime.ClassLoaderWeavingAdaptor}.</em> We don't
-     * want the complete behaviour and unfortunately, the method is not reusable.
+     * Based on {@link org.aspectj.weaver.loadtime.ClassLoaderWeavingAdaptor} but the definition is
+     * done by the {@link ClassDefiner} which looks up the protected {@code defineClass} only once.
      * </p>
      */
     private void defineClass(final ClassLoader loader, final String name, final byte[] bytes) {
-
         if (trace.isTraceEnabled()) {
             trace.enter("defineClass", this, new Object[] { loader, name, bytes });
         }
-        debug("generating class '" + name + "'");
+        if (isReporting(IMessage.DEBUG)) {
+            debug("generating class '" + name + "'");
+        }
 
-        Object clazz = null;
+        Class<?> clazz = null;
         try {
-            Class[] defineClassParams = { String.class, bytes.getClass(), int.class, int.class };
-            Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass",
-                                                                     defineClassParams);
-            defineClass.setAccessible(true);
-            clazz = defineClass.invoke(loader, new Object[] { name, bytes,
-                                                             Integer.valueOf(0),
-                                                             Integer.valueOf(bytes.length) });
-        }
-        catch (InvocationTargetException e) {
-            warn("define generated class failed", e.getTargetException());
-        }
-        catch (Exception e) {
+            clazz = ClassDefiner.defineClass(loader, name, bytes);
+        }
+        catch (LinkageError e) {
+            warn("define generated class failed", e);
+        }
+        catch (RuntimeException e) {
             warn("define generated class failed", e);
         }
 
@@ -196,8 +258,6 @@ public class DynamicRuntimeWeavingAdaptor extends WeavingAdaptor { // NOPMD
         }
     }
 
-    // CHECKSTYLE:ON -----
-
     @Override
     public String getContextId() {
         if (weavingContext != null) {
@@ -215,26 +275,208 @@ public class DynamicRuntimeWeavingAdaptor extends WeavingAdaptor { // NOPMD
     }
 
     public synchronized void registerAspect(final String aspectClassName) {
-        info("register aspect " + aspectClassName);
+        reportAspect("register aspect ", aspectClassName);
         weaver.addLibraryAspect(aspectClassName);
         weaver.prepareForWeave();
     }
 
+    /**
+     * Register all the aspects and prepare the weaver only once.
+     */
+    public synchronized void registerAspects(final Collection<String> aspectClassNames) {
+        replaceAspects(Collections.<String> emptyList(), aspectClassNames);
+    }
+
+    /**
+     * Unregister and register aspects then prepare the weaver only once for all the changes.
+     */
+    public synchronized void replaceAspects(final Collection<String> aspectsToUnregister,
+                                            final Collection<String> aspectsToRegister) {
+        for (String aspectClassName : aspectsToUnregister) {
+            reportAspect("unregister aspect ", aspectClassName);
+            weaver.deleteClassFile(aspectClassName);
+        }
+        for (String aspectClassName : aspectsToRegister) {
+            reportAspect("register aspect ", aspectClassName);
+            weaver.addLibraryAspect(aspectClassName);
+        }
+        weaver.prepareForWeave();
+    }
+
+    private void reportAspect(final String action, final String aspectClassName) {
+        if (isReporting(IMessage.INFO)) {
+            info(action + aspectClassName);
+        }
+    }
+
     public synchronized void unregisterAspect(final String aspectClassName) {
-        info("unregister aspect " + aspectClassName);
+        reportAspect("unregister aspect ", aspectClassName);
         weaver.deleteClassFile(aspectClassName);
         weaver.prepareForWeave();
     }
 
+    /**
+     * @return true if none of the registered aspects could change the class.
+     * @see WeavingPrefilter
+     */
+    public synchronized boolean canSkipWeaving(final String className, final byte[] bytes) {
+        return weavingPrefilter.canSkipWeaving(bcelWorld.getCrosscuttingMembersSet(), className,
+                                               bytes);
+    }
+
+    /**
+     * @return false if none of the registered aspects could advise a method with this name.
+     * @see WeavingPrefilter
+     */
+    public synchronized boolean couldAdviseMethod(final String className,
+                                                  final String methodName) {
+        return weavingPrefilter.couldAdviseMethod(bcelWorld.getCrosscuttingMembersSet(),
+                                                  className, methodName);
+    }
+
+    /**
+     * Resolves types before they are needed by a weaving: the JDK and library types are parsed by
+     * the {@link BaseTypeLayer} (kept after a reset), the others are resolved in the current world.
+     * The types that cannot be resolved are ignored.
+     */
+    public synchronized void preResolveTypes(final String... typeNames) {
+        for (String typeName : typeNames) {
+            if (baseTypeLayer != null && baseTypeLayer.isBaseType(typeName)) {
+                baseTypeLayer.preload(typeName);
+            }
+            else {
+                resolveIgnoringErrors(typeName);
+            }
+        }
+    }
+
+    private void resolveIgnoringErrors(final String typeName) {
+        try {
+            bcelWorld.resolve(UnresolvedType.forName(typeName), true);
+        }
+        catch (RuntimeException e) {
+            warn("unable to resolve " + typeName, e);
+        }
+    }
+
     public boolean isAspect(final Class<?> clazz) {
         ResolvedType type = bcelWorld.resolve(clazz.getName());
         return type.isAspect();
     }
 
+    /**
+     * @return true if a message of this kind would be delivered. Messages that are not reported
+     *         should not even be built.
+     */
+    protected boolean isReporting(final Kind kind) {
+        return !messageHandler.isIgnoring(kind);
+    }
+
+    @Override
+    protected boolean debug(final String message) {
+        return report(IMessage.DEBUG, message, null);
+    }
+
+    @Override
+    protected boolean info(final String message) {
+        return report(IMessage.INFO, message, null);
+    }
+
+    @Override
+    protected boolean warn(final String message) {
+        return report(IMessage.WARNING, message, null);
+    }
+
+    @Override
+    protected boolean warn(final String message, final Throwable thrown) {
+        return report(IMessage.WARNING, message, thrown);
+    }
+
+    @Override
+    protected boolean error(final String message) {
+        return report(IMessage.ERROR, message, null);
+    }
+
+    @Override
+    protected boolean error(final String message, final Throwable thrown) {
+        return report(IMessage.ERROR, message, thrown);
+    }
+
+    private boolean report(final Kind kind, final String message, final Throwable thrown) {
+        if (!isReporting(kind)) {
+            return false;
+        }
+        return messageHandler.handleMessage(new Message(message, kind, thrown, null));
+    }
+
+    /**
+     * @return The handler of the messages of the weaving. Its verbosity and sink can be changed at
+     *         any time.
+     */
+    public WeavingMessageHandler getWeavingMessageHandler() {
+        return messageHandler;
+    }
+
+    /**
+     * @return The class loader used to resolve the aspects and the woven types.
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * @return How many types are in the current world (the expendable ones included).
+     */
+    public synchronized int getWorldTypeMapSize() {
+        if (bcelWorld == null) {
+            return 0;
+        }
+        TypeMap typeMap = bcelWorld.getTypeMap();
+        return typeMap.getMainMap().size() + typeMap.getExpendableMap().size();
+    }
+
+    public synchronized int getMaxReflectionTypes() {
+        return maxReflectionTypes;
+    }
+
+    /**
+     * Sets how many types resolved by reflection are kept in the world (0 for no limit). It is
+     * applied to the worlds created after the call (at the next reset).
+     */
+    public synchronized void setMaxReflectionTypes(final int maxReflectionTypes) {
+        this.maxReflectionTypes = maxReflectionTypes;
+    }
+
+    /**
+     * Rebuilds the world and the weaver. The message handler and the class loader are kept.
+     */
     public synchronized void reset() {
+        if (!initialized) {
+            initialize();
+            return;
+        }
         info("reset wevaing adapter");
         flushGeneratedClassesCache();
-        initialized = false;
-        initialize();
+        initWorld();
+        initWeaver();
+    }
+
+    /**
+     * @return The current world and weaver. After this call, the state must be used by this
+     *         adaptor only if it is restored or until the next reset.
+     * @see #restoreState(PreparedWeavingState)
+     */
+    public synchronized PreparedWeavingState captureState() {
+        return new PreparedWeavingState(bcelWorld, weaver);
+    }
+
+    /**
+     * Replaces the current world and weaver by a previously captured state. The generated classes
+     * are not part of a state: they are forgotten.
+     */
+    public synchronized void restoreState(final PreparedWeavingState state) {
+        bcelWorld = state.getWorld();
+        weaver = state.getWeaver();
+        flushGeneratedClassesCache();
     }
 }
\ No newline at end of file
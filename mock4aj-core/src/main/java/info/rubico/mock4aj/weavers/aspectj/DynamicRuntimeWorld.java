@@ -1,9 +1,16 @@
 package info.rubico.mock4aj.weavers.aspectj;
 
+import info.rubico.mock4aj.internal.cache.BoundedLruCache;
+
+import java.util.Collection;
+
+import org.aspectj.apache.bcel.classfile.JavaClass;
 import org.aspectj.bridge.IMessageHandler;
 import org.aspectj.weaver.ICrossReferenceHandler;
 import org.aspectj.weaver.ReferenceType;
 import org.aspectj.weaver.ReferenceTypeDelegate;
+import org.aspectj.weaver.ResolvedType;
+import org.aspectj.weaver.UnresolvedType;
 import org.aspectj.weaver.loadtime.IWeavingContext;
 import org.aspectj.weaver.ltw.LTWWorld;
 import org.aspectj.weaver.reflect.ReflectionBasedReferenceTypeDelegateFactory;
@@ -14,7 +21,18 @@ import org.aspectj.weaver.reflect.ReflectionBasedReferenceTypeDelegateFactory;
  * difference with the {@link LTWWorld} is that it if a type is not in the AspectJ world (unknown by
  * the weaver), it will <strong>try to find the type using Java Reflection</strong>.
  * </p>
- * 
+ *
+ * <p>
+ * Types resolved by reflection keep their class alive. To avoid an always growing world, only the
+ * last used ones are kept (see {@link #DEFAULT_MAX_REFLECTION_TYPES}) and generated types
+ * (proxies, callers, closures...) can be evicted once they have been woven.
+ * </p>
+ *
+ * <p>
+ * If a {@link BaseTypeLayer} is set, the class files of the JDK and library types are taken from it
+ * instead of being read and parsed again by each world.
+ * </p>
+ *
  * <p>
  * Note: Because of the AspecTJ architecture some code had to be copied because it was not possible
  * at that time to reuse it without importing undesirable behaviours. For now, we don't want to have
@@ -24,23 +42,122 @@ import org.aspectj.weaver.reflect.ReflectionBasedReferenceTypeDelegateFactory;
  */
 public class DynamicRuntimeWorld extends LTWWorld {
 
+    public static final int DEFAULT_MAX_REFLECTION_TYPES = 2048;
+
+    private static final String GENERATED_TYPE_MARKER = "$$";
+
+    private final BoundedLruCache<String, Boolean> reflectionResolvedTypes;
+    private long evictedTypesCount;
+    private BaseTypeLayer baseTypeLayer;
+
     public DynamicRuntimeWorld(final ClassLoader loader,
                                final IWeavingContext weavingContext,
                                final IMessageHandler handler,
                                final ICrossReferenceHandler xrefHandler)
+    {
+        this(loader, weavingContext, handler, xrefHandler, DEFAULT_MAX_REFLECTION_TYPES);
+    }
+
+    /**
+     * @param maxReflectionTypes How many types resolved by reflection are kept in the world. 0
+     *            means no limit.
+     */
+    public DynamicRuntimeWorld(final ClassLoader loader,
+                               final IWeavingContext weavingContext,
+                               final IMessageHandler handler,
+                               final ICrossReferenceHandler xrefHandler,
+                               final int maxReflectionTypes)
     {
         super(loader, weavingContext, handler, xrefHandler);
+        reflectionResolvedTypes = new BoundedLruCache<String, Boolean>(maxReflectionTypes) {
+            @Override
+            protected void onEviction(final String signature, final Boolean value) {
+                evictType(signature);
+            }
+        };
     }
 
     @Override
     protected ReferenceTypeDelegate resolveDelegate(ReferenceType ty) { // NOPMD
+        ReferenceTypeDelegate sharedDelegate = buildSharedDelegate(ty);
+        if (sharedDelegate != null) {
+            return sharedDelegate;
+        }
         ReferenceTypeDelegate bcelDelegate = super.resolveDelegate(ty);
         if (bcelDelegate != null) {
             return bcelDelegate;
         }
-        return ReflectionBasedReferenceTypeDelegateFactory.createDelegate(ty,
-                                                                          this,
-                                                                          getClassLoader());
+        ReferenceTypeDelegate reflectionDelegate =
+                ReflectionBasedReferenceTypeDelegateFactory.createDelegate(ty,
+                                                                           this,
+                                                                           getClassLoader());
+        if (reflectionDelegate != null) {
+            recordReflectionResolvedType(ty.getSignature());
+        }
+        return reflectionDelegate;
+    }
+
+    /**
+     * The parsed class is shared but the delegate belongs to this world.
+     */
+    private ReferenceTypeDelegate buildSharedDelegate(final ReferenceType type) {
+        if (baseTypeLayer != null && baseTypeLayer.isBaseType(type.getName())) {
+            JavaClass javaClass = baseTypeLayer.findJavaClass(type.getName());
+            if (javaClass != null) {
+                return buildBcelDelegate(type, javaClass, false, false);
+            }
+        }
+        return null;
+    }
+
+    protected void recordReflectionResolvedType(final String signature) {
+        reflectionResolvedTypes.put(signature, Boolean.TRUE);
+    }
+
+    /**
+     * Removes the generated types (with a {@code $$} in their name) from the world. They will be
+     * resolved again (by reflection) if they are needed later.
+     */
+    public void evictGeneratedTypes(final Collection<String> classNames) {
+        for (String className : classNames) {
+            if (className.contains(GENERATED_TYPE_MARKER)) {
+                String signature = UnresolvedType.forName(className.replace('/', '.'))
+                                                 .getSignature();
+                reflectionResolvedTypes.remove(signature);
+                evictType(signature);
+            }
+        }
+    }
+
+    /**
+     * Aspects are never evicted since the weaver needs them.
+     */
+    private void evictType(final String signature) {
+        ResolvedType type = getTypeMap().get(signature);
+        if (type != null && !type.isAspect()) {
+            getTypeMap().remove(signature);
+            evictedTypesCount++;
+        }
+    }
+
+    public BaseTypeLayer getBaseTypeLayer() {
+        return baseTypeLayer;
+    }
+
+    /**
+     * @param baseTypeLayer The shared JDK and library types or null to resolve everything in this
+     *            world.
+     */
+    public void setBaseTypeLayer(final BaseTypeLayer baseTypeLayer) {
+        this.baseTypeLayer = baseTypeLayer;
+    }
+
+    public long getEvictedTypesCount() {
+        return evictedTypesCount;
+    }
+
+    public int getReflectionResolvedTypesCount() {
+        return reflectionResolvedTypes.size();
     }
 
 }
@@ -0,0 +1,219 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import info.rubico.mock4aj.api.exceptions.Mock4AjException;
+import info.rubico.mock4aj.internal.classutils.BytecodeDigest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.aspectj.bridge.Version;
+
+/**
+ * <p>
+ * Persistent cache of woven classes stored in a directory. It allows to reuse woven classes from a
+ * JVM run to the other.
+ * </p>
+ * <p>
+ * An entry is keyed by the digest of the original bytecode, by the fingerprint of the aspects
+ * (including the bytecode of their super-aspects and pointcut holders), by the digest of the
+ * supertypes of the woven class and by the AspectJ and Java versions (see
+ * {@link WeavingDependencyDigest} for what is digested). Each entry is a single file named after
+ * its key. There is no shared index: the directory is the index.
+ * </p>
+ * <h2>Concurrency</h2>
+ * <p>
+ * The cache doesn't use any lock so many JVMs (like parallel surefire forks) can share the same
+ * directory. An entry is first written to a temporary file and then atomically renamed. Readers
+ * never see a partial entry. If two JVMs store the same entry, the content is the same so the first
+ * rename wins and the other temporary file is simply deleted. A temporary file is also deleted when
+ * its writing fails.
+ * </p>
+ * <p>
+ * A corrupted or unreadable entry is considered as a miss. Errors when storing are ignored: the
+ * cache is only an optimization.
+ * </p>
+ * <p>
+ * The cache is opt-in. It can be enabled by setting the {@value #DIRECTORY_PROPERTY} system
+ * property to the cache directory.
+ * </p>
+ */
+public class PersistentWovenClassCache {
+
+    public static final String DIRECTORY_PROPERTY = "mock4aj.weaving.cacheDir";
+
+    private static final int FORMAT_MAGIC = 0x4D344A57; // M4JW
+    private static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_SUFFIX = ".woven";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+
+    private long hitCount;
+    private long missCount;
+
+    public PersistentWovenClassCache(final File directory) {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new Mock4AjException("Unable to create the woven classes cache directory: "
+                                       + directory);
+        }
+    }
+
+    /**
+     * @return A cache using the directory configured by the {@value #DIRECTORY_PROPERTY} system
+     *         property or null if the property is not set.
+     */
+    public static PersistentWovenClassCache fromSystemProperties() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.trim().length() == 0) {
+            return null;
+        }
+        return new PersistentWovenClassCache(new File(directory));
+    }
+
+    /**
+     * @param supertypesDigest The digest of the supertypes of the class (see
+     *            {@link WeavingDependencyDigest#digestSupertypes(ClassLoader, byte[])}).
+     * @return The stored woven class or null if there is no valid entry.
+     */
+    public WovenClass load(final byte[] originalBytes,
+                           final String aspectsFingerprint,
+                           final String supertypesDigest) {
+        File entry = entryFile(originalBytes, aspectsFingerprint, supertypesDigest);
+        WovenClass wovenClass = null;
+        if (entry.isFile()) {
+            wovenClass = readEntry(entry);
+        }
+        countLookup(wovenClass != null);
+        return wovenClass;
+    }
+
+    public void store(final byte[] originalBytes,
+                      final String aspectsFingerprint,
+                      final String supertypesDigest,
+                      final WovenClass wovenClass) {
+        File entry = entryFile(originalBytes, aspectsFingerprint, supertypesDigest);
+        if (entry.isFile() || wovenClass.getWovenBytes() == null) {
+            return;
+        }
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(entry.getName(), TEMP_SUFFIX, directory);
+            writeEntry(tempFile, wovenClass);
+            tempFile.renameTo(entry); // Fails if already stored by someone else
+        }
+        catch (IOException error) { // NOPMD
+            // Only an optimization: the class will be woven again next time.
+        }
+        finally {
+            deleteIfExists(tempFile);
+        }
+    }
+
+    private void deleteIfExists(final File file) {
+        if (file != null && file.exists()) {
+            file.delete();
+        }
+    }
+
+    protected File entryFile(final byte[] originalBytes,
+                             final String aspectsFingerprint,
+                             final String supertypesDigest) {
+        String key = BytecodeDigest.digest(BytecodeDigest.digest(originalBytes),
+                                           aspectsFingerprint,
+                                           supertypesDigest,
+                                           Version.text,
+                                           System.getProperty("java.version"));
+        return new File(directory, key + ENTRY_SUFFIX);
+    }
+
+    private WovenClass readEntry(final File entry) {
+        try {
+            DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(entry)));
+            try {
+                return readWovenClass(input);
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch (IOException error) {
+            return null;
+        }
+    }
+
+    private WovenClass readWovenClass(final DataInputStream input) throws IOException {
+        if (input.readInt() != FORMAT_MAGIC || input.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        byte[] wovenBytes = readBytes(input);
+        int generatedCount = input.readInt();
+        Map<String, byte[]> generatedClasses = new LinkedHashMap<String, byte[]>();
+        for (int i = 0; i < generatedCount; i++) {
+            generatedClasses.put(input.readUTF(), readBytes(input));
+        }
+        return new WovenClass(wovenBytes, generatedClasses);
+    }
+
+    private byte[] readBytes(final DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    protected void writeEntry(final File file, final WovenClass wovenClass) throws IOException {
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(FORMAT_MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            writeBytes(output, wovenClass.getWovenBytes());
+            output.writeInt(wovenClass.getGeneratedClasses().size());
+            for (Map.Entry<String, byte[]> generated : wovenClass.getGeneratedClasses()
+                .entrySet()) {
+                output.writeUTF(generated.getKey());
+                writeBytes(output, generated.getValue());
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    private void writeBytes(final DataOutputStream output, final byte[] bytes)
+        throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private synchronized void countLookup(final boolean hit) {
+        if (hit) {
+            hitCount++;
+        }
+        else {
+            missCount++;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+}
@@ -0,0 +1,358 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import info.rubico.mock4aj.api.exceptions.NotAConcreteAspect;
+import info.rubico.mock4aj.api.exceptions.NotAnAspect;
+import info.rubico.mock4aj.api.exceptions.WeavingError;
+import info.rubico.mock4aj.api.weaving.BatchWeaver;
+import info.rubico.mock4aj.api.weaving.FingerprintedWeaver;
+import info.rubico.mock4aj.api.weaving.MultiAspectWeaver;
+import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.api.weaving.WeavingResult;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A weaver backed by a pool of independent {@link AspectJWeaver} (each one with its own AspectJ
+ * world) to weave many classes in parallel.
+ * </p>
+ * <p>
+ * The registered aspects are kept by the pool. A worker is leased for each weaving and it is first
+ * brought to the registered aspects if it was prepared for other ones. Only the registration of
+ * aspects is serialised, the weaving itself is done concurrently by up to {@link #getPoolSize()}
+ * threads.
+ * </p>
+ * <p>
+ * Workers are created lazily and they all share the same {@link WovenClassCache}.
+ * </p>
+ * <p>
+ * A batch of classes given to {@link #weaveClasses(Map)} is spread over a batch executor so its
+ * classes are woven by all the workers.
+ * </p>
+ *
+ * @see AspectJWeaver
+ */
+public class PooledAspectJWeaver implements FingerprintedWeaver, MultiAspectWeaver, BatchWeaver {
+
+    private static final Class<?>[] NO_ASPECTS = new Class<?>[0];
+
+    private final ClassLoader classLoader;
+    private final int poolSize;
+    private final AtomicInteger createdWorkers = new AtomicInteger();
+    private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<Worker>();
+    private final WovenClassCache wovenClassCache = new WovenClassCache();
+
+    private Class<?>[] registeredAspects = NO_ASPECTS;
+    private String aspectsFingerprint;
+    private ExecutorService batchExecutor;
+
+    /**
+     * Creates a pool with one worker per available processor.
+     */
+    public PooledAspectJWeaver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public PooledAspectJWeaver(int poolSize) {
+        this(Thread.currentThread().getContextClassLoader(), poolSize);
+    }
+
+    /**
+     * @param classLoader The class loader given to every worker.
+     * @param poolSize The maximum number of workers (and of concurrent weavings).
+     */
+    public PooledAspectJWeaver(ClassLoader classLoader, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("The pool must have at least one worker");
+        }
+        this.classLoader = classLoader;
+        this.poolSize = poolSize;
+    }
+
+    public void registerAspect(Class<?> aspect) {
+        registerAspects(aspect);
+    }
+
+    /**
+     * @throws NotAnAspect if one of the classes is not an aspect class.
+     * @throws NotAConcreteAspect if one of the aspects is an abstract aspect.
+     * @see MultiAspectWeaver
+     */
+    public synchronized void registerAspects(Class<?>... aspects) {
+        Set<Class<?>> expectedAspects = aspectsSet(registeredAspects);
+        expectedAspects.addAll(Arrays.asList(aspects));
+        useAspects(expectedAspects);
+    }
+
+    /**
+     * @throws NotAnAspect if one of the classes is not an aspect class.
+     * @throws NotAConcreteAspect if one of the aspects is an abstract aspect.
+     * @see MultiAspectWeaver
+     */
+    public synchronized void replaceAspects(Class<?>... aspects) {
+        useAspects(aspectsSet(aspects));
+    }
+
+    public synchronized void unregisterAspect(Class<?> aspect) {
+        Set<Class<?>> expectedAspects = aspectsSet(registeredAspects);
+        if (expectedAspects.remove(aspect)) {
+            useAspects(expectedAspects);
+        }
+    }
+
+    /**
+     * Only the registered aspects are forgotten. Workers keep their prepared states.
+     *
+     * @see Weaver
+     */
+    public synchronized void reset() {
+        registeredAspects = NO_ASPECTS;
+        aspectsFingerprint = null;
+    }
+
+    /**
+     * The aspects are checked by a worker before being accepted.
+     */
+    private void useAspects(Set<Class<?>> aspects) {
+        Class<?>[] expectedAspects = aspects.toArray(new Class<?>[aspects.size()]);
+        Worker worker = leaseWorker();
+        try {
+            worker.prepareFor(expectedAspects);
+        }
+        finally {
+            releaseWorker(worker);
+        }
+        registeredAspects = expectedAspects;
+        aspectsFingerprint = null;
+    }
+
+    /**
+     * The fingerprint is the same as the one of an {@link AspectJWeaver} with the same aspects.
+     *
+     * @see FingerprintedWeaver
+     */
+    public synchronized String getAspectsFingerprint() {
+        if (aspectsFingerprint == null) {
+            SortedMap<String, String> aspectDigests = new TreeMap<String, String>();
+            for (Class<?> aspect : registeredAspects) {
+                aspectDigests.put(aspect.getName(), AspectJWeaver.digestAspectBytecode(aspect));
+            }
+            aspectsFingerprint = AspectJWeaver.fingerprintOf(aspectDigests);
+        }
+        return aspectsFingerprint;
+    }
+
+    public byte[] weaveClassBytes(String className, byte[] bytes) {
+        Class<?>[] aspects = getRegisteredAspects();
+        if (aspects.length == 0) {
+            return bytes;
+        }
+        Worker worker = leaseWorker();
+        try {
+            worker.prepareFor(aspects);
+            return worker.getWeaver().weaveClassBytes(className, bytes);
+        }
+        finally {
+            releaseWorker(worker);
+        }
+    }
+
+    /**
+     * Each class is woven by a task of the batch executor so up to {@link #getPoolSize()} classes
+     * are woven at the same time.
+     * 
+     * @see BatchWeaver
+     */
+    public Map<String, WeavingResult> weaveClasses(Map<String, byte[]> classes) {
+        ExecutorService executor = getBatchExecutor();
+        Map<String, Future<WeavingResult>> weavings =
+                new LinkedHashMap<String, Future<WeavingResult>>();
+        for (Map.Entry<String, byte[]> clazz : classes.entrySet()) {
+            weavings.put(clazz.getKey(),
+                         executor.submit(new WeavingTask(clazz.getKey(), clazz.getValue())));
+        }
+        Map<String, WeavingResult> results = new LinkedHashMap<String, WeavingResult>();
+        for (Map.Entry<String, Future<WeavingResult>> weaving : weavings.entrySet()) {
+            results.put(weaving.getKey(), waitForResult(weaving.getKey(), weaving.getValue()));
+        }
+        return results;
+    }
+
+    private WeavingResult waitForResult(String className, Future<WeavingResult> weaving) {
+        try {
+            return weaving.get();
+        }
+        catch (ExecutionException e) {
+            return WeavingResult.failed(className, new WeavingError("Unable to weave the class "
+                                                                    + className, e.getCause()));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WeavingError("Interrupted while waiting for the weaving of " + className, e);
+        }
+    }
+
+    /**
+     * @return The executor of the batch weavings. By default, it has one daemon thread per worker.
+     */
+    public synchronized ExecutorService getBatchExecutor() {
+        if (batchExecutor == null) {
+            batchExecutor = Executors.newFixedThreadPool(poolSize, new WeavingThreadFactory());
+        }
+        return batchExecutor;
+    }
+
+    public synchronized void setBatchExecutor(ExecutorService batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    private synchronized Class<?>[] getRegisteredAspects() {
+        return registeredAspects;
+    }
+
+    private Worker leaseWorker() {
+        Worker worker = idleWorkers.poll();
+        if (worker == null) {
+            worker = createWorkerIfPossible();
+        }
+        if (worker == null) {
+            worker = waitForIdleWorker();
+        }
+        return worker;
+    }
+
+    private Worker createWorkerIfPossible() {
+        int created = createdWorkers.get();
+        while (created < poolSize) {
+            if (createdWorkers.compareAndSet(created, created + 1)) {
+                return newWorker();
+            }
+            created = createdWorkers.get();
+        }
+        return null;
+    }
+
+    private Worker newWorker() {
+        try {
+            AspectJWeaver weaver = createWorker(classLoader);
+            weaver.setWovenClassCache(wovenClassCache);
+            return new Worker(weaver);
+        }
+        catch (RuntimeException e) {
+            createdWorkers.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private Worker waitForIdleWorker() {
+        try {
+            return idleWorkers.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WeavingError("Interrupted while waiting for an available weaver", e);
+        }
+    }
+
+    private void releaseWorker(Worker worker) {
+        idleWorkers.add(worker);
+    }
+
+    /**
+     * Creates a new worker. It is called lazily, at most {@link #getPoolSize()} times.
+     */
+    protected AspectJWeaver createWorker(ClassLoader workerClassLoader) {
+        return new AspectJWeaver(workerClassLoader);
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getCreatedWorkers() {
+        return createdWorkers.get();
+    }
+
+    public WovenClassCache getWovenClassCache() {
+        return wovenClassCache;
+    }
+
+    private static Set<Class<?>> aspectsSet(Class<?>... aspects) {
+        return new LinkedHashSet<Class<?>>(Arrays.asList(aspects));
+    }
+
+    /**
+     * Weaving of one class of a batch.
+     */
+    private class WeavingTask implements Callable<WeavingResult> {
+
+        private final String className;
+        private final byte[] bytes;
+
+        public WeavingTask(String className, byte[] bytes) {
+            this.className = className;
+            this.bytes = bytes;
+        }
+
+        public WeavingResult call() {
+            return WeavingResult.weave(PooledAspectJWeaver.this, className, bytes);
+        }
+    }
+
+    /**
+     * Daemon threads: an unused pool must not prevent the JVM from exiting.
+     */
+    private static class WeavingThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger createdThreads = new AtomicInteger();
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "mock4aj-weaver-" + createdThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * A pooled weaver and the aspects it is currently prepared for. It is used by only one thread
+     * at a time.
+     */
+    private static class Worker {
+
+        private final AspectJWeaver weaver;
+        private Class<?>[] preparedAspects = NO_ASPECTS;
+
+        public Worker(AspectJWeaver weaver) {
+            this.weaver = weaver;
+        }
+
+        public void prepareFor(Class<?>[] aspects) {
+            if (!Arrays.equals(preparedAspects, aspects)) {
+                preparedAspects = null;
+                weaver.reset();
+                weaver.registerAspects(aspects);
+                preparedAspects = aspects;
+            }
+        }
+
+        public AspectJWeaver getWeaver() {
+            return weaver;
+        }
+    }
+
+}
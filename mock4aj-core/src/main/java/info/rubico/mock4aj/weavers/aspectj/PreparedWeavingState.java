@@ -0,0 +1,35 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import org.aspectj.weaver.bcel.BcelWeaver;
+import org.aspectj.weaver.bcel.BcelWorld;
+
+/**
+ * A snapshot of the AspectJ world and weaver of a {@link DynamicRuntimeWeavingAdaptor}, already
+ * prepared for a given set of aspects.
+ * <p>
+ * Building a world and preparing a weaver is expensive (every JDK and library type must be resolved
+ * again). A snapshot can be put aside and restored later to weave again with the same aspects
+ * without rebuilding anything.
+ * <p>
+ * A snapshot must be owned by only one adaptor at a time since the weaver is modified when aspects
+ * are registered or unregistered.
+ */
+public class PreparedWeavingState {
+
+    private final BcelWorld world;
+    private final BcelWeaver weaver;
+
+    PreparedWeavingState(BcelWorld world, BcelWeaver weaver) {
+        this.world = world;
+        this.weaver = weaver;
+    }
+
+    BcelWorld getWorld() {
+        return world;
+    }
+
+    BcelWeaver getWeaver() {
+        return weaver;
+    }
+
+}
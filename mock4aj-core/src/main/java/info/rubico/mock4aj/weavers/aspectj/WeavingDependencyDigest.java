@@ -0,0 +1,209 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import info.rubico.mock4aj.internal.classutils.BytecodeDigest;
+import info.rubico.mock4aj.internal.classutils.ClassUtils;
+import info.rubico.mock4aj.internal.classutils.ConstantPoolReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Digests the classes that change how a class is woven without being part of its bytecode: the
+ * supertypes of the woven class, and the super-aspects and the pointcut holders of an aspect. The
+ * persistent caches use these digests so their entries don't survive a change of these classes.
+ * </p>
+ * <p>
+ * The classes referenced by an aspect are found in its constant pool: the class and descriptor
+ * names (the named pointcuts of a code-style aspect are stored with their declaring type) and the
+ * type prefixes of the method-like references of the pointcut expressions (like
+ * <code>Pointcuts.anyCall()</code> in an annotation-style aspect, possibly relative to the aspect
+ * package). A pointcut holder referenced any other way (e.g. through an import of another package)
+ * is not found: clear the cache directory when it changes.
+ * </p>
+ * <p>
+ * The JDK and AspectJ classes are not digested: the Java and AspectJ versions are part of the keys
+ * instead. The classes which can't be read are ignored.
+ * </p>
+ */
+public final class WeavingDependencyDigest {
+
+    private static final String[] PLATFORM_PACKAGES = {
+        "java.", "javax.", "sun.", "com.sun.", "org.aspectj." };
+
+    private static final Pattern INTERNAL_NAME = Pattern.compile("[\\w$]+(?:/[\\w$]+)+");
+    private static final Pattern DESCRIPTOR_TYPE = Pattern.compile("L([\\w$/]+);");
+    private static final Pattern POINTCUT_REFERENCE =
+            Pattern.compile("([A-Za-z_$][\\w$]*(?:\\.[A-Za-z_$][\\w$]*)*)\\.[\\w$]+\\(");
+
+    /**
+     * An aspect never changes while its class is loaded.
+     */
+    private static final Map<Class<?>, String> ASPECT_DIGESTS =
+            Collections.synchronizedMap(new WeakHashMap<Class<?>, String>());
+
+    private WeavingDependencyDigest() {
+    }
+
+    /**
+     * @return A digest of the aspect bytecode, of its super-aspects and of the classes they refer
+     *         to or null if the bytecode of the aspect is not available.
+     */
+    public static String digestAspect(Class<?> aspect) {
+        String digest = ASPECT_DIGESTS.get(aspect);
+        if (digest == null) {
+            SortedMap<String, String> digests = digestAspectClasses(aspect);
+            if (digests == null) {
+                return null;
+            }
+            digest = digestAll(digests);
+            ASPECT_DIGESTS.put(aspect, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * @return The digests of the aspect, of its super-aspects and of the classes they refer to (by
+     *         class name) or null if the bytecode of the aspect is not available.
+     */
+    static SortedMap<String, String> digestAspectClasses(Class<?> aspect) {
+        if (ClassUtils.readBytecode(aspect) == null) {
+            return null;
+        }
+        SortedMap<String, String> digests = new TreeMap<String, String>();
+        for (Class<?> clazz = aspect; isDigestible(clazz); clazz = clazz.getSuperclass()) {
+            addWithReferencedClasses(digests, clazz);
+        }
+        return digests;
+    }
+
+    private static boolean isDigestible(Class<?> clazz) {
+        return clazz != null && !isPlatformClass(clazz.getName());
+    }
+
+    private static void addWithReferencedClasses(SortedMap<String, String> digests,
+                                                 Class<?> clazz) {
+        byte[] bytecode = ClassUtils.readBytecode(clazz);
+        if (bytecode != null) {
+            digests.put(clazz.getName(), BytecodeDigest.digest(bytecode));
+            for (String referenced : findReferencedClasses(clazz, bytecode)) {
+                addClass(digests, clazz.getClassLoader(), referenced);
+            }
+        }
+    }
+
+    private static Set<String> findReferencedClasses(Class<?> clazz, byte[] bytecode) {
+        Set<String> constants = ConstantPoolReader.readUtf8Constants(bytecode);
+        if (constants == null) {
+            return Collections.emptySet();
+        }
+        Set<String> names = new HashSet<String>();
+        String packagePrefix = packagePrefixOf(clazz);
+        for (String constant : constants) {
+            if (INTERNAL_NAME.matcher(constant).matches()) {
+                names.add(constant.replace('/', '.'));
+            }
+            Matcher descriptorTypes = DESCRIPTOR_TYPE.matcher(constant);
+            while (descriptorTypes.find()) {
+                names.add(descriptorTypes.group(1).replace('/', '.'));
+            }
+            addPointcutReferences(names, POINTCUT_REFERENCE.matcher(constant), packagePrefix);
+        }
+        names.remove(clazz.getName());
+        return names;
+    }
+
+    /**
+     * A reference can be relative to the aspect package and its last part can be a nested class.
+     */
+    private static void addPointcutReferences(Set<String> names,
+                                              Matcher references,
+                                              String packagePrefix) {
+        while (references.find()) {
+            String name = references.group(1);
+            for (String candidate : new String[] { name, packagePrefix + name }) {
+                names.add(candidate);
+                int lastDot = candidate.lastIndexOf('.');
+                if (lastDot > 0) {
+                    names.add(candidate.substring(0, lastDot) + '$'
+                              + candidate.substring(lastDot + 1));
+                }
+            }
+        }
+    }
+
+    private static String packagePrefixOf(Class<?> clazz) {
+        String name = clazz.getName();
+        return name.substring(0, name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * @param loader The class loader of the woven class (null for the system class loader).
+     * @return A digest of the bytecode of all the supertypes of the class (not only the direct
+     *         ones).
+     */
+    public static String digestSupertypes(ClassLoader loader, byte[] classBytes) {
+        SortedMap<String, String> digests = new TreeMap<String, String>();
+        List<String> toVisit = new LinkedList<String>(supertypesOf(classBytes));
+        while (!toVisit.isEmpty()) {
+            byte[] bytecode = addClass(digests, loader, toVisit.remove(0));
+            if (bytecode != null) {
+                toVisit.addAll(supertypesOf(bytecode));
+            }
+        }
+        return digestAll(digests);
+    }
+
+    private static Collection<String> supertypesOf(byte[] classBytes) {
+        List<String> names = ConstantPoolReader.readSupertypeNames(classBytes);
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        return names;
+    }
+
+    /**
+     * @return The bytecode of the class if it was added.
+     */
+    private static byte[] addClass(SortedMap<String, String> digests,
+                                   ClassLoader loader,
+                                   String className) {
+        if (isPlatformClass(className) || digests.containsKey(className)) {
+            return null;
+        }
+        byte[] bytecode = ClassUtils.readBytecode(loader, className);
+        if (bytecode != null) {
+            digests.put(className, BytecodeDigest.digest(bytecode));
+        }
+        return bytecode;
+    }
+
+    private static boolean isPlatformClass(String className) {
+        for (String platformPackage : PLATFORM_PACKAGES) {
+            if (className.startsWith(platformPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String digestAll(SortedMap<String, String> digests) {
+        List<String> descriptions = new ArrayList<String>(digests.size());
+        for (Map.Entry<String, String> digest : digests.entrySet()) {
+            descriptions.add(digest.getKey() + "@" + digest.getValue());
+        }
+        return BytecodeDigest.digest(descriptions);
+    }
+
+}
@@ -0,0 +1,80 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import org.aspectj.bridge.AbortException;
+import org.aspectj.bridge.IMessage;
+import org.aspectj.bridge.IMessage.Kind;
+import org.aspectj.bridge.IMessageHandler;
+
+/**
+ * Message handler given to the AspectJ weaver and world.
+ * <p>
+ * Nothing is kept: enabled messages are passed to the {@link WeavingMessageSink} and the others
+ * are ignored. Without a sink, the kinds below {@link IMessage#ERROR} are ignored so AspectJ does
+ * not even build them (it checks {@link #isIgnoring(Kind)} before reporting what it weaves).
+ * <p>
+ * The errors are never ignored: they are delivered to the sink or, without a sink, thrown as an
+ * {@link AbortException} so they reach the caller of the weaving (as a
+ * {@link info.rubico.mock4aj.api.exceptions.WeavingError}).
+ * <p>
+ * The verbosity is only changed with {@link #setVerbosity(WeavingVerbosity)}, the
+ * {@link #ignore(Kind)} and {@link #dontIgnore(Kind)} requests of AspectJ are not followed.
+ */
+public class WeavingMessageHandler implements IMessageHandler {
+
+    private volatile WeavingVerbosity verbosity = WeavingVerbosity.WARNINGS;
+    private volatile WeavingMessageSink sink;
+
+    /**
+     * @throws AbortException The message is an error and there is no sink to deliver it to.
+     */
+    public boolean handleMessage(final IMessage message) throws AbortException {
+        WeavingMessageSink currentSink = sink;
+        if (currentSink != null && verbosity.isEnabled(message.getKind())) {
+            currentSink.onMessage(message);
+        }
+        else if (isError(message.getKind())) {
+            throw new AbortException(message);
+        }
+        return true;
+    }
+
+    public boolean isIgnoring(final Kind kind) {
+        if (isError(kind)) {
+            return false;
+        }
+        return sink == null || !verbosity.isEnabled(kind);
+    }
+
+    private static boolean isError(final Kind kind) {
+        return kind.compareTo(IMessage.ERROR) >= 0;
+    }
+
+    public void dontIgnore(final Kind kind) {
+        // The verbosity decides
+    }
+
+    public void ignore(final Kind kind) {
+        // The verbosity decides
+    }
+
+    public WeavingVerbosity getVerbosity() {
+        return verbosity;
+    }
+
+    public void setVerbosity(final WeavingVerbosity verbosity) {
+        this.verbosity = verbosity;
+    }
+
+    public WeavingMessageSink getSink() {
+        return sink;
+    }
+
+    /**
+     * @param sink Where the enabled messages are delivered or null to ignore all the messages but
+     *            the errors, which are then thrown.
+     */
+    public void setSink(final WeavingMessageSink sink) {
+        this.sink = sink;
+    }
+
+}
@@ -0,0 +1,15 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import org.aspectj.bridge.IMessage;
+
+/**
+ * Receives the messages of the AspectJ weaver that are enabled by the {@link WeavingVerbosity}.
+ * <p>
+ * The message is given as is: its kind, text, exception and source location can be read without
+ * parsing any formatted string.
+ */
+public interface WeavingMessageSink {
+
+    void onMessage(IMessage message);
+
+}
@@ -0,0 +1,175 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import info.rubico.mock4aj.internal.classutils.ConstantPoolReader;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.aspectj.weaver.ConcreteTypeMunger;
+import org.aspectj.weaver.CrosscuttingMembersSet;
+import org.aspectj.weaver.Member;
+import org.aspectj.weaver.MemberKind;
+import org.aspectj.weaver.ShadowMunger;
+import org.aspectj.weaver.bcel.BcelAccessForInlineMunger;
+import org.aspectj.weaver.bcel.BcelPerClauseAspectAdder;
+import org.aspectj.weaver.patterns.AndPointcut;
+import org.aspectj.weaver.patterns.ExactTypePattern;
+import org.aspectj.weaver.patterns.KindedPointcut;
+import org.aspectj.weaver.patterns.NamePattern;
+import org.aspectj.weaver.patterns.OrPointcut;
+import org.aspectj.weaver.patterns.Pointcut;
+import org.aspectj.weaver.patterns.SignaturePattern;
+import org.aspectj.weaver.patterns.TypePattern;
+import org.aspectj.weaver.patterns.WithinPointcut;
+
+/**
+ * <p>
+ * Cheap pre-pass that detects the classes that no advice could ever match, before giving them to
+ * the BCEL weaver.
+ * </p>
+ * <p>
+ * The pointcuts of the advices are only partially evaluated: the names of the members in kinded
+ * pointcuts ({@code execution}, {@code call}, {@code get}, ...) are matched against the names found
+ * in the constant pool of the class and the exact type names of {@code within} pointcuts are
+ * matched against the class name. Everything else is considered as possibly matching.
+ * </p>
+ * <p>
+ * It is conservative: inter-type declarations, declare statements or unreadable bytecode always
+ * need the real weaving. Only the members added to the aspect itself are ignored: the members of
+ * its per-clause (like {@code aspectOf()}) and the accessors of its inlined around advices.
+ * </p>
+ * <p>
+ * The same partial evaluation tells which methods of a proxy could be advised: the join points of a
+ * forwarding method only refer to its own name.
+ * </p>
+ */
+public class WeavingPrefilter {
+
+    /**
+     * @return true if it is certain that the weaving will not change the class.
+     */
+    public boolean canSkipWeaving(CrosscuttingMembersSet crosscuttingMembers, String className,
+                                  byte[] bytes) {
+        if (hasTypeLevelDeclarations(crosscuttingMembers, className)) {
+            return false;
+        }
+        Set<String> memberNames = ConstantPoolReader.readUtf8Constants(bytes);
+        if (memberNames == null) {
+            return false;
+        }
+        for (ShadowMunger munger : crosscuttingMembers.getShadowMungers()) {
+            if (couldMatch(munger.getPointcut(), className, memberNames)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false only if it is certain that no advice matches the method of the class.
+     */
+    public boolean couldAdviseMethod(CrosscuttingMembersSet crosscuttingMembers,
+                                     String className, String methodName) {
+        if (hasTypeLevelDeclarations(crosscuttingMembers, className)) {
+            return true;
+        }
+        Set<String> memberNames = Collections.singleton(methodName);
+        for (ShadowMunger munger : crosscuttingMembers.getShadowMungers()) {
+            if (couldMatch(munger.getPointcut(), className, memberNames)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasTypeLevelDeclarations(CrosscuttingMembersSet crosscuttingMembers,
+                                             String className) {
+        return hasTypeMungersFor(crosscuttingMembers, className)
+               || !crosscuttingMembers.getLateTypeMungers().isEmpty()
+               || hasDeclares(crosscuttingMembers);
+    }
+
+    private boolean hasTypeMungersFor(CrosscuttingMembersSet crosscuttingMembers,
+                                      String className) {
+        for (ConcreteTypeMunger munger : crosscuttingMembers.getTypeMungers()) {
+            if (!isAddingToTheAspectOnly(munger)
+                || munger.getAspectType().getName().equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAddingToTheAspectOnly(ConcreteTypeMunger munger) {
+        return munger instanceof BcelPerClauseAspectAdder
+               || munger instanceof BcelAccessForInlineMunger;
+    }
+
+    private boolean hasDeclares(CrosscuttingMembersSet crosscuttingMembers) {
+        return !crosscuttingMembers.getDeclareParents().isEmpty()
+               || !crosscuttingMembers.getDeclareSofts().isEmpty()
+               || hasDeclareAnnotations(crosscuttingMembers);
+    }
+
+    private boolean hasDeclareAnnotations(CrosscuttingMembersSet crosscuttingMembers) {
+        return !crosscuttingMembers.getDeclareAnnotationOnTypes().isEmpty()
+               || !crosscuttingMembers.getDeclareAnnotationOnFields().isEmpty()
+               || !crosscuttingMembers.getDeclareAnnotationOnMethods().isEmpty();
+    }
+
+    /**
+     * @return false only if the pointcut can never match a join point of the class.
+     */
+    protected boolean couldMatch(Pointcut pointcut, String className, Set<String> memberNames) {
+        if (pointcut instanceof AndPointcut) {
+            AndPointcut and = (AndPointcut) pointcut;
+            return couldMatch(and.getLeft(), className, memberNames)
+                   && couldMatch(and.getRight(), className, memberNames);
+        }
+        if (pointcut instanceof OrPointcut) {
+            OrPointcut or = (OrPointcut) pointcut;
+            return couldMatch(or.getLeft(), className, memberNames)
+                   || couldMatch(or.getRight(), className, memberNames);
+        }
+        return couldMatchAlone(pointcut, className, memberNames);
+    }
+
+    private boolean couldMatchAlone(Pointcut pointcut, String className, Set<String> memberNames) {
+        if (pointcut instanceof KindedPointcut) {
+            return couldMatchAMember(((KindedPointcut) pointcut).getSignature(), memberNames);
+        }
+        if (pointcut instanceof WithinPointcut) {
+            return couldBeWithin(((WithinPointcut) pointcut).getTypePattern(), className);
+        }
+        return true;
+    }
+
+    /**
+     * Only methods and fields have their real name in the pattern.
+     */
+    private boolean couldMatchAMember(SignaturePattern signature, Set<String> memberNames) {
+        MemberKind kind = signature.getKind();
+        NamePattern name = signature.getName();
+        if (kind != Member.METHOD && kind != Member.FIELD || name == null || name.isAny()) {
+            return true;
+        }
+        for (String memberName : memberNames) {
+            if (name.matches(memberName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Nested classes are in their enclosing type so the exact type name could be a prefix.
+     */
+    private boolean couldBeWithin(TypePattern typePattern, String className) {
+        if (!(typePattern instanceof ExactTypePattern) || typePattern.isIncludeSubtypes()) {
+            return true;
+        }
+        String typeName = ((ExactTypePattern) typePattern).getType().getName();
+        return className.equals(typeName) || className.startsWith(typeName + "$");
+    }
+
+}
@@ -0,0 +1,37 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.aspectj.bridge.IMessage;
+import org.aspectj.bridge.IMessage.Kind;
+
+/**
+ * Which messages of the AspectJ weaver are delivered to the {@link WeavingMessageSink}. Errors are
+ * always delivered.
+ */
+public enum WeavingVerbosity {
+
+    /** Errors only. */
+    SILENT(),
+    /** Errors and warnings. */
+    WARNINGS(IMessage.WARNING),
+    /** Also what is woven and the aspects registrations. */
+    INFO(IMessage.WARNING, IMessage.INFO, IMessage.WEAVEINFO),
+    /** Everything. */
+    DEBUG(IMessage.WARNING, IMessage.INFO, IMessage.WEAVEINFO, IMessage.DEBUG, IMessage.TASKTAG);
+
+    private final List<Kind> enabledKinds;
+
+    private WeavingVerbosity(Kind... enabledKinds) {
+        this.enabledKinds = Arrays.asList(enabledKinds);
+    }
+
+    public boolean isEnabled(Kind kind) {
+        if (kind.compareTo(IMessage.ERROR) >= 0) {
+            return true;
+        }
+        return enabledKinds.contains(kind);
+    }
+
+}
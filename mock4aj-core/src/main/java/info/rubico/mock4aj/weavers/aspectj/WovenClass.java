@@ -0,0 +1,45 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The result of the weaving of a class: the woven bytecode and the classes that the weaver
+ * generated at the same time (like closures for around advices). The woven class can't be loaded
+ * without its generated classes.
+ */
+public class WovenClass {
+
+    private final byte[] wovenBytes;
+    private final Map<String, byte[]> generatedClasses;
+
+    public WovenClass(byte[] wovenBytes, Map<String, byte[]> generatedClasses) {
+        this.wovenBytes = wovenBytes;
+        this.generatedClasses = Collections
+            .unmodifiableMap(new LinkedHashMap<String, byte[]>(generatedClasses));
+    }
+
+    public byte[] getWovenBytes() {
+        return wovenBytes;
+    }
+
+    /**
+     * @return The generated classes' bytecode by class name, in generation order.
+     */
+    public Map<String, byte[]> getGeneratedClasses() {
+        return generatedClasses;
+    }
+
+    /**
+     * @return A copy of the woven class whose bytecode arrays are not shared with this one.
+     */
+    public WovenClass copy() {
+        Map<String, byte[]> generatedClassesCopy = new LinkedHashMap<String, byte[]>();
+        for (Map.Entry<String, byte[]> generatedClass : generatedClasses.entrySet()) {
+            generatedClassesCopy.put(generatedClass.getKey(), generatedClass.getValue().clone());
+        }
+        return new WovenClass(wovenBytes == null ? null : wovenBytes.clone(), generatedClassesCopy);
+    }
+
+}
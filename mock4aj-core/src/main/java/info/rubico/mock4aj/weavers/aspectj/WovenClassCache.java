@@ -0,0 +1,82 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import info.rubico.mock4aj.internal.cache.BoundedLruCache;
+import info.rubico.mock4aj.internal.classutils.BytecodeDigest;
+
+/**
+ * In-memory cache of woven classes: the woven bytecode and the classes generated by the weaver with
+ * it (like the closures of around advices). They must be defined again on every hit, next to the
+ * woven class.
+ * <p>
+ * The cache is content-addressed: an entry is keyed by the digest of the original (not woven)
+ * bytecode and by the fingerprint of the aspects used to weave it. So the same generated class
+ * woven with the same aspects is only woven once. Since the class name is part of the bytecode, two
+ * classes with different names never share an entry.
+ * <p>
+ * Bytecode arrays are copied in and out so a caller altering the returned bytes can't corrupt the
+ * cache.
+ */
+public class WovenClassCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+
+    private final BoundedLruCache<String, WovenClass> entries;
+
+    public WovenClassCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries The maximum number of woven classes kept. 0 disables the cache.
+     */
+    public WovenClassCache(final int maxEntries) {
+        entries = new BoundedLruCache<String, WovenClass>(maxEntries);
+    }
+
+    /**
+     * @return A copy of the woven class or null if the class was not woven before with the same
+     *         aspects.
+     */
+    public WovenClass getWovenClass(final byte[] originalBytes, final String aspectsFingerprint) {
+        WovenClass wovenClass = entries.get(keyFor(originalBytes, aspectsFingerprint));
+        if (wovenClass == null) {
+            return null;
+        }
+        return wovenClass.copy();
+    }
+
+    public void putWovenClass(final byte[] originalBytes,
+                              final String aspectsFingerprint,
+                              final WovenClass wovenClass) {
+        entries.put(keyFor(originalBytes, aspectsFingerprint), wovenClass.copy());
+    }
+
+    protected String keyFor(final byte[] originalBytes, final String aspectsFingerprint) {
+        return BytecodeDigest.digest(originalBytes) + ":" + aspectsFingerprint;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return entries.getMaxEntries();
+    }
+
+    public long getHitCount() {
+        return entries.getHitCount();
+    }
+
+    public long getMissCount() {
+        return entries.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return entries.getEvictionCount();
+    }
+
+}
@@ -0,0 +1,130 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Before;
+
+/**
+ * The kinds of advice the {@link LightweightWeaver} weaves itself, with the body of the method
+ * wrapping the advised one.
+ */
+enum AdviceKind {
+
+    BEFORE(Before.class, void.class, JoinPoint.class) {
+        @Override
+        String pointcutOf(Method advice) {
+            return advice.getAnnotation(Before.class).value();
+        }
+
+        @Override
+        void writeWrapperBody(AdvisedMethodWriter writer) {
+            writer.callAdvice();
+            writer.callOriginal();
+            writer.returnValue();
+        }
+    },
+
+    AFTER(After.class, void.class, JoinPoint.class) {
+        @Override
+        String pointcutOf(Method advice) {
+            return advice.getAnnotation(After.class).value();
+        }
+
+        @Override
+        void writeWrapperBody(AdvisedMethodWriter writer) {
+            writer.callOriginalThenAdviceInFinally();
+        }
+    },
+
+    AFTER_RETURNING(AfterReturning.class, void.class, JoinPoint.class) {
+        @Override
+        String pointcutOf(Method advice) {
+            AfterReturning annotation = advice.getAnnotation(AfterReturning.class);
+            if (annotation.returning().length() > 0) {
+                return null;
+            }
+            if (annotation.pointcut().length() > 0) {
+                return annotation.pointcut();
+            }
+            return annotation.value();
+        }
+
+        @Override
+        void writeWrapperBody(AdvisedMethodWriter writer) {
+            writer.callOriginal();
+            writer.callAdvice();
+            writer.returnValue();
+        }
+    },
+
+    AROUND(Around.class, Object.class, ProceedingJoinPoint.class) {
+        @Override
+        String pointcutOf(Method advice) {
+            return advice.getAnnotation(Around.class).value();
+        }
+
+        @Override
+        boolean acceptsParameters(Class<?>[] parameterTypes) {
+            return parameterTypes.length == 1 && parameterTypes[0] == ProceedingJoinPoint.class;
+        }
+
+        @Override
+        void writeWrapperBody(AdvisedMethodWriter writer) {
+            writer.callAdvice();
+            writer.returnAdviceResult();
+        }
+    };
+
+    private final Class<? extends Annotation> annotation;
+    private final Class<?> returnType;
+    private final Class<?> joinPointType;
+
+    private AdviceKind(Class<? extends Annotation> annotation, Class<?> returnType,
+                       Class<?> joinPointType) {
+        this.annotation = annotation;
+        this.returnType = returnType;
+        this.joinPointType = joinPointType;
+    }
+
+    /**
+     * @return The kind of the advice method or null if it is not an advice of a supported kind.
+     */
+    static AdviceKind of(Method method) {
+        for (AdviceKind kind : values()) {
+            if (method.isAnnotationPresent(kind.annotation)) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The pointcut expression of the advice or null if the advice binds something.
+     */
+    abstract String pointcutOf(Method advice);
+
+    boolean acceptsReturnType(Class<?> type) {
+        return returnType == type;
+    }
+
+    /**
+     * Only the join point can be received: nothing else is bound by this weaver.
+     */
+    boolean acceptsParameters(Class<?>[] parameterTypes) {
+        return parameterTypes.length == 0
+               || parameterTypes.length == 1 && parameterTypes[0] == joinPointType;
+    }
+
+    Class<?> getJoinPointType() {
+        return joinPointType;
+    }
+
+    abstract void writeWrapperBody(AdvisedMethodWriter writer);
+
+}
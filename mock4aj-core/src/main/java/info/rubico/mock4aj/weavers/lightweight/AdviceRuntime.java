@@ -0,0 +1,282 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+import info.rubico.mock4aj.api.exceptions.Mock4AjException;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.cglib.asm.Type;
+
+import org.aspectj.lang.Aspects;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.JoinPoint.StaticPart;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.runtime.internal.AroundClosure;
+import org.aspectj.runtime.reflect.Factory;
+
+/**
+ * Runtime support of the classes woven by the {@link LightweightWeaver}: the woven methods get
+ * their aspect instances and their join points from here.
+ * <p>
+ * Each woven class keeps its own {@link WovenClassState} in a static field. Nothing here references
+ * a woven class: it can be unloaded with its class loader (like in a generation scope). The aspects
+ * are resolved by the class loader of the woven class, so two aspects of the same name from
+ * different class loaders don't replace each other.
+ * <p>
+ * <strong>It is public only because the woven classes call it. It should not be used
+ * directly.</strong>
+ */
+public final class AdviceRuntime {
+
+    static final String ORIGINAL_METHOD_SUFFIX = "$originalByMock4Aj";
+    static final String STATE_FIELD = "$stateByMock4Aj";
+    static final String STATE_ACCESSOR = "$getStateByMock4Aj";
+
+    /**
+     * The aspect instances shared by the woven classes. They are only referenced weakly: they are
+     * kept by the woven classes using them and by the weavers that registered them.
+     */
+    private static final Map<Class<?>, WeakReference<AspectInstance>> ASPECTS =
+            new WeakHashMap<Class<?>, WeakReference<AspectInstance>>();
+
+    private AdviceRuntime() {
+    }
+
+    /**
+     * Makes the aspect available to the woven classes.
+     *
+     * @return The instance holder of the aspect. The weaver keeps it so the aspect instance is
+     *         shared by all the classes it weaves.
+     */
+    static AspectInstance registerAspect(Class<?> aspect) {
+        synchronized (ASPECTS) {
+            WeakReference<AspectInstance> reference = ASPECTS.get(aspect);
+            AspectInstance aspectInstance = reference == null ? null : reference.get();
+            if (aspectInstance == null) {
+                aspectInstance = new AspectInstance(aspect);
+                ASPECTS.put(aspect, new WeakReference<AspectInstance>(aspectInstance));
+            }
+            return aspectInstance;
+        }
+    }
+
+    /**
+     * Called once by each woven class to create the state kept in its static field.
+     */
+    public static WovenClassState newState(Class<?> wovenClass) {
+        return new WovenClassState(wovenClass);
+    }
+
+    /**
+     * @return The singleton instance of the aspect, as seen by the woven class. It is created by
+     *         its no-arg constructor unless the aspect has an <code>aspectOf()</code> method
+     *         (compiled by ajc).
+     */
+    public static Object aspectOf(WovenClassState state, String aspectName) {
+        return state.aspectOf(aspectName);
+    }
+
+    /**
+     * @param methodKey The name and the descriptor of the executed method.
+     */
+    public static JoinPoint joinPoint(WovenClassState state, Object self, String methodKey,
+                                      Object[] args) {
+        return Factory.makeJP(state.shadowOf(methodKey).getStaticPart(), self, self, args);
+    }
+
+    /**
+     * The join point proceeds to the original body of the method (by reflection).
+     *
+     * @param methodKey The name and the descriptor of the executed method.
+     */
+    public static ProceedingJoinPoint proceedingJoinPoint(WovenClassState state, Object self,
+                                                          String methodKey, Object[] args) {
+        Shadow shadow = state.shadowOf(methodKey);
+        ProceedingJoinPoint joinPoint =
+                (ProceedingJoinPoint) Factory.makeJP(shadow.getStaticPart(), self, self, args);
+        joinPoint.set$AroundClosure(new OriginalMethodCall(self, shadow.getOriginalMethod(),
+                                                           args.clone()));
+        return joinPoint;
+    }
+
+    private static Shadow createShadow(Class<?> wovenClass, String methodKey) {
+        String name = methodKey.substring(0, methodKey.indexOf('('));
+        String descriptor = methodKey.substring(name.length());
+        Method method = findMethod(wovenClass, name, descriptor);
+        Method original = findMethod(wovenClass, name + ORIGINAL_METHOD_SUFFIX, descriptor);
+        original.setAccessible(true);
+        return new Shadow(createStaticPart(method), original);
+    }
+
+    private static Method findMethod(Class<?> wovenClass, String name, String descriptor) {
+        for (Class<?> type = wovenClass; type != null; type = type.getSuperclass()) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (method.getName().equals(name)
+                    && Type.getMethodDescriptor(method).equals(descriptor)) {
+                    return method;
+                }
+            }
+        }
+        throw new Mock4AjException("The woven method " + name + descriptor + " is missing in "
+                                   + wovenClass);
+    }
+
+    private static StaticPart createStaticPart(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        Factory factory = new Factory(declaringClass.getName(), declaringClass);
+        String[] parameterNames = new String[method.getParameterTypes().length];
+        for (int i = 0; i < parameterNames.length; i++) {
+            parameterNames[i] = "arg" + i;
+        }
+        return factory.makeSJP(JoinPoint.METHOD_EXECUTION,
+                               factory.makeMethodSig(method.getModifiers(), method.getName(),
+                                                     declaringClass, method.getParameterTypes(),
+                                                     parameterNames, method.getExceptionTypes(),
+                                                     method.getReturnType()), 0);
+    }
+
+    /**
+     * The state of a woven class: the static parts of its join points and the aspects it uses.
+     * It references only the woven class and the classes it sees.
+     */
+    public static final class WovenClassState {
+
+        private final Class<?> wovenClass;
+        private final ConcurrentMap<String, Shadow> shadows =
+                new ConcurrentHashMap<String, Shadow>();
+        private final ConcurrentMap<String, AspectInstance> aspects =
+                new ConcurrentHashMap<String, AspectInstance>();
+
+        WovenClassState(Class<?> wovenClass) {
+            this.wovenClass = wovenClass;
+        }
+
+        Shadow shadowOf(String methodKey) {
+            Shadow shadow = shadows.get(methodKey);
+            if (shadow == null) {
+                shadow = createShadow(wovenClass, methodKey);
+                shadows.putIfAbsent(methodKey, shadow);
+            }
+            return shadow;
+        }
+
+        Object aspectOf(String aspectName) {
+            AspectInstance aspect = aspects.get(aspectName);
+            if (aspect == null) {
+                aspect = registerAspect(loadAspect(aspectName));
+                aspects.putIfAbsent(aspectName, aspect);
+            }
+            return aspect.getInstance();
+        }
+
+        private Class<?> loadAspect(String aspectName) {
+            try {
+                return Class.forName(aspectName, false, wovenClass.getClassLoader());
+            }
+            catch (ClassNotFoundException e) {
+                throw new Mock4AjException("The aspect " + aspectName + " is not visible from "
+                                           + "the woven class " + wovenClass.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * The class of a registered aspect and its instance, created the first time it is needed.
+     */
+    static class AspectInstance {
+
+        private final Class<?> aspectClass;
+        private volatile Object instance;
+
+        AspectInstance(Class<?> aspectClass) {
+            this.aspectClass = aspectClass;
+        }
+
+        Object getInstance() {
+            if (instance == null) {
+                synchronized (this) {
+                    if (instance == null) {
+                        instance = createInstance();
+                    }
+                }
+            }
+            return instance;
+        }
+
+        private Object createInstance() {
+            try {
+                if (hasAspectOfMethod()) {
+                    return Aspects.aspectOf(aspectClass);
+                }
+                return aspectClass.newInstance();
+            }
+            catch (Exception e) {
+                throw new Mock4AjException("Unable to create an instance of the aspect "
+                                           + aspectClass.getName(), e);
+            }
+        }
+
+        private boolean hasAspectOfMethod() {
+            try {
+                aspectClass.getMethod("aspectOf");
+                return true;
+            }
+            catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The static part of the join point of a woven method and its original body.
+     */
+    private static class Shadow {
+
+        private final StaticPart staticPart;
+        private final Method originalMethod;
+
+        Shadow(StaticPart staticPart, Method originalMethod) {
+            this.staticPart = staticPart;
+            this.originalMethod = originalMethod;
+        }
+
+        StaticPart getStaticPart() {
+            return staticPart;
+        }
+
+        Method getOriginalMethod() {
+            return originalMethod;
+        }
+    }
+
+    /**
+     * Closure of an around advice: proceeding calls the original body of the woven method.
+     */
+    private static class OriginalMethodCall extends AroundClosure {
+
+        private final Object self;
+        private final Method originalMethod;
+
+        OriginalMethodCall(Object self, Method originalMethod, Object[] args) {
+            super(args);
+            this.self = self;
+            this.originalMethod = originalMethod;
+        }
+
+        @Override
+        public Object run(Object[] args) throws Throwable {
+            try {
+                return originalMethod.invoke(self, args);
+            }
+            catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+}
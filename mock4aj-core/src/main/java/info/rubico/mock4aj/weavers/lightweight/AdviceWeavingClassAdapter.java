@@ -0,0 +1,151 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.cglib.asm.ClassAdapter;
+import net.sf.cglib.asm.ClassVisitor;
+import net.sf.cglib.asm.MethodVisitor;
+import net.sf.cglib.asm.Opcodes;
+
+/**
+ * Weaves simple advices into a class: each advised method is moved into a private method and
+ * replaced by a method calling the advice and the moved one.
+ * <p>
+ * The class is not loaded yet: a method is matched through the methods it overrides or implements
+ * (loaded with the class loader of the weaver). The methods declared only by the class itself,
+ * like the helpers generated by cglib, are never advised.
+ * <p>
+ * An {@link UnsupportedConstructException} is thrown when the class cannot be woven this way:
+ * class file with stack map frames, unknown supertypes, a pointcut that needs a runtime test or a
+ * method matched by many advices (their order would have to be decided).
+ */
+class AdviceWeavingClassAdapter extends ClassAdapter implements Opcodes {
+
+    private static final int FIRST_VERSION_WITH_FRAMES = 50;
+    private static final int UNADVISABLE_ACCESS = ACC_STATIC | ACC_ABSTRACT | ACC_NATIVE
+                                                  | ACC_BRIDGE | ACC_SYNTHETIC;
+
+    private final List<SimpleAdvice> advices;
+    private final ClassLoader classLoader;
+    private final OverridableMethods overridableMethods;
+    private final List<Map<String, List<Method>>> supertypesMethods =
+            new ArrayList<Map<String, List<Method>>>();
+    private String className;
+    private boolean woven;
+
+    AdviceWeavingClassAdapter(ClassVisitor cv, List<SimpleAdvice> advices,
+                              ClassLoader classLoader, OverridableMethods overridableMethods) {
+        super(cv);
+        this.advices = advices;
+        this.classLoader = classLoader;
+        this.overridableMethods = overridableMethods;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+                      String[] interfaces) {
+        if ((version & 0xFFFF) >= FIRST_VERSION_WITH_FRAMES) {
+            throw new UnsupportedConstructException(name + ": class files with frames "
+                                                    + "are not supported");
+        }
+        className = name;
+        if (superName != null) {
+            supertypesMethods.add(overridableMethods.of(loadType(superName)));
+        }
+        for (String interfaceName : interfaces) {
+            supertypesMethods.add(overridableMethods.of(loadType(interfaceName)));
+        }
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    private Class<?> loadType(String internalName) {
+        try {
+            return Class.forName(internalName.replace('/', '.'), false, classLoader);
+        }
+        catch (ClassNotFoundException e) {
+            throw new UnsupportedConstructException(className + ": the supertype "
+                                                    + internalName + " is unknown");
+        }
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+                                     String[] exceptions) {
+        SimpleAdvice advice = null;
+        if ((access & UNADVISABLE_ACCESS) == 0 && name.charAt(0) != '<') {
+            advice = findAdvice(name + desc);
+        }
+        if (advice == null) {
+            return super.visitMethod(access, name, desc, signature, exceptions);
+        }
+        woven = true;
+        new AdvisedMethodWriter(className, name, desc, advice).write(cv, access, signature,
+                                                                      exceptions);
+        int originalAccess = access & ~(ACC_PUBLIC | ACC_PROTECTED) | ACC_PRIVATE;
+        return super.visitMethod(originalAccess, AdvisedMethodWriter.originalMethodName(name),
+                                 desc, signature, exceptions);
+    }
+
+    private SimpleAdvice findAdvice(String methodKey) {
+        List<Method> methods = overriddenMethodsOf(methodKey);
+        if (methods.isEmpty()) {
+            return null;
+        }
+        SimpleAdvice found = null;
+        for (SimpleAdvice advice : advices) {
+            if (matches(advice, methods)) {
+                if (found != null) {
+                    throw new UnsupportedConstructException(className + "." + methodKey
+                                                            + ": advised many times");
+                }
+                found = advice;
+            }
+        }
+        return found;
+    }
+
+    private List<Method> overriddenMethodsOf(String methodKey) {
+        List<Method> methods = new ArrayList<Method>();
+        for (Map<String, List<Method>> supertypeMethods : supertypesMethods) {
+            List<Method> declarations = supertypeMethods.get(methodKey);
+            if (declarations != null) {
+                methods.addAll(declarations);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * The execution matches if one of the overridden declarations matches, like the signatures
+     * of a join point in AspectJ.
+     */
+    private boolean matches(SimpleAdvice advice, List<Method> methods) {
+        boolean matches = false;
+        for (Method method : methods) {
+            matches |= advice.matchesExecution(method);
+        }
+        return matches;
+    }
+
+    /**
+     * A woven class keeps its own state: the weaving adds the static field and its accessor.
+     */
+    @Override
+    public void visitEnd() {
+        if (woven) {
+            AdvisedMethodWriter.writeState(cv, className);
+        }
+        super.visitEnd();
+    }
+
+    /**
+     * @return true if at least one method of the class was advised.
+     */
+    boolean isWoven() {
+        return woven;
+    }
+
+}
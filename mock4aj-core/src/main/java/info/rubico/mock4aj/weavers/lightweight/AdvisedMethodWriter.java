@@ -0,0 +1,215 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+import net.sf.cglib.asm.ClassVisitor;
+import net.sf.cglib.asm.Label;
+import net.sf.cglib.asm.MethodVisitor;
+import net.sf.cglib.asm.Opcodes;
+import net.sf.cglib.asm.Type;
+
+/**
+ * Writes the method replacing an advised one. It calls the advice directly and the original body
+ * of the method, moved into a private method.
+ * <p>
+ * The aspects and the join points are given by the {@link AdviceRuntime.WovenClassState} of the
+ * woven class, kept in one of its static fields (see {@link #writeState(ClassVisitor, String)}).
+ *
+ * @see AdviceKind#writeWrapperBody(AdvisedMethodWriter)
+ */
+class AdvisedMethodWriter implements Opcodes {
+
+    private static final String RUNTIME = Type.getInternalName(AdviceRuntime.class);
+    private static final String CONVERSIONS = "org/aspectj/runtime/internal/Conversions";
+    private static final String OBJECT_DESCRIPTOR = "Ljava/lang/Object;";
+    private static final String STATE_DESCRIPTOR =
+            Type.getDescriptor(AdviceRuntime.WovenClassState.class);
+    private static final String STATE_ACCESSOR_DESCRIPTOR = "()" + STATE_DESCRIPTOR;
+    private static final String JOIN_POINT_FACTORY_DESCRIPTOR =
+            "(" + STATE_DESCRIPTOR + "Ljava/lang/Object;Ljava/lang/String;[Ljava/lang/Object;)";
+    private static final int STATE_ACCESS = ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC;
+
+    private final String className;
+    private final String methodName;
+    private final String methodDescriptor;
+    private final Type[] argumentTypes;
+    private final Type returnType;
+    private final SimpleAdvice advice;
+    private MethodVisitor mv;
+
+    AdvisedMethodWriter(String className, String methodName, String methodDescriptor,
+                        SimpleAdvice advice) {
+        this.className = className;
+        this.methodName = methodName;
+        this.methodDescriptor = methodDescriptor;
+        this.argumentTypes = Type.getArgumentTypes(methodDescriptor);
+        this.returnType = Type.getReturnType(methodDescriptor);
+        this.advice = advice;
+    }
+
+    static String originalMethodName(String methodName) {
+        return methodName + AdviceRuntime.ORIGINAL_METHOD_SUFFIX;
+    }
+
+    /**
+     * Writes the method with the name, the access (except synchronized) and the signature of the
+     * advised one. Its original body must be written by the caller in the private method named by
+     * {@link #originalMethodName(String)}.
+     */
+    void write(ClassVisitor cv, int access, String signature, String[] exceptions) {
+        mv = cv.visitMethod(access & ~ACC_SYNCHRONIZED, methodName, methodDescriptor, signature,
+                            exceptions);
+        mv.visitCode();
+        advice.getKind().writeWrapperBody(this);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Writes the static field keeping the state of the woven class and its accessor, creating the
+     * state the first time. The woven class is found by <code>Class.forName</code> called from
+     * itself: its own class loader gives it back.
+     */
+    static void writeState(ClassVisitor cv, String className) {
+        cv.visitField(STATE_ACCESS, AdviceRuntime.STATE_FIELD, STATE_DESCRIPTOR, null, null)
+            .visitEnd();
+        MethodVisitor mv = cv.visitMethod(STATE_ACCESS, AdviceRuntime.STATE_ACCESSOR,
+                                          STATE_ACCESSOR_DESCRIPTOR, null, null);
+        mv.visitCode();
+        Label created = new Label();
+        mv.visitFieldInsn(GETSTATIC, className, AdviceRuntime.STATE_FIELD, STATE_DESCRIPTOR);
+        mv.visitInsn(DUP);
+        mv.visitJumpInsn(IFNONNULL, created);
+        mv.visitInsn(POP);
+        mv.visitLdcInsn(className.replace('/', '.'));
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Class", "forName",
+                           "(Ljava/lang/String;)Ljava/lang/Class;");
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "newState",
+                           "(Ljava/lang/Class;)" + STATE_DESCRIPTOR);
+        mv.visitInsn(DUP);
+        mv.visitFieldInsn(PUTSTATIC, className, AdviceRuntime.STATE_FIELD, STATE_DESCRIPTOR);
+        mv.visitLabel(created);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private void pushState() {
+        mv.visitMethodInsn(INVOKESTATIC, className, AdviceRuntime.STATE_ACCESSOR,
+                           STATE_ACCESSOR_DESCRIPTOR);
+    }
+
+    void callAdvice() {
+        pushState();
+        mv.visitLdcInsn(advice.getAspectName());
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "aspectOf",
+                           "(" + STATE_DESCRIPTOR + "Ljava/lang/String;)" + OBJECT_DESCRIPTOR);
+        mv.visitTypeInsn(CHECKCAST, advice.getAspectInternalName());
+        if (advice.receivesJoinPoint()) {
+            pushJoinPoint();
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, advice.getAspectInternalName(), advice.getMethodName(),
+                           advice.getMethodDescriptor());
+    }
+
+    private void pushJoinPoint() {
+        Type joinPointType = Type.getType(advice.getKind().getJoinPointType());
+        String factoryName = "joinPoint";
+        if (advice.getKind() == AdviceKind.AROUND) {
+            factoryName = "proceedingJoinPoint";
+        }
+        pushState();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitLdcInsn(methodName + methodDescriptor);
+        pushArgumentsArray();
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, factoryName,
+                           JOIN_POINT_FACTORY_DESCRIPTOR + joinPointType.getDescriptor());
+    }
+
+    private void pushArgumentsArray() {
+        pushInt(argumentTypes.length);
+        mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+        int local = 1;
+        for (int i = 0; i < argumentTypes.length; i++) {
+            mv.visitInsn(DUP);
+            pushInt(i);
+            mv.visitVarInsn(argumentTypes[i].getOpcode(ILOAD), local);
+            box(argumentTypes[i]);
+            mv.visitInsn(AASTORE);
+            local += argumentTypes[i].getSize();
+        }
+    }
+
+    private void pushInt(int value) {
+        if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        }
+        else {
+            mv.visitIntInsn(SIPUSH, value);
+        }
+    }
+
+    private void box(Type type) {
+        if (isPrimitive(type)) {
+            String descriptor = "(" + type.getDescriptor() + ")" + OBJECT_DESCRIPTOR;
+            mv.visitMethodInsn(INVOKESTATIC, CONVERSIONS, type.getClassName() + "Object",
+                               descriptor);
+        }
+    }
+
+    private static boolean isPrimitive(Type type) {
+        return type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY;
+    }
+
+    void callOriginal() {
+        mv.visitVarInsn(ALOAD, 0);
+        int local = 1;
+        for (Type argumentType : argumentTypes) {
+            mv.visitVarInsn(argumentType.getOpcode(ILOAD), local);
+            local += argumentType.getSize();
+        }
+        mv.visitMethodInsn(INVOKESPECIAL, className, originalMethodName(methodName),
+                           methodDescriptor);
+    }
+
+    /**
+     * The advice is called when the original method returns and when it throws: the exception is
+     * then thrown again.
+     */
+    void callOriginalThenAdviceInFinally() {
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        mv.visitTryCatchBlock(start, end, handler, null);
+        mv.visitLabel(start);
+        callOriginal();
+        mv.visitLabel(end);
+        callAdvice();
+        returnValue();
+        mv.visitLabel(handler);
+        callAdvice();
+        mv.visitInsn(ATHROW);
+    }
+
+    void returnValue() {
+        mv.visitInsn(returnType.getOpcode(IRETURN));
+    }
+
+    /**
+     * The object returned by an around advice is converted to the return type of the method. Null
+     * becomes 0 or false for a primitive type, like with ajc.
+     */
+    void returnAdviceResult() {
+        if (returnType.getSort() == Type.VOID) {
+            mv.visitInsn(POP);
+        }
+        else if (isPrimitive(returnType)) {
+            String descriptor = "(" + OBJECT_DESCRIPTOR + ")" + returnType.getDescriptor();
+            mv.visitMethodInsn(INVOKESTATIC, CONVERSIONS, returnType.getClassName() + "Value",
+                               descriptor);
+        }
+        else {
+            mv.visitTypeInsn(CHECKCAST, returnType.getInternalName());
+        }
+        returnValue();
+    }
+
+}
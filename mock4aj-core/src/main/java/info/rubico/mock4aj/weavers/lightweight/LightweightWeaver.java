@@ -0,0 +1,376 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+import info.rubico.mock4aj.api.exceptions.NotAConcreteAspect;
+import info.rubico.mock4aj.api.exceptions.NotAnAspect;
+import info.rubico.mock4aj.api.exceptions.WeavingError;
+import info.rubico.mock4aj.api.weaving.AdviceAwareWeaver;
+import info.rubico.mock4aj.api.weaving.BatchWeaver;
+import info.rubico.mock4aj.api.weaving.FingerprintedWeaver;
+import info.rubico.mock4aj.api.weaving.MultiAspectWeaver;
+import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.api.weaving.Weavers;
+import info.rubico.mock4aj.api.weaving.WeavingResult;
+import info.rubico.mock4aj.internal.classutils.BytecodeDigest;
+import info.rubico.mock4aj.internal.metrics.WeavingMetrics;
+import info.rubico.mock4aj.weavers.aspectj.AspectJWeaver;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.cglib.asm.ClassReader;
+import net.sf.cglib.asm.ClassWriter;
+
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * <p>
+ * A {@link Weaver} weaving simple annotation-style aspects without the AspectJ weaver. The
+ * advised methods of the generated classes (proxies, callers...) are rewritten to call the advices
+ * directly. Registering an aspect only reads it with the reflection API: there is no AspectJ world
+ * to prepare.
+ * </p>
+ * <p>
+ * Only these aspects are supported:
+ * </p>
+ * <ul>
+ * <li>public singleton <code>@Aspect</code> classes, instantiable and extending no other
+ * class;</li>
+ * <li>with <code>@Before</code>, <code>@After</code>, <code>@AfterReturning</code> (without
+ * <code>returning</code>) and <code>@Around</code> advices receiving only the join point;</li>
+ * <li>with pointcuts made of <code>execution</code> designators (named pointcuts are allowed);</li>
+ * <li>without declarations (parents, precedence, errors...).</li>
+ * </ul>
+ * <p>
+ * Anything else is woven by a fallback weaver, an {@link AspectJWeaver} by default, created the
+ * first time it is needed. As soon as an unsupported aspect is registered, all the classes are
+ * given to the fallback with all the registered aspects. A class this weaver cannot weave (a
+ * pointcut needing a runtime test, a method advised many times...) is also given to the fallback.
+ * </p>
+ * <p>
+ * The matching is made on the methods overridden by the woven class, as declared by its
+ * supertypes. The methods declared only by the generated class itself are never advised.
+ * </p>
+ *
+ * @see AdviceRuntime
+ */
+public class LightweightWeaver implements FingerprintedWeaver, AdviceAwareWeaver,
+    MultiAspectWeaver, BatchWeaver {
+
+    private final ClassLoader classLoader;
+    private final SimpleAspectReader aspectReader;
+    private final OverridableMethods overridableMethods =
+            new OverridableMethods(OverridableMethods.DEFAULT_MAX_TYPES);
+    private final Map<Class<?>, ReadAspect> readAspects = new HashMap<Class<?>, ReadAspect>();
+    private final Map<String, Class<?>> registeredAspects = new LinkedHashMap<String, Class<?>>();
+    private List<SimpleAdvice> advices;
+    private String aspectsFingerprint;
+    private String unsupportedAspectReason;
+    private Weaver fallback;
+    private boolean fallbackUpToDate;
+    private long fallbackClassesCount;
+    private volatile WeavingMetrics metrics = WeavingMetrics.getDefault();
+
+    public LightweightWeaver() {
+        this(Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * @param classLoader The class loader used to resolve the pointcuts and the supertypes of the
+     *            woven classes.
+     */
+    public LightweightWeaver(ClassLoader classLoader) {
+        this(classLoader, null);
+    }
+
+    /**
+     * @param fallback The weaver used for the unsupported aspects and classes. If null, an
+     *            {@link AspectJWeaver} is created when needed.
+     */
+    public LightweightWeaver(ClassLoader classLoader, Weaver fallback) {
+        this.classLoader = classLoader;
+        this.aspectReader = new SimpleAspectReader(classLoader);
+        this.fallback = fallback;
+    }
+
+    /**
+     * @throws NotAnAspect if the class is not an aspect class.
+     * @throws NotAConcreteAspect if the aspect is an abstract aspect.
+     * @see MultiAspectWeaver
+     */
+    public synchronized void registerAspect(Class<?> aspect) {
+        registerAspects(aspect);
+    }
+
+    /**
+     * @throws NotAnAspect if one of the classes is not an aspect class.
+     * @throws NotAConcreteAspect if one of the aspects is an abstract aspect.
+     * @see MultiAspectWeaver
+     */
+    public synchronized void registerAspects(Class<?>... aspects) {
+        List<Class<?>> aspectsToRegister = selectUnregisteredAspects(aspects);
+        if (!aspectsToRegister.isEmpty()) {
+            checkAspects(aspectsToRegister);
+            addToRegisteredAspects(aspectsToRegister);
+            aspectsModified();
+        }
+    }
+
+    /**
+     * @throws NotAnAspect if one of the classes is not an aspect class.
+     * @throws NotAConcreteAspect if one of the aspects is an abstract aspect.
+     * @see MultiAspectWeaver
+     */
+    public synchronized void replaceAspects(Class<?>... aspects) {
+        checkAspects(selectUnregisteredAspects(aspects));
+        registeredAspects.clear();
+        addToRegisteredAspects(Arrays.asList(aspects));
+        aspectsModified();
+    }
+
+    private List<Class<?>> selectUnregisteredAspects(Class<?>... aspects) {
+        List<Class<?>> unregistered = new ArrayList<Class<?>>();
+        for (Class<?> aspect : aspects) {
+            if (!registeredAspects.containsKey(aspect.getName())
+                && !unregistered.contains(aspect)) {
+                unregistered.add(aspect);
+            }
+        }
+        return unregistered;
+    }
+
+    /**
+     * Only the AspectJ weaver can tell if an unsupported class is an aspect (like a code-style
+     * aspect): it is then prepared immediately.
+     */
+    private void checkAspects(List<Class<?>> aspects) {
+        List<Class<?>> unknownClasses = new ArrayList<Class<?>>();
+        for (Class<?> aspect : aspects) {
+            if (Modifier.isAbstract(aspect.getModifiers())) {
+                throw new NotAConcreteAspect(aspect); // NOPMD
+            }
+            if (!read(aspect).isSupported() && !aspect.isAnnotationPresent(Aspect.class)) {
+                unknownClasses.add(aspect);
+            }
+        }
+        if (!unknownClasses.isEmpty()) {
+            unknownClasses.addAll(registeredAspects.values());
+            Weavers.replaceAspects(getFallback(), toArray(unknownClasses));
+            fallbackUpToDate = false;
+        }
+    }
+
+    private ReadAspect read(Class<?> aspect) {
+        ReadAspect readAspect = readAspects.get(aspect);
+        if (readAspect == null) {
+            readAspect = new ReadAspect();
+            try {
+                readAspect.advices = aspectReader.read(aspect);
+            }
+            catch (UnsupportedConstructException e) {
+                readAspect.unsupportedReason = e.getMessage();
+            }
+            readAspects.put(aspect, readAspect);
+        }
+        return readAspect;
+    }
+
+    private void addToRegisteredAspects(List<Class<?>> aspects) {
+        for (Class<?> aspect : aspects) {
+            registeredAspects.put(aspect.getName(), aspect);
+        }
+    }
+
+    public synchronized void unregisterAspect(Class<?> aspect) {
+        if (registeredAspects.remove(aspect.getName()) != null) {
+            aspectsModified();
+        }
+    }
+
+    /**
+     * The aspects already read are remembered: registering them again is cheap.
+     *
+     * @see Weaver
+     */
+    public synchronized void reset() {
+        registeredAspects.clear();
+        aspectsModified();
+    }
+
+    private void aspectsModified() {
+        advices = null;
+        aspectsFingerprint = null;
+        fallbackUpToDate = false;
+    }
+
+    /**
+     * @throws UnsupportedConstructException If an unsupported aspect is registered.
+     */
+    private List<SimpleAdvice> getAdvices() {
+        if (advices == null) {
+            advices = new ArrayList<SimpleAdvice>();
+            unsupportedAspectReason = null;
+            for (Class<?> aspect : registeredAspects.values()) {
+                ReadAspect readAspect = read(aspect);
+                if (readAspect.isSupported()) {
+                    advices.addAll(readAspect.advices);
+                    readAspect.instance = AdviceRuntime.registerAspect(aspect);
+                }
+                else {
+                    unsupportedAspectReason = readAspect.unsupportedReason;
+                }
+            }
+        }
+        if (unsupportedAspectReason != null) {
+            throw new UnsupportedConstructException(unsupportedAspectReason);
+        }
+        return advices;
+    }
+
+    public synchronized byte[] weaveClassBytes(String className, byte[] bytes) {
+        long start = System.nanoTime();
+        try {
+            byte[] wovenBytes = weaveDirectly(bytes);
+            metrics.recordWeaving(className, bytes.length, wovenBytes.length,
+                                  System.nanoTime() - start);
+            return wovenBytes;
+        }
+        catch (UnsupportedConstructException e) {
+            return weaveWithFallback(className, bytes);
+        }
+        catch (RuntimeException e) {
+            throw handleWeavingException(className, e);
+        }
+    }
+
+    private byte[] weaveDirectly(byte[] bytes) {
+        List<SimpleAdvice> currentAdvices = getAdvices();
+        if (currentAdvices.isEmpty()) {
+            return bytes;
+        }
+        ClassReader reader = new ClassReader(bytes);
+        ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        AdviceWeavingClassAdapter adapter = new AdviceWeavingClassAdapter(writer, currentAdvices,
+                                                                          classLoader,
+                                                                          overridableMethods);
+        reader.accept(adapter, 0);
+        if (!adapter.isWoven()) {
+            return bytes;
+        }
+        return writer.toByteArray();
+    }
+
+    private byte[] weaveWithFallback(String className, byte[] bytes) {
+        fallbackClassesCount++;
+        Weaver fallbackWeaver = getFallback();
+        if (!fallbackUpToDate) {
+            Weavers.replaceAspects(fallbackWeaver, toArray(registeredAspects.values()));
+            fallbackUpToDate = true;
+        }
+        return fallbackWeaver.weaveClassBytes(className, bytes);
+    }
+
+    private static Class<?>[] toArray(Collection<Class<?>> classes) {
+        return classes.toArray(new Class<?>[classes.size()]);
+    }
+
+    protected WeavingError handleWeavingException(String className, Exception cause) {
+        return new WeavingError(String.format("An error occurs during the lightweight weaving of "
+                                              + "the class '%s'.", className), cause);
+    }
+
+    /**
+     * The method is matched like by the weaving. If it could be woven by the fallback (unsupported
+     * aspect or pointcut), it could be advised.
+     *
+     * @see AdviceAwareWeaver
+     */
+    public synchronized boolean couldAdvise(Class<?> proxiedClass, Method method) {
+        try {
+            for (SimpleAdvice advice : getAdvices()) {
+                if (advice.matchesExecution(method)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        catch (UnsupportedConstructException e) {
+            return true;
+        }
+    }
+
+    /**
+     * The classes are woven one after the other.
+     *
+     * @see BatchWeaver
+     */
+    public synchronized Map<String, WeavingResult> weaveClasses(Map<String, byte[]> classes) {
+        Map<String, WeavingResult> results = new LinkedHashMap<String, WeavingResult>();
+        for (Map.Entry<String, byte[]> clazz : classes.entrySet()) {
+            results.put(clazz.getKey(),
+                        WeavingResult.weave(this, clazz.getKey(), clazz.getValue()));
+        }
+        return results;
+    }
+
+    /**
+     * @see FingerprintedWeaver
+     */
+    public synchronized String getAspectsFingerprint() {
+        if (aspectsFingerprint == null) {
+            aspectsFingerprint = BytecodeDigest.digestClasses(registeredAspects.values());
+        }
+        return aspectsFingerprint;
+    }
+
+    /**
+     * @return The weaver of the unsupported aspects and classes (created if needed).
+     */
+    public synchronized Weaver getFallback() {
+        if (fallback == null) {
+            fallback = new AspectJWeaver(classLoader);
+        }
+        return fallback;
+    }
+
+    /**
+     * @return How many classes were given to the fallback weaver.
+     */
+    public synchronized long getFallbackClassesCount() {
+        return fallbackClassesCount;
+    }
+
+    public WeavingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets where the lightweight weaving is measured. The classes given to the fallback are
+     * measured by the fallback itself.
+     */
+    public void setMetrics(WeavingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * The advices of an aspect or the reason why it is not supported. The instance of a supported
+     * aspect is kept: the classes woven by this weaver share it.
+     */
+    private static class ReadAspect {
+
+        private List<SimpleAdvice> advices;
+        private String unsupportedReason;
+        private AdviceRuntime.AspectInstance instance; // NOPMD
+
+        boolean isSupported() {
+            return unsupportedReason == null;
+        }
+    }
+
+}
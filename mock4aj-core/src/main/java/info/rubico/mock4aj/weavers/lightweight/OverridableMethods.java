@@ -0,0 +1,72 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+import info.rubico.mock4aj.internal.cache.BoundedLruCache;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.cglib.asm.Type;
+
+/**
+ * The methods a subclass of a type can override, indexed by name and descriptor. They are kept in
+ * a bounded cache: the same types are extended by each proxy.
+ */
+class OverridableMethods {
+
+    static final int DEFAULT_MAX_TYPES = 256;
+
+    private final BoundedLruCache<Class<?>, Map<String, List<Method>>> cache;
+
+    OverridableMethods(int maxTypes) {
+        cache = new BoundedLruCache<Class<?>, Map<String, List<Method>>>(maxTypes);
+    }
+
+    /**
+     * @return The methods of the type and of all its supertypes, for each name and descriptor.
+     */
+    Map<String, List<Method>> of(Class<?> type) {
+        Map<String, List<Method>> methods = cache.get(type);
+        if (methods == null) {
+            methods = new HashMap<String, List<Method>>();
+            collectMethods(type, methods, new HashSet<Class<?>>());
+            methods = Collections.unmodifiableMap(methods);
+            cache.put(type, methods);
+        }
+        return methods;
+    }
+
+    private static void collectMethods(Class<?> type, Map<String, List<Method>> methods,
+                                       Set<Class<?>> visitedTypes) {
+        if (type == null || !visitedTypes.add(type)) {
+            return;
+        }
+        for (Method method : type.getDeclaredMethods()) {
+            int modifiers = method.getModifiers();
+            if (!Modifier.isPrivate(modifiers) && !Modifier.isStatic(modifiers)) {
+                addMethod(methods, method);
+            }
+        }
+        collectMethods(type.getSuperclass(), methods, visitedTypes);
+        for (Class<?> implementedInterface : type.getInterfaces()) {
+            collectMethods(implementedInterface, methods, visitedTypes);
+        }
+    }
+
+    private static void addMethod(Map<String, List<Method>> methods, Method method) {
+        String methodKey = method.getName() + Type.getMethodDescriptor(method);
+        List<Method> declarations = methods.get(methodKey);
+        if (declarations == null) {
+            declarations = new ArrayList<Method>();
+            methods.put(methodKey, declarations);
+        }
+        declarations.add(method);
+    }
+
+}
@@ -0,0 +1,79 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+import info.rubico.mock4aj.internal.cache.BoundedLruCache;
+
+import java.lang.reflect.Method;
+
+import net.sf.cglib.asm.Type;
+
+import org.aspectj.weaver.tools.PointcutExpression;
+import org.aspectj.weaver.tools.ShadowMatch;
+
+/**
+ * An advice simple enough to be woven by the {@link LightweightWeaver}: a public method of a
+ * singleton aspect, bound to an execution pointcut and receiving nothing but the join point.
+ */
+class SimpleAdvice {
+
+    private static final int MAX_CACHED_MATCHES = 1024;
+
+    private final AdviceKind kind;
+    private final Method method;
+    private final PointcutExpression pointcut;
+    private final BoundedLruCache<Method, Boolean> matchesCache =
+            new BoundedLruCache<Method, Boolean>(MAX_CACHED_MATCHES);
+
+    SimpleAdvice(AdviceKind kind, Method method, PointcutExpression pointcut) {
+        this.kind = kind;
+        this.method = method;
+        this.pointcut = pointcut;
+    }
+
+    /**
+     * The results are remembered: the same methods are matched for each proxy of a class.
+     *
+     * @throws UnsupportedConstructException If the match depends on a runtime test.
+     */
+    synchronized boolean matchesExecution(Method overriddenMethod) {
+        Boolean matches = matchesCache.get(overriddenMethod);
+        if (matches == null) {
+            ShadowMatch match = pointcut.matchesMethodExecution(overriddenMethod);
+            if (!match.alwaysMatches() && match.maybeMatches()) {
+                throw new UnsupportedConstructException(this + ": needs a runtime test");
+            }
+            matches = match.alwaysMatches();
+            matchesCache.put(overriddenMethod, matches);
+        }
+        return matches;
+    }
+
+    AdviceKind getKind() {
+        return kind;
+    }
+
+    boolean receivesJoinPoint() {
+        return method.getParameterTypes().length == 1;
+    }
+
+    String getAspectName() {
+        return method.getDeclaringClass().getName();
+    }
+
+    String getAspectInternalName() {
+        return Type.getInternalName(method.getDeclaringClass());
+    }
+
+    String getMethodName() {
+        return method.getName();
+    }
+
+    String getMethodDescriptor() {
+        return Type.getMethodDescriptor(method);
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+
+}
@@ -0,0 +1,160 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.aspectj.lang.annotation.AfterThrowing;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.DeclarePrecedence;
+import org.aspectj.weaver.tools.PointcutExpression;
+import org.aspectj.weaver.tools.PointcutParameter;
+import org.aspectj.weaver.tools.PointcutParser;
+import org.aspectj.weaver.tools.PointcutPrimitive;
+
+/**
+ * Reads the advices of an annotation-style aspect with the reflection API. The pointcuts are
+ * parsed by the AspectJ {@link PointcutParser}, restricted to the execution primitive.
+ */
+class SimpleAspectReader {
+
+    private static final String ASPECTJ_ANNOTATIONS_PACKAGE = "org.aspectj.lang.annotation.";
+    private static final String AJC_MEMBER_PREFIX = "ajc$";
+    private static final Set<String> AJC_SINGLETON_MEMBERS =
+            new HashSet<String>(Arrays.asList("ajc$perSingletonInstance", "ajc$initFailureCause",
+                                              "ajc$postClinit", "ajc$preClinit"));
+    private static final PointcutParameter[] NO_PARAMETERS = new PointcutParameter[0];
+
+    private final PointcutParser parser;
+
+    SimpleAspectReader(ClassLoader classLoader) {
+        Set<PointcutPrimitive> primitives =
+                new HashSet<PointcutPrimitive>(Arrays.asList(PointcutPrimitive.EXECUTION,
+                                                             PointcutPrimitive.REFERENCE));
+        // CHECKSTYLE:OFF (the name of the factory method is longer than a line)
+        parser = PointcutParser.getPointcutParserSupportingSpecifiedPrimitivesAndUsingSpecifiedClassLoaderForResolution(primitives, classLoader);
+        // CHECKSTYLE:ON
+    }
+
+    /**
+     * @throws UnsupportedConstructException If the aspect uses something else than simple advices.
+     */
+    List<SimpleAdvice> read(Class<?> aspect) {
+        checkAspectDeclaration(aspect);
+        List<SimpleAdvice> advices = new ArrayList<SimpleAdvice>();
+        for (Method method : aspect.getDeclaredMethods()) {
+            checkNotGeneratedByAjc(method.getName());
+            AdviceKind kind = AdviceKind.of(method);
+            if (kind != null) {
+                advices.add(readAdvice(kind, method));
+            }
+            else if (method.isAnnotationPresent(AfterThrowing.class)) {
+                throw unsupported(method, "after throwing advices are not supported");
+            }
+        }
+        return advices;
+    }
+
+    private void checkAspectDeclaration(Class<?> aspect) {
+        Aspect declaration = aspect.getAnnotation(Aspect.class);
+        if (declaration == null) {
+            throw unsupported(aspect, "only @Aspect classes are supported");
+        }
+        if (declaration.value().length() > 0) {
+            throw unsupported(aspect, "only singleton aspects are supported");
+        }
+        if (aspect.getSuperclass() != Object.class) {
+            throw unsupported(aspect, "aspects extending a class are not supported");
+        }
+        if (!Modifier.isPublic(aspect.getModifiers())) {
+            throw unsupported(aspect, "the aspect must be public");
+        }
+        checkInstantiable(aspect);
+        checkNoDeclarations(aspect);
+    }
+
+    private void checkInstantiable(Class<?> aspect) {
+        try {
+            aspect.getMethod("aspectOf");
+        }
+        catch (NoSuchMethodException noAspectOf) {
+            try {
+                aspect.getConstructor();
+            }
+            catch (NoSuchMethodException e) {
+                throw unsupported(aspect, "the aspect needs a public no-arg constructor");
+            }
+        }
+    }
+
+    private void checkNoDeclarations(Class<?> aspect) {
+        if (aspect.isAnnotationPresent(DeclarePrecedence.class)) {
+            throw unsupported(aspect, "precedence declarations are not supported");
+        }
+        for (Field field : aspect.getDeclaredFields()) {
+            checkNotGeneratedByAjc(field.getName());
+            if (hasAspectJAnnotation(field)) {
+                throw unsupported(field, "inter-type and error declarations are not supported");
+            }
+        }
+    }
+
+    private static boolean hasAspectJAnnotation(AnnotatedElement element) {
+        for (Annotation annotation : element.getAnnotations()) {
+            if (annotation.annotationType().getName().startsWith(ASPECTJ_ANNOTATIONS_PACKAGE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Aspects compiled by ajc can have advices and inter-type declarations without annotations.
+     * Only the members of the singleton instantiation model are expected.
+     */
+    private static void checkNotGeneratedByAjc(String memberName) {
+        if (memberName.startsWith(AJC_MEMBER_PREFIX)
+            && !AJC_SINGLETON_MEMBERS.contains(memberName)) {
+            throw new UnsupportedConstructException("Members generated by ajc are not supported: "
+                                                    + memberName);
+        }
+    }
+
+    private SimpleAdvice readAdvice(AdviceKind kind, Method method) {
+        if (!Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+            throw unsupported(method, "the advice must be a public instance method");
+        }
+        if (!kind.acceptsReturnType(method.getReturnType())
+            || !kind.acceptsParameters(method.getParameterTypes())) {
+            throw unsupported(method, "the advice can only receive the join point");
+        }
+        String pointcut = kind.pointcutOf(method);
+        if (pointcut == null) {
+            throw unsupported(method, "the advice binds the returned value");
+        }
+        return new SimpleAdvice(kind, method, parsePointcut(method, pointcut));
+    }
+
+    private PointcutExpression parsePointcut(Method advice, String pointcut) {
+        try {
+            return parser.parsePointcutExpression(pointcut, advice.getDeclaringClass(),
+                                                  NO_PARAMETERS);
+        }
+        catch (RuntimeException e) {
+            throw unsupported(advice, "the pointcut is not a simple execution pointcut ("
+                                      + e.getMessage() + ")");
+        }
+    }
+
+    private static UnsupportedConstructException unsupported(Object element, String reason) {
+        return new UnsupportedConstructException(String.format("%s: %s", element, reason));
+    }
+
+}
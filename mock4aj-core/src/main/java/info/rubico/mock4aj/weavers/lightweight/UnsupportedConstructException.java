@@ -0,0 +1,13 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+/**
+ * Something the {@link LightweightWeaver} cannot weave itself: the AspectJ weaver has to be used.
+ */
+@SuppressWarnings("serial")
+class UnsupportedConstructException extends RuntimeException {
+
+    UnsupportedConstructException(String message) {
+        super(message);
+    }
+
+}
@@ -1,18 +1,37 @@
 package info.rubico.mock4aj.weavers.noweaving;
 
-import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.api.weaving.AdviceAwareWeaver;
+import info.rubico.mock4aj.api.weaving.BatchWeaver;
+import info.rubico.mock4aj.api.weaving.FingerprintedWeaver;
+import info.rubico.mock4aj.api.weaving.MultiAspectWeaver;
+import info.rubico.mock4aj.api.weaving.WeavingResult;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * A Fake Weaver Adapter that doesn't weave. It just return the same bytecode unchanged.
  * 
  * It could be use to disable momentarily the weaving but continue to generate mocks and proxies.
  */
-public class NoWeavingWeaver implements Weaver {
+public class NoWeavingWeaver implements FingerprintedWeaver, AdviceAwareWeaver, MultiAspectWeaver,
+    BatchWeaver {
+
+    private static final String NO_ASPECTS_FINGERPRINT = "no weaving";
 
     public void registerAspect(final Class<?> aspect) {
         // We don't really care
     }
 
+    public void registerAspects(final Class<?>... aspects) {
+        // We don't really care
+    }
+
+    public void replaceAspects(final Class<?>... aspects) {
+        // We don't really care
+    }
+
     public void unregisterAspect(final Class<?> aspect) {
         // No aspect will be ever registered
     }
@@ -25,4 +44,26 @@ public class NoWeavingWeaver implements Weaver {
         return bytes;
     }
 
+    public Map<String, WeavingResult> weaveClasses(final Map<String, byte[]> classes) {
+        Map<String, WeavingResult> results = new LinkedHashMap<String, WeavingResult>();
+        for (Map.Entry<String, byte[]> clazz : classes.entrySet()) {
+            results.put(clazz.getKey(), WeavingResult.woven(clazz.getKey(), clazz.getValue()));
+        }
+        return results;
+    }
+
+    /**
+     * No aspect is ever woven: the fingerprint is always the same.
+     */
+    public String getAspectsFingerprint() {
+        return NO_ASPECTS_FINGERPRINT;
+    }
+
+    /**
+     * Nothing is ever advised.
+     */
+    public boolean couldAdvise(final Class<?> proxiedClass, final Method method) {
+        return false;
+    }
+
 }
@@ -0,0 +1,96 @@
+package info.rubico.mock4aj;
+
+import static org.junit.Assert.*;
+import info.rubico.mock4aj.api.calls.PreparedCall;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.cglib.proxy.Factory;
+
+import org.junit.Test;
+
+public class Mock4AspectJTest {
+
+    @Test
+    public void whenWarmUpThenTheWarmUpCompletesOnlyOnce() throws Exception {
+        Future<?> warmUp = Mock4AspectJ.warmUp();
+
+        warmUp.get();
+
+        assertTrue(warmUp.isDone());
+        assertSame(warmUp, Mock4AspectJ.warmUp());
+        assertTrue(Mock4AspectJ.getDefaultWeaver().getWorldTypeMapSize() > 0);
+    }
+
+    @Test(timeout = 60000)
+    public void givenWarmUpsRunningWhenCreateWeavedProxiesThenEveryProxyDelegatesToItsObject()
+        throws Exception {
+        final int warmUps = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(warmUps);
+        try {
+            List<Future<?>> runningWarmUps = new ArrayList<Future<?>>();
+            for (int i = 0; i < warmUps; i++) {
+                runningWarmUps.add(executor.submit(new Mock4AspectJ.WarmUp()));
+            }
+
+            for (int i = 0; i < warmUps; i++) {
+                Counter proxy = Mock4AspectJ.createWeavedProxy(new Counter());
+                assertEquals(1, proxy.increment());
+            }
+            for (Future<?> warmUp : runningWarmUps) {
+                warmUp.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenNoAspectWhenCreateWeavedProxyThenTheProxyDelegatesToTheObject() {
+        Counter proxy = Mock4AspectJ.createWeavedProxy(new Counter());
+
+        assertTrue(proxy instanceof Factory);
+        assertEquals(1, proxy.increment());
+    }
+
+    @Test
+    public void givenNoAspectWhenCreateWeavedProxiesAsyncThenEachProxyDelegatesToItsObject()
+        throws Exception {
+        List<Counter> counters = Arrays.asList(new Counter(), new Counter());
+        counters.get(1).increment();
+
+        List<Counter> proxies = Mock4AspectJ.createWeavedProxiesAsync(counters).get();
+
+        assertEquals(1, proxies.get(0).increment());
+        assertEquals(2, proxies.get(1).increment());
+        assertSame(proxies.get(0).getClass(), proxies.get(1).getClass());
+    }
+
+    @Test
+    public void givenAPreparedCallWhenInvokeManyTimesThenEachInvocationCallsTheObject()
+        throws Exception {
+        Counter counter = new Counter();
+        PreparedCall increment = Mock4AspectJ.prepareCall(counter, Mock4AspectJ.callContext(),
+                                                          "increment");
+
+        increment.invoke();
+        Object count = increment.invoke();
+
+        assertEquals(2, count);
+    }
+
+    public static class Counter {
+
+        private int count;
+
+        public int increment() {
+            return ++count;
+        }
+    }
+}
@@ -3,7 +3,7 @@ package info.rubico.mock4aj.api.calls;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
-import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.api.weaving.MultiAspectWeaver;
 
 import java.util.Date;
 
@@ -13,12 +13,12 @@ import org.junit.Test;
 
 public class DefaultCallContextWithExistingWeaverTest {
 
-    private CallContext context;
-    private Weaver weaverMock;
+    private MultiAspectCallContext context;
+    private MultiAspectWeaver weaverMock;
 
     @Before
     public void setupAspectJWeavingCallContext() {
-        weaverMock = mock(Weaver.class);
+        weaverMock = mock(MultiAspectWeaver.class);
         context = new DefaultCallContextWithExistingWeaver(weaverMock);
     }
 
@@ -47,6 +47,14 @@ public class DefaultCallContextWithExistingWeaverTest {
         verifyNoMoreInteractions(weaverMock);
     }
 
+    @Test
+    public void whenWithAspectsShouldRegisterAllTheAspectsAtOnceOnTheWeaver() {
+        context.withAspects(AnAspect.class, OtherAspect.class);
+
+        verify(weaverMock).registerAspects(AnAspect.class, OtherAspect.class);
+        verifyNoMoreInteractions(weaverMock);
+    }
+
     @Test
     public void whenFromClassThenTheSourceIsSetToTheSameTypeAndName() {
         context.from(Date.class);
@@ -0,0 +1,91 @@
+package info.rubico.mock4aj.api.calls;
+
+import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.*;
+import info.rubico.mock4aj.api.exceptions.EncapsulatedExceptionThrownByTarget;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class PreparedCallTest {
+
+    private static final int INVOCATIONS_COUNT = 10;
+
+    private MethodCaller callerMock;
+    private PreparedCall preparedCall;
+
+    @Before
+    public void prepareACallReturningItsArgument() {
+        callerMock = mock(MethodCaller.class);
+        given(callerMock.doCall(any(Object[].class))).willAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                return ((Object[]) invocation.getArguments()[0])[0];
+            }
+        });
+        preparedCall = new PreparedCall(callerMock);
+    }
+
+    @Test
+    public void whenInvokeThenTheCallerIsCalledWithTheArguments() {
+        Object result = preparedCall.invoke(1L);
+
+        assertEquals(1L, result);
+        verify(callerMock).doCall(new Object[] { 1L });
+    }
+
+    @Test
+    public void whenInvokeAllThenTheResultsFollowTheOrderOfTheArguments() {
+        List<Object> results = preparedCall.invokeAll(argumentsList());
+
+        assertEquals(expectedResults(), results);
+    }
+
+    @Test
+    public void givenAnExecutorWhenInvokeAllThenTheResultsFollowTheOrderOfTheArguments() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Object> results = preparedCall.invokeAll(argumentsList(), executor, 3);
+
+            assertEquals(expectedResults(), results);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = EncapsulatedExceptionThrownByTarget.class)
+    public void givenAnExceptionFromTheTargetWhenInvokeAllInParallelThenItIsRethrown() {
+        willThrow(new EncapsulatedExceptionThrownByTarget(new Exception())).given(callerMock)
+            .doCall(any(Object[].class));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            preparedCall.invokeAll(argumentsList(), executor, 2);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<Object[]> argumentsList() {
+        Object[][] argumentsList = new Object[INVOCATIONS_COUNT][];
+        for (int i = 0; i < INVOCATIONS_COUNT; i++) {
+            argumentsList[i] = new Object[] { i };
+        }
+        return Arrays.asList(argumentsList);
+    }
+
+    private static List<Object> expectedResults() {
+        Object[] results = new Object[INVOCATIONS_COUNT];
+        for (int i = 0; i < INVOCATIONS_COUNT; i++) {
+            results[i] = i;
+        }
+        return Arrays.asList(results);
+    }
+}
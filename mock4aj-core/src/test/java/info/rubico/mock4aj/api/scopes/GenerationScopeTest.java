@@ -0,0 +1,220 @@
+package info.rubico.mock4aj.api.scopes;
+
+import static org.junit.Assert.*;
+import info.rubico.mock4aj.api.exceptions.Mock4AjException;
+import info.rubico.mock4aj.codegen.cglib.calls.caller.MethodCallerBytecodeGenerator;
+import info.rubico.mock4aj.codegen.cglib.proxies.CglibWeavedProxyFactory;
+import info.rubico.mock4aj.internal.calls.CallTargetByReflection;
+import info.rubico.mock4aj.weavers.aspectj.AspectJWeaver;
+import info.rubico.mock4aj.weavers.noweaving.NoWeavingWeaver;
+
+import java.lang.ref.WeakReference;
+import java.util.Date;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GenerationScopeTest { // NOPMD
+
+    private static final int MAX_GC_ATTEMPTS = 20;
+    private static final long GC_WAIT_MS = 50;
+
+    private GenerationScope scope;
+    private AspectJWeaver weaver;
+
+    @Before
+    public void createWeaver() {
+        weaver = new AspectJWeaver();
+        weaver.registerAspect(TimeAspect.class);
+    }
+
+    @After
+    public void closeScope() {
+        if (scope != null) {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void givenNoScopeWhenClassLoaderForThenShouldReturnTheDefaultLoader() {
+        ClassLoader defaultLoader = getClass().getClassLoader();
+
+        assertNull(GenerationScope.current());
+        assertSame(defaultLoader, GenerationScope.classLoaderFor(defaultLoader, Date.class));
+    }
+
+    @Test
+    public void givenAnOpenScopeWhenClassLoaderForThenShouldReturnTheScopeLoader() {
+        scope = GenerationScope.open();
+        ClassLoader defaultLoader = getClass().getClassLoader();
+
+        ClassLoader loader = GenerationScope.classLoaderFor(defaultLoader, Date.class);
+
+        assertSame(scope, GenerationScope.current());
+        assertNotSame(defaultLoader, loader);
+        assertSame(loader, scope.getClassLoader());
+    }
+
+    @Test
+    public void givenNestedScopesWhenCloseTheInnerOneThenTheOuterOneIsCurrent() {
+        scope = GenerationScope.open();
+        GenerationScope innerScope = GenerationScope.open();
+
+        innerScope.close();
+
+        assertSame(scope, GenerationScope.current());
+    }
+
+    @Test
+    public void givenAScopeClosedByAnotherThreadWhenCurrentThenShouldBeSkipped() throws Exception {
+        scope = GenerationScope.open();
+        final GenerationScope innerScope = GenerationScope.open();
+
+        Thread closingThread = new Thread() {
+            @Override
+            public void run() {
+                innerScope.close();
+            }
+        };
+        closingThread.start();
+        closingThread.join();
+
+        assertSame(scope, GenerationScope.current());
+    }
+
+    @Test(expected = Mock4AjException.class)
+    public void givenAClosedScopeWhenGetClassLoaderThenShouldThrowAnException() {
+        GenerationScope closedScope = GenerationScope.open();
+        closedScope.close();
+
+        closedScope.getClassLoader();
+    }
+
+    @Test
+    public void givenProxiesCreatedInAScopeWhenCloseThenTheirClassesAreUnloaded() {
+        scope = GenerationScope.open();
+        WeakReference<Class<?>> proxyClass = createProxyClass();
+
+        scope.close();
+
+        assertUnloaded(proxyClass);
+    }
+
+    @Test
+    public void givenCallersCreatedInAScopeWhenCloseThenTheirClassesAreUnloaded() throws Exception {
+        scope = GenerationScope.open();
+        WeakReference<Class<?>> callerClass = createCallerClass();
+
+        scope.close();
+
+        assertUnloaded(callerClass);
+    }
+
+    @Test
+    public void givenWeavedProxiesCreatedInAScopeWhenCloseThenTheirClassesAreUnloaded() {
+        scope = GenerationScope.open();
+        WeakReference<Class<?>> proxyClass = createWeavedProxyClass();
+
+        scope.close();
+
+        assertUnloaded(proxyClass);
+    }
+
+    @Test
+    public void givenTwoSuccessiveScopesWhenCreateWeavedProxiesThenBothAreAdvised() {
+        Class<?> firstProxyClass = createAdvisedProxyInANewScope();
+        Class<?> secondProxyClass = createAdvisedProxyInANewScope();
+
+        assertNotSame(firstProxyClass.getClassLoader(), secondProxyClass.getClassLoader());
+    }
+
+    @Test
+    public void givenNoScopeWhenCreateProxyThenItsClassIsInTheLoaderOfTheProxiedClass() {
+        Date proxy = new CglibWeavedProxyFactory().createWeavedProxy(new ProxiedClass(),
+                                                                     new NoWeavingWeaver());
+
+        assertSame(ProxiedClass.class.getClassLoader(), proxy.getClass().getClassLoader());
+    }
+
+    private WeakReference<Class<?>> createProxyClass() {
+        Date proxy = new CglibWeavedProxyFactory().createWeavedProxy(new ProxiedClass(),
+                                                                     new NoWeavingWeaver());
+        assertSame(scope.getClassLoader(), proxy.getClass().getClassLoader());
+        return new WeakReference<Class<?>>(proxy.getClass());
+    }
+
+    private WeakReference<Class<?>> createWeavedProxyClass() {
+        Date proxy = new CglibWeavedProxyFactory().createWeavedProxy(new ProxiedClass(), weaver);
+        assertEquals(TimeAspect.TIME, proxy.getTime());
+        assertSame(scope.getClassLoader(), proxy.getClass().getClassLoader());
+        return new WeakReference<Class<?>>(proxy.getClass());
+    }
+
+    private Class<?> createAdvisedProxyInANewScope() {
+        scope = GenerationScope.open();
+        try {
+            Date proxy = new CglibWeavedProxyFactory().createWeavedProxy(new ProxiedClass(),
+                                                                         weaver);
+            assertEquals(TimeAspect.TIME, proxy.getTime());
+            assertSame(scope.getClassLoader(), proxy.getClass().getClassLoader());
+            return proxy.getClass();
+        }
+        finally {
+            scope.close();
+        }
+    }
+
+    private WeakReference<Class<?>> createCallerClass() throws NoSuchMethodException {
+        CallTargetByReflection target = new CallTargetByReflection(new Date(), "getTime");
+        Object caller = new MethodCallerBytecodeGenerator(target).create();
+        assertSame(scope.getClassLoader(), caller.getClass().getClassLoader());
+        return new WeakReference<Class<?>>(caller.getClass());
+    }
+
+    private void assertUnloaded(WeakReference<Class<?>> generatedClass) {
+        for (int attempt = 0; attempt < MAX_GC_ATTEMPTS && generatedClass.get() != null;
+                attempt++) {
+            System.gc();
+            try {
+                Thread.sleep(GC_WAIT_MS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        assertNull("The generated class should be unloaded", generatedClass.get());
+    }
+
+    @SuppressWarnings("serial")
+    public static class ProxiedClass extends Date {
+    }
+
+    /**
+     * Not compiled by ajc: declares its own aspectOf() and hasAspect().
+     */
+    @Aspect
+    public static class TimeAspect {
+
+        public static final long TIME = 42;
+
+        private static final TimeAspect INSTANCE = new TimeAspect();
+
+        public static TimeAspect aspectOf() {
+            return INSTANCE;
+        }
+
+        public static boolean hasAspect() {
+            return true;
+        }
+
+        @Around("execution(long getTime())")
+        public Object time(ProceedingJoinPoint joinPoint) {
+            return TIME;
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package info.rubico.mock4aj.api.weaving;
+
+import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.*;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class WeaversTest {
+
+    @Test
+    public void givenAMultiAspectWeaverWhenRegisterAspectsThenTheyAreRegisteredAtOnce() {
+        MultiAspectWeaver weaver = mock(MultiAspectWeaver.class);
+
+        Weavers.registerAspects(weaver, String.class, Date.class);
+
+        verify(weaver).registerAspects(String.class, Date.class);
+    }
+
+    @Test
+    public void givenABasicWeaverWhenRegisterAspectsThenTheyAreRegisteredOneByOne() {
+        Weaver weaver = mock(Weaver.class);
+
+        Weavers.registerAspects(weaver, String.class, Date.class);
+
+        verify(weaver).registerAspect(String.class);
+        verify(weaver).registerAspect(Date.class);
+    }
+
+    @Test
+    public void givenABasicWeaverWhenReplaceAspectsThenItIsResetBeforeTheRegistrations() {
+        Weaver weaver = mock(Weaver.class);
+
+        Weavers.replaceAspects(weaver, String.class);
+
+        InOrder inOrder = inOrder(weaver);
+        inOrder.verify(weaver).reset();
+        inOrder.verify(weaver).registerAspect(String.class);
+    }
+
+    @Test
+    public void givenABasicWeaverWhenWeaveClassesThenEachClassIsWoven() {
+        Weaver weaver = mock(Weaver.class);
+        byte[] wovenBytes = "Woven".getBytes();
+        given(weaver.weaveClassBytes(eq("SomeClass"), any(byte[].class))).willReturn(wovenBytes);
+        Map<String, byte[]> classes = Collections.singletonMap("SomeClass", "Some".getBytes());
+
+        Map<String, WeavingResult> results = Weavers.weaveClasses(weaver, classes);
+
+        assertArrayEquals(wovenBytes, results.get("SomeClass").getWovenBytes());
+    }
+
+}
@@ -5,10 +5,14 @@ import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 import info.rubico.mock4aj.api.calls.CallContext;
+import info.rubico.mock4aj.api.calls.CallTarget;
+import info.rubico.mock4aj.api.calls.MethodCaller;
+import info.rubico.mock4aj.api.calls.PreparedCall;
 import info.rubico.mock4aj.api.exceptions.Mock4AjException;
 import info.rubico.mock4aj.codegen.cglib.calls.caller.CglibWeavedCallerGenerator;
 import info.rubico.mock4aj.codegen.cglib.calls.selector.CglibMethodSelectorGenerator;
 import info.rubico.mock4aj.codegen.cglib.calls.selector.CglibSimulateCallInterceptor;
+import info.rubico.mock4aj.internal.calls.CallTargetByReflection;
 import info.rubico.mock4aj.internal.calls.CallerGenerator;
 
 import java.util.Date;
@@ -144,6 +148,19 @@ public class CglibCallWeavingSimulatorTest { // NOPMD
         assertSame(callerGeneratorMock, action.getCallerGenerator());
     }
 
+    @Test
+    public void whenPrepareCallThenTheCallerIsGeneratedOnceForTheTargetAndTheContext()
+        throws NoSuchMethodException {
+        CallTarget target = new CallTargetByReflection(targetMock, "getTime");
+        MethodCaller callerMock = mock(MethodCaller.class);
+        when(callerGeneratorMock.generateMethodCaller(target, contextMock)).thenReturn(callerMock);
+
+        PreparedCall preparedCall = simulator.prepareCall(target, contextMock);
+
+        assertSame(callerMock, preparedCall.getCaller());
+        verifyZeroInteractions(targetSelectorGeneratorMock);
+    }
+
     public static MethodInterceptor anyCallback() {
         return (MethodInterceptor) anyObject();
     }
@@ -0,0 +1,73 @@
+package info.rubico.mock4aj.codegen.cglib.calls.caller;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import info.rubico.mock4aj.api.calls.CallSource;
+import info.rubico.mock4aj.api.calls.CallTarget;
+import info.rubico.mock4aj.api.calls.ExistingSource;
+import info.rubico.mock4aj.api.calls.FictitiousSource;
+import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.internal.calls.CallTargetByReflection;
+import info.rubico.mock4aj.internal.metrics.WeavingMetrics;
+import info.rubico.mock4aj.weavers.noweaving.NoWeavingWeaver;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CallerClassCacheTest {
+
+    private CallTarget getTimeTarget;
+
+    @Before
+    public void createTarget() throws NoSuchMethodException {
+        getTimeTarget = new CallTargetByReflection(new Date(), "getTime");
+    }
+
+    @Test
+    public void givenAWeaverWithoutFingerprintWhenGetTheKeyThenThereIsNone() {
+        assertNull(CallerClassCache.keyOf(getTimeTarget, new ExistingSource(Object.class),
+                                          mock(Weaver.class)));
+    }
+
+    @Test
+    public void givenSourcesWithTheSameTypeButNotTheSameNameWhenGetTheKeyThenTheyDiffer() {
+        Weaver weaver = new NoWeavingWeaver();
+
+        String existingSourceKey = CallerClassCache.keyOf(getTimeTarget,
+                                                          new ExistingSource(Object.class),
+                                                          weaver);
+        String fictitiousSourceKey = CallerClassCache.keyOf(getTimeTarget,
+                                                            new FictitiousSource("a.Source"),
+                                                            weaver);
+
+        assertFalse(existingSourceKey.equals(fictitiousSourceKey));
+    }
+
+    @Test
+    public void givenTheSameCallOnAnotherObjectWhenGetTheKeyThenItIsTheSame()
+        throws NoSuchMethodException {
+        Weaver weaver = new NoWeavingWeaver();
+        CallTarget otherTarget = new CallTargetByReflection(new Date(), "getTime");
+        CallSource source = new ExistingSource(Object.class);
+
+        assertEquals(CallerClassCache.keyOf(getTimeTarget, source, weaver),
+                     CallerClassCache.keyOf(otherTarget, source, weaver));
+    }
+
+    @Test
+    public void whenGetThenTheLookupIsCountedByTheMetrics() {
+        CallerClassCache cache = new CallerClassCache(1);
+        WeavingMetrics metrics = new WeavingMetrics();
+        cache.setMetrics(metrics);
+        ClassLoader loader = getClass().getClassLoader();
+        cache.put(loader, "key", Date.class);
+
+        cache.get(loader, "key");
+        cache.get(loader, "key");
+        cache.get(loader, "other key");
+
+        assertEquals(2.0 / 3, metrics.getCallerClassCacheHitRatio(), 0);
+    }
+}
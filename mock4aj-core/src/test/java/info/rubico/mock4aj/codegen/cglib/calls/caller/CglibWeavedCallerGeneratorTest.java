@@ -5,10 +5,13 @@ import static org.mockito.Mockito.*;
 import info.rubico.mock4aj.api.calls.CallContext;
 import info.rubico.mock4aj.api.calls.CallSource;
 import info.rubico.mock4aj.api.calls.CallTarget;
+import info.rubico.mock4aj.api.calls.ExistingSource;
 import info.rubico.mock4aj.api.calls.MethodCaller;
+import info.rubico.mock4aj.api.calls.RetargetableMethodCaller;
 import info.rubico.mock4aj.api.weaving.Weaver;
 import info.rubico.mock4aj.codegen.cglib.transformations.CglibWeavingGeneratorStrategy;
 import info.rubico.mock4aj.internal.calls.CallTargetByReflection;
+import info.rubico.mock4aj.weavers.noweaving.NoWeavingWeaver;
 
 import java.util.Date;
 
@@ -21,7 +24,7 @@ public class CglibWeavedCallerGeneratorTest {
 
     private CallTargetByReflection dateGetTimeTarget;
     private MethodCallerBytecodeGenerator generatorMock;
-    private MethodCaller generatedCallerMock;
+    private RetargetableMethodCaller generatedCallerMock;
     private CallContext contextMock;
     private CglibWeavingGeneratorStrategy weavingStrategyMock;
     private Weaver weaverMock;
@@ -38,7 +41,7 @@ public class CglibWeavedCallerGeneratorTest {
 
         dateGetTimeTarget = new CallTargetByReflection(new Date(), "getTime");
 
-        generatedCallerMock = mock(MethodCaller.class);
+        generatedCallerMock = mock(RetargetableMethodCaller.class);
         generatorMock = mock(MethodCallerBytecodeGenerator.class);
         when(generatorMock.create()).thenReturn(generatedCallerMock);
 
@@ -90,6 +93,23 @@ public class CglibWeavedCallerGeneratorTest {
         verify(generatorMock).setUseCache(false);
     }
 
+    @Test
+    public void givenTheSameCallOnTwoObjectsThenTheWovenCallerClassIsReused()
+        throws NoSuchMethodException {
+        when(contextMock.getConfiguredWeaver()).thenReturn(new NoWeavingWeaver());
+        when(contextMock.getConfiguredCallSource()).thenReturn(new ExistingSource(Object.class));
+        CglibWeavedCallerGenerator realGenerator = new CglibWeavedCallerGenerator();
+        realGenerator.setCallerClassCache(new CallerClassCache(1));
+        CallTarget otherTarget = new CallTargetByReflection(new Date(2L), "getTime");
+
+        MethodCaller caller = realGenerator.generateMethodCaller(dateGetTimeTarget, contextMock);
+        MethodCaller otherCaller = realGenerator.generateMethodCaller(otherTarget, contextMock);
+
+        assertSame(caller.getClass(), otherCaller.getClass());
+        assertEquals(2L, otherCaller.doCall(new Object[0]));
+        assertEquals(1, realGenerator.getCallerClassCache().getHitCount());
+    }
+
     @Test
     public void shouldConfigureTheClassGeneratorWithTheContextSource() {
         generator.generateMethodCaller(dateGetTimeTarget, contextMock);
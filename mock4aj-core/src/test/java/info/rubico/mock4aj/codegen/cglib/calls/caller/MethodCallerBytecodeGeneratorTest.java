@@ -8,6 +8,7 @@ import static org.mockito.Mockito.*;
 import info.rubico.mock4aj.api.calls.CallSource;
 import info.rubico.mock4aj.api.calls.CallTarget;
 import info.rubico.mock4aj.api.calls.MethodCaller;
+import info.rubico.mock4aj.api.calls.RetargetableMethodCaller;
 import info.rubico.mock4aj.api.exceptions.EncapsulatedExceptionThrownByTarget;
 import info.rubico.mock4aj.api.exceptions.Mock4AjException;
 import info.rubico.mock4aj.api.exceptions.UnsupportedSourceType;
@@ -183,6 +184,18 @@ public class MethodCallerBytecodeGeneratorTest { // NOPMD
         verify(dateMock).getTime();
     }
 
+    @Test
+    public void givenARetargetedCallerWhenDoCallThenShouldCallTheNewTarget() {
+        Date otherDateMock = mock(Date.class);
+        RetargetableMethodCaller caller = createGenerator(getTimeTarget).create();
+
+        caller.setMock4AjTarget(otherDateMock);
+        caller.doCall(NO_ARGS);
+
+        verify(otherDateMock).getTime();
+        verify(dateMock, never()).getTime();
+    }
+
     @Test
     public void whenDoCallThenTheReturnValueShouldFollow() {
         final long time = 10L;
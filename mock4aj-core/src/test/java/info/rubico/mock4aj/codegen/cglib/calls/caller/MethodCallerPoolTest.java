@@ -0,0 +1,92 @@
+package info.rubico.mock4aj.codegen.cglib.calls.caller;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+import info.rubico.mock4aj.api.calls.CallContext;
+import info.rubico.mock4aj.api.calls.CallTarget;
+import info.rubico.mock4aj.api.calls.ExistingSource;
+import info.rubico.mock4aj.api.calls.RetargetableMethodCaller;
+import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.internal.calls.CallTargetByReflection;
+import info.rubico.mock4aj.weavers.noweaving.NoWeavingWeaver;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class MethodCallerPoolTest {
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private CallContext contextMock;
+    private CglibWeavedCallerGenerator callerGenerator;
+
+    @Before
+    public void setupContextAndGenerator() {
+        contextMock = mock(CallContext.class);
+        when(contextMock.getConfiguredWeaver()).thenReturn(new NoWeavingWeaver());
+        when(contextMock.getConfiguredCallSource()).thenReturn(new ExistingSource(Object.class));
+
+        callerGenerator = new CglibWeavedCallerGenerator();
+        callerGenerator.setCallerClassCache(new CallerClassCache(1));
+    }
+
+    @Test
+    public void givenAReleasedCallerWhenAcquireForAnotherTargetThenItIsReusedAndRetargeted()
+        throws NoSuchMethodException {
+        MethodCallerPool pool = new MethodCallerPool(callerGenerator, 1);
+        RetargetableMethodCaller caller = pool.acquire(getTimeTarget(1L), contextMock);
+        pool.release(caller);
+
+        RetargetableMethodCaller reusedCaller = pool.acquire(getTimeTarget(2L), contextMock);
+
+        assertSame(caller, reusedCaller);
+        assertEquals(2L, reusedCaller.doCall(NO_ARGS));
+        assertEquals(0, pool.getIdleCallersCount());
+    }
+
+    @Test
+    public void givenAPoolWithoutRoomWhenReleaseThenTheCallerIsDropped()
+        throws NoSuchMethodException {
+        MethodCallerPool pool = new MethodCallerPool(callerGenerator, 0);
+        RetargetableMethodCaller caller = pool.acquire(getTimeTarget(1L), contextMock);
+
+        pool.release(caller);
+
+        assertEquals(0, pool.getIdleCallersCount());
+        assertNotSame(caller, pool.acquire(getTimeTarget(2L), contextMock));
+    }
+
+    @Test
+    public void givenAWeaverWithoutFingerprintWhenAcquireThenANewCallerIsGenerated()
+        throws NoSuchMethodException {
+        Weaver weaverWithoutFingerprint = mock(Weaver.class);
+        when(weaverWithoutFingerprint.weaveClassBytes(anyString(), isA(byte[].class)))
+            .thenAnswer(returnBytecode());
+        when(contextMock.getConfiguredWeaver()).thenReturn(weaverWithoutFingerprint);
+        MethodCallerPool pool = new MethodCallerPool(callerGenerator, 1);
+        RetargetableMethodCaller caller = pool.acquire(getTimeTarget(1L), contextMock);
+        pool.release(caller);
+
+        RetargetableMethodCaller otherCaller = pool.acquire(getTimeTarget(2L), contextMock);
+
+        assertNotSame(caller, otherCaller);
+        assertEquals(2L, otherCaller.doCall(NO_ARGS));
+    }
+
+    private static Answer<byte[]> returnBytecode() {
+        return new Answer<byte[]>() {
+            public byte[] answer(InvocationOnMock invocation) {
+                return (byte[]) invocation.getArguments()[1];
+            }
+        };
+    }
+
+    private static CallTarget getTimeTarget(long time) throws NoSuchMethodException {
+        return new CallTargetByReflection(new Date(time), "getTime");
+    }
+}
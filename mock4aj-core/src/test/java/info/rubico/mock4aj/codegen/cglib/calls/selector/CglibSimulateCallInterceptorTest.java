@@ -130,6 +130,24 @@ public class CglibSimulateCallInterceptorTest { // NOPMD
         verify(callerMock).doCall(new Object[] { time });
     }
 
+    @Test
+    public void givenAMethodAlreadyCalledWhenCallItAgainThenTheCallerIsReused() throws Throwable {
+        simulateCall(targetObjectMock, GET_TIME_METHOD);
+        simulateCall(targetObjectMock, GET_TIME_METHOD);
+
+        verify(callerFactoryMock, times(1)).generateMethodCaller(anyTarget(), anyContext());
+        verify(callerMock, times(2)).doCall(NO_ARGS);
+    }
+
+    @Test
+    public void givenAMethodAlreadyCalledWhenCallAnotherMethodThenANewCallerIsGenerated()
+        throws Throwable {
+        simulateCall(targetObjectMock, GET_TIME_METHOD);
+        simulateCall(targetObjectMock, SET_TIME_METHOD, 5L);
+
+        verify(callerFactoryMock, times(2)).generateMethodCaller(anyTarget(), anyContext());
+    }
+
     private Object simulateCall(Object target, Method method, Object... args) throws Throwable { // NOPMD
         return callback.intercept(clientOfTheCallbackMock, method, args, null);
     }
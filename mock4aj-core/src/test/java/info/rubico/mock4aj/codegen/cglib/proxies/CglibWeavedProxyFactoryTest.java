@@ -5,27 +5,47 @@ import static org.junit.matchers.JUnitMatchers.*;
 import static org.mockito.BDDMockito.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
+import info.rubico.mock4aj.api.calls.DefaultCallContextWithExistingWeaver;
 import info.rubico.mock4aj.api.exceptions.NotAnInstanceToProxy;
 import info.rubico.mock4aj.api.exceptions.UnproxiableType;
 import info.rubico.mock4aj.api.proxies.WeavedProxyFactory;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
+import info.rubico.mock4aj.api.weaving.FingerprintedWeaver;
 import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.codegen.cglib.calls.CglibCallWeavingSimulator;
+import info.rubico.mock4aj.weavers.aspectj.AspectJWeaver;
+import info.rubico.mock4aj.weavers.lightweight.LightweightWeaver;
 import info.rubico.mock4aj.weavers.noweaving.NoWeavingWeaver;
 
+import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import net.sf.cglib.proxy.Factory;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 @SuppressWarnings("unused")
 public class CglibWeavedProxyFactoryTest { // NOPMD
 
     private WeavedProxyFactory factory;
+    private CglibWeavedProxyFactory directFactory;
     private Weaver noWeavingAdapter;
 
     @Before
     public void setupFactoryWithNoWeaving() {
         factory = new CglibWeavedProxyFactory();
+        directFactory = new CglibWeavedProxyFactory();
+        directFactory.setDirectDelegation(true);
         noWeavingAdapter = new NoWeavingWeaver();
     }
 
@@ -144,13 +164,183 @@ public class CglibWeavedProxyFactoryTest { // NOPMD
     }
 
     @Test
-    public void noProxyCachingBecauseItCausesProblemsWithWeaving() {
+    public void givenTheSameTypesAndAspectsWhenProxyAgainThenTheProxyClassIsReused() {
         Date aDate = new Date();
 
         Date aDateProxy = factory.createWeavedProxy(aDate, noWeavingAdapter);
-        Date sameDateProxy = factory.createWeavedProxy(aDate, noWeavingAdapter);
+        Date sameDateProxy = factory.createWeavedProxy(new Date(), noWeavingAdapter);
+
+        assertSame(sameDateProxy.getClass(), aDateProxy.getClass());
+        assertNotSame(sameDateProxy, aDateProxy);
+    }
+
+    @Test
+    public void givenOtherAspectsWhenProxyAgainThenANewProxyClassIsWeaved() {
+        FingerprintedWeaver weaver = mock(FingerprintedWeaver.class);
+        given(weaver.weaveClassBytes(anyString(), isA(byte[].class))).willAnswer(returnBytecode());
+        given(weaver.getAspectsFingerprint()).willReturn("some aspects", "other aspects");
+
+        SimpleClass aProxy = factory.createWeavedProxy(new SimpleClass(), weaver);
+        SimpleClass otherProxy = factory.createWeavedProxy(new SimpleClass(), weaver);
+
+        assertNotSame(otherProxy.getClass(), aProxy.getClass());
+        verify(weaver, times(2)).weaveClassBytes(anyString(), isA(byte[].class));
+    }
+
+    @Test
+    public void givenAWeaverWithoutFingerprintWhenProxyAgainThenANewProxyClassIsWeaved() {
+        Weaver weaver = mock(Weaver.class);
+        given(weaver.weaveClassBytes(anyString(), isA(byte[].class))).willAnswer(returnBytecode());
+
+        Date aDateProxy = factory.createWeavedProxy(new Date(), weaver);
+        Date otherDateProxy = factory.createWeavedProxy(new Date(), weaver);
+
+        assertNotSame(otherDateProxy.getClass(), aDateProxy.getClass());
+    }
+
+    @Test
+    public void givenDirectDelegationWhenProxyThenTheMethodsCallDirectlyTheObject() {
+        SimpleClass aMock = mock(SimpleClass.class);
+        Object paramObject = new Object();
+        given(aMock.returnItsParam(paramObject)).willReturn(paramObject);
+
+        SimpleClass proxy = directFactory.createWeavedProxy(aMock, noWeavingAdapter);
+
+        assertEquals(paramObject, proxy.returnItsParam(paramObject));
+        verify(aMock).returnItsParam(paramObject);
+        assertTrue(proxy instanceof DelegatingProxy);
+        assertFalse(proxy instanceof Factory);
+    }
+
+    @Test
+    public void givenDirectDelegationWhenProxyAMockedInterfaceThenTheMethodsAreDelegated() {
+        @SuppressWarnings("unchecked")
+        List<String> listMocked = mock(List.class);
+        given(listMocked.size()).willReturn(2);
+
+        List<String> proxy = directFactory.createWeavedProxy(listMocked, noWeavingAdapter);
+
+        assertEquals(2, proxy.size());
+        assertTrue(proxy instanceof DelegatingProxy);
+    }
+
+    @Test
+    public void givenDirectDelegationAndAnAspectWhenCallTheProxyThenTheProxyIsWeaved() {
+        LightweightWeaver weaver = new LightweightWeaver();
+        weaver.registerAspect(ReturnNothingAspect.class);
+
+        SimpleClass proxy = directFactory.createWeavedProxy(new SimpleClass(), weaver);
+
+        assertNull(proxy.returnItsParam(new Object()));
+    }
+
+    @Test
+    public void givenDirectDelegationAndACallAdviceWhenCallTheProxyThenTheAdviceRunsOnce() {
+        AspectJWeaver weaver = new AspectJWeaver();
+        weaver.registerAspect(CountCallsAspect.class);
+        CalledClass proxy = directFactory.createWeavedProxy(new CalledClass(), weaver);
+        CalledClass caller = new CglibCallWeavingSimulator()
+            .call(proxy, new DefaultCallContextWithExistingWeaver(weaver));
+        CountCallsAspect.CALLS.set(0);
+
+        caller.answer();
+
+        assertTrue(proxy instanceof DelegatingProxy);
+        assertEquals(1, CountCallsAspect.CALLS.get());
+    }
+
+    @Test
+    public void givenDirectDelegationAndAProtectedMethodInAScopeWhenProxyThenUseTheCallback() {
+        GenerationScope scope = GenerationScope.open();
+        try {
+            ClassWithAProtectedMethod proxy = directFactory
+                .createWeavedProxy(new ClassWithAProtectedMethod(), noWeavingAdapter);
+
+            assertTrue(proxy instanceof Factory);
+            assertFalse(proxy instanceof DelegatingProxy);
+        }
+        finally {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void givenSelectiveInterceptionWhenProxyThenOnlyTheAdvisedMethodsAreIntercepted() {
+        CglibWeavedProxyFactory selectiveFactory = new CglibWeavedProxyFactory();
+        selectiveFactory.setSelectiveInterception(true);
+        LightweightWeaver weaver = new LightweightWeaver();
+        weaver.registerAspect(ReturnNothingAspect.class);
+        SimpleClass anObject = new SimpleClass();
+
+        SimpleClass proxy = selectiveFactory.createWeavedProxy(anObject, weaver);
 
-        assertNotSame(sameDateProxy.getClass(), aDateProxy.getClass());
+        assertNull(proxy.returnItsParam(new Object()));
+        assertEquals(anObject.toString(), proxy.toString());
+        assertTrue(isIntercepted(proxy, "returnItsParam"));
+        assertFalse(isIntercepted(proxy, "toString"));
+    }
+
+    @Test
+    public void givenSelectiveInterceptionAndNoWeavingWhenProxyThenNoMethodIsIntercepted() {
+        CglibWeavedProxyFactory selectiveFactory = new CglibWeavedProxyFactory();
+        selectiveFactory.setSelectiveInterception(true);
+        SimpleClass aMock = mock(SimpleClass.class);
+
+        SimpleClass proxy = selectiveFactory.createWeavedProxy(aMock, noWeavingAdapter);
+        proxy.returnItsParam("param");
+
+        verify(aMock).returnItsParam("param");
+        assertFalse(isIntercepted(proxy, "returnItsParam"));
+    }
+
+    /**
+     * Cglib keeps the Method of each intercepted method in a static field.
+     */
+    private static boolean isIntercepted(Object proxy, String methodName) {
+        for (Field field : proxy.getClass().getDeclaredFields()) {
+            if (field.getName().startsWith("CGLIB$" + methodName + "$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test(expected = UnproxiableType.class)
+    public void givenDirectDelegationWhenProxyFinalClassInstanceThenCanNotProxy() {
+        directFactory.createWeavedProxy(new AFinalClass(), noWeavingAdapter);
+    }
+
+    @Test
+    public void givenObjectsOfTheSameClassWhenCreateProxiesThenTheProxyClassIsWeavedOnce() {
+        Weaver weaver = mock(Weaver.class);
+        given(weaver.weaveClassBytes(anyString(), isA(byte[].class))).willAnswer(returnBytecode());
+        List<Date> dates = Arrays.asList(new Date(1), new Date(2), new Date(3));
+
+        List<Date> proxies = factory.createWeavedProxies(dates, weaver);
+
+        verify(weaver, times(1)).weaveClassBytes(anyString(), isA(byte[].class));
+        assertSame(proxies.get(0).getClass(), proxies.get(2).getClass());
+        assertEquals(2, proxies.get(1).getTime());
+    }
+
+    @Test
+    public void givenObjectsOfManyClassesWhenCreateProxiesThenTheOrderIsKept() {
+        List<Object> objects = Arrays.<Object> asList(new Date(), new SimpleClass(), new Date());
+
+        List<Object> proxies = directFactory.createWeavedProxies(objects, noWeavingAdapter);
+
+        assertTrue(proxies.get(0) instanceof Date);
+        assertTrue(proxies.get(1) instanceof SimpleClass);
+        assertTrue(proxies.get(2) instanceof DelegatingProxy);
+        assertNotSame(objects.get(2), proxies.get(2));
+    }
+
+    private static Answer<byte[]> returnBytecode() {
+        return new Answer<byte[]>() {
+            public byte[] answer(InvocationOnMock invocation) {
+                return (byte[]) invocation.getArguments()[1];
+            }
+        };
     }
 
     private String expectedProxyName(final Object anObject) {
@@ -170,6 +360,50 @@ public class CglibWeavedProxyFactoryTest { // NOPMD
         }
     }
 
+    public static class CalledClass {
+        public int answer() {
+            return 42;
+        }
+    }
+
+    public static class ClassWithAProtectedMethod {
+        protected void doSomething() { // NOPMD
+        }
+    }
+
+    @Aspect
+    public static class ReturnNothingAspect {
+
+        @Around("execution(Object returnItsParam(Object))")
+        public Object returnNothing(ProceedingJoinPoint joinPoint) {
+            return null;
+        }
+    }
+
+    /**
+     * Not compiled by ajc: declares its own aspectOf() and hasAspect().
+     */
+    @Aspect
+    public static class CountCallsAspect {
+
+        static final AtomicInteger CALLS = new AtomicInteger();
+
+        private static final CountCallsAspect INSTANCE = new CountCallsAspect();
+
+        public static CountCallsAspect aspectOf() {
+            return INSTANCE;
+        }
+
+        public static boolean hasAspect() {
+            return true;
+        }
+
+        @AfterReturning("call(int answer())")
+        public void countCall() {
+            CALLS.incrementAndGet();
+        }
+    }
+
     private final class AFinalClass { // NOPMD
 
     }
@@ -0,0 +1,61 @@
+package info.rubico.mock4aj.codegen.cglib.proxies;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.internal.metrics.WeavingMetrics;
+import info.rubico.mock4aj.weavers.noweaving.NoWeavingWeaver;
+
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class ProxyClassCacheTest {
+
+    private static final Class<?>[] INTERFACES = { Serializable.class };
+
+    @Test
+    public void givenAWeaverWithoutFingerprintWhenGetTheKeyThenThereIsNone() {
+        assertNull(ProxyClassCache.keyOf(Date.class, INTERFACES, mock(Weaver.class)));
+    }
+
+    @Test
+    public void givenAClassCachedInALoaderWhenGetFromAnotherLoaderThenItIsNotFound() {
+        ProxyClassCache cache = new ProxyClassCache(1);
+        String key = ProxyClassCache.keyOf(Date.class, INTERFACES, new NoWeavingWeaver());
+        ClassLoader loader = getClass().getClassLoader();
+        cache.put(loader, key, Date.class);
+
+        assertSame(Date.class, cache.get(loader, key));
+        assertNull(cache.get(new URLClassLoader(new URL[0], loader), key));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void whenGetThenTheLookupIsCountedByTheMetrics() {
+        ProxyClassCache cache = new ProxyClassCache(1);
+        WeavingMetrics metrics = new WeavingMetrics();
+        cache.setMetrics(metrics);
+        ClassLoader loader = getClass().getClassLoader();
+        cache.put(loader, "key", Date.class);
+
+        cache.get(loader, "key");
+        cache.get(loader, "other key");
+
+        assertEquals(0.5, metrics.getProxyClassCacheHitRatio(), 0);
+    }
+
+    @Test
+    public void givenACacheWithoutRoomWhenPutThenNothingIsKept() {
+        ProxyClassCache cache = new ProxyClassCache(0);
+        ClassLoader loader = getClass().getClassLoader();
+
+        cache.put(loader, "key", Date.class);
+
+        assertNull(cache.get(loader, "key"));
+    }
+}
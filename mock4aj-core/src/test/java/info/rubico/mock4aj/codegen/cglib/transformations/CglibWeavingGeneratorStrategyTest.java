@@ -0,0 +1,156 @@
+package info.rubico.mock4aj.codegen.cglib.transformations;
+
+import static org.junit.Assert.*;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
+import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.codegen.cglib.proxies.CglibWeavedProxyFactory;
+import info.rubico.mock4aj.weavers.aspectj.PersistentWovenClassCache;
+import info.rubico.mock4aj.weavers.aspectj.WeavingDependencyDigest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CglibWeavingGeneratorStrategyTest {
+
+    private static final String ASPECTS_FINGERPRINT = "aspects";
+
+    private File cacheDirectory;
+    private KeyedWovenClassCache persistentCache;
+
+    @Before
+    public void createPersistentCache() throws IOException {
+        cacheDirectory = File.createTempFile("mock4aj-keys", "");
+        cacheDirectory.delete();
+        persistentCache = new KeyedWovenClassCache(cacheDirectory);
+    }
+
+    @After
+    public void deletePersistentCache() {
+        cacheDirectory.delete();
+    }
+
+    @Test
+    public void givenTwoScopesWhenGenerateTheSameProxyThenTheBytesAndCacheKeysAreTheSame() {
+        GeneratedClasses firstScope = generateProxyInANewScope();
+        GeneratedClasses secondScope = generateProxyInANewScope();
+
+        assertEquals(firstScope.bytes.keySet(), secondScope.bytes.keySet());
+        for (String className : firstScope.bytes.keySet()) {
+            assertTrue("should generate the same bytes for " + className,
+                       Arrays.equals(firstScope.bytes.get(className),
+                                     secondScope.bytes.get(className)));
+        }
+        assertEquals(firstScope.cacheKeys, secondScope.cacheKeys);
+    }
+
+    @Test
+    public void givenTwoScopesWhenGenerateTheSameProxyThenTheFastClassesAreWeavedToo() {
+        GeneratedClasses generated = generateProxyInANewScope();
+
+        assertEquals("should weave the proxy, its fast class and the superclass fast class",
+                     3, generated.bytes.size());
+    }
+
+    @Test
+    public void givenStableFastClassIndexesWhenCallOverloadedMethodsThenEachOneIsCalled() {
+        GenerationScope scope = GenerationScope.open();
+        try {
+            Overloads proxy = new CglibWeavedProxyFactory()
+                .createWeavedProxy(new Overloads(), new RecordingWeaver());
+
+            assertEquals("int", proxy.describe(1));
+            assertEquals("long", proxy.describe(1L));
+            assertEquals("String", proxy.describe("1"));
+            assertEquals("none", proxy.describe());
+        }
+        finally {
+            scope.close();
+        }
+    }
+
+    private GeneratedClasses generateProxyInANewScope() {
+        RecordingWeaver weaver = new RecordingWeaver();
+        GenerationScope scope = GenerationScope.open();
+        try {
+            Overloads proxy = new CglibWeavedProxyFactory().createWeavedProxy(new Overloads(),
+                                                                              weaver);
+            proxy.describe(); // Generates the fast classes
+            return new GeneratedClasses(weaver.bytes, proxy.getClass().getClassLoader());
+        }
+        finally {
+            scope.close();
+        }
+    }
+
+    private class GeneratedClasses {
+
+        private final Map<String, byte[]> bytes;
+        private final Map<String, String> cacheKeys = new LinkedHashMap<String, String>();
+
+        public GeneratedClasses(Map<String, byte[]> bytes, ClassLoader loader) {
+            this.bytes = bytes;
+            for (Map.Entry<String, byte[]> generated : bytes.entrySet()) {
+                cacheKeys.put(generated.getKey(),
+                              persistentCache.keyOf(generated.getValue(), loader));
+            }
+        }
+    }
+
+    private static class KeyedWovenClassCache extends PersistentWovenClassCache {
+
+        public KeyedWovenClassCache(File directory) {
+            super(directory);
+        }
+
+        public String keyOf(byte[] originalBytes, ClassLoader loader) {
+            String supertypesDigest = WeavingDependencyDigest.digestSupertypes(loader,
+                                                                               originalBytes);
+            return entryFile(originalBytes, ASPECTS_FINGERPRINT, supertypesDigest).getName();
+        }
+    }
+
+    private static class RecordingWeaver implements Weaver {
+
+        private final Map<String, byte[]> bytes = new LinkedHashMap<String, byte[]>();
+
+        public void registerAspect(Class<?> aspect) {
+        }
+
+        public void unregisterAspect(Class<?> aspect) {
+        }
+
+        public void reset() {
+        }
+
+        public byte[] weaveClassBytes(String className, byte[] classBytes) {
+            bytes.put(className, classBytes);
+            return classBytes;
+        }
+    }
+
+    public static class Overloads {
+
+        public String describe() {
+            return "none";
+        }
+
+        public String describe(int value) {
+            return "int";
+        }
+
+        public String describe(long value) {
+            return "long";
+        }
+
+        public String describe(String value) {
+            return "String";
+        }
+    }
+}
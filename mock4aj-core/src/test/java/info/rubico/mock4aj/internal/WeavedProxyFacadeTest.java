@@ -1,22 +1,34 @@
 package info.rubico.mock4aj.internal;
 
+import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.*;
 import static org.mockito.Mockito.*;
 import info.rubico.mock4aj.api.proxies.WeavedProxyFactory;
-import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
+import info.rubico.mock4aj.api.weaving.MultiAspectWeaver;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class WeavedProxyFacadeTest {
 
     private WeavedProxyFacade core;
     private WeavedProxyFactory proxyFactoryMocked;
     private Date aMock;
-    private Weaver weaverAdapterMocked;
+    private MultiAspectWeaver weaverAdapterMocked;
 
     /**
      * An aspect that alters the behaviour of {@link RealClass} class. It change the behaviour of
@@ -36,7 +48,7 @@ public class WeavedProxyFacadeTest {
     public void setupTargetAndMocks() {
         aMock = mock(Date.class);
 
-        weaverAdapterMocked = mock(Weaver.class);
+        weaverAdapterMocked = mock(MultiAspectWeaver.class);
         proxyFactoryMocked = mock(WeavedProxyFactory.class);
 
         core = new WeavedProxyFacade(proxyFactoryMocked, weaverAdapterMocked);
@@ -58,7 +70,81 @@ public class WeavedProxyFacadeTest {
     public void givenAnAspectWhenCreateWeavedProxyThenItShouldBeRegistered() {
         Class<AnAspect> aspectToWeave = AnAspect.class;
         core.createWeavedProxy(aMock, aspectToWeave);
-        verify(weaverAdapterMocked).registerAspect(aspectToWeave);
+        verify(weaverAdapterMocked).registerAspects(aspectToWeave);
+    }
+
+    @Test
+    public void whenCreateProxiesThenTheAspectsAreRegisteredOnceForAllTheObjects() {
+        List<Date> objects = Arrays.asList(aMock, aMock);
+
+        core.createWeavedProxies(objects, AnAspect.class);
+
+        verify(weaverAdapterMocked).reset();
+        verify(weaverAdapterMocked).registerAspects(AnAspect.class);
+        verify(proxyFactoryMocked).createWeavedProxies(objects, weaverAdapterMocked);
+    }
+
+    @Test
+    public void whenCreateProxiesAsyncThenTheProxiesAreCreatedByTheExecutor() throws Exception {
+        List<Date> objects = Arrays.asList(aMock);
+        List<Date> proxies = Arrays.asList(mock(Date.class));
+        given(proxyFactoryMocked.createWeavedProxies(objects, weaverAdapterMocked))
+            .willReturn(proxies);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        core.setExecutor(executor);
+        try {
+            Future<List<Date>> futureProxies = core.createWeavedProxiesAsync(objects,
+                                                                              AnAspect.class);
+
+            assertSame(proxies, futureProxies.get());
+            verify(weaverAdapterMocked).registerAspects(AnAspect.class);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void givenAScopeWhenCreateProxiesAsyncThenTheProxiesAreCreatedInTheCallerContext()
+        throws Exception {
+        final List<Date> objects = Arrays.asList(aMock);
+        final AtomicReference<GenerationScope> creationScope =
+                new AtomicReference<GenerationScope>();
+        final AtomicReference<ClassLoader> creationLoader = new AtomicReference<ClassLoader>();
+        given(proxyFactoryMocked.createWeavedProxies(objects, weaverAdapterMocked))
+            .willAnswer(new Answer<List<Date>>() {
+                public List<Date> answer(InvocationOnMock invocation) {
+                    creationScope.set(GenerationScope.current());
+                    creationLoader.set(Thread.currentThread().getContextClassLoader());
+                    return objects;
+                }
+            });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        core.setExecutor(executor);
+        ClassLoader callerLoader = Thread.currentThread().getContextClassLoader();
+        ClassLoader contextLoader = new ClassLoader(callerLoader) {
+        };
+        Thread.currentThread().setContextClassLoader(contextLoader);
+        GenerationScope scope = GenerationScope.open();
+        try {
+            core.createWeavedProxiesAsync(objects, AnAspect.class).get();
+
+            assertSame(scope, creationScope.get());
+            assertSame(contextLoader, creationLoader.get());
+            assertNull(executor.submit(new CurrentScope()).get());
+        }
+        finally {
+            scope.close();
+            Thread.currentThread().setContextClassLoader(callerLoader);
+            executor.shutdown();
+        }
+    }
+
+    private static class CurrentScope implements Callable<GenerationScope> {
+
+        public GenerationScope call() {
+            return GenerationScope.current();
+        }
     }
 
 }
@@ -0,0 +1,59 @@
+package info.rubico.mock4aj.internal.cache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedLruCacheTest {
+
+    private static final int MAX_ENTRIES = 2;
+
+    private BoundedLruCache<String, String> cache;
+
+    @Before
+    public void setupCache() {
+        cache = new BoundedLruCache<String, String>(MAX_ENTRIES);
+    }
+
+    @Test
+    public void givenAnEntryWhenGetThenItIsReturnedAndCountedAsAHit() {
+        cache.put("key", "value");
+
+        assertEquals("value", cache.get("key"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void givenNoEntryWhenGetThenNullIsReturnedAndCountedAsAMiss() {
+        assertNull(cache.get("key"));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void givenAFullCacheWhenPutThenTheLeastRecentlyUsedEntryIsEvicted() {
+        cache.put("first", "1");
+        cache.put("second", "2");
+        cache.get("first");
+
+        cache.put("third", "3");
+
+        assertEquals(MAX_ENTRIES, cache.size());
+        assertNull(cache.get("second"));
+        assertEquals("1", cache.get("first"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void givenAZeroSizeCacheWhenPutThenNothingIsKept() {
+        BoundedLruCache<String, String> disabledCache = new BoundedLruCache<String, String>(0);
+        disabledCache.put("key", "value");
+        assertNull(disabledCache.get("key"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenANegativeSizeWhenCreateThenShouldThrowIllegalArgumentException() {
+        new BoundedLruCache<String, String>(-1);
+    }
+}
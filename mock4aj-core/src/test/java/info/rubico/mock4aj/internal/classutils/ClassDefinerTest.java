@@ -0,0 +1,46 @@
+package info.rubico.mock4aj.internal.classutils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassDefinerTest { // NOPMD
+
+    private static final String CLASS_NAME = SomeClass.class.getName();
+
+    private ClassLoader loader;
+    private byte[] bytecode;
+
+    @Before
+    public void createLoader() {
+        loader = new ClassLoader(getClass().getClassLoader()) {
+        };
+        bytecode = ClassUtils.readBytecode(SomeClass.class);
+    }
+
+    @Test
+    public void whenDefineThenTheClassIsInTheLoader() {
+        Class<?> definedClass = ClassDefiner.defineClass(loader, CLASS_NAME, bytecode);
+
+        assertEquals(CLASS_NAME, definedClass.getName());
+        assertSame(loader, definedClass.getClassLoader());
+        assertNotSame(SomeClass.class, definedClass);
+    }
+
+    @Test
+    public void givenAnAlreadyDefinedClassWhenDefineThenShouldReturnTheExistingClass() {
+        Class<?> definedClass = ClassDefiner.defineClass(loader, CLASS_NAME, bytecode);
+
+        assertSame(definedClass, ClassDefiner.defineClass(loader, CLASS_NAME, bytecode));
+    }
+
+    @Test(expected = ClassFormatError.class)
+    public void givenInvalidBytecodeWhenDefineThenShouldThrowTheLinkageError() {
+        ClassDefiner.defineClass(loader, CLASS_NAME, "Not a class".getBytes());
+    }
+
+    public static class SomeClass {
+    }
+
+}
@@ -0,0 +1,65 @@
+package info.rubico.mock4aj.internal.classutils;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ConstantPoolReaderTest { // NOPMD
+
+    @Test
+    public void givenAClassWhenReadThenContainsItsMembersNames() {
+        byte[] bytecode = ClassUtils.readBytecode(SomeClass.class);
+
+        Set<String> constants = ConstantPoolReader.readUtf8Constants(bytecode);
+
+        assertTrue(constants.contains("someMethod"));
+        assertTrue(constants.contains("someField"));
+        assertTrue(constants.contains("currentTimeMillis"));
+    }
+
+    @Test
+    public void givenNotAClassWhenReadThenShouldReturnNull() {
+        assertNull(ConstantPoolReader.readUtf8Constants("Not a class".getBytes()));
+    }
+
+    @Test
+    public void givenATruncatedClassWhenReadThenShouldReturnNull() {
+        byte[] bytecode = ClassUtils.readBytecode(SomeClass.class);
+        byte[] truncated = new byte[bytecode.length / 2];
+        System.arraycopy(bytecode, 0, truncated, 0, truncated.length);
+
+        assertNull(ConstantPoolReader.readUtf8Constants(truncated));
+    }
+
+    @Test
+    public void givenAClassWhenReadSupertypesThenReturnsItsSuperclassAndInterfaces() {
+        byte[] bytecode = ClassUtils.readBytecode(SomeSubclass.class);
+
+        assertEquals(Arrays.asList(SomeClass.class.getName(), Serializable.class.getName()),
+                     ConstantPoolReader.readSupertypeNames(bytecode));
+    }
+
+    @Test
+    public void givenNotAClassWhenReadSupertypesThenShouldReturnNull() {
+        assertNull(ConstantPoolReader.readSupertypeNames("Not a class".getBytes()));
+    }
+
+    private static class SomeSubclass extends SomeClass implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class SomeClass {
+
+        private long someField = 2L;
+
+        public double someMethod() {
+            return someField + System.currentTimeMillis() * 1.5;
+        }
+    }
+
+}
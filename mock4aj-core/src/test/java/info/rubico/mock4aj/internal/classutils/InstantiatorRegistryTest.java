@@ -0,0 +1,90 @@
+package info.rubico.mock4aj.internal.classutils;
+
+import static org.junit.Assert.*;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+public class InstantiatorRegistryTest { // NOPMD
+
+    private static final int MAX_GC_ATTEMPTS = 20;
+    private static final long GC_WAIT_MS = 50;
+
+    private InstantiatorRegistry registry;
+
+    @Before
+    public void createRegistry() {
+        registry = new InstantiatorRegistry(new StdInstantiatorStrategy());
+    }
+
+    @Test
+    public void givenAClassAlreadyInstantiatedWhenGetInstantiatorThenShouldReuseIt() {
+        registry.newInstance(Constructed.class);
+
+        assertSame(registry.getInstantiatorOf(Constructed.class),
+                   registry.getInstantiatorOf(Constructed.class));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void whenNewInstanceThenNoConstructorShouldBeCalled() {
+        Constructed instance = (Constructed) registry.newInstance(Constructed.class);
+
+        assertFalse(instance.constructed);
+    }
+
+    @Test
+    public void whenForgetClassLoaderThenOnlyItsClassesShouldBeForgotten() {
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+        };
+        byte[] bytecode = ClassUtils.readBytecode(Constructed.class);
+        Class<?> definedClass = ClassDefiner.defineClass(loader, Constructed.class.getName(),
+                                                         bytecode);
+        registry.newInstance(definedClass);
+        registry.newInstance(Constructed.class);
+
+        registry.forgetClassLoader(loader);
+
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void givenAClassLoaderNotForgottenWhenItIsUnusedThenItsClassesCanBeUnloaded() {
+        WeakReference<Class<?>> definedClass = instantiateInANewClassLoader();
+
+        for (int attempt = 0; attempt < MAX_GC_ATTEMPTS && definedClass.get() != null;
+                attempt++) {
+            System.gc();
+            try {
+                Thread.sleep(GC_WAIT_MS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        assertNull("The class should be unloaded", definedClass.get());
+    }
+
+    private WeakReference<Class<?>> instantiateInANewClassLoader() {
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+        };
+        byte[] bytecode = ClassUtils.readBytecode(Constructed.class);
+        Class<?> definedClass = ClassDefiner.defineClass(loader, Constructed.class.getName(),
+                                                         bytecode);
+        registry.newInstance(definedClass);
+        return new WeakReference<Class<?>>(definedClass);
+    }
+
+    public static class Constructed {
+        private final boolean constructed;
+
+        public Constructed() {
+            constructed = true;
+        }
+    }
+
+}
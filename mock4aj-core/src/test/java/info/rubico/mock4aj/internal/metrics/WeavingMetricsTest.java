@@ -0,0 +1,149 @@
+package info.rubico.mock4aj.internal.metrics;
+
+import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.*;
+import static org.mockito.Mockito.*;
+
+import info.rubico.mock4aj.codegen.cglib.calls.caller.MethodCallerBytecodeGenerator;
+import info.rubico.mock4aj.codegen.cglib.calls.selector.CglibMethodSelectorGenerator;
+import info.rubico.mock4aj.codegen.cglib.proxies.CglibWeavedProxyFactory;
+import info.rubico.mock4aj.internal.calls.CallTargetByReflection;
+import info.rubico.mock4aj.weavers.noweaving.NoWeavingWeaver;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.sf.cglib.proxy.MethodInterceptor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WeavingMetricsTest { // NOPMD
+
+    private static final String PROXY_NAME = "a.Date$$EnhancerProxyByMock4Aj$$5f1d2c3a";
+    private static final String CALLER_NAME =
+            "a.MethodCaller$$CallerByMock4Aj$$Date$getTime$$1b2c3d4e";
+
+    private WeavingMetrics metrics;
+
+    @Before
+    public void createMetrics() {
+        metrics = new WeavingMetrics();
+    }
+
+    @Test
+    public void whenCategorizeThenShouldRecogniseTheGeneratedClassesTags() {
+        assertEquals(ClassCategory.PROXY, ClassCategory.of(PROXY_NAME));
+        assertEquals(ClassCategory.CALLER, ClassCategory.of(CALLER_NAME));
+        assertEquals(ClassCategory.SELECTOR,
+                     ClassCategory.of(PROXY_NAME + "$$EnhancerMethodSelectorByMock4Aj$$9a8b"));
+        assertEquals(ClassCategory.CLOSURE, ClassCategory.of(PROXY_NAME + "$AjcClosure1"));
+        assertEquals(ClassCategory.OTHER, ClassCategory.of("java.util.Date"));
+    }
+
+    @Test
+    public void givenClassesOfTheGeneratorsWhenCategorizeThenEachOneHasItsCategory()
+        throws NoSuchMethodException {
+        Date proxy = new CglibWeavedProxyFactory().createWeavedProxy(new Date(),
+                                                                     new NoWeavingWeaver());
+        Date selector = new CglibMethodSelectorGenerator()
+            .generateSelector(new Date(), mock(MethodInterceptor.class));
+        CallTargetByReflection target = new CallTargetByReflection(new Date(), "getTime");
+        Object caller = new MethodCallerBytecodeGenerator(target).create();
+
+        assertEquals(ClassCategory.PROXY, ClassCategory.of(proxy.getClass().getName()));
+        assertEquals(ClassCategory.SELECTOR, ClassCategory.of(selector.getClass().getName()));
+        assertEquals(ClassCategory.CALLER, ClassCategory.of(caller.getClass().getName()));
+    }
+
+    @Test
+    public void whenRecordWeavingThenShouldCountPerCategoryAndSumTheBytes() {
+        metrics.recordWeaving(PROXY_NAME, 100, 150, TimeUnit.MICROSECONDS.toNanos(50));
+        metrics.recordWeaving(PROXY_NAME, 100, 150, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordWeaverGeneratedClass(PROXY_NAME + "$AjcClosure1", 30);
+
+        assertEquals(Long.valueOf(2), metrics.getWeaveCounts().get("PROXY"));
+        assertEquals(Long.valueOf(1), metrics.getWeaveCounts().get("CLOSURE"));
+        assertEquals(200, metrics.getBytesIn());
+        assertEquals(330, metrics.getBytesOut());
+    }
+
+    @Test
+    public void whenRecordGenerationThenTheLatencyIsInTheRightBucket() {
+        metrics.recordGeneration(CALLER_NAME, TimeUnit.MICROSECONDS.toNanos(50));
+        metrics.recordGeneration(CALLER_NAME, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordGeneration(CALLER_NAME, TimeUnit.SECONDS.toNanos(2));
+
+        long[] histogram = metrics.getGenerationLatencyHistograms().get("CALLER");
+
+        assertArrayEquals(new long[] { 1, 0, 1, 0, 0, 1 }, histogram);
+        assertEquals(metrics.getLatencyBucketBoundsMicros().length + 1, histogram.length);
+    }
+
+    @Test
+    public void whenRecordLookupsThenShouldComputeTheHitRatios() {
+        metrics.recordWovenClassCacheLookup(true);
+        metrics.recordWovenClassCacheLookup(false);
+        metrics.recordPreparedStateLookup(true);
+        metrics.recordProxyClassCacheLookup(false);
+        metrics.recordCallerClassCacheLookup(true);
+
+        assertEquals(0.5, metrics.getWovenClassCacheHitRatio(), 0);
+        assertEquals(1.0, metrics.getPreparedStateHitRatio(), 0);
+        assertEquals(0.0, metrics.getProxyClassCacheHitRatio(), 0);
+        assertEquals(1.0, metrics.getCallerClassCacheHitRatio(), 0);
+    }
+
+    @Test
+    public void givenSourcesWhenGetStateThenShouldSumTheSources() {
+        WeavingMetrics.Source source = mock(WeavingMetrics.Source.class);
+        given(source.getRegisteredAspectCount()).willReturn(2);
+        given(source.getWorldTypeMapSize()).willReturn(300);
+        metrics.addSource(source);
+        metrics.addSource(source);
+
+        assertEquals(2, metrics.getRegisteredAspectCount());
+        assertEquals(300, metrics.getWorldTypeMapSize());
+    }
+
+    @Test
+    public void givenARemovedSourceWhenGetStateThenItIsNotCounted() {
+        WeavingMetrics.Source source = mock(WeavingMetrics.Source.class);
+        given(source.getRegisteredAspectCount()).willReturn(2);
+        metrics.addSource(source);
+
+        metrics.removeSource(source);
+
+        assertEquals(0, metrics.getRegisteredAspectCount());
+    }
+
+    @Test
+    public void whenClearThenAllCountersAreZero() {
+        metrics.recordWeaving(PROXY_NAME, 100, 150, 1);
+        metrics.recordReset();
+        metrics.recordPreparePass();
+
+        metrics.clear();
+
+        assertEquals(Long.valueOf(0), metrics.getWeaveCounts().get("PROXY"));
+        assertEquals(0, metrics.getBytesIn());
+        assertEquals(0, metrics.getResetCount());
+        assertEquals(0, metrics.getPreparePassCount());
+    }
+
+    @Test
+    public void whenGetDefaultThenItIsPublishedInThePlatformMBeanServer() throws Exception {
+        WeavingMetrics.getDefault().recordReset();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        Object resets = server.getAttribute(new ObjectName(WeavingMetrics.OBJECT_NAME),
+                                            "ResetCount");
+
+        assertEquals(WeavingMetrics.getDefault().getResetCount(), resets);
+    }
+
+}
@@ -8,13 +8,25 @@ import info.rubico.mock4aj.api.exceptions.Mock4AjException;
 import info.rubico.mock4aj.api.exceptions.NotAConcreteAspect;
 import info.rubico.mock4aj.api.exceptions.NotAnAspect;
 import info.rubico.mock4aj.api.exceptions.WeavingError;
+import info.rubico.mock4aj.api.weaving.WeavingResult;
+import info.rubico.mock4aj.internal.metrics.WeavingMetrics;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import org.aspectj.lang.annotation.Aspect;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 @SuppressWarnings("unused")
 public class AspectJWeaverTest { // NOPMD
@@ -74,6 +86,7 @@ public class AspectJWeaverTest { // NOPMD
     public void givenAlreadyRegisteredAspectWhenRegisterThenNothingIsDone() {
         weaverAdapter.registerAspect(AnAspect.class);
         verify(ajMocked).registerAspect(anyString());
+        verify(ajMocked).getWorldTypeMapSize();
 
         weaverAdapter.registerAspect(AnAspect.class);
 
@@ -107,11 +120,52 @@ public class AspectJWeaverTest { // NOPMD
     }
 
     @Test
-    public void whenResetThenShouldResetAjWeaver() {
+    public void givenResetedAspectsWhenRegisterOtherAspectsThenShouldResetAjWeaver() {
+        weaverAdapter.registerAspect(AnAspect.class);
         weaverAdapter.reset();
+
+        weaverAdapter.registerAspect(OtherAspect.class);
+
         verify(ajMocked).reset();
     }
 
+    @Test
+    public void givenNoRegisteredAspectWhenResetThenAjWeaverIsNotResetBeforeBeingUsed() {
+        weaverAdapter.reset();
+        weaverAdapter.reset();
+        verify(ajMocked, never()).reset();
+    }
+
+    @Test
+    public void givenAspectsUsedBeforeTheLastResetWhenRegisterThenThePreparedStateIsRestored() {
+        PreparedWeavingState anAspectState = mock(PreparedWeavingState.class);
+        PreparedWeavingState otherAspectState = mock(PreparedWeavingState.class);
+        given(ajMocked.captureState()).willReturn(anAspectState, otherAspectState);
+        weaverAdapter.registerAspect(AnAspect.class);
+        weaverAdapter.reset();
+        weaverAdapter.registerAspect(OtherAspect.class);
+        weaverAdapter.reset();
+
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        verify(ajMocked).restoreState(anAspectState);
+        verify(ajMocked).registerAspect(AnAspect.class.getName());
+    }
+
+    @Test
+    public void givenPreparedStatesDisabledWhenRegisterAfterResetThenAspectIsRegisteredAgain() {
+        PreparedWeavingState anAspectState = mock(PreparedWeavingState.class);
+        given(ajMocked.captureState()).willReturn(anAspectState);
+        weaverAdapter.setMaxPreparedStates(0);
+        weaverAdapter.registerAspect(AnAspect.class);
+        weaverAdapter.reset();
+
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        verify(ajMocked, never()).restoreState(any(PreparedWeavingState.class));
+        verify(ajMocked, times(2)).registerAspect(AnAspect.class.getName());
+    }
+
     @Test
     public void givenResetedAspectsWhenRegisterThenIsAddedAgain() {
         weaverAdapter.registerAspect(AnAspect.class);
@@ -133,6 +187,50 @@ public class AspectJWeaverTest { // NOPMD
         verify(ajMocked).weaveClass(classToWeaveName, classToWeaveBytecode);
     }
 
+    @Test
+    public void givenNoAspectWhenCouldAdviseThenNoMethodIsAdvised() throws Exception {
+        assertFalse(weaverAdapter.couldAdvise(Date.class, Date.class.getMethod("getTime")));
+        verify(ajMocked, never()).couldAdviseMethod(anyString(), anyString());
+    }
+
+    @Test
+    public void givenAnAspectWhenCouldAdviseThenTheMethodNameIsCheckedByAspectJ()
+        throws Exception {
+        given(ajMocked.couldAdviseMethod(Date.class.getName(), "getTime")).willReturn(true);
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        assertTrue(weaverAdapter.couldAdvise(Date.class, Date.class.getMethod("getTime")));
+        assertFalse(weaverAdapter.couldAdvise(Date.class, Date.class.getMethod("getDay")));
+    }
+
+    @Test
+    public void givenAClassNoAspectCanChangeWhenWeaveThenItIsReturnedUntouched()
+        throws IOException {
+        String className = "SomeClass";
+        byte[] orginialBytecode = "Some bytecode".getBytes();
+        given(ajMocked.canSkipWeaving(className, orginialBytecode)).willReturn(true);
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        byte[] newBytecode = weaverAdapter.weaveClassBytes(className, orginialBytecode);
+
+        assertSame(orginialBytecode, newBytecode);
+        verify(ajMocked, never()).weaveClass(anyString(), any(byte[].class));
+        assertEquals(1, weaverAdapter.getSkippedClassesCount());
+    }
+
+    @Test
+    public void givenPrefilterDisabledWhenWeaveThenTheClassIsAlwaysWeaved() throws IOException {
+        String className = "SomeClass";
+        byte[] orginialBytecode = "Some bytecode".getBytes();
+        given(ajMocked.canSkipWeaving(className, orginialBytecode)).willReturn(true);
+        weaverAdapter.registerAspect(AnAspect.class);
+        weaverAdapter.setPrefilterEnabled(false);
+
+        weaverAdapter.weaveClassBytes(className, orginialBytecode);
+
+        verify(ajMocked).weaveClass(className, orginialBytecode);
+    }
+
     @Test
     public void whenWeaveThenTheWeavedBytecodeShouldBeReturned() throws IOException {
         String className = "SomeClass";
@@ -157,6 +255,27 @@ public class AspectJWeaverTest { // NOPMD
         weaverAdapter.weaveClassBytes(aClassName, someBytes);
     }
 
+    @Test
+    public void givenAnErrorOnOneClassWhenWeaveClassesThenTheOthersAreWovenInOrder()
+        throws IOException {
+        byte[] someBytes = "Some bytes".getBytes();
+        byte[] otherBytes = "Other bytes".getBytes();
+        byte[] wovenBytes = "Woven bytes".getBytes();
+        given(ajMocked.weaveClass("BClass", someBytes)).willReturn(wovenBytes);
+        given(ajMocked.weaveClass("AClass", otherBytes)).willThrow(new RuntimeException()); // NOPMD
+        weaverAdapter.registerAspect(AnAspect.class);
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        classes.put("BClass", someBytes);
+        classes.put("AClass", otherBytes);
+
+        Map<String, WeavingResult> results = weaverAdapter.weaveClasses(classes);
+
+        assertEquals(Arrays.asList("BClass", "AClass"), new ArrayList<String>(results.keySet()));
+        assertSame(wovenBytes, results.get("BClass").getWovenBytes());
+        assertFalse(results.get("AClass").isWoven());
+        assertNotNull(results.get("AClass").getError());
+    }
+
     @Test
     public void givenNoRegisteredAspectWhenWeaveThenNothingIsDone() throws IOException {
         String aClassName = "AClass";
@@ -167,6 +286,231 @@ public class AspectJWeaverTest { // NOPMD
         verify(ajMocked, never()).weaveClass(aClassName, someBytes);
     }
 
+    @Test
+    public void givenAlreadyWeavedBytecodeWhenWeaveAgainThenTheCachedBytecodeIsReturned()
+        throws IOException {
+        byte[] orginialBytecode = "Some bytecode".getBytes();
+        byte[] weavedBytecode = "Other bytecode".getBytes();
+        given(ajMocked.weaveClass("SomeClass", orginialBytecode)).willReturn(weavedBytecode);
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+        byte[] newBytecode = weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+
+        assertArrayEquals(weavedBytecode, newBytecode);
+        verify(ajMocked, times(1)).weaveClass("SomeClass", orginialBytecode);
+        assertEquals(1, weaverAdapter.getWovenClassCache().getHitCount());
+        assertEquals(1, weaverAdapter.getWovenClassCache().getMissCount());
+    }
+
+    @Test
+    public void givenAWeavingGeneratingClassesWhenWeaveAgainThenTheyAreDefinedAgain()
+        throws IOException {
+        byte[] orginialBytecode = "Some bytecode".getBytes();
+        Map<String, byte[]> closures = Collections.singletonMap("AClosure", "Closure".getBytes());
+        given(ajMocked.weaveClass("SomeClass", orginialBytecode))
+            .willReturn("Other bytecode".getBytes());
+        given(ajMocked.drainGeneratedClasses()).willReturn(Collections.<String, byte[]> emptyMap(),
+                                                           closures,
+                                                           Collections.<String, byte[]> emptyMap());
+        weaverAdapter.registerAspect(AnAspect.class);
+        weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+
+        weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+
+        verify(ajMocked, times(1)).weaveClass("SomeClass", orginialBytecode);
+        ArgumentCaptor<Map> definedClasses = ArgumentCaptor.forClass(Map.class);
+        verify(ajMocked).defineGeneratedClasses(definedClasses.capture());
+        assertArrayEquals("Closure".getBytes(), (byte[]) definedClasses.getValue().get("AClosure"));
+    }
+
+    @Test
+    public void givenOtherAspectsWhenWeaveAgainThenTheBytecodeIsWeavedAgain() throws IOException {
+        byte[] orginialBytecode = "Some bytecode".getBytes();
+        given(ajMocked.weaveClass("SomeClass", orginialBytecode)).willReturn(orginialBytecode);
+        weaverAdapter.registerAspect(AnAspect.class);
+        weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+
+        weaverAdapter.registerAspect(OtherAspect.class);
+        weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+
+        verify(ajMocked, times(2)).weaveClass("SomeClass", orginialBytecode);
+    }
+
+    @Test
+    public void givenADisabledCacheWhenWeaveAgainThenTheBytecodeIsWeavedAgain() throws IOException {
+        byte[] orginialBytecode = "Some bytecode".getBytes();
+        given(ajMocked.weaveClass("SomeClass", orginialBytecode)).willReturn(orginialBytecode);
+        weaverAdapter.setWovenClassCache(new WovenClassCache(0));
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+        weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+
+        verify(ajMocked, times(2)).weaveClass("SomeClass", orginialBytecode);
+    }
+
+    @Test
+    public void givenSameAspectsInAnotherOrderThenTheFingerprintIsTheSame() {
+        weaverAdapter.registerAspect(AnAspect.class);
+        weaverAdapter.registerAspect(OtherAspect.class);
+        String fingerprint = weaverAdapter.getAspectsFingerprint();
+
+        weaverAdapter.reset();
+        weaverAdapter.registerAspect(OtherAspect.class);
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        assertEquals(fingerprint, weaverAdapter.getAspectsFingerprint());
+    }
+
+    @Test
+    public void givenAClassInThePersistentCacheWhenWeaveThenItIsNotWeavedAgain()
+        throws IOException {
+        byte[] orginialBytecode = "Some bytecode".getBytes();
+        byte[] weavedBytecode = "Other bytecode".getBytes();
+        Map<String, byte[]> closures = Collections.singletonMap("AClosure", "Closure".getBytes());
+        PersistentWovenClassCache persistentCache = mock(PersistentWovenClassCache.class);
+        given(persistentCache.load(eq(orginialBytecode), anyString(), anyString()))
+            .willReturn(new WovenClass(weavedBytecode, closures));
+        weaverAdapter.setPersistentCache(persistentCache);
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        byte[] newBytecode = weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+
+        assertArrayEquals(weavedBytecode, newBytecode);
+        verify(ajMocked).defineGeneratedClasses(closures);
+        verify(ajMocked, never()).weaveClass(anyString(), (byte[]) anyObject());
+    }
+
+    @Test
+    public void givenAClassNotInThePersistentCacheWhenWeaveThenItIsStored() throws IOException {
+        byte[] orginialBytecode = "Some bytecode".getBytes();
+        byte[] weavedBytecode = "Other bytecode".getBytes();
+        given(ajMocked.weaveClass("SomeClass", orginialBytecode)).willReturn(weavedBytecode);
+        PersistentWovenClassCache persistentCache = mock(PersistentWovenClassCache.class);
+        weaverAdapter.setPersistentCache(persistentCache);
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+
+        verify(persistentCache).store(eq(orginialBytecode), anyString(), anyString(),
+                                      isA(WovenClass.class));
+    }
+
+    @Test
+    public void givenAPersistentCacheWhenRegisterThenTheAspectIsRecordedAsKnown() {
+        AspectMetadataCache metadataCache = givenCachesWithKnownAspects(false);
+
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        verify(ajMocked).registerAspect(AnAspect.class.getName());
+        verify(metadataCache).recordAspect(eq(AnAspect.class.getName()), anyString());
+    }
+
+    @Test
+    public void givenAKnownAspectAndAClassInThePersistentCacheWhenWeaveThenAspectJIsNotPrepared()
+        throws IOException {
+        AspectMetadataCache metadataCache = givenCachesWithKnownAspects(true);
+        PersistentWovenClassCache persistentCache = weaverAdapter.getPersistentCache();
+        byte[] weavedBytecode = "Other bytecode".getBytes();
+        given(persistentCache.load(any(byte[].class), anyString(), anyString()))
+            .willReturn(new WovenClass(weavedBytecode, Collections.<String, byte[]> emptyMap()));
+
+        weaverAdapter.registerAspect(AnAspect.class);
+        byte[] newBytecode = weaverAdapter.weaveClassBytes("SomeClass", "Some".getBytes());
+
+        assertArrayEquals(weavedBytecode, newBytecode);
+        verify(ajMocked, never()).registerAspect(anyString());
+        verify(ajMocked, never()).replaceAspects(anyCollectionOf(String.class),
+                                                 anyCollectionOf(String.class));
+        verify(ajMocked, never()).canSkipWeaving(anyString(), any(byte[].class));
+    }
+
+    @Test
+    public void givenDeferredAspectsWhenAClassIsNotInThePersistentCacheThenAspectJIsPrepared()
+        throws IOException {
+        givenCachesWithKnownAspects(true);
+        byte[] orginialBytecode = "Some bytecode".getBytes();
+        given(ajMocked.weaveClass("SomeClass", orginialBytecode)).willReturn(new byte[1]);
+
+        weaverAdapter.registerAspects(AnAspect.class, OtherAspect.class);
+        weaverAdapter.weaveClassBytes("SomeClass", orginialBytecode);
+
+        verify(ajMocked).replaceAspects(Collections.<String> emptyList(),
+                                        Arrays.asList(AnAspect.class.getName(),
+                                                      OtherAspect.class.getName()));
+        verify(ajMocked).weaveClass("SomeClass", orginialBytecode);
+    }
+
+    private AspectMetadataCache givenCachesWithKnownAspects(boolean known) {
+        AspectMetadataCache metadataCache = mock(AspectMetadataCache.class);
+        given(metadataCache.isKnownAspect(anyString(), anyString())).willReturn(known);
+        weaverAdapter.setPersistentCache(mock(PersistentWovenClassCache.class));
+        weaverAdapter.setAspectMetadataCache(metadataCache);
+        return metadataCache;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenRegisterAspectsThenAllAreAddedToAJWeaverAtOnce() {
+        weaverAdapter.registerAspects(AnAspect.class, OtherAspect.class);
+
+        verify(ajMocked).replaceAspects(Collections.<String> emptyList(),
+                                        Arrays.asList(AnAspect.class.getName(),
+                                                      OtherAspect.class.getName()));
+        verify(ajMocked, never()).registerAspect(anyString());
+    }
+
+    @Test
+    public void givenAlreadyRegisteredAspectsWhenRegisterAspectsThenNothingIsDone() {
+        weaverAdapter.registerAspects(AnAspect.class);
+        weaverAdapter.registerAspects(AnAspect.class);
+
+        verify(ajMocked, times(1)).replaceAspects(anyCollectionOf(String.class),
+                                                  anyCollectionOf(String.class));
+    }
+
+    @Test(expected = NotAConcreteAspect.class)
+    public void givenAnAbstractAspectWhenRegisterAspectsThenNoneIsRegistered() {
+        try {
+            weaverAdapter.registerAspects(AnAspect.class, AbstractAspect.class);
+        }
+        finally {
+            verifyZeroInteractions(ajMocked);
+        }
+    }
+
+    @Test(expected = NotAnAspect.class)
+    public void givenANonAspectClassWhenRegisterAspectsThenShouldThrowNotAnAspect() {
+        willThrow(new RuntimeException()) // NOPMD
+            .given(ajMocked)
+            .replaceAspects(anyCollectionOf(String.class), anyCollectionOf(String.class));
+        givenAjWillReturnIsAspect(AnAspect.class, true);
+        givenAjWillReturnIsAspect(Date.class, false);
+
+        weaverAdapter.registerAspects(AnAspect.class, Date.class);
+    }
+
+    @Test
+    public void whenReplaceAspectsThenOnlyTheDifferencesAreSentToAJWeaverAtOnce() {
+        weaverAdapter.registerAspects(AnAspect.class);
+
+        weaverAdapter.replaceAspects(OtherAspect.class);
+
+        verify(ajMocked).replaceAspects(Arrays.asList(AnAspect.class.getName()),
+                                        Arrays.asList(OtherAspect.class.getName()));
+    }
+
+    @Test
+    public void givenTheSameAspectsWhenReplaceAspectsThenNothingIsDone() {
+        weaverAdapter.registerAspects(AnAspect.class, OtherAspect.class);
+
+        weaverAdapter.replaceAspects(OtherAspect.class, AnAspect.class);
+
+        verify(ajMocked, times(1)).replaceAspects(anyCollectionOf(String.class),
+                                                  anyCollectionOf(String.class));
+    }
+
     private void givenAjWillThrowRuntimeExceptionOn(Class<?> clazz) {
         willThrow(new RuntimeException()) // NOPMD
             .given(ajMocked)
@@ -179,6 +523,88 @@ public class AspectJWeaverTest { // NOPMD
             .isAspect(clazz);
     }
 
+    @Test
+    public void whenSetVerbosityAndSinkThenTheAdaptorMessageHandlerIsConfigured() {
+        WeavingMessageHandler messageHandler = new WeavingMessageHandler();
+        given(ajMocked.getWeavingMessageHandler()).willReturn(messageHandler);
+        WeavingMessageSink sink = mock(WeavingMessageSink.class);
+
+        weaverAdapter.setVerbosity(WeavingVerbosity.DEBUG);
+        weaverAdapter.setMessageSink(sink);
+
+        assertEquals(WeavingVerbosity.DEBUG, messageHandler.getVerbosity());
+        assertSame(sink, messageHandler.getSink());
+    }
+
+    @Test
+    public void whenWarmUpThenTypesAreResolvedByAJWeaver() {
+        weaverAdapter.warmUp();
+
+        verify(ajMocked).preResolveTypes(Matchers.<String> anyVararg());
+    }
+
+    @Test
+    public void whenWeaveThenTheWeavingIsMeasured() throws IOException {
+        WeavingMetrics metrics = new WeavingMetrics();
+        weaverAdapter.setMetrics(metrics);
+        given(ajMocked.weaveClass(anyString(), any(byte[].class))).willReturn(new byte[3]);
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        weaverAdapter.weaveClassBytes("SomeClass", new byte[2]);
+        weaverAdapter.reset();
+
+        assertEquals(Long.valueOf(1), metrics.getWeaveCounts().get("OTHER"));
+        assertEquals(2, metrics.getBytesIn());
+        assertEquals(3, metrics.getBytesOut());
+        assertEquals(1, metrics.getPreparePassCount());
+        assertEquals(1, metrics.getResetCount());
+    }
+
+    @Test
+    public void givenAWeaverNotAddedAsASourceThenItsStateIsNotCounted() {
+        WeavingMetrics metrics = new WeavingMetrics();
+        weaverAdapter.setMetrics(metrics);
+        given(ajMocked.getWorldTypeMapSize()).willReturn(300);
+        weaverAdapter.registerAspect(AnAspect.class);
+
+        assertEquals(0, metrics.getRegisteredAspectCount());
+        metrics.addSource(weaverAdapter);
+        assertEquals(1, metrics.getRegisteredAspectCount());
+        assertEquals(300, metrics.getWorldTypeMapSize());
+    }
+
+    @Test(timeout = 10000)
+    public void givenAWeavingInProgressWhenReadTheStateThenItDoesNotWait() throws Exception {
+        final CountDownLatch weavingStarted = new CountDownLatch(1);
+        final CountDownLatch weavingAllowedToEnd = new CountDownLatch(1);
+        given(ajMocked.getWorldTypeMapSize()).willReturn(300);
+        given(ajMocked.weaveClass(anyString(), any(byte[].class))).willAnswer(new Answer<byte[]>() {
+            public byte[] answer(InvocationOnMock invocation) throws InterruptedException {
+                weavingStarted.countDown();
+                weavingAllowedToEnd.await();
+                return new byte[3];
+            }
+        });
+        weaverAdapter.registerAspect(AnAspect.class);
+        Thread weavingThread = new Thread() {
+            @Override
+            public void run() {
+                weaverAdapter.weaveClassBytes("SomeClass", new byte[2]);
+            }
+        };
+        weavingThread.start();
+        weavingStarted.await();
+
+        try {
+            assertEquals(1, weaverAdapter.getRegisteredAspectCount());
+            assertEquals(300, weaverAdapter.getWorldTypeMapSize());
+        }
+        finally {
+            weavingAllowedToEnd.countDown();
+            weavingThread.join();
+        }
+    }
+
     @Aspect
     public static class AnAspect {
     }
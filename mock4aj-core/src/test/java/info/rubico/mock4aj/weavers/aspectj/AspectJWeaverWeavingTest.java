@@ -0,0 +1,131 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import static org.junit.Assert.*;
+import info.rubico.mock4aj.api.exceptions.WeavingError;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
+import info.rubico.mock4aj.codegen.cglib.proxies.CglibWeavedProxyFactory;
+import info.rubico.mock4aj.internal.classutils.ClassDefiner;
+import info.rubico.mock4aj.internal.classutils.ClassUtils;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Weaves real proxies with the AspectJ weaver. The aspects are not compiled by ajc, so they declare
+ * their own aspectOf() and hasAspect().
+ */
+public class AspectJWeaverWeavingTest {
+
+    private static final int SCOPES_COUNT = 3;
+
+    private AspectJWeaver weaver;
+    private CglibWeavedProxyFactory factory;
+
+    @Before
+    public void createWeaver() {
+        weaver = new AspectJWeaver();
+        factory = new CglibWeavedProxyFactory();
+    }
+
+    @Test
+    public void givenAnAroundAdviceWhenProxyInSuccessiveScopesThenEveryProxyIsAdvised() {
+        for (int i = 0; i < SCOPES_COUNT; i++) {
+            GenerationScope scope = GenerationScope.open();
+            try {
+                weaver.reset();
+                weaver.registerAspect(AnswerAspect.class);
+
+                Question proxy = factory.createWeavedProxy(new Question(), weaver);
+
+                assertEquals("scope " + i, 42, proxy.answer());
+            }
+            finally {
+                scope.close();
+            }
+        }
+    }
+
+    @Test
+    public void givenTheWovenClassCacheWhenWeaveAnAroundAdviceForTwoLoadersThenBothAreAdvised()
+        throws Exception {
+        weaver.registerAspect(AnswerAspect.class);
+        byte[] bytes = ClassUtils.readBytecode(Question.class);
+
+        for (int i = 0; i < 2; i++) {
+            GenerationScope scope = GenerationScope.open();
+            try {
+                byte[] wovenBytes = weaver.weaveClassBytes(Question.class.getName(), bytes);
+                Class<?> wovenClass = ClassDefiner.defineClass(scope.getClassLoader(),
+                                                               Question.class.getName(),
+                                                               wovenBytes);
+
+                Object question = wovenClass.newInstance();
+
+                assertEquals("loader " + i, 42, wovenClass.getMethod("answer").invoke(question));
+            }
+            finally {
+                scope.close();
+            }
+        }
+        assertEquals(1, weaver.getWovenClassCache().getHitCount());
+    }
+
+    @Test(expected = WeavingError.class)
+    public void givenAnAdviceReportingAnErrorWhenWeaveThenTheErrorReachesTheCaller() {
+        weaver.registerAspect(WrongReturnTypeAspect.class);
+
+        weaver.weaveClassBytes(Question.class.getName(), ClassUtils.readBytecode(Question.class));
+    }
+
+    public static class Question {
+
+        public int answer() {
+            return 0;
+        }
+    }
+
+    @Aspect
+    public static class AnswerAspect {
+
+        private static final AnswerAspect INSTANCE = new AnswerAspect();
+
+        public static AnswerAspect aspectOf() {
+            return INSTANCE;
+        }
+
+        public static boolean hasAspect() {
+            return true;
+        }
+
+        @Around("execution(int answer())")
+        public Object answer(ProceedingJoinPoint joinPoint) {
+            return 42;
+        }
+    }
+
+    /**
+     * AspectJ reports an error for each join point: the advice returns a String instead of an int.
+     */
+    @Aspect
+    public static class WrongReturnTypeAspect {
+
+        private static final WrongReturnTypeAspect INSTANCE = new WrongReturnTypeAspect();
+
+        public static WrongReturnTypeAspect aspectOf() {
+            return INSTANCE;
+        }
+
+        public static boolean hasAspect() {
+            return true;
+        }
+
+        @Around("execution(int answer())")
+        public String answer(ProceedingJoinPoint joinPoint) {
+            return "42";
+        }
+    }
+
+}
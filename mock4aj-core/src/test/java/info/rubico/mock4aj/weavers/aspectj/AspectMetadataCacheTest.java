@@ -0,0 +1,75 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AspectMetadataCacheTest {
+
+    private static final String ASPECT = "some.Aspect";
+    private static final String DIGEST = "digest";
+
+    private File directory;
+    private AspectMetadataCache cache;
+
+    @Before
+    public void setupCacheInATemporaryDirectory() throws IOException {
+        directory = File.createTempFile("mock4aj", "aspects");
+        directory.delete();
+        cache = new AspectMetadataCache(directory);
+    }
+
+    @After
+    public void deleteTheDirectory() {
+        for (File entry : directory.listFiles()) {
+            entry.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void givenARecordedAspectWhenLookupFromAnotherCacheInstanceThenItIsKnown() {
+        cache.recordAspect(ASPECT, DIGEST);
+
+        AspectMetadataCache otherCache = new AspectMetadataCache(directory);
+
+        assertTrue(otherCache.isKnownAspect(ASPECT, DIGEST));
+        assertEquals(1, otherCache.getHitCount());
+    }
+
+    @Test
+    public void givenAnotherBytecodeWhenLookupThenTheAspectIsUnknown() {
+        cache.recordAspect(ASPECT, DIGEST);
+
+        assertFalse(cache.isKnownAspect(ASPECT, "other digest"));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void givenACorruptedEntryWhenLookupThenTheAspectIsUnknown() throws IOException {
+        cache.recordAspect(ASPECT, DIGEST);
+        FileOutputStream output = new FileOutputStream(cache.entryFile(ASPECT, DIGEST));
+        try {
+            output.write("garbage".getBytes());
+        }
+        finally {
+            output.close();
+        }
+
+        assertFalse(cache.isKnownAspect(ASPECT, DIGEST));
+    }
+
+    @Test
+    public void whenRecordTwiceThenNoTemporaryFileIsLeft() {
+        cache.recordAspect(ASPECT, DIGEST);
+        cache.recordAspect(ASPECT, DIGEST);
+
+        assertEquals(1, directory.listFiles().length);
+    }
+}
@@ -0,0 +1,95 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import static org.junit.Assert.*;
+
+import org.aspectj.apache.bcel.classfile.JavaClass;
+import org.aspectj.bridge.MessageHandler;
+import org.aspectj.weaver.ReferenceType;
+import org.aspectj.weaver.bcel.BcelObjectType;
+import org.aspectj.weaver.bcel.BcelWorld;
+import org.aspectj.weaver.loadtime.DefaultWeavingContext;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BaseTypeLayerTest { // NOPMD
+
+    private static final String LIBRARY_PREFIX = BaseTypeLayerTest.class.getName() + "$";
+
+    private BaseTypeLayer baseTypeLayer;
+
+    @Before
+    public void createBaseTypeLayer() {
+        BcelWorld baseWorld = new BcelWorld(getClass().getClassLoader(), new MessageHandler(),
+                                            null);
+        baseTypeLayer = new BaseTypeLayer(baseWorld, "java.", LIBRARY_PREFIX);
+    }
+
+    @Test
+    public void givenATypeInABasePackageThenItIsABaseType() {
+        assertTrue(baseTypeLayer.isBaseType("java.lang.String"));
+    }
+
+    @Test
+    public void givenAnApplicationTypeThenItIsNotABaseType() {
+        assertFalse(baseTypeLayer.isBaseType("a.b.SomeClass"));
+    }
+
+    @Test
+    public void givenAGeneratedTypeInABasePackageThenItIsNotABaseType() {
+        assertFalse(baseTypeLayer.isBaseType("java.lang.Object$$ProxyByMock4Aj$$1234"));
+    }
+
+    @Test
+    public void givenAnUnknownTypeWhenFindJavaClassThenShouldReturnNull() {
+        assertNull(baseTypeLayer.findJavaClass("java.lang.NotExisting"));
+        assertEquals(0, baseTypeLayer.getSharedTypesCount());
+    }
+
+    @Test
+    public void givenABaseTypeWhenFindJavaClassTwiceThenTheSameParsedClassIsShared() {
+        String typeName = BaseLibraryType.class.getName();
+
+        JavaClass javaClass = baseTypeLayer.findJavaClass(typeName);
+
+        assertNotNull(javaClass);
+        assertSame(javaClass, baseTypeLayer.findJavaClass(typeName));
+        assertEquals(2, baseTypeLayer.getSharedTypesCount());
+    }
+
+    @Test
+    public void givenTwoWorldsWhenResolveABaseTypeThenEachWorldHasItsOwnDelegate() {
+        String typeName = BaseLibraryType.class.getName();
+
+        ReferenceType firstType = resolveInANewWorld(typeName);
+        ReferenceType otherType = resolveInANewWorld(typeName);
+
+        assertNotSame(firstType.getDelegate(), otherType.getDelegate());
+        assertNotSame(firstType.getWorld(), otherType.getWorld());
+        assertSame(firstType.getWorld(), firstType.getSuperclass().getWorld());
+        assertSame(((BcelObjectType) firstType.getDelegate()).getJavaClass(),
+                   ((BcelObjectType) otherType.getDelegate()).getJavaClass());
+    }
+
+    private ReferenceType resolveInANewWorld(String typeName) {
+        ClassLoader loader = getClass().getClassLoader();
+        DynamicRuntimeWorld world = new DynamicRuntimeWorld(loader,
+                                                            new DefaultWeavingContext(loader),
+                                                            new MessageHandler(), null);
+        world.setBaseTypeLayer(baseTypeLayer);
+        return (ReferenceType) world.resolve(typeName);
+    }
+
+    @Test
+    public void givenTheSameClassLoaderThenTheSameLayerIsUsed() {
+        ClassLoader loader = getClass().getClassLoader();
+        assertSame(BaseTypeLayer.forClassLoader(loader), BaseTypeLayer.forClassLoader(loader));
+    }
+
+    private static class BaseLibraryType {
+
+        public String someMethod() {
+            return "Some value";
+        }
+    }
+
+}
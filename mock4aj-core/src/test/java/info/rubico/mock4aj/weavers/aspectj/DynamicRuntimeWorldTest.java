@@ -0,0 +1,81 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import org.aspectj.bridge.MessageHandler;
+import org.aspectj.weaver.ReferenceType;
+import org.aspectj.weaver.loadtime.DefaultWeavingContext;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DynamicRuntimeWorldTest { // NOPMD
+
+    private static final int MAX_REFLECTION_TYPES = 2;
+    private static final String PROXY_NAME = "a.b.SomeClass$$ProxyByMock4Aj$$1234";
+    private static final String PROXY_SIGNATURE = "La/b/SomeClass$$ProxyByMock4Aj$$1234;";
+
+    private DynamicRuntimeWorld world;
+
+    @Before
+    public void createWorld() {
+        ClassLoader loader = getClass().getClassLoader();
+        world = new DynamicRuntimeWorld(loader, new DefaultWeavingContext(loader),
+                                        new MessageHandler(), null, MAX_REFLECTION_TYPES);
+    }
+
+    @Test
+    public void givenAWovenGeneratedTypeWhenEvictThenItIsRemovedFromTheWorld() {
+        givenATypeInTheWorld(PROXY_SIGNATURE);
+
+        world.evictGeneratedTypes(Arrays.asList(PROXY_NAME));
+
+        assertNull(world.getTypeMap().get(PROXY_SIGNATURE));
+        assertEquals(1, world.getEvictedTypesCount());
+    }
+
+    @Test
+    public void givenANonGeneratedTypeWhenEvictThenItIsKept() {
+        givenATypeInTheWorld("La/b/SomeClass;");
+
+        world.evictGeneratedTypes(Arrays.asList("a.b.SomeClass"));
+
+        assertNotNull(world.getTypeMap().get("La/b/SomeClass;"));
+    }
+
+    @Test
+    public void givenAnAspectWhenEvictThenItIsKept() {
+        ReferenceType aspect = givenATypeInTheWorld(PROXY_SIGNATURE);
+        doReturn(true).when(aspect).isAspect();
+
+        world.evictGeneratedTypes(Arrays.asList(PROXY_NAME));
+
+        assertNotNull(world.getTypeMap().get(PROXY_SIGNATURE));
+    }
+
+    @Test
+    public void givenTooManyTypesResolvedByReflectionThenTheLeastUsedIsEvicted() {
+        givenATypeInTheWorld("La/First;");
+        givenATypeInTheWorld("La/Second;");
+        givenATypeInTheWorld("La/Third;");
+
+        world.recordReflectionResolvedType("La/First;");
+        world.recordReflectionResolvedType("La/Second;");
+        world.recordReflectionResolvedType("La/Third;");
+
+        assertNull(world.getTypeMap().get("La/First;"));
+        assertNotNull(world.getTypeMap().get("La/Third;"));
+        assertEquals(MAX_REFLECTION_TYPES, world.getReflectionResolvedTypesCount());
+    }
+
+    private ReferenceType givenATypeInTheWorld(String signature) {
+        ReferenceType type = spy(new ReferenceType(signature, world));
+        doReturn(false).when(type).isAspect();
+        doReturn(true).when(type).isExposedToWeaver();
+        world.getTypeMap().put(signature, type);
+        return type;
+    }
+
+}
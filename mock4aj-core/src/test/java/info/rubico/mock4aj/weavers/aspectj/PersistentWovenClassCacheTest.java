@@ -0,0 +1,127 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PersistentWovenClassCacheTest {
+
+    private static final String FINGERPRINT = "aspects";
+    private static final String SUPERTYPES = "supertypes";
+
+    private File directory;
+    private PersistentWovenClassCache cache;
+    private byte[] originalBytes;
+    private WovenClass wovenClass;
+
+    @Before
+    public void setupCacheInATemporaryDirectory() throws IOException {
+        directory = File.createTempFile("mock4aj", "cache");
+        directory.delete();
+        cache = new PersistentWovenClassCache(directory);
+
+        originalBytes = "Some bytecode".getBytes();
+        Map<String, byte[]> closures = Collections.singletonMap("AClosure",
+                                                                 "Closure bytecode".getBytes());
+        wovenClass = new WovenClass("Woven bytecode".getBytes(), closures);
+    }
+
+    @After
+    public void deleteTheDirectory() {
+        for (File entry : directory.listFiles()) {
+            entry.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void givenAStoredClassWhenLoadThenTheWovenClassIsReturned() {
+        cache.store(originalBytes, FINGERPRINT, SUPERTYPES, wovenClass);
+
+        WovenClass loaded = cache.load(originalBytes, FINGERPRINT, SUPERTYPES);
+
+        assertArrayEquals(wovenClass.getWovenBytes(), loaded.getWovenBytes());
+        assertArrayEquals("Closure bytecode".getBytes(),
+                          loaded.getGeneratedClasses().get("AClosure"));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void givenAStoredClassWhenLoadFromAnotherCacheInstanceThenItIsFound() {
+        cache.store(originalBytes, FINGERPRINT, SUPERTYPES, wovenClass);
+
+        PersistentWovenClassCache otherCache = new PersistentWovenClassCache(directory);
+
+        assertNotNull(otherCache.load(originalBytes, FINGERPRINT, SUPERTYPES));
+    }
+
+    @Test
+    public void givenOtherAspectsWhenLoadThenNothingIsFound() {
+        cache.store(originalBytes, FINGERPRINT, SUPERTYPES, wovenClass);
+
+        assertNull(cache.load(originalBytes, "other aspects", SUPERTYPES));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void givenOtherSupertypesWhenLoadThenNothingIsFound() {
+        cache.store(originalBytes, FINGERPRINT, SUPERTYPES, wovenClass);
+
+        assertNull(cache.load(originalBytes, FINGERPRINT, "other supertypes"));
+    }
+
+    @Test
+    public void givenACorruptedEntryWhenLoadThenNothingIsFound() throws IOException {
+        cache.store(originalBytes, FINGERPRINT, SUPERTYPES, wovenClass);
+        corruptEntry(cache.entryFile(originalBytes, FINGERPRINT, SUPERTYPES));
+
+        assertNull(cache.load(originalBytes, FINGERPRINT, SUPERTYPES));
+    }
+
+    @Test
+    public void whenStoreThenNoTemporaryFileIsLeft() {
+        cache.store(originalBytes, FINGERPRINT, SUPERTYPES, wovenClass);
+        cache.store(originalBytes, FINGERPRINT, SUPERTYPES, wovenClass);
+
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void givenAWritingErrorWhenStoreThenNoTemporaryFileIsLeft() {
+        PersistentWovenClassCache failingCache = new PersistentWovenClassCache(directory) {
+
+            @Override
+            protected void writeEntry(File file, WovenClass wovenClass) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+
+        failingCache.store(originalBytes, FINGERPRINT, SUPERTYPES, wovenClass);
+
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void givenNoPropertyWhenCreateFromSystemPropertiesThenThereIsNoCache() {
+        System.clearProperty(PersistentWovenClassCache.DIRECTORY_PROPERTY);
+        assertNull(PersistentWovenClassCache.fromSystemProperties());
+    }
+
+    private void corruptEntry(File entry) throws IOException {
+        FileOutputStream output = new FileOutputStream(entry);
+        try {
+            output.write("garbage".getBytes());
+        }
+        finally {
+            output.close();
+        }
+    }
+}
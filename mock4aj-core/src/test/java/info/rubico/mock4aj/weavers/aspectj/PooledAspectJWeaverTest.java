@@ -0,0 +1,398 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+import info.rubico.mock4aj.api.exceptions.NotAnAspect;
+import info.rubico.mock4aj.api.exceptions.WeavingError;
+import info.rubico.mock4aj.api.weaving.WeavingResult;
+import info.rubico.mock4aj.internal.classutils.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+@SuppressWarnings("unused")
+public class PooledAspectJWeaverTest { // NOPMD
+
+    private static final int POOL_SIZE = 4;
+    private static final int WEAVINGS_PER_THREAD = 5;
+    private static final long WEAVING_TIME_MS = 40;
+    private static final Class<?>[] SUBJECTS = {
+        FirstSubject.class, SecondSubject.class, ThirdSubject.class };
+
+    private final List<AspectJWeaver> workers = new ArrayList<AspectJWeaver>();
+    private Answer<byte[]> weavingAnswer;
+    private ExecutorService executor;
+
+    @Before
+    public void configureWorkers() {
+        weavingAnswer = new Answer<byte[]>() {
+            public byte[] answer(InvocationOnMock invocation) {
+                return (byte[]) invocation.getArguments()[1];
+            }
+        };
+        executor = Executors.newFixedThreadPool(POOL_SIZE);
+    }
+
+    @After
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void givenNoRegisteredAspectWhenWeaveThenNoWorkerIsUsed() {
+        PooledAspectJWeaver pool = createPool(POOL_SIZE);
+        byte[] bytecode = "Some bytecode".getBytes();
+
+        byte[] wovenBytecode = pool.weaveClassBytes("SomeClass", bytecode);
+
+        assertSame(bytecode, wovenBytecode);
+        assertEquals(0, pool.getCreatedWorkers());
+    }
+
+    @Test
+    public void whenWeaveThenTheWorkerHasTheRegisteredAspects() {
+        PooledAspectJWeaver pool = createPool(POOL_SIZE);
+        pool.registerAspect(AnAspect.class);
+        pool.registerAspect(OtherAspect.class);
+
+        pool.weaveClassBytes("SomeClass", "Some bytecode".getBytes());
+
+        AspectJWeaver worker = workers.get(0);
+        verify(worker).registerAspects(AnAspect.class, OtherAspect.class);
+        verify(worker).weaveClassBytes(eq("SomeClass"), any(byte[].class));
+    }
+
+    @Test
+    public void givenAResetWhenWeaveThenTheWorkerIsPreparedForTheNewAspects() {
+        PooledAspectJWeaver pool = createPool(1);
+        pool.registerAspect(AnAspect.class);
+        pool.reset();
+        pool.registerAspect(OtherAspect.class);
+
+        pool.weaveClassBytes("SomeClass", "Some bytecode".getBytes());
+
+        AspectJWeaver worker = workers.get(0);
+        verify(worker).registerAspects(AnAspect.class);
+        verify(worker).registerAspects(OtherAspect.class);
+    }
+
+    @Test
+    public void givenANonAspectWhenRegisterThenItIsNotKept() {
+        PooledAspectJWeaver pool = createPool(1);
+        pool.registerAspect(AnAspect.class);
+        AspectJWeaver worker = workers.get(0);
+        willThrow(new NotAnAspect(Date.class)).given(worker).registerAspects(AnAspect.class,
+                                                                             Date.class);
+        try {
+            pool.registerAspect(Date.class);
+            fail("Date is not an aspect");
+        }
+        catch (NotAnAspect e) {
+            pool.weaveClassBytes("SomeClass", "Some bytecode".getBytes());
+            verify(worker, times(2)).registerAspects(AnAspect.class);
+        }
+    }
+
+    @Test
+    public void givenMoreThreadsThanWorkersWhenWeaveThenNoMoreThanThePoolSizeAreCreated()
+        throws Exception {
+        PooledAspectJWeaver pool = createPool(2);
+        pool.registerAspect(AnAspect.class);
+
+        weaveConcurrently(pool, POOL_SIZE);
+
+        assertTrue(pool.getCreatedWorkers() >= 1);
+        assertTrue(pool.getCreatedWorkers() <= 2);
+    }
+
+    @Test(timeout = 10000)
+    public void givenAsManyThreadsAsWorkersWhenWeaveThenAllWeaveAtTheSameTime() throws Exception {
+        final CyclicBarrier allWeaving = new CyclicBarrier(POOL_SIZE);
+        weavingAnswer = new Answer<byte[]>() {
+            public byte[] answer(InvocationOnMock invocation) throws Exception {
+                allWeaving.await(5, TimeUnit.SECONDS);
+                return (byte[]) invocation.getArguments()[1];
+            }
+        };
+        PooledAspectJWeaver pool = createPool(POOL_SIZE);
+        pool.registerAspect(AnAspect.class);
+
+        List<Future<byte[]>> wovenClasses = weaveConcurrently(pool, POOL_SIZE, 1);
+
+        for (Future<byte[]> wovenClass : wovenClasses) {
+            assertNotNull(wovenClass.get());
+        }
+    }
+
+    /**
+     * The weavings only wait (they don't use the CPU) so the pool scales even with a single
+     * processor. Perfect scaling would be {@value #POOL_SIZE} times faster, only 1.5 is expected to
+     * leave room for slow CI machines.
+     */
+    @Test(timeout = 30000)
+    public void givenMoreWorkersWhenWeaveConcurrentlyThenThroughputScales() throws Exception {
+        weavingAnswer = new Answer<byte[]>() {
+            public byte[] answer(InvocationOnMock invocation) throws Exception {
+                Thread.sleep(WEAVING_TIME_MS);
+                return (byte[]) invocation.getArguments()[1];
+            }
+        };
+
+        long singleWorkerTime = measureConcurrentWeaving(createPool(1));
+        long pooledWorkersTime = measureConcurrentWeaving(createPool(POOL_SIZE));
+
+        assertTrue("The pool should weave at least 1.5 times faster with " + POOL_SIZE
+                   + " workers (" + pooledWorkersTime + " ms instead of " + singleWorkerTime
+                   + " ms)", pooledWorkersTime * 3 < singleWorkerTime * 2);
+    }
+
+    @Test(timeout = 60000)
+    public void givenRealWorkersWhenWeaveConcurrentlyThenEveryClassIsWovenCorrectly()
+        throws Exception {
+        final PooledAspectJWeaver pool = createRealPool(POOL_SIZE);
+        pool.registerAspect(CountingAspect.class);
+        List<Future<List<byte[]>>> weavings = new ArrayList<Future<List<byte[]>>>();
+        for (int thread = 0; thread < POOL_SIZE; thread++) {
+            weavings.add(executor.submit(new Callable<List<byte[]>>() {
+                public List<byte[]> call() {
+                    return weaveSubjects(pool);
+                }
+            }));
+        }
+
+        for (Future<List<byte[]>> weaving : weavings) {
+            List<byte[]> wovenClasses = weaving.get();
+            for (int i = 0; i < wovenClasses.size(); i++) {
+                assertAdvised(SUBJECTS[i % SUBJECTS.length], wovenClasses.get(i));
+            }
+        }
+        assertTrue(pool.getCreatedWorkers() >= 1);
+        assertTrue(pool.getCreatedWorkers() <= POOL_SIZE);
+    }
+
+    @Test(timeout = 10000)
+    public void whenWeaveClassesThenTheyAreWovenInParallelAndReturnedInOrder() {
+        final CyclicBarrier allWeaving = new CyclicBarrier(POOL_SIZE);
+        weavingAnswer = new Answer<byte[]>() {
+            public byte[] answer(InvocationOnMock invocation) throws Exception {
+                allWeaving.await(5, TimeUnit.SECONDS);
+                return invocation.getArguments()[0].toString().getBytes();
+            }
+        };
+        PooledAspectJWeaver pool = createPool(POOL_SIZE);
+        pool.registerAspect(AnAspect.class);
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        for (int i = POOL_SIZE; i > 0; i--) {
+            classes.put("Class" + i, "Some bytecode".getBytes());
+        }
+
+        Map<String, WeavingResult> results = pool.weaveClasses(classes);
+
+        assertEquals(new ArrayList<String>(classes.keySet()),
+                     new ArrayList<String>(results.keySet()));
+        for (WeavingResult result : results.values()) {
+            assertEquals(result.getClassName(), new String(result.getWovenBytes()));
+        }
+    }
+
+    @Test
+    public void givenAnErrorOnOneClassWhenWeaveClassesThenOnlyItsResultHasTheError() {
+        weavingAnswer = new Answer<byte[]>() {
+            public byte[] answer(InvocationOnMock invocation) {
+                if ("BadClass".equals(invocation.getArguments()[0])) {
+                    throw new WeavingError("Cannot weave", null);
+                }
+                return (byte[]) invocation.getArguments()[1];
+            }
+        };
+        PooledAspectJWeaver pool = createPool(POOL_SIZE);
+        pool.registerAspect(AnAspect.class);
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        classes.put("BadClass", "Some bytecode".getBytes());
+        classes.put("GoodClass", "Some bytecode".getBytes());
+
+        Map<String, WeavingResult> results = pool.weaveClasses(classes);
+
+        assertFalse(results.get("BadClass").isWoven());
+        assertTrue(results.get("GoodClass").isWoven());
+    }
+
+    @Test
+    public void givenTheSameAspectsWhenGetFingerprintThenItIsTheOneOfAnAspectJWeaver() {
+        PooledAspectJWeaver pool = createRealPool(1);
+        pool.registerAspect(CountingAspect.class);
+        AspectJWeaver weaver = new AspectJWeaver();
+        weaver.registerAspect(CountingAspect.class);
+
+        assertEquals(weaver.getAspectsFingerprint(), pool.getAspectsFingerprint());
+    }
+
+    private void weaveConcurrently(PooledAspectJWeaver pool, int threads) throws Exception {
+        for (Future<byte[]> wovenClass : weaveConcurrently(pool, threads, WEAVINGS_PER_THREAD)) {
+            wovenClass.get();
+        }
+    }
+
+    private long measureConcurrentWeaving(PooledAspectJWeaver pool) throws Exception {
+        pool.registerAspect(AnAspect.class);
+        long start = System.nanoTime();
+        weaveConcurrently(pool, POOL_SIZE);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private List<Future<byte[]>> weaveConcurrently(final PooledAspectJWeaver pool, int threads,
+                                                   final int weavingsPerThread) {
+        List<Future<byte[]>> wovenClasses = new ArrayList<Future<byte[]>>();
+        for (int thread = 0; thread < threads; thread++) {
+            wovenClasses.add(executor.submit(new Callable<byte[]>() {
+                public byte[] call() {
+                    byte[] wovenClass = null;
+                    for (int i = 0; i < weavingsPerThread; i++) {
+                        wovenClass = pool.weaveClassBytes("SomeClass", "Some bytecode".getBytes());
+                    }
+                    return wovenClass;
+                }
+            }));
+        }
+        return wovenClasses;
+    }
+
+    private List<byte[]> weaveSubjects(PooledAspectJWeaver pool) {
+        List<byte[]> wovenClasses = new ArrayList<byte[]>();
+        for (int i = 0; i < WEAVINGS_PER_THREAD; i++) {
+            for (Class<?> subject : SUBJECTS) {
+                wovenClasses.add(pool.weaveClassBytes(subject.getName(),
+                                                      ClassUtils.readBytecode(subject)));
+            }
+        }
+        return wovenClasses;
+    }
+
+    /**
+     * The woven class is defined in its own class loader and called once.
+     */
+    private void assertAdvised(Class<?> subject, byte[] wovenBytecode) throws Exception {
+        Class<?> wovenClass = new WovenClassLoader(getClass().getClassLoader())
+            .define(subject.getName(), wovenBytecode);
+        int adviceCount = CountingAspect.COUNT.get();
+
+        wovenClass.getMethod("answer").invoke(wovenClass.newInstance());
+
+        assertEquals(adviceCount + 1, CountingAspect.COUNT.get());
+    }
+
+    /**
+     * The workers don't cache the woven classes: every weaving is done by AspectJ.
+     */
+    private PooledAspectJWeaver createRealPool(int poolSize) {
+        return new PooledAspectJWeaver(poolSize) {
+            @Override
+            protected AspectJWeaver createWorker(ClassLoader workerClassLoader) {
+                AspectJWeaver worker = super.createWorker(workerClassLoader);
+                worker.setWovenClassCache(new WovenClassCache(0));
+                return worker;
+            }
+        };
+    }
+
+    private PooledAspectJWeaver createPool(int poolSize) {
+        return new PooledAspectJWeaver(poolSize) {
+            @Override
+            protected AspectJWeaver createWorker(ClassLoader workerClassLoader) {
+                return createMockedWorker();
+            }
+        };
+    }
+
+    private synchronized AspectJWeaver createMockedWorker() {
+        AspectJWeaver worker = mock(AspectJWeaver.class);
+        given(worker.weaveClassBytes(anyString(), any(byte[].class))).willAnswer(weavingAnswer);
+        workers.add(worker);
+        return worker;
+    }
+
+    @Aspect
+    private static class AnAspect {
+    }
+
+    @Aspect
+    private static class OtherAspect {
+    }
+
+    /**
+     * Not compiled by ajc: it declares its own aspectOf() and hasAspect().
+     */
+    @Aspect
+    public static class CountingAspect {
+
+        private static final AtomicInteger COUNT = new AtomicInteger();
+        private static final CountingAspect INSTANCE = new CountingAspect();
+
+        public static CountingAspect aspectOf() {
+            return INSTANCE;
+        }
+
+        public static boolean hasAspect() {
+            return true;
+        }
+
+        @AfterReturning("execution(int answer())")
+        public void count() {
+            COUNT.incrementAndGet();
+        }
+    }
+
+    public static class FirstSubject {
+
+        public int answer() {
+            return 1;
+        }
+    }
+
+    public static class SecondSubject {
+
+        public int answer() {
+            return 2;
+        }
+    }
+
+    public static class ThirdSubject extends FirstSubject {
+
+        @Override
+        public int answer() {
+            return 3;
+        }
+    }
+
+    private static class WovenClassLoader extends ClassLoader {
+
+        WovenClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import static org.junit.Assert.*;
+import info.rubico.mock4aj.internal.classutils.ClassUtils;
+
+import java.util.Set;
+
+import org.aspectj.lang.annotation.Before;
+import org.junit.Test;
+
+public class WeavingDependencyDigestTest {
+
+    @Test
+    public void givenAnAspectWhenDigestThenItsSuperAspectsAndPointcutHoldersAreDigested() {
+        Set<String> digested = WeavingDependencyDigest.digestAspectClasses(ConcreteAspect.class)
+            .keySet();
+
+        assertTrue(digested.contains(ConcreteAspect.class.getName()));
+        assertTrue(digested.contains(SuperAspect.class.getName()));
+        assertTrue(digested.contains(PointcutHolder.class.getName()));
+    }
+
+    @Test
+    public void givenTheSameAspectWhenDigestTwiceThenTheDigestsAreEqual() {
+        assertEquals(WeavingDependencyDigest.digestAspect(ConcreteAspect.class),
+                     WeavingDependencyDigest.digestAspect(ConcreteAspect.class));
+    }
+
+    @Test
+    public void givenClassesWithTheSameSupertypesWhenDigestSupertypesThenTheDigestsAreEqual() {
+        assertEquals(digestSupertypesOf(ASubclass.class), digestSupertypesOf(OtherSubclass.class));
+    }
+
+    @Test
+    public void givenClassesWithOtherSupertypesWhenDigestSupertypesThenTheDigestsDiffer() {
+        assertFalse(digestSupertypesOf(ASubclass.class)
+            .equals(digestSupertypesOf(ASubSubclass.class)));
+    }
+
+    private String digestSupertypesOf(Class<?> clazz) {
+        return WeavingDependencyDigest.digestSupertypes(clazz.getClassLoader(),
+                                                        ClassUtils.readBytecode(clazz));
+    }
+
+    public static class PointcutHolder {
+
+        public void anyCall() {
+        }
+    }
+
+    public abstract static class SuperAspect {
+
+        public abstract void advice();
+    }
+
+    public static class ConcreteAspect extends SuperAspect {
+
+        @Override
+        @Before("WeavingDependencyDigestTest.PointcutHolder.anyCall()")
+        public void advice() {
+        }
+    }
+
+    public static class ABaseClass {
+    }
+
+    public static class ASubclass extends ABaseClass {
+    }
+
+    public static class OtherSubclass extends ABaseClass {
+    }
+
+    public static class ASubSubclass extends ASubclass {
+    }
+
+}
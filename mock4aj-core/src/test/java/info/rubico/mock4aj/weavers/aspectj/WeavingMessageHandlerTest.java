@@ -0,0 +1,102 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.aspectj.bridge.AbortException;
+import org.aspectj.bridge.IMessage;
+import org.aspectj.bridge.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WeavingMessageHandlerTest { // NOPMD
+
+    private WeavingMessageHandler handler;
+    private WeavingMessageSink sink;
+
+    @Before
+    public void createHandler() {
+        handler = new WeavingMessageHandler();
+        sink = mock(WeavingMessageSink.class);
+    }
+
+    @Test
+    public void givenNoSinkThenEveryKindButErrorsIsIgnored() {
+        assertTrue(handler.isIgnoring(IMessage.WEAVEINFO));
+        assertTrue(handler.isIgnoring(IMessage.WARNING));
+        assertFalse(handler.isIgnoring(IMessage.ERROR));
+        assertFalse(handler.isIgnoring(IMessage.ABORT));
+    }
+
+    @Test
+    public void givenNoSinkWhenHandleAnErrorThenItIsThrown() {
+        IMessage error = new Message("An error", IMessage.ERROR, null, null);
+
+        try {
+            handler.handleMessage(error);
+            fail("The error should be thrown");
+        }
+        catch (AbortException e) {
+            assertSame(error, e.getIMessage());
+        }
+    }
+
+    @Test
+    public void givenNoSinkWhenHandleAWarningThenItIsNotThrown() {
+        assertTrue(handler.handleMessage(new Message("Warning", IMessage.WARNING, null, null)));
+    }
+
+    @Test
+    public void givenASinkByDefaultThenOnlyWarningsAndErrorsAreNotIgnored() {
+        handler.setSink(sink);
+
+        assertTrue(handler.isIgnoring(IMessage.INFO));
+        assertTrue(handler.isIgnoring(IMessage.WEAVEINFO));
+        assertTrue(handler.isIgnoring(IMessage.DEBUG));
+        assertFalse(handler.isIgnoring(IMessage.WARNING));
+        assertFalse(handler.isIgnoring(IMessage.ERROR));
+    }
+
+    @Test
+    public void givenASilentVerbosityThenErrorsAreStillDelivered() {
+        handler.setSink(sink);
+        handler.setVerbosity(WeavingVerbosity.SILENT);
+        IMessage error = new Message("An error", IMessage.ERROR, null, null);
+
+        handler.handleMessage(error);
+
+        assertTrue(handler.isIgnoring(IMessage.WARNING));
+        verify(sink).onMessage(error);
+    }
+
+    @Test
+    public void whenHandleAnEnabledMessageThenItIsDeliveredToTheSink() {
+        handler.setSink(sink);
+        handler.setVerbosity(WeavingVerbosity.INFO);
+        IMessage weaveInfo = new Message("Woven", IMessage.WEAVEINFO, null, null);
+
+        handler.handleMessage(weaveInfo);
+
+        verify(sink).onMessage(weaveInfo);
+    }
+
+    @Test
+    public void whenHandleADisabledMessageThenItIsNotDelivered() {
+        handler.setSink(sink);
+
+        handler.handleMessage(new Message("Debug", IMessage.DEBUG, null, null));
+
+        verify(sink, never()).onMessage(any(IMessage.class));
+    }
+
+    @Test
+    public void whenAspectJAsksToNotIgnoreAKindThenTheVerbosityStillDecides() {
+        handler.setSink(sink);
+
+        handler.dontIgnore(IMessage.DEBUG);
+
+        assertTrue(handler.isIgnoring(IMessage.DEBUG));
+    }
+
+}
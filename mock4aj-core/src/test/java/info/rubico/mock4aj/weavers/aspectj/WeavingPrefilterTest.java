@@ -0,0 +1,148 @@
+package info.rubico.mock4aj.weavers.aspectj;
+
+import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.*;
+import static org.mockito.Mockito.*;
+import info.rubico.mock4aj.internal.classutils.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.aspectj.weaver.ConcreteTypeMunger;
+import org.aspectj.weaver.CrosscuttingMembersSet;
+import org.aspectj.weaver.ResolvedType;
+import org.aspectj.weaver.ShadowMunger;
+import org.aspectj.weaver.UnresolvedType;
+import org.aspectj.weaver.bcel.BcelPerClauseAspectAdder;
+import org.aspectj.weaver.patterns.ExactTypePattern;
+import org.aspectj.weaver.patterns.PatternParser;
+import org.aspectj.weaver.patterns.Pointcut;
+import org.aspectj.weaver.patterns.WithinPointcut;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("unused")
+public class WeavingPrefilterTest { // NOPMD
+
+    private static final String CLASS_NAME = SomeService.class.getName();
+
+    private WeavingPrefilter prefilter;
+    private CrosscuttingMembersSet crosscuttingMembers;
+    private List<ShadowMunger> shadowMungers;
+    private byte[] bytecode;
+
+    @Before
+    public void setupPrefilter() {
+        prefilter = new WeavingPrefilter();
+        crosscuttingMembers = mock(CrosscuttingMembersSet.class);
+        shadowMungers = new ArrayList<ShadowMunger>();
+        given(crosscuttingMembers.getShadowMungers()).willReturn(shadowMungers);
+        bytecode = ClassUtils.readBytecode(SomeService.class);
+    }
+
+    @Test
+    public void givenAnAdviceOnAnotherMethodWhenCheckThenCanSkipWeaving() {
+        givenAnAdviceOn("execution(* *.otherMethod(..))");
+        assertTrue(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, bytecode));
+    }
+
+    @Test
+    public void givenAnAdviceOnAnotherMethodWhenCheckAMethodThenItCannotBeAdvised() {
+        givenAnAdviceOn("execution(* *.otherMethod(..)) || call(* *.doSomething(..))");
+        assertFalse(prefilter.couldAdviseMethod(crosscuttingMembers, CLASS_NAME, "doNothing"));
+        assertTrue(prefilter.couldAdviseMethod(crosscuttingMembers, CLASS_NAME, "doSomething"));
+    }
+
+    @Test
+    public void givenAnAdviceOnAMethodOfTheClassWhenCheckThenCannotSkipWeaving() {
+        givenAnAdviceOn("execution(* *.doSomething(..))");
+        assertFalse(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, bytecode));
+    }
+
+    @Test
+    public void givenAnAdviceOnAMethodCalledByTheClassWhenCheckThenCannotSkipWeaving() {
+        givenAnAdviceOn("call(* *.currentTimeMillis(..))");
+        assertFalse(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, bytecode));
+    }
+
+    @Test
+    public void givenAWildcardAdviceMatchingAMethodWhenCheckThenCannotSkipWeaving() {
+        givenAnAdviceOn("execution(* *.do*(..)) && args(int)");
+        assertFalse(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, bytecode));
+    }
+
+    @Test
+    public void givenAnAdviceWithAnOrOnUnusedMethodsWhenCheckThenCanSkipWeaving() {
+        givenAnAdviceOn("execution(* *.otherMethod(..)) || call(* *.yetAnother(..))");
+        assertTrue(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, bytecode));
+    }
+
+    @Test
+    public void givenANegatedAdviceWhenCheckThenCannotSkipWeaving() {
+        givenAnAdviceOn("!execution(* *.otherMethod(..))");
+        assertFalse(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, bytecode));
+    }
+
+    @Test
+    public void givenAnAdviceWithinAnotherTypeWhenCheckThenCanSkipWeaving() {
+        givenAnAdviceOn(new WithinPointcut(new ExactTypePattern(UnresolvedType.forName("a.Other"),
+                                                                false, false)));
+        assertTrue(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, bytecode));
+    }
+
+    @Test
+    public void givenAnAdviceWithinTheTypeWhenCheckThenCannotSkipWeaving() {
+        givenAnAdviceOn(new WithinPointcut(new ExactTypePattern(UnresolvedType.forName(CLASS_NAME),
+                                                                false, false)));
+        assertFalse(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, bytecode));
+    }
+
+    @Test
+    public void givenInterTypeDeclarationsWhenCheckThenCannotSkipWeaving() {
+        ConcreteTypeMunger typeMunger = mock(ConcreteTypeMunger.class);
+        List<ConcreteTypeMunger> typeMungers = Collections.singletonList(typeMunger);
+        given(crosscuttingMembers.getTypeMungers()).willReturn(typeMungers);
+
+        assertFalse(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, bytecode));
+    }
+
+    @Test
+    public void givenOnlyTheMembersOfTheAspectPerClauseWhenCheckAnotherClassThenCanSkipWeaving() {
+        ConcreteTypeMunger typeMunger = mock(BcelPerClauseAspectAdder.class);
+        ResolvedType aspectType = mock(ResolvedType.class);
+        given(aspectType.getName()).willReturn("an.Aspect");
+        given(typeMunger.getAspectType()).willReturn(aspectType);
+        List<ConcreteTypeMunger> typeMungers = Collections.singletonList(typeMunger);
+        given(crosscuttingMembers.getTypeMungers()).willReturn(typeMungers);
+
+        assertTrue(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, bytecode));
+        assertFalse(prefilter.canSkipWeaving(crosscuttingMembers, "an.Aspect", bytecode));
+    }
+
+    @Test
+    public void givenUnreadableBytecodeWhenCheckThenCannotSkipWeaving() {
+        givenAnAdviceOn("execution(* *.otherMethod(..))");
+        byte[] unreadable = "Not a class".getBytes();
+
+        assertFalse(prefilter.canSkipWeaving(crosscuttingMembers, CLASS_NAME, unreadable));
+    }
+
+    private void givenAnAdviceOn(String pointcutExpression) {
+        givenAnAdviceOn(new PatternParser(pointcutExpression).parsePointcut());
+    }
+
+    private void givenAnAdviceOn(Pointcut pointcut) {
+        ShadowMunger advice = mock(ShadowMunger.class);
+        given(advice.getPointcut()).willReturn(pointcut);
+        shadowMungers.add(advice);
+    }
+
+    private static class SomeService {
+
+        public long doSomething(int value) {
+            return System.currentTimeMillis() + value;
+        }
+    }
+
+}
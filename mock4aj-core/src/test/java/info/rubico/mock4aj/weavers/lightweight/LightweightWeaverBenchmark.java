@@ -0,0 +1,104 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+import info.rubico.mock4aj.api.weaving.Weaver;
+import info.rubico.mock4aj.api.weaving.Weavers;
+import info.rubico.mock4aj.codegen.cglib.proxies.CglibWeavedProxyFactory;
+import info.rubico.mock4aj.weavers.aspectj.AspectJWeaver;
+import info.rubico.mock4aj.weavers.aspectj.WovenClassCache;
+import info.rubico.mock4aj.weavers.noweaving.NoWeavingWeaver;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * Compares the weaving of a proxy by the {@link LightweightWeaver} and by the {@link AspectJWeaver}
+ * (BCEL). It is not run with the tests (its name doesn't end with Test), run its main method.
+ * <p>
+ * Each iteration registers the aspect again after a reset and weaves the bytecode of a proxy, like
+ * the creation of a weaved proxy. The cache of woven classes of the AspectJ weaver is disabled.
+ */
+public final class LightweightWeaverBenchmark {
+
+    private static final int WARM_UP_ITERATIONS = 200;
+    private static final int MEASURED_ITERATIONS = 1000;
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private LightweightWeaverBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        ProxyBytecodeRecorder recorder = new ProxyBytecodeRecorder();
+        new CglibWeavedProxyFactory().createWeavedProxy(new Building(), recorder);
+
+        AspectJWeaver aspectJWeaver = new AspectJWeaver();
+        aspectJWeaver.setWovenClassCache(new WovenClassCache(0));
+        aspectJWeaver.setPersistentCache(null);
+
+        report("AspectJ (BCEL)", aspectJWeaver, recorder);
+        report("Lightweight", new LightweightWeaver(), recorder);
+    }
+
+    private static void report(String name, Weaver weaver, ProxyBytecodeRecorder recorder) {
+        measure(weaver, recorder, WARM_UP_ITERATIONS);
+        long duration = measure(weaver, recorder, MEASURED_ITERATIONS);
+        System.out.println(String.format("%-16s %10.1f us/proxy", name, duration / NANOS_PER_MICRO
+                                                                       / MEASURED_ITERATIONS));
+    }
+
+    private static long measure(Weaver weaver, ProxyBytecodeRecorder recorder, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            weaver.reset();
+            Weavers.registerAspects(weaver, HouseAutomation.class);
+            weaver.weaveClassBytes(recorder.className, recorder.bytecode);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Keeps the bytecode of the generated proxy without weaving it.
+     */
+    private static class ProxyBytecodeRecorder extends NoWeavingWeaver {
+
+        private String className;
+        private byte[] bytecode;
+
+        @Override
+        public byte[] weaveClassBytes(String name, byte[] bytes) {
+            className = name;
+            bytecode = bytes;
+            return bytes;
+        }
+    }
+
+    public static class Building {
+
+        private boolean energySaving;
+
+        public void leave() {
+            // Nobody inside
+        }
+
+        public void turnOnEnergySaving() {
+            energySaving = true;
+        }
+
+        public boolean isEnergySaving() {
+            return energySaving;
+        }
+    }
+
+    /**
+     * Like the aspect of the house example.
+     */
+    @Aspect
+    public static class HouseAutomation {
+
+        @After("execution(void *..LightweightWeaverBenchmark.Building.leave())")
+        public void saveEnergyOnLeaving(JoinPoint joinPoint) {
+            ((Building) joinPoint.getThis()).turnOnEnergySaving();
+        }
+    }
+
+}
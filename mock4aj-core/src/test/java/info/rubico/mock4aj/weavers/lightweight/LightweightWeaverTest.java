@@ -0,0 +1,297 @@
+package info.rubico.mock4aj.weavers.lightweight;
+
+import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+import info.rubico.mock4aj.api.exceptions.NotAConcreteAspect;
+import info.rubico.mock4aj.api.scopes.GenerationScope;
+import info.rubico.mock4aj.api.weaving.MultiAspectWeaver;
+import info.rubico.mock4aj.codegen.cglib.proxies.CglibWeavedProxyFactory;
+import info.rubico.mock4aj.internal.classutils.ClassDefiner;
+import info.rubico.mock4aj.internal.classutils.ClassUtils;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class LightweightWeaverTest { // NOPMD
+
+    private static final List<String> EVENTS = new ArrayList<String>();
+    private static final int MAX_GC_ATTEMPTS = 20;
+    private static final long GC_WAIT_MS = 50;
+
+    private MultiAspectWeaver fallback;
+    private LightweightWeaver weaver;
+
+    @Before
+    public void createWeaver() {
+        EVENTS.clear();
+        fallback = mock(MultiAspectWeaver.class);
+        given(fallback.weaveClassBytes(anyString(), any(byte[].class))).willAnswer(
+                new Answer<byte[]>() {
+                    public byte[] answer(InvocationOnMock invocation) {
+                        return (byte[]) invocation.getArguments()[1];
+                    }
+                });
+        weaver = new LightweightWeaver(getClass().getClassLoader(), fallback);
+    }
+
+    @Test
+    public void givenABeforeAdviceWhenCallTheProxyThenTheAdviceIsCalledBeforeTheMethod() {
+        weaver.registerAspect(BeforeGreetingAspect.class);
+
+        String greeting = createWeavedProxy().greet("Bob");
+
+        assertEquals("Hello Bob", greeting);
+        assertEquals("[before greet(Bob), greet(Bob)]", EVENTS.toString());
+        verifyZeroInteractions(fallback);
+    }
+
+    @Test
+    public void givenAnAdviceReceivingTheJoinPointWhenCallThenTheJoinPointDescribesTheExecution() {
+        weaver.registerAspect(BeforeGreetingAspect.class);
+        Greeter proxy = createWeavedProxy();
+
+        proxy.greet("Bob");
+
+        JoinPoint joinPoint = BeforeGreetingAspect.lastJoinPoint;
+        assertSame(proxy, joinPoint.getThis());
+        assertEquals(JoinPoint.METHOD_EXECUTION, joinPoint.getKind());
+        assertEquals("greet", joinPoint.getSignature().getName());
+    }
+
+    @Test
+    public void givenAnAfterAdviceWhenTheMethodThrowsThenTheAdviceIsCalledAndTheErrorRethrown() {
+        weaver.registerAspect(AfterFailureAspect.class);
+
+        try {
+            createWeavedProxy().fail();
+            fail("The exception should be thrown again");
+        }
+        catch (IllegalStateException e) {
+            assertEquals("[fail(), after fail()]", EVENTS.toString());
+        }
+    }
+
+    @Test
+    public void givenAnAfterReturningAdviceOnANamedPointcutWhenCallThenAdviceIsCalledAfter() {
+        weaver.registerAspect(AfterReturningGreetingAspect.class);
+
+        createWeavedProxy().greet("Bob");
+
+        assertEquals("[greet(Bob), after returning]", EVENTS.toString());
+    }
+
+    @Test
+    public void givenAnAroundAdviceWhenCallThenTheAdviceCanProceedAndChangeTheResult() {
+        weaver.registerAspect(AroundAspect.class);
+        Greeter proxy = createWeavedProxy();
+
+        assertEquals("HELLO BOB", proxy.greet("Bob"));
+        assertEquals(42, proxy.multiply(2, 3));
+    }
+
+    @Test
+    public void givenAnAspectOfTheSameNameFromAnotherLoaderThenTheWovenClassKeepsItsAspect()
+        throws Exception {
+        weaver.registerAspect(AroundAspect.class);
+        Greeter proxy = createWeavedProxy();
+        LightweightWeaver otherWeaver = new LightweightWeaver(getClass().getClassLoader(),
+                                                              fallback);
+        otherWeaver.registerAspect(copyInAnotherLoader(AroundAspect.class));
+
+        otherWeaver.couldAdvise(Greeter.class, Greeter.class.getMethod("greet", String.class));
+
+        assertEquals("HELLO BOB", proxy.greet("Bob"));
+    }
+
+    @Test
+    public void givenWeavedProxiesCreatedInAScopeWhenCloseThenTheirClassesAreUnloaded() {
+        GenerationScope scope = GenerationScope.open();
+        WeakReference<Class<?>> proxyClass;
+        try {
+            weaver.registerAspect(AroundAspect.class);
+            proxyClass = createAdvisedProxyClass();
+        }
+        finally {
+            scope.close();
+        }
+
+        assertUnloaded(proxyClass);
+    }
+
+    @Test
+    public void givenAnAdviceWhenCouldAdviseThenOnlyTheMatchedMethodsCouldBeAdvised()
+        throws Exception {
+        weaver.registerAspect(BeforeGreetingAspect.class);
+
+        assertTrue(weaver.couldAdvise(Greeter.class,
+                                      Greeter.class.getMethod("greet", String.class)));
+        assertFalse(weaver.couldAdvise(Greeter.class, Greeter.class.getMethod("fail")));
+    }
+
+    @Test
+    public void givenAnUnsupportedAspectWhenWeaveThenTheFallbackWeavesTheClass() {
+        weaver.registerAspects(BeforeGreetingAspect.class, WithinAspect.class);
+        byte[] bytecode = ClassUtils.readBytecode(Greeter.class);
+
+        weaver.weaveClassBytes(Greeter.class.getName(), bytecode);
+
+        verify(fallback).replaceAspects(BeforeGreetingAspect.class, WithinAspect.class);
+        verify(fallback).weaveClassBytes(Greeter.class.getName(), bytecode);
+        assertEquals(1, weaver.getFallbackClassesCount());
+    }
+
+    @Test
+    public void givenAMethodAdvisedTwiceWhenWeaveThenTheFallbackWeavesTheClass() {
+        weaver.registerAspects(BeforeGreetingAspect.class, AfterReturningGreetingAspect.class);
+
+        createWeavedProxy();
+
+        verify(fallback).weaveClassBytes(anyString(), any(byte[].class));
+    }
+
+    @Test
+    public void givenNoMatchingAdviceWhenWeaveThenTheSameBytecodeIsReturned() {
+        weaver.registerAspect(BeforeGreetingAspect.class);
+        byte[] bytecode = ClassUtils.readBytecode(Date.class);
+
+        assertSame(bytecode, weaver.weaveClassBytes(Date.class.getName(), bytecode));
+    }
+
+    @Test
+    public void givenANonAspectClassWhenRegisterThenTheFallbackChecksIt() {
+        weaver.registerAspect(Date.class);
+
+        verify(fallback).replaceAspects(Date.class);
+    }
+
+    @Test(expected = NotAConcreteAspect.class)
+    public void givenAnAbstractAspectWhenRegisterThenShouldThrowNotAConcreteAspect() {
+        weaver.registerAspect(AbstractAspect.class);
+    }
+
+    private Greeter createWeavedProxy() {
+        return new CglibWeavedProxyFactory().createWeavedProxy(new Greeter(), weaver);
+    }
+
+    private WeakReference<Class<?>> createAdvisedProxyClass() {
+        Greeter proxy = createWeavedProxy();
+        assertEquals("HELLO BOB", proxy.greet("Bob"));
+        return new WeakReference<Class<?>>(proxy.getClass());
+    }
+
+    private Class<?> copyInAnotherLoader(Class<?> clazz) {
+        ClassLoader otherLoader = new ClassLoader(getClass().getClassLoader()) {
+        };
+        return ClassDefiner.defineClass(otherLoader, clazz.getName(),
+                                        ClassUtils.readBytecode(clazz));
+    }
+
+    private void assertUnloaded(WeakReference<Class<?>> generatedClass) {
+        for (int attempt = 0; attempt < MAX_GC_ATTEMPTS && generatedClass.get() != null;
+                attempt++) {
+            System.gc();
+            try {
+                Thread.sleep(GC_WAIT_MS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        assertNull("The generated class should be unloaded", generatedClass.get());
+    }
+
+    public static class Greeter {
+
+        public String greet(String name) {
+            EVENTS.add("greet(" + name + ")");
+            return "Hello " + name;
+        }
+
+        public void fail() {
+            EVENTS.add("fail()");
+            throw new IllegalStateException();
+        }
+
+        public int multiply(int left, long right) {
+            return (int) (left * right);
+        }
+    }
+
+    @Aspect
+    public static class BeforeGreetingAspect {
+
+        private static JoinPoint lastJoinPoint;
+
+        @org.aspectj.lang.annotation.Before("execution(String greet(String))")
+        public void beforeGreeting(JoinPoint joinPoint) {
+            lastJoinPoint = joinPoint;
+            EVENTS.add("before greet(" + joinPoint.getArgs()[0] + ")");
+        }
+    }
+
+    @Aspect
+    public static class AfterFailureAspect {
+
+        @After("execution(void fail())")
+        public void afterFailure() {
+            EVENTS.add("after fail()");
+        }
+    }
+
+    @Aspect
+    public static class AfterReturningGreetingAspect {
+
+        @Pointcut("execution(String greet(String))")
+        public void greeting() { // NOPMD
+        }
+
+        @AfterReturning("greeting()")
+        public void afterGreeting() {
+            EVENTS.add("after returning");
+        }
+    }
+
+    @Aspect
+    public static class AroundAspect {
+
+        @Around("execution(String greet(String))")
+        public Object shout(ProceedingJoinPoint joinPoint) throws Throwable {
+            return ((String) joinPoint.proceed()).toUpperCase();
+        }
+
+        @Around("execution(int multiply(int, long))")
+        public Object multiplyOtherNumbers(ProceedingJoinPoint joinPoint) throws Throwable {
+            return joinPoint.proceed(new Object[] { 6, 7L });
+        }
+    }
+
+    @Aspect
+    public static class WithinAspect {
+
+        @org.aspectj.lang.annotation.Before("execution(String greet(String)) && within(Greeter)")
+        public void beforeGreeting() {
+            EVENTS.add("within");
+        }
+    }
+
+    @Aspect
+    public abstract static class AbstractAspect {
+    }
+
+}
@@ -1,6 +1,10 @@
 package info.rubico.mock4aj.weavers.noweaving;
 
 import static org.junit.Assert.*;
+import info.rubico.mock4aj.api.weaving.WeavingResult;
+
+import java.util.Collections;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -22,4 +26,14 @@ public class NoWeavingWeaverTest { // NOPMD
                           bytecode, newBytecode);
     }
 
+    @Test
+    public void whenWeaveClassesThenAllBytecodesAreUntouched() {
+        byte[] bytecode = "some bytes".getBytes();
+
+        Map<String, WeavingResult> results =
+                noWeavingAdapter.weaveClasses(Collections.singletonMap("classname", bytecode));
+
+        assertSame(bytecode, results.get("classname").getWovenBytes());
+    }
+
 }